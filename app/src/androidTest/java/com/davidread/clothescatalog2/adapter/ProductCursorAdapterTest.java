@@ -0,0 +1,178 @@
+package com.davidread.clothescatalog2.adapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.davidread.clothescatalog2.R;
+import com.davidread.clothescatalog2.database.ProductContract;
+import com.davidread.clothescatalog2.database.ProductSaleBatcher;
+import com.davidread.clothescatalog2.database.ProductSnapshot;
+import com.davidread.clothescatalog2.database.ProductWriteExecutor;
+import com.davidread.clothescatalog2.image.ImageLoader;
+
+import org.junit.Test;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * This class tests the allocations of binding list items in {@link ProductCursorAdapter}.
+ */
+public class ProductCursorAdapterTest {
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductCursorAdapterTest.class.getSimpleName();
+
+    /**
+     * Number of list items bound by each path in the allocation benchmark, about as many binds as
+     * a long fling through the list.
+     */
+    private static final int BENCHMARK_BIND_COUNT = 1000;
+
+    /**
+     * Id of the first product in the benchmark. It is past the ids whose boxed values are cached,
+     * so boxing an id while binding is counted.
+     */
+    private static final long BENCHMARK_FIRST_ID = 1000;
+
+    /**
+     * Benchmarks the objects allocated by binding the text of a list item, the way binding used
+     * to with a new {@link NumberFormat} and {@link String#valueOf(int)}, against
+     * {@link ProductCursorAdapter#bindText(ProductCursorAdapter.ProductViewHolder, ProductSnapshot,
+     * int)}, which writes the price and quantity into the buffers of the view holder, looks up
+     * unsold units in the {@link ProductSaleBatcher}, and sets them with
+     * {@link android.widget.TextView#setText(char[], int, int)}. Verify that the old path
+     * allocates and the new one does not. The item view is never laid out, so the text layouts
+     * the framework builds on the next layout pass are not counted.
+     */
+    @Test
+    public void bindText_Benchmark_AllocatesNothing() {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = new ContextThemeWrapper(
+                instrumentation.getTargetContext(),
+                R.style.Theme_ClothesCatalog
+        );
+        ProductSnapshot snapshot = createSnapshot();
+        int[] numberFormatAllocations = new int[1];
+        int[] bindTextAllocations = new int[1];
+
+        // Views are created and bound on the main thread, so count allocations there.
+        instrumentation.runOnMainSync(() -> {
+            ProductSaleBatcher saleBatcher = new ProductSaleBatcher(
+                    ProductWriteExecutor.getInstance(context),
+                    new ProductSaleBatcher.Listener() {
+                        @Override
+                        public void onQuantityChanged(long id) {
+                        }
+
+                        @Override
+                        public void onSaleFailed(long id) {
+                        }
+                    }
+            );
+            ProductCursorAdapter adapter = new ProductCursorAdapter(
+                    new ImageLoader(context),
+                    saleBatcher,
+                    (id) -> {
+                    },
+                    (id, quantity) -> {
+                    }
+            );
+            ProductCursorAdapter.ProductViewHolder holder =
+                    adapter.onCreateViewHolder(new FrameLayout(context), 0);
+
+            // Warm up both paths so that class loading and the first text wrapper are not counted.
+            bindTextWithNumberFormat(holder, snapshot, 0);
+            adapter.bindText(holder, snapshot, 0);
+
+            Debug.startAllocCounting();
+            try {
+                Debug.resetThreadAllocCount();
+                for (int row = 0; row < BENCHMARK_BIND_COUNT; row++) {
+                    bindTextWithNumberFormat(holder, snapshot, row);
+                }
+                numberFormatAllocations[0] = Debug.getThreadAllocCount();
+
+                Debug.resetThreadAllocCount();
+                for (int row = 0; row < BENCHMARK_BIND_COUNT; row++) {
+                    adapter.bindText(holder, snapshot, row);
+                }
+                bindTextAllocations[0] = Debug.getThreadAllocCount();
+            } finally {
+                Debug.stopAllocCounting();
+            }
+        });
+
+        Log.i(TAG, String.format(
+                Locale.US,
+                "allocations per bind: NumberFormat %.1f, bindText %.1f",
+                (double) numberFormatAllocations[0] / BENCHMARK_BIND_COUNT,
+                (double) bindTextAllocations[0] / BENCHMARK_BIND_COUNT
+        ));
+        assertTrue(numberFormatAllocations[0] > 0);
+        assertEquals(0, bindTextAllocations[0]);
+    }
+
+    /**
+     * Returns a snapshot of {@link #BENCHMARK_BIND_COUNT} products with distinct ids, prices, and
+     * quantities.
+     *
+     * @return The snapshot.
+     */
+    @NonNull
+    private ProductSnapshot createSnapshot() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                ProductContract.ProductEntry._ID,
+                ProductContract.ProductEntry.COLUMN_NAME,
+                ProductContract.ProductEntry.COLUMN_PRICE,
+                ProductContract.ProductEntry.COLUMN_QUANTITY
+        });
+        for (int row = 0; row < BENCHMARK_BIND_COUNT; row++) {
+            cursor.addRow(new Object[]{
+                    BENCHMARK_FIRST_ID + row,
+                    "Product " + row,
+                    row * 199L,
+                    row
+            });
+        }
+        try {
+            return ProductSnapshot.read(cursor, SystemClock.elapsedRealtimeNanos());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Binds the text of a list item the way binding used to, by formatting each number into a new
+     * string.
+     *
+     * @param holder   The view holder to update.
+     * @param snapshot Snapshot holding the product.
+     * @param row      Row of the product in the snapshot.
+     */
+    private void bindTextWithNumberFormat(
+            @NonNull ProductCursorAdapter.ProductViewHolder holder,
+            @NonNull ProductSnapshot snapshot,
+            int row
+    ) {
+        holder.getNameTextView().setText(snapshot.getName(row));
+        holder.getPriceTextView().setText(
+                NumberFormat.getCurrencyInstance(Locale.US).format(snapshot.getPrice(row) / 100.0)
+        );
+        holder.getQuantityTextView().setText(String.valueOf(snapshot.getQuantity(row)));
+    }
+}
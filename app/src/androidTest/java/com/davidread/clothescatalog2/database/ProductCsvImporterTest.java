@@ -0,0 +1,239 @@
+package com.davidread.clothescatalog2.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class tests the rows imported and skipped by {@link ProductCsvImporter}.
+ */
+public class ProductCsvImporterTest {
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductCsvImporterTest.class.getSimpleName();
+
+    /**
+     * Number of rows imported by the import benchmark.
+     */
+    private static final int BENCHMARK_ROW_COUNT = 20000;
+
+    /**
+     * Time in seconds to wait for an import to finish.
+     */
+    private static final long IMPORT_TIMEOUT_SECONDS = 120;
+
+    /**
+     * Name of the supplier of every imported product, so the test can delete what it imported.
+     */
+    private static final String SUPPLIER_NAME = "CSV Import Test Supplier";
+
+    /**
+     * Header naming every column except the picture path.
+     */
+    private static final String HEADER = ProductContract.ProductEntry.COLUMN_NAME
+            + "," + ProductContract.ProductEntry.COLUMN_PRICE
+            + "," + ProductContract.ProductEntry.COLUMN_QUANTITY
+            + "," + ProductContract.ProductEntry.COLUMN_SUPPLIER
+            + "," + ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+            + "," + ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL;
+
+    /**
+     * Any context of this app.
+     */
+    private Context context;
+
+    /**
+     * File to import. {@code null} until it is written.
+     */
+    private File csvFile;
+
+    /**
+     * Callback invoked before each test. It initializes {@link #context}.
+     */
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    /**
+     * Callback invoked after each test. It deletes the file it wrote and the products and supplier
+     * it imported.
+     */
+    @After
+    public void tearDown() {
+        if (csvFile != null) {
+            csvFile.delete();
+        }
+        ContentResolver contentResolver = context.getContentResolver();
+        contentResolver.delete(
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER + "=?",
+                new String[]{SUPPLIER_NAME}
+        );
+        contentResolver.delete(
+                ProductContract.SupplierEntry.CONTENT_URI,
+                ProductContract.SupplierEntry.COLUMN_NAME + "=?",
+                new String[]{SUPPLIER_NAME}
+        );
+    }
+
+    /**
+     * Verify that when {@link ProductCsvImporter} reads a row with fewer fields than the header,
+     * it skips the row, reports the line the row starts on, and imports the other rows. The row
+     * before it spans two lines, so the line number counts the quoted line break.
+     */
+    @Test
+    public void start_ShortRow_ReportsLineNumber() throws IOException, InterruptedException {
+
+        csvFile = writeCsv(HEADER + "\n"
+                + getRow("\"Green\nT-Shirt\"") + "\n"
+                + "Blue T-Shirt,19.99,25\n"
+                + getRow("Red T-Shirt") + "\n");
+
+        ProductCsvImporter.Result result = importCsv(Uri.fromFile(csvFile));
+
+        assertNull(result.getFailureMessage());
+        assertEquals(3, result.getRowsRead());
+        assertEquals(2, result.getRowsImported());
+        assertEquals(1, result.getRowsSkipped());
+        assertEquals(1, result.getErrors().size());
+        assertEquals(4, result.getErrors().get(0).getLineNumber());
+    }
+
+    /**
+     * Verify that when the header of the file has no quantity column, {@link ProductCsvImporter}
+     * fails the import, names the missing column, and imports nothing.
+     */
+    @Test
+    public void start_MissingHeaderColumn_FailsImport() throws IOException, InterruptedException {
+
+        csvFile = writeCsv(HEADER.replace(
+                "," + ProductContract.ProductEntry.COLUMN_QUANTITY + ",",
+                ","
+        ) + "\n" + "Red T-Shirt,19.99," + SUPPLIER_NAME + ",212-555-0100,sales@garment.com\n");
+
+        ProductCsvImporter.Result result = importCsv(Uri.fromFile(csvFile));
+
+        assertNotNull(result.getFailureMessage());
+        assertTrue(result.getFailureMessage().contains(
+                ProductContract.ProductEntry.COLUMN_QUANTITY
+        ));
+        assertEquals(0, result.getRowsImported());
+    }
+
+    /**
+     * Benchmarks the rows per second of importing a file of {@link #BENCHMARK_ROW_COUNT} rows with
+     * {@link ProductCsvImporter}, from reading the file to the last chunk being inserted. Verify
+     * that every row is imported.
+     */
+    @Test
+    public void start_Benchmark_ImportsEveryRow() throws IOException, InterruptedException {
+
+        StringBuilder csv = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < BENCHMARK_ROW_COUNT; i++) {
+            csv.append(getRow("Green T-Shirt " + i)).append('\n');
+        }
+        csvFile = writeCsv(csv.toString());
+
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        ProductCsvImporter.Result result = importCsv(Uri.fromFile(csvFile));
+        long elapsedTime = SystemClock.elapsedRealtimeNanos() - startTime;
+
+        Log.i(TAG, String.format(
+                Locale.US,
+                "import: %.0f rows/s",
+                BENCHMARK_ROW_COUNT * 1e9 / elapsedTime
+        ));
+        assertNull(result.getFailureMessage());
+        assertEquals(BENCHMARK_ROW_COUNT, result.getRowsRead());
+        assertEquals(BENCHMARK_ROW_COUNT, result.getRowsImported());
+    }
+
+    /**
+     * Returns a valid row of the columns in {@link #HEADER} for a product of
+     * {@link #SUPPLIER_NAME}.
+     *
+     * @param name Name field of the product, quoted if needed.
+     * @return The row, without a line break.
+     */
+    @NonNull
+    private String getRow(@NonNull String name) {
+        return name + ",19.99,25," + SUPPLIER_NAME + ",212-555-0100,sales@garment.com";
+    }
+
+    /**
+     * Writes a CSV file into the cache directory.
+     *
+     * @param csv Contents of the file.
+     * @return The file.
+     * @throws IOException If writing fails.
+     */
+    @NonNull
+    private File writeCsv(@NonNull String csv) throws IOException {
+        File file = File.createTempFile("products", ".csv", context.getCacheDir());
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(file),
+                StandardCharsets.UTF_8
+        )) {
+            writer.write(csv);
+        }
+        return file;
+    }
+
+    /**
+     * Imports a CSV file with {@link ProductCsvImporter} and waits for the import to finish.
+     *
+     * @param uri URI of the file.
+     * @return The result of the import.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @NonNull
+    private ProductCsvImporter.Result importCsv(@NonNull Uri uri) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<ProductCsvImporter.Result> result = new AtomicReference<>();
+        ProductCsvImporter importer = new ProductCsvImporter(
+                context,
+                new ProductCsvImporter.Listener() {
+                    @Override
+                    public void onImportProgress(long rowsRead, long rowsImported, int percent) {
+                    }
+
+                    @Override
+                    public void onImportFinished(@NonNull ProductCsvImporter.Result importResult) {
+                        result.set(importResult);
+                        finished.countDown();
+                    }
+                }
+        );
+        importer.start(uri);
+        assertTrue(finished.await(IMPORT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result.get();
+    }
+}
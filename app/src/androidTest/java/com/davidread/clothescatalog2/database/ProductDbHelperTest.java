@@ -0,0 +1,370 @@
+package com.davidread.clothescatalog2.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class tests the schema created and upgraded by {@link ProductDbHelper}.
+ */
+public class ProductDbHelperTest {
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductDbHelperTest.class.getSimpleName();
+
+    /**
+     * File name of the database used by the tuning benchmark.
+     */
+    private static final String BENCHMARK_DB_NAME = "tuning_benchmark.db";
+
+    /**
+     * Number of reads timed for each profile in the tuning benchmark.
+     */
+    private static final int BENCHMARK_READ_COUNT = 200;
+
+    /**
+     * Number of rows inserted by each write transaction in the tuning benchmark.
+     */
+    private static final int BENCHMARK_ROWS_PER_WRITE = 20;
+
+    /**
+     * Helper for an in-memory database, so the app's database is never touched.
+     */
+    private ProductDbHelper productDbHelper;
+
+    /**
+     * Callback invoked before each test. It initializes {@link #productDbHelper}.
+     */
+    @Before
+    public void setUp() {
+        productDbHelper = new ProductDbHelper(
+                InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                null,
+                ProductDbTuning.BALANCED
+        );
+    }
+
+    /**
+     * Callback invoked after each test. It closes {@link #productDbHelper}.
+     */
+    @After
+    public void tearDown() {
+        productDbHelper.close();
+    }
+
+    /**
+     * Verify that a case insensitive sort on the name column uses the name index.
+     */
+    @Test
+    public void queryPlan_SortByName_UsesNameIndex() {
+        String queryPlan = getQueryPlan(productDbHelper.getReadableDatabase(),
+                "SELECT * FROM " + ProductContract.ProductEntry.TABLE_NAME
+                        + " ORDER BY " + ProductContract.ProductEntry.COLUMN_NAME
+                        + " COLLATE NOCASE");
+        assertTrue(queryPlan, queryPlan.contains(ProductDbHelper.INDEX_PRODUCTS_NAME));
+    }
+
+    /**
+     * Verify that filtering on the supplier id column uses the supplier id index.
+     */
+    @Test
+    public void queryPlan_FilterBySupplier_UsesSupplierIdIndex() {
+        String queryPlan = getQueryPlan(productDbHelper.getReadableDatabase(),
+                "SELECT * FROM " + ProductContract.ProductEntry.TABLE_NAME
+                        + " WHERE " + ProductContract.ProductEntry.COLUMN_SUPPLIER_ID + " = 1");
+        assertTrue(queryPlan, queryPlan.contains(ProductDbHelper.INDEX_PRODUCTS_SUPPLIER_ID));
+    }
+
+    /**
+     * Verify that filtering on a range of the quantity column uses the quantity index.
+     */
+    @Test
+    public void queryPlan_FilterByQuantity_UsesQuantityIndex() {
+        String queryPlan = getQueryPlan(productDbHelper.getReadableDatabase(),
+                "SELECT * FROM " + ProductContract.ProductEntry.TABLE_NAME
+                        + " WHERE " + ProductContract.ProductEntry.COLUMN_QUANTITY + " < 5");
+        assertTrue(queryPlan, queryPlan.contains(ProductDbHelper.INDEX_PRODUCTS_QUANTITY));
+    }
+
+    /**
+     * Verify that the low stock filter the product provider uses, in price order, uses the partial
+     * low stock price index. It fails if {@link ProductContract#LOW_STOCK_THRESHOLD} no longer
+     * matches the threshold the index was built with.
+     */
+    @Test
+    public void queryPlan_LowStockByPrice_UsesLowStockPriceIndex() {
+        String queryPlan = getQueryPlan(productDbHelper.getReadableDatabase(),
+                "SELECT * FROM " + ProductContract.ProductEntry.TABLE_NAME
+                        + " WHERE " + ProductContract.ProductEntry.COLUMN_QUANTITY + " <= "
+                        + ProductContract.LOW_STOCK_THRESHOLD
+                        + " ORDER BY " + ProductContract.ProductEntry.COLUMN_PRICE);
+        assertTrue(queryPlan, queryPlan.contains(ProductDbHelper.INDEX_PRODUCTS_LOW_STOCK_PRICE));
+    }
+
+    /**
+     * Verify that upgrading a version 1 database keeps its rows, creates the same indexes as a
+     * new database, and stores each distinct supplier once.
+     */
+    @Test
+    public void onUpgrade_FromVersion1_KeepsRowsAndAddsIndexes() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        try {
+            db.execSQL("CREATE TABLE products (_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "name TEXT NOT NULL, price INTEGER NOT NULL DEFAULT 0, "
+                    + "quantity INTEGER NOT NULL DEFAULT 0, supplier TEXT NOT NULL, "
+                    + "supplier_phone_number TEXT NOT NULL, supplier_email TEXT NOT NULL, "
+                    + "picture_path TEXT);");
+            db.execSQL("INSERT INTO products (name, price, quantity, supplier, "
+                    + "supplier_phone_number, supplier_email) "
+                    + "VALUES ('Red T-Shirt', 1000, 10, 'Garment District', '5555555555', "
+                    + "'a@b.com'), ('Blue T-Shirt', 1000, 10, 'Garment District', "
+                    + "'5555555556', 'c@d.com'), ('Red Hat', 500, 2, 'Fabric Row', "
+                    + "'5555555557', 'e@f.com');");
+
+            productDbHelper.onUpgrade(db, 1, ProductDbHelper.DB_VERSION);
+
+            assertEquals(3, DatabaseUtils.queryNumEntries(db,
+                    ProductContract.ProductEntry.TABLE_NAME));
+            assertEquals(getIndexCount(productDbHelper.getReadableDatabase()), getIndexCount(db));
+            assertEquals(2, DatabaseUtils.queryNumEntries(db,
+                    ProductContract.SupplierEntry.TABLE_NAME));
+            assertEquals("5555555556", DatabaseUtils.stringForQuery(db,
+                    "SELECT " + ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                            + " FROM " + ProductContract.ProductEntry.VIEW_NAME
+                            + " WHERE " + ProductContract.ProductEntry.COLUMN_NAME
+                            + " = 'Red T-Shirt'", null));
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Verify that photos are counted once per product referring to them, and that a photo's row
+     * is deleted once no product refers to it.
+     */
+    @Test
+    public void photoReferenceCounts_ProductsChange_FollowPicturePaths() {
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        ContentValues supplierValues = new ContentValues();
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_NAME, "Garment District");
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_PHONE_NUMBER, "212-555-0100");
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_EMAIL, "sales@garment.com");
+        long supplierId = db.insert(ProductContract.SupplierEntry.TABLE_NAME, null, supplierValues);
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Red T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_ID, supplierId);
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE_PATH, "/photos/a.jpg");
+        long firstId = db.insert(ProductContract.ProductEntry.TABLE_NAME, null, values);
+        long secondId = db.insert(ProductContract.ProductEntry.TABLE_NAME, null, values);
+        assertEquals(2, getReferenceCount(db, "/photos/a.jpg"));
+
+        values.clear();
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE_PATH, "/photos/b.jpg");
+        db.update(ProductContract.ProductEntry.TABLE_NAME, values,
+                ProductContract.ProductEntry._ID + " = " + firstId, null);
+        assertEquals(1, getReferenceCount(db, "/photos/a.jpg"));
+        assertEquals(1, getReferenceCount(db, "/photos/b.jpg"));
+
+        db.delete(ProductContract.ProductEntry.TABLE_NAME,
+                ProductContract.ProductEntry._ID + " = " + secondId, null);
+        assertEquals(-1, getReferenceCount(db, "/photos/a.jpg"));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, ProductContract.PhotoEntry.TABLE_NAME));
+    }
+
+    /**
+     * Verify that a photo is queued for deletion once its last reference goes away, and taken off
+     * the queue once a product refers to it again.
+     */
+    @Test
+    public void orphanedPhotos_LastReferenceChanges_QueuePath() {
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        ContentValues supplierValues = new ContentValues();
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_NAME, "Garment District");
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_PHONE_NUMBER, "212-555-0100");
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_EMAIL, "sales@garment.com");
+        long supplierId = db.insert(ProductContract.SupplierEntry.TABLE_NAME, null, supplierValues);
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Red T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_ID, supplierId);
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE_PATH, "/photos/a.jpg");
+        long id = db.insert(ProductContract.ProductEntry.TABLE_NAME, null, values);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, ProductDbHelper.TABLE_ORPHANED_PHOTOS));
+
+        values.clear();
+        values.putNull(ProductContract.ProductEntry.COLUMN_PICTURE_PATH);
+        db.update(ProductContract.ProductEntry.TABLE_NAME, values,
+                ProductContract.ProductEntry._ID + " = " + id, null);
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, ProductDbHelper.TABLE_ORPHANED_PHOTOS,
+                ProductContract.PhotoEntry.COLUMN_PATH + " = '/photos/a.jpg'"));
+
+        values.put(ProductContract.ProductEntry.COLUMN_PICTURE_PATH, "/photos/a.jpg");
+        db.update(ProductContract.ProductEntry.TABLE_NAME, values,
+                ProductContract.ProductEntry._ID + " = " + id, null);
+        assertEquals(0, DatabaseUtils.queryNumEntries(db, ProductDbHelper.TABLE_ORPHANED_PHOTOS));
+    }
+
+    /**
+     * Benchmarks the latency of reads while another thread writes continuously, under each
+     * {@link ProductDbTuning} profile. Verify that the default profile, which uses write-ahead
+     * logging, keeps the slowest reads faster than the rollback journal does.
+     */
+    @Test
+    public void tuning_Benchmark_ConcurrentReadLatency() throws InterruptedException {
+        long legacyP95Nanos = 0;
+        long balancedP95Nanos = 0;
+        for (ProductDbTuning tuning : ProductDbTuning.getProfiles()) {
+            long[] latencies = measureReadLatencies(tuning);
+            long p50Nanos = latencies[latencies.length / 2];
+            long p95Nanos = latencies[latencies.length * 95 / 100];
+            Log.i(TAG, String.format(
+                    "%s: read p50 %.2f ms, p95 %.2f ms",
+                    tuning.getName(),
+                    p50Nanos / 1e6,
+                    p95Nanos / 1e6
+            ));
+            if (tuning == ProductDbTuning.LEGACY) {
+                legacyP95Nanos = p95Nanos;
+            } else if (tuning == ProductDbTuning.BALANCED) {
+                balancedP95Nanos = p95Nanos;
+            }
+        }
+        assertTrue(balancedP95Nanos < legacyP95Nanos);
+    }
+
+    /**
+     * Times {@link #BENCHMARK_READ_COUNT} reads of a page of products while another thread keeps
+     * inserting products, in a new database opened with the given tuning profile.
+     *
+     * @param tuning Tuning profile to open the database with.
+     * @return Latency of each read in nanoseconds, sorted.
+     */
+    @NonNull
+    private long[] measureReadLatencies(@NonNull ProductDbTuning tuning)
+            throws InterruptedException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(BENCHMARK_DB_NAME);
+        ProductDbHelper benchmarkDbHelper = new ProductDbHelper(context, BENCHMARK_DB_NAME, tuning);
+        SQLiteDatabase db = benchmarkDbHelper.getWritableDatabase();
+        AtomicBoolean isWriting = new AtomicBoolean(true);
+        AtomicInteger writeCount = new AtomicInteger();
+        ContentValues supplierValues = new ContentValues();
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_NAME, "Garment District");
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_PHONE_NUMBER, "212-555-0100");
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_EMAIL, "sales@garment.com");
+        long supplierId = db.insert(ProductContract.SupplierEntry.TABLE_NAME, null, supplierValues);
+        Thread writer = new Thread(() -> {
+            ContentValues values = new ContentValues();
+            values.put(ProductContract.ProductEntry.COLUMN_NAME, "Green T-Shirt");
+            values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1999);
+            values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 25);
+            values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_ID, supplierId);
+            while (isWriting.get()) {
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < BENCHMARK_ROWS_PER_WRITE; i++) {
+                        db.insert(ProductContract.ProductEntry.TABLE_NAME, null, values);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                writeCount.incrementAndGet();
+            }
+        });
+
+        long[] latencies = new long[BENCHMARK_READ_COUNT];
+        try {
+            writer.start();
+            for (int i = 0; i < latencies.length; i++) {
+                long startTime = SystemClock.elapsedRealtimeNanos();
+                try (Cursor cursor = db.query(
+                        ProductContract.ProductEntry.TABLE_NAME,
+                        null,
+                        null,
+                        null,
+                        null,
+                        null,
+                        ProductContract.ProductEntry._ID + " DESC",
+                        "50"
+                )) {
+                    cursor.getCount();
+                }
+                latencies[i] = SystemClock.elapsedRealtimeNanos() - startTime;
+            }
+        } finally {
+            isWriting.set(false);
+            writer.join();
+            benchmarkDbHelper.close();
+            context.deleteDatabase(BENCHMARK_DB_NAME);
+        }
+        assertTrue(writeCount.get() > 0);
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Returns the query plan of a SQL statement.
+     *
+     * @param db  Database to explain the statement against.
+     * @param sql SQL statement to explain.
+     * @return Details of every step of the query plan, one per line.
+     */
+    @NonNull
+    private String getQueryPlan(@NonNull SQLiteDatabase db, @NonNull String sql) {
+        StringBuilder queryPlan = new StringBuilder();
+        try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null)) {
+            int detailColumnIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                queryPlan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        }
+        return queryPlan.toString();
+    }
+
+    /**
+     * Returns the number of products referring to a photo.
+     *
+     * @param db   Database to query.
+     * @param path Path of the photo.
+     * @return Number of products. {@code -1} if the photo has no row.
+     */
+    private long getReferenceCount(@NonNull SQLiteDatabase db, @NonNull String path) {
+        return DatabaseUtils.longForQuery(db,
+                "SELECT IFNULL((SELECT " + ProductContract.PhotoEntry.COLUMN_REFERENCE_COUNT
+                        + " FROM " + ProductContract.PhotoEntry.TABLE_NAME + " WHERE "
+                        + ProductContract.PhotoEntry.COLUMN_PATH + " = ?), -1)",
+                new String[]{path});
+    }
+
+    /**
+     * Returns the number of indexes created explicitly in a database.
+     *
+     * @param db Database to count indexes in.
+     * @return Number of indexes.
+     */
+    private long getIndexCount(@NonNull SQLiteDatabase db) {
+        return DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND sql IS NOT NULL",
+                null);
+    }
+}
@@ -0,0 +1,287 @@
+package com.davidread.clothescatalog2.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.provider.ProviderTestRule;
+
+import com.davidread.clothescatalog2.util.CsvReader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class tests the files written by {@link ProductExporter}, and that they hold the same text
+ * as the product provider when read back.
+ */
+public class ProductExporterTest {
+
+    /**
+     * Time in seconds to wait for an export or import to finish.
+     */
+    private static final long TIMEOUT_SECONDS = 30;
+
+    /**
+     * Names of the exported products. Each holds characters that must be quoted in CSV or escaped
+     * in JSON: commas, quotes, line breaks, a backslash, a tab, and other control characters.
+     */
+    private static final String[] NAMES = {
+            "Shirt, \"Deluxe\" Edition",
+            "Two\nLine\r\nShirt",
+            "Tab\tand \\ backslash \u0001\u001f control"
+    };
+
+    /**
+     * Supplier of every exported product. It holds a comma and quotes too.
+     */
+    private static final String SUPPLIER_NAME = "Garment, \"District\"";
+
+    /**
+     * Any context of this app.
+     */
+    private Context context;
+
+    /**
+     * To query an isolated product provider.
+     */
+    private ContentResolver contentResolver;
+
+    /**
+     * Files written by the test.
+     */
+    private final List<File> files = new ArrayList<>();
+
+    /**
+     * To export from an isolated product provider.
+     */
+    @Rule
+    public ProviderTestRule providerTestRule =
+            new ProviderTestRule.Builder(ProductProvider.class, ProductContract.CONTENT_AUTHORITY)
+                    .build();
+
+    /**
+     * Callback invoked before each test. It inserts a product for each of {@link #NAMES}.
+     */
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        contentResolver = providerTestRule.getResolver();
+        for (String name : NAMES) {
+            ContentValues values = new ContentValues();
+            values.put(ProductContract.ProductEntry.COLUMN_NAME, name);
+            values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1999);
+            values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 25);
+            values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, SUPPLIER_NAME);
+            values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "212-555-0100");
+            values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL, "sales@garment.com");
+            values.putNull(ProductContract.ProductEntry.COLUMN_PICTURE_PATH);
+            assertNotNull(contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values));
+        }
+    }
+
+    /**
+     * Callback invoked after each test. It deletes the files it wrote.
+     */
+    @After
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Verify that a CSV export quotes every field holding a comma, quote, or line break, so reading
+     * it back gives every name and supplier unchanged.
+     */
+    @Test
+    public void start_Csv_RoundTripsQuotedFields() throws IOException, InterruptedException {
+
+        File file = export(ProductExporter.Format.CSV);
+
+        List<List<String>> records = new ArrayList<>();
+        try (CsvReader csvReader = new CsvReader(new InputStreamReader(
+                new FileInputStream(file),
+                StandardCharsets.UTF_8
+        ))) {
+            List<String> fields = new ArrayList<>();
+            while (csvReader.readRecord(fields)) {
+                records.add(new ArrayList<>(fields));
+            }
+        }
+
+        assertEquals(NAMES.length + 1, records.size());
+        List<String> header = records.get(0);
+        int nameIndex = header.indexOf(ProductContract.ProductEntry.COLUMN_NAME);
+        int supplierIndex = header.indexOf(ProductContract.ProductEntry.COLUMN_SUPPLIER);
+        for (int i = 0; i < NAMES.length; i++) {
+            List<String> record = records.get(i + 1);
+            assertEquals(header.size(), record.size());
+            assertEquals(NAMES[i], record.get(nameIndex));
+            assertEquals(SUPPLIER_NAME, record.get(supplierIndex));
+        }
+    }
+
+    /**
+     * Verify that a JSON export escapes quotes, backslashes, line breaks, and control characters,
+     * so parsing it back gives every name and supplier unchanged.
+     */
+    @Test
+    public void start_Json_RoundTripsEscapedStrings()
+            throws IOException, InterruptedException, JSONException {
+
+        File file = export(ProductExporter.Format.JSON);
+
+        JSONArray products = new JSONArray(readFile(file));
+
+        assertEquals(NAMES.length, products.length());
+        for (int i = 0; i < NAMES.length; i++) {
+            JSONObject product = products.getJSONObject(i);
+            assertEquals(NAMES[i], product.getString(ProductContract.ProductEntry.COLUMN_NAME));
+            assertEquals(
+                    SUPPLIER_NAME,
+                    product.getString(ProductContract.ProductEntry.COLUMN_SUPPLIER)
+            );
+            assertEquals("19.99", product.get(ProductContract.ProductEntry.COLUMN_PRICE).toString());
+            assertTrue(product.isNull(ProductContract.ProductEntry.COLUMN_PICTURE_PATH));
+        }
+    }
+
+    /**
+     * Verify that {@link ProductCsvImporter} imports every row of a CSV export again, with the
+     * same names.
+     */
+    @Test
+    public void start_Csv_ReimportsEveryRow() throws IOException, InterruptedException {
+
+        File file = export(ProductExporter.Format.CSV);
+
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<ProductCsvImporter.Result> result = new AtomicReference<>();
+        ProductCsvImporter importer = new ProductCsvImporter(
+                contentResolver,
+                new ProductWriteExecutor(contentResolver),
+                new ProductCsvImporter.Listener() {
+                    @Override
+                    public void onImportProgress(long rowsRead, long rowsImported, int percent) {
+                    }
+
+                    @Override
+                    public void onImportFinished(@NonNull ProductCsvImporter.Result importResult) {
+                        result.set(importResult);
+                        finished.countDown();
+                    }
+                }
+        );
+        importer.start(Uri.fromFile(file));
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertNull(result.get().getFailureMessage());
+        assertEquals(NAMES.length, result.get().getRowsRead());
+        assertEquals(NAMES.length, result.get().getRowsImported());
+        assertTrue(result.get().getErrors().isEmpty());
+        for (String name : NAMES) {
+            try (Cursor cursor = contentResolver.query(
+                    ProductContract.ProductEntry.CONTENT_URI,
+                    new String[]{ProductContract.ProductEntry._ID},
+                    ProductContract.ProductEntry.COLUMN_NAME + "=?",
+                    new String[]{name},
+                    null
+            )) {
+                assertNotNull(cursor);
+                assertEquals(2, cursor.getCount());
+            }
+        }
+    }
+
+    /**
+     * Exports every product into a new file in the cache directory and waits for the export to
+     * finish.
+     *
+     * @param format Format to export in.
+     * @return The file.
+     * @throws IOException          If the file cannot be created.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @NonNull
+    private File export(@NonNull ProductExporter.Format format)
+            throws IOException, InterruptedException {
+        File file = File.createTempFile(
+                "products",
+                "." + format.getExtension(),
+                context.getCacheDir()
+        );
+        files.add(file);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<ProductExporter.Result> result = new AtomicReference<>();
+        ProductExporter exporter = new ProductExporter(
+                contentResolver,
+                new ProductExporter.Listener() {
+                    @Override
+                    public void onExportProgress(long rowsWritten, int percent) {
+                    }
+
+                    @Override
+                    public void onExportFinished(@NonNull ProductExporter.Result exportResult) {
+                        result.set(exportResult);
+                        finished.countDown();
+                    }
+                }
+        );
+        exporter.start(Uri.fromFile(file), format);
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(result.get().getFailureMessage());
+        assertFalse(result.get().isCancelled());
+        assertEquals(NAMES.length, result.get().getRowsWritten());
+        return file;
+    }
+
+    /**
+     * Reads a whole UTF-8 file into a string.
+     *
+     * @param file File to read.
+     * @return Contents of the file.
+     * @throws IOException If reading fails.
+     */
+    @NonNull
+    private static String readFile(@NonNull File file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (InputStreamReader reader = new InputStreamReader(
+                new FileInputStream(file),
+                StandardCharsets.UTF_8
+        )) {
+            char[] buffer = new char[4096];
+            int length;
+            while ((length = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, length);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -4,23 +4,51 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.rule.provider.ProviderTestRule;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
+
 /**
  * This class tests the correctness of {@link ProductProvider}.
  */
 public class ProductProviderTest {
 
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductProviderTest.class.getSimpleName();
+
+    /**
+     * Number of rows inserted by each path in the insertion benchmark.
+     */
+    private static final int BENCHMARK_ROW_COUNT = 2000;
+
+    /**
+     * Number of rows searched by the search benchmark.
+     */
+    private static final int SEARCH_BENCHMARK_ROW_COUNT = 100000;
+
     /**
      * To access the functions of {@link ProductProvider}.
      */
@@ -162,4 +190,711 @@ public class ProductProviderTest {
 
         assertNotEquals(-1, countRowsDeleted);
     }
-}
\ No newline at end of file
+
+    /**
+     * Verify that when valid {@link ContentValues} are passed into
+     * {@link ProductProvider#bulkInsert(Uri, ContentValues[])}, it returns the number of rows
+     * given.
+     */
+    @Test
+    public void bulkInsert_ValidValues_ReturnsCount() {
+
+        ContentValues[] values = new ContentValues[10];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValidContentValues(i);
+        }
+
+        int countRowsInserted = contentResolver.bulkInsert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                values
+        );
+
+        assertEquals(values.length, countRowsInserted);
+    }
+
+    /**
+     * Verify that when any invalid {@link ContentValues} is passed into
+     * {@link ProductProvider#bulkInsert(Uri, ContentValues[])}, it returns {@code 0} and inserts
+     * nothing.
+     */
+    @Test
+    public void bulkInsert_InvalidValues_ReturnsZero() {
+
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        ContentValues[] values = new ContentValues[3];
+        values[0] = getValidContentValues(0);
+        values[1] = getValidContentValues(1);
+        values[1].put(ProductContract.ProductEntry.COLUMN_QUANTITY, -1);
+        values[2] = getValidContentValues(2);
+
+        int countRowsInserted = contentResolver.bulkInsert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                values
+        );
+
+        assertEquals(0, countRowsInserted);
+        assertEquals(0, getRowCount());
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#applyBatch(ArrayList)} applies a batch containing an
+     * invalid operation, it throws and applies no operation of the batch.
+     */
+    @Test
+    public void applyBatch_InvalidOperation_AppliesNothing() throws RemoteException {
+
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation
+                .newInsert(ProductContract.ProductEntry.CONTENT_URI)
+                .withValues(getValidContentValues(0))
+                .build());
+        operations.add(ContentProviderOperation
+                .newUpdate(ProductContract.ProductEntry.CONTENT_URI)
+                .withValue(ProductContract.ProductEntry.COLUMN_PRICE, -1)
+                .build());
+
+        boolean isThrown = false;
+        try {
+            contentResolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+        } catch (OperationApplicationException e) {
+            isThrown = true;
+        }
+
+        assertTrue(isThrown);
+        assertEquals(0, getRowCount());
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#applyBatch(ArrayList)} applies a batch of valid
+     * inserts, it returns a content URI for every insert.
+     */
+    @Test
+    public void applyBatch_ValidOperations_ReturnsResults()
+            throws RemoteException, OperationApplicationException {
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            operations.add(ContentProviderOperation
+                    .newInsert(ProductContract.ProductEntry.CONTENT_URI)
+                    .withValues(getValidContentValues(i))
+                    .build());
+        }
+
+        ContentProviderResult[] results = contentResolver.applyBatch(
+                ProductContract.CONTENT_AUTHORITY,
+                operations
+        );
+
+        assertEquals(operations.size(), results.length);
+        for (ContentProviderResult result : results) {
+            assertNotNull(result.uri);
+        }
+    }
+
+    /**
+     * Benchmarks the rows per second of inserting through
+     * {@link ProductProvider#insert(Uri, ContentValues)} one row at a time against inserting
+     * through {@link ProductProvider#bulkInsert(Uri, ContentValues[])} in a single transaction.
+     * Verify that the bulk path inserts every row and is faster.
+     */
+    @Test
+    public void bulkInsert_Benchmark_FasterThanPerRowInsert() {
+
+        ContentValues[] values = new ContentValues[BENCHMARK_ROW_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValidContentValues(i);
+        }
+
+        // Per-row path.
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        long perRowStartTime = SystemClock.elapsedRealtimeNanos();
+        for (ContentValues value : values) {
+            contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, value);
+        }
+        long perRowElapsedTime = SystemClock.elapsedRealtimeNanos() - perRowStartTime;
+
+        // Bulk path.
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        long bulkStartTime = SystemClock.elapsedRealtimeNanos();
+        int countRowsInserted = contentResolver.bulkInsert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                values
+        );
+        long bulkElapsedTime = SystemClock.elapsedRealtimeNanos() - bulkStartTime;
+
+        double perRowRowsPerSecond = BENCHMARK_ROW_COUNT * 1e9 / perRowElapsedTime;
+        double bulkRowsPerSecond = BENCHMARK_ROW_COUNT * 1e9 / bulkElapsedTime;
+        Log.i(TAG, String.format(
+                "insert: %.0f rows/s, bulkInsert: %.0f rows/s",
+                perRowRowsPerSecond,
+                bulkRowsPerSecond
+        ));
+
+        assertEquals(BENCHMARK_ROW_COUNT, countRowsInserted);
+        assertTrue(bulkRowsPerSecond > perRowRowsPerSecond);
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#call(String, String, Bundle)} sells units of a
+     * product that has enough units in stock, it returns the decremented quantity.
+     */
+    @Test
+    public void call_SellInStock_ReturnsDecrementedQuantity() {
+
+        Uri insertUri = contentResolver.insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                getValidContentValues(0)
+        );
+        assertNotNull(insertUri);
+
+        Bundle result = sell(insertUri.getLastPathSegment(), 3);
+
+        assertNotNull(result);
+        assertEquals(22, result.getInt(ProductContract.EXTRA_QUANTITY));
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#call(String, String, Bundle)} sells more units of a
+     * product than are in stock, it returns {@code -1} and leaves the quantity unchanged.
+     */
+    @Test
+    public void call_SellOutOfStock_ReturnsError() {
+
+        Uri insertUri = contentResolver.insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                getValidContentValues(0)
+        );
+        assertNotNull(insertUri);
+
+        Bundle result = sell(insertUri.getLastPathSegment(), 26);
+        Bundle result1 = sell(insertUri.getLastPathSegment(), 25);
+
+        assertNotNull(result);
+        assertEquals(-1, result.getInt(ProductContract.EXTRA_QUANTITY));
+        assertNotNull(result1);
+        assertEquals(0, result1.getInt(ProductContract.EXTRA_QUANTITY));
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#call(String, String, Bundle)} sets a tuning profile,
+     * the database keeps working and the profile is reported as in use, and that an unknown
+     * profile is rejected.
+     */
+    @Test
+    public void call_SetTuningProfile_ReturnsProfileInUse() {
+
+        Bundle result = setTuningProfile(ProductContract.TUNING_PROFILE_DURABLE);
+        Uri insertUri = contentResolver.insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                getValidContentValues(0)
+        );
+        Bundle inUse = contentResolver.call(
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_GET_TUNING_PROFILE,
+                null,
+                null
+        );
+        Bundle unknown = setTuningProfile("unknown");
+        setTuningProfile(ProductContract.TUNING_PROFILE_BALANCED);
+
+        assertNotNull(result);
+        assertEquals(ProductContract.TUNING_PROFILE_DURABLE,
+                result.getString(ProductContract.EXTRA_TUNING_PROFILE));
+        assertNotNull(insertUri);
+        assertNotNull(inUse);
+        assertEquals(ProductContract.TUNING_PROFILE_DURABLE,
+                inUse.getString(ProductContract.EXTRA_TUNING_PROFILE));
+        assertNull(unknown);
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#call(String, String, Bundle)} switches the tuning
+     * profile over and over while {@link ProductProvider#bulkInsert(Uri, ContentValues[])} runs on
+     * another thread, the bulk insert commits every row, and that a cursor queried before the
+     * switches can still read from its database afterwards. A cursor reads its rows when first
+     * asked for its count, so it sees every inserted row.
+     */
+    @Test
+    public void call_SetTuningProfileDuringBulkInsert_InsertsEveryRow()
+            throws InterruptedException {
+
+        ContentValues[] values = new ContentValues[BENCHMARK_ROW_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValidContentValues(i);
+        }
+        contentResolver.delete(ProductContract.ProductEntry.CONTENT_URI, null, null);
+        Cursor cursor = contentResolver.query(
+                ProductContract.ProductEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        assertNotNull(cursor);
+
+        // Both profiles use write-ahead logging, so only the connection pool changes.
+        int[] countRowsInserted = new int[1];
+        Throwable[] bulkInsertError = new Throwable[1];
+        Thread bulkInsertThread = new Thread(() -> {
+            try {
+                countRowsInserted[0] = contentResolver.bulkInsert(
+                        ProductContract.ProductEntry.CONTENT_URI,
+                        values
+                );
+            } catch (Throwable e) {
+                bulkInsertError[0] = e;
+            }
+        });
+        bulkInsertThread.start();
+        int countSwitches = 0;
+        while (bulkInsertThread.isAlive()) {
+            setTuningProfile(countSwitches % 2 == 0
+                    ? ProductContract.TUNING_PROFILE_DURABLE
+                    : ProductContract.TUNING_PROFILE_BALANCED);
+            countSwitches++;
+        }
+        bulkInsertThread.join();
+        setTuningProfile(ProductContract.TUNING_PROFILE_BALANCED);
+        int cursorCount;
+        try {
+            cursorCount = cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+
+        assertNull(bulkInsertError[0]);
+        assertTrue(countSwitches > 0);
+        assertEquals(BENCHMARK_ROW_COUNT, countRowsInserted[0]);
+        assertEquals(BENCHMARK_ROW_COUNT, getRowCount());
+        assertEquals(BENCHMARK_ROW_COUNT, cursorCount);
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#query(Uri, String[], String, String[], String)}
+     * searches products, it returns products whose name starts with the searched text first, then
+     * products with a word in their name starting with it, then products matched by supplier.
+     */
+    @Test
+    public void query_Search_RanksNamePrefixFirst() {
+
+        ContentValues supplierMatch = getValidContentValues(0);
+        supplierMatch.put(ProductContract.ProductEntry.COLUMN_NAME, "Blue Shirt");
+        supplierMatch.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Redwood Apparel");
+        ContentValues wordMatch = getValidContentValues(0);
+        wordMatch.put(ProductContract.ProductEntry.COLUMN_NAME, "Dark Red Hat");
+        ContentValues prefixMatch = getValidContentValues(0);
+        prefixMatch.put(ProductContract.ProductEntry.COLUMN_NAME, "Red Shirt");
+        ContentValues noMatch = getValidContentValues(0);
+        contentResolver.bulkInsert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                new ContentValues[]{supplierMatch, wordMatch, prefixMatch, noMatch}
+        );
+
+        Cursor cursor = contentResolver.query(
+                ProductContract.ProductEntry.buildSearchUri("red", 10),
+                new String[]{ProductContract.ProductEntry.COLUMN_NAME},
+                null,
+                null,
+                null
+        );
+
+        assertNotNull(cursor);
+        assertEquals(3, cursor.getCount());
+        cursor.moveToNext();
+        assertEquals("Red Shirt", cursor.getString(0));
+        cursor.moveToNext();
+        assertEquals("Dark Red Hat", cursor.getString(0));
+        cursor.moveToNext();
+        assertEquals("Blue Shirt", cursor.getString(0));
+        cursor.close();
+    }
+
+    /**
+     * Verify that when {@link ProductProvider#query(Uri, String[], String, String[], String)}
+     * pages products sorted by price and filtered to low stock, each page continues after the
+     * price and id of the last product of the previous page, and ties in price are not skipped.
+     * A keyset id without the price of the row it belongs to fails the query, and so does a sort
+     * order that conflicts with the order of the keyset.
+     */
+    @Test
+    public void query_SortedFilteredPages_FollowKeyset() {
+
+        ContentValues firstTie = getValidContentValues(0);
+        firstTie.put(ProductContract.ProductEntry.COLUMN_PRICE, 500);
+        firstTie.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 2);
+        ContentValues secondTie = getValidContentValues(1);
+        secondTie.put(ProductContract.ProductEntry.COLUMN_PRICE, 500);
+        secondTie.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 3);
+        ContentValues inStock = getValidContentValues(2);
+        inStock.put(ProductContract.ProductEntry.COLUMN_PRICE, 100);
+        inStock.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 30);
+        ContentValues cheapest = getValidContentValues(3);
+        cheapest.put(ProductContract.ProductEntry.COLUMN_PRICE, 300);
+        cheapest.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 1);
+        contentResolver.bulkInsert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                new ContentValues[]{firstTie, secondTie, inStock, cheapest}
+        );
+        String[] projection = {
+                ProductContract.ProductEntry._ID,
+                ProductContract.ProductEntry.COLUMN_NAME,
+                ProductContract.ProductEntry.COLUMN_PRICE
+        };
+
+        Cursor firstPage = contentResolver.query(
+                ProductContract.ProductEntry.buildPageUri(
+                        ProductContract.SORT_PRICE,
+                        ProductContract.FILTER_LOW_STOCK,
+                        null,
+                        0,
+                        2
+                ),
+                projection,
+                null,
+                null,
+                null
+        );
+        assertNotNull(firstPage);
+        assertEquals(2, firstPage.getCount());
+        firstPage.moveToNext();
+        assertEquals("Green T-Shirt 3", firstPage.getString(1));
+        firstPage.moveToNext();
+        assertEquals("Green T-Shirt 0", firstPage.getString(1));
+        long lastId = firstPage.getLong(0);
+        String lastPrice = firstPage.getString(2);
+        firstPage.close();
+
+        Cursor secondPage = contentResolver.query(
+                ProductContract.ProductEntry.buildPageUri(
+                        ProductContract.SORT_PRICE,
+                        ProductContract.FILTER_LOW_STOCK,
+                        lastPrice,
+                        lastId,
+                        2
+                ),
+                projection,
+                null,
+                null,
+                null
+        );
+        assertNotNull(secondPage);
+        assertEquals(1, secondPage.getCount());
+        secondPage.moveToNext();
+        assertEquals("Green T-Shirt 1", secondPage.getString(1));
+        secondPage.close();
+
+        Cursor idWithoutKey = contentResolver.query(
+                ProductContract.ProductEntry.buildFilterUri(null).buildUpon()
+                        .appendQueryParameter(
+                                ProductContract.QUERY_PARAMETER_SORT,
+                                ProductContract.SORT_PRICE
+                        )
+                        .appendQueryParameter(
+                                ProductContract.QUERY_PARAMETER_AFTER_ID,
+                                String.valueOf(lastId)
+                        )
+                        .build(),
+                projection,
+                null,
+                null,
+                null
+        );
+        assertNull(idWithoutKey);
+
+        Cursor conflictingOrder = contentResolver.query(
+                ProductContract.ProductEntry.buildPageUri(lastId, 2),
+                projection,
+                null,
+                null,
+                ProductContract.ProductEntry.COLUMN_NAME + " DESC"
+        );
+        assertNull(conflictingOrder);
+    }
+
+    /**
+     * Benchmarks a prefix search over {@link #SEARCH_BENCHMARK_ROW_COUNT} products and logs how
+     * long it takes. Verify that it finds the matching product, and that the search selection is
+     * answered by the full-text search table rather than a scan of the products table.
+     */
+    @Test
+    public void query_SearchBenchmark_PrefixSearchIsFast() {
+
+        ContentValues[] values = new ContentValues[SEARCH_BENCHMARK_ROW_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValidContentValues(i);
+        }
+        values[values.length / 2].put(ProductContract.ProductEntry.COLUMN_NAME, "Plaid Scarf");
+        contentResolver.bulkInsert(ProductContract.ProductEntry.CONTENT_URI, values);
+
+        long startTime = SystemClock.elapsedRealtimeNanos();
+        Cursor cursor = contentResolver.query(
+                ProductContract.ProductEntry.buildSearchUri("pla", 50),
+                null,
+                null,
+                null,
+                null
+        );
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        long elapsedMillis = (SystemClock.elapsedRealtimeNanos() - startTime) / 1000000;
+        cursor.close();
+        Log.i(TAG, String.format("search of %d rows: %d ms", SEARCH_BENCHMARK_ROW_COUNT,
+                elapsedMillis));
+
+        assertEquals(1, count);
+        String queryPlan = getSearchQueryPlan("pla*");
+        assertTrue(queryPlan, queryPlan.contains(ProductDbHelper.TABLE_PRODUCTS_FTS));
+    }
+
+    /**
+     * Verify that the inventory totals returned by
+     * {@link ProductProvider#query(Uri, String[], String, String[], String)} stay in step with
+     * inserts, sales, supplier changes, and deletes.
+     */
+    @Test
+    public void query_Stats_TracksInsertUpdateDelete() {
+
+        Uri insertUri = contentResolver.insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                getValidContentValues(0)
+        );
+        Uri insertUri1 = contentResolver.insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                getValidContentValues(1)
+        );
+        assertNotNull(insertUri);
+        assertNotNull(insertUri1);
+        sell(insertUri.getLastPathSegment(), 21);
+        ContentValues supplierValues = new ContentValues();
+        supplierValues.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Fabric Row");
+        contentResolver.update(insertUri1, supplierValues, null, null);
+
+        Cursor stats = contentResolver.query(
+                ProductContract.ProductStatsEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        Cursor supplierStats = contentResolver.query(
+                ProductContract.SupplierStatsEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+
+        assertNotNull(stats);
+        assertTrue(stats.moveToFirst());
+        assertEquals(2, getInt(stats, ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT));
+        assertEquals(29, getInt(stats, ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS));
+        assertEquals(29 * 1999,
+                getInt(stats, ProductContract.ProductStatsEntry.COLUMN_TOTAL_VALUE));
+        assertEquals(1, getInt(stats, ProductContract.ProductStatsEntry.COLUMN_LOW_STOCK_COUNT));
+        stats.close();
+        assertNotNull(supplierStats);
+        assertEquals(2, supplierStats.getCount());
+        supplierStats.moveToFirst();
+        assertEquals("Fabric Row", supplierStats.getString(
+                supplierStats.getColumnIndex(ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER)
+        ));
+        assertEquals(25,
+                getInt(supplierStats, ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS));
+        supplierStats.close();
+
+        contentResolver.delete(insertUri1, null, null);
+        stats = contentResolver.query(
+                ProductContract.ProductStatsEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        supplierStats = contentResolver.query(
+                ProductContract.SupplierStatsEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+
+        assertNotNull(stats);
+        assertTrue(stats.moveToFirst());
+        assertEquals(1, getInt(stats, ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT));
+        assertEquals(4, getInt(stats, ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS));
+        stats.close();
+        assertNotNull(supplierStats);
+        assertEquals(1, supplierStats.getCount());
+        supplierStats.close();
+    }
+
+    /**
+     * Verify that products of the same supplier share a single row in the suppliers table, that
+     * updating the supplier changes what every one of its products reads, and that a supplier
+     * with products cannot be deleted.
+     */
+    @Test
+    public void insert_SameSupplier_StoresSupplierOnce() {
+
+        Uri insertUri = contentResolver.insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                getValidContentValues(0)
+        );
+        Uri insertUri1 = contentResolver.insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                getValidContentValues(1)
+        );
+        assertNotNull(insertUri);
+        assertNotNull(insertUri1);
+
+        Cursor suppliers = contentResolver.query(
+                ProductContract.SupplierEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        assertNotNull(suppliers);
+        assertEquals(1, suppliers.getCount());
+        suppliers.moveToFirst();
+        Uri supplierUri = ContentUris.withAppendedId(
+                ProductContract.SupplierEntry.CONTENT_URI,
+                suppliers.getLong(suppliers.getColumnIndexOrThrow(
+                        ProductContract.SupplierEntry._ID
+                ))
+        );
+        suppliers.close();
+
+        ContentValues supplierValues = new ContentValues();
+        supplierValues.put(ProductContract.SupplierEntry.COLUMN_PHONE_NUMBER, "212-555-0199");
+        int countRowsUpdated = contentResolver.update(supplierUri, supplierValues, null, null);
+        int countRowsDeleted = contentResolver.delete(supplierUri, null, null);
+        Cursor product = contentResolver.query(
+                insertUri1,
+                new String[]{ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER},
+                null,
+                null,
+                null
+        );
+
+        assertEquals(1, countRowsUpdated);
+        assertEquals(-1, countRowsDeleted);
+        assertNotNull(product);
+        assertTrue(product.moveToFirst());
+        assertEquals("212-555-0199", product.getString(0));
+        product.close();
+    }
+
+    /**
+     * Returns the query plan of the selection the product provider searches with, against a new
+     * in-memory database.
+     *
+     * @param matchExpression Full-text search expression to bind to the selection.
+     * @return Details of every step of the query plan, one per line.
+     */
+    @NonNull
+    private String getSearchQueryPlan(@NonNull String matchExpression) {
+        ProductDbHelper productDbHelper = new ProductDbHelper(
+                InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                null,
+                ProductDbTuning.BALANCED
+        );
+        StringBuilder queryPlan = new StringBuilder();
+        try (Cursor cursor = productDbHelper.getReadableDatabase().rawQuery(
+                "EXPLAIN QUERY PLAN SELECT * FROM " + ProductContract.ProductEntry.VIEW_NAME
+                        + " WHERE " + ProductProvider.SELECTION_SEARCH_MATCH,
+                new String[]{matchExpression}
+        )) {
+            int detailColumnIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                queryPlan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+        } finally {
+            productDbHelper.close();
+        }
+        return queryPlan.toString();
+    }
+
+    /**
+     * Returns a {@link ContentValues} describing a complete, valid product.
+     *
+     * @param seed Used to vary the name of the product.
+     * @return A valid row of product data.
+     */
+    @NonNull
+    private ContentValues getValidContentValues(int seed) {
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Green T-Shirt " + seed);
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1999);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, 25);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "212-555-0100");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL, "sales@garment.com");
+        values.putNull(ProductContract.ProductEntry.COLUMN_PICTURE_PATH);
+        return values;
+    }
+
+    /**
+     * Sells units of a product through {@link ProductContract#METHOD_SELL}.
+     *
+     * @param id    Id of the product to sell.
+     * @param count Number of units to sell.
+     * @return Result of the call.
+     */
+    private Bundle sell(String id, int count) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.EXTRA_COUNT, count);
+        return contentResolver.call(
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_SELL,
+                id,
+                extras
+        );
+    }
+
+    /**
+     * Sets the tuning profile through {@link ProductContract#METHOD_SET_TUNING_PROFILE}.
+     *
+     * @param profileName Name of the tuning profile.
+     * @return Result of the call.
+     */
+    private Bundle setTuningProfile(String profileName) {
+        return contentResolver.call(
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_SET_TUNING_PROFILE,
+                profileName,
+                null
+        );
+    }
+
+    /**
+     * Returns the integer value of a column in the current row of a cursor.
+     *
+     * @param cursor     Cursor positioned on a row.
+     * @param columnName Name of the column.
+     * @return Value of the column.
+     */
+    private int getInt(Cursor cursor, String columnName) {
+        return cursor.getInt(cursor.getColumnIndexOrThrow(columnName));
+    }
+
+    /**
+     * Returns the number of rows currently stored in the product provider.
+     *
+     * @return Number of rows.
+     */
+    private int getRowCount() {
+        Cursor cursor = contentResolver.query(
+                ProductContract.ProductEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        assertNotNull(cursor);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+}
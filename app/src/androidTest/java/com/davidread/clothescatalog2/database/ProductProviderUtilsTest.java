@@ -0,0 +1,158 @@
+package com.davidread.clothescatalog2.database;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This class tests the price parsing and formatting of {@link ProductProviderUtils}.
+ */
+public class ProductProviderUtilsTest {
+
+    /**
+     * Number of random texts parsed by the parsing property test.
+     */
+    private static final int PROPERTY_TEST_CASE_COUNT = 100000;
+
+    /**
+     * Characters random texts are made of in the parsing property test. Digits are repeated so
+     * that most texts are close to valid.
+     */
+    private static final String PROPERTY_TEST_ALPHABET = "01234567890123456789..$-+e, ";
+
+    /**
+     * Amounts in cents at the edges of each digit group and of the range of a long.
+     */
+    private static final long[] EDGE_CENTS = {
+            0, 1, 9, 10, 99, 100, 101, 1999, 99999, 100000, 123456789, 999999999,
+            100000000000L, Long.MAX_VALUE
+    };
+
+    /**
+     * Verify that {@link ProductProviderUtils#writeCurrencyPrice(long, char[])} writes the same
+     * text as the US currency {@link NumberFormat} for edge and random amounts.
+     */
+    @Test
+    public void writeCurrencyPrice_MatchesNumberFormat() {
+        NumberFormat numberFormat = NumberFormat.getCurrencyInstance(Locale.US);
+        char[] buffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+        Random random = new Random(0);
+        for (int i = 0; i < EDGE_CENTS.length + 1000; i++) {
+            long cents = i < EDGE_CENTS.length
+                    ? EDGE_CENTS[i]
+                    : random.nextLong() & Long.MAX_VALUE;
+            int length = ProductProviderUtils.writeCurrencyPrice(cents, buffer);
+            assertEquals(
+                    numberFormat.format(BigDecimal.valueOf(cents, 2)),
+                    new String(buffer, 0, length)
+            );
+        }
+    }
+
+    /**
+     * Verify that {@link ProductProviderUtils#writeDecimalPrice(long, char[])} writes the exact
+     * decimal value of positive and negative amounts, including the most negative long.
+     */
+    @Test
+    public void writeDecimalPrice_MatchesBigDecimal() {
+        char[] buffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+        for (long cents : EDGE_CENTS) {
+            assertEquals(BigDecimal.valueOf(cents, 2).toPlainString(), writeDecimal(cents, buffer));
+            assertEquals(BigDecimal.valueOf(-cents, 2).toPlainString(), writeDecimal(-cents, buffer));
+        }
+        assertEquals(
+                BigDecimal.valueOf(Long.MIN_VALUE, 2).toPlainString(),
+                writeDecimal(Long.MIN_VALUE, buffer)
+        );
+    }
+
+    /**
+     * Verify that {@link ProductProviderUtils#parseCents(CharSequence)} agrees with
+     * {@link BigDecimal} on random texts, both on which texts are valid prices and on their value
+     * in cents, including texts too large for a long.
+     */
+    @Test
+    public void parseCents_RandomTexts_MatchesBigDecimal() {
+        Random random = new Random(0);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < PROPERTY_TEST_CASE_COUNT; i++) {
+            text.setLength(0);
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                text.append(PROPERTY_TEST_ALPHABET.charAt(
+                        random.nextInt(PROPERTY_TEST_ALPHABET.length())
+                ));
+            }
+            assertEquals(
+                    text.toString(),
+                    parseCentsWithBigDecimal(text.toString()),
+                    ProductProviderUtils.parseCents(text)
+            );
+        }
+    }
+
+    /**
+     * Verify that {@link ProductProviderUtils#parseCents(CharSequence)} parses back every amount
+     * written by {@link ProductProviderUtils#writeDecimalPrice(long, char[])}, including values
+     * such as {@code 19.99} that a double cannot hold exactly.
+     */
+    @Test
+    public void parseCents_WrittenPrices_RoundTrip() {
+        char[] buffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+        Random random = new Random(0);
+        assertEquals(1999, ProductProviderUtils.parseCents("19.99"));
+        assertEquals(-1, ProductProviderUtils.parseCents("92233720368547758.08"));
+        for (int i = 0; i < EDGE_CENTS.length + PROPERTY_TEST_CASE_COUNT; i++) {
+            long cents = i < EDGE_CENTS.length
+                    ? EDGE_CENTS[i]
+                    : random.nextLong() & Long.MAX_VALUE;
+            assertEquals(cents, ProductProviderUtils.parseCents(writeDecimal(cents, buffer)));
+        }
+    }
+
+    /**
+     * Parses a price into cents the slow but obviously correct way, as the reference for
+     * {@link ProductProviderUtils#parseCents(CharSequence)}.
+     *
+     * @param text Text to parse.
+     * @return The price in cents. {@code -1} if the text is not a valid price or does not fit in a
+     * long.
+     */
+    private long parseCentsWithBigDecimal(@NonNull String text) {
+        String number = text.startsWith("$") ? text.substring(1) : text;
+
+        // BigDecimal also accepts signs and exponents, which are not valid prices.
+        if (!number.matches("[0-9]*[.]?[0-9]*")) {
+            return -1;
+        }
+        try {
+            BigDecimal dollars = new BigDecimal(number);
+            if (dollars.scale() > 2) {
+                return -1;
+            }
+            return dollars.movePointRight(2).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns an amount of cents written by
+     * {@link ProductProviderUtils#writeDecimalPrice(long, char[])}.
+     *
+     * @param cents  Amount in cents.
+     * @param buffer Buffer to write to.
+     * @return The written text.
+     */
+    @NonNull
+    private String writeDecimal(long cents, @NonNull char[] buffer) {
+        return new String(buffer, 0, ProductProviderUtils.writeDecimalPrice(cents, buffer));
+    }
+}
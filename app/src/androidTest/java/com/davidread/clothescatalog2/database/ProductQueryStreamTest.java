@@ -0,0 +1,224 @@
+package com.davidread.clothescatalog2.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.provider.ProviderTestRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class tests how {@link ProductQueryStream} coalesces changes and cancels queries.
+ */
+public class ProductQueryStreamTest {
+
+    /**
+     * Number of change notifications sent while a query is in flight.
+     */
+    private static final int CHANGE_COUNT = 20;
+
+    /**
+     * Time in seconds to wait for a query to start or a result to be delivered.
+     */
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /**
+     * Time in milliseconds to wait for a result that must not be delivered.
+     */
+    private static final long QUIET_MILLIS = 500;
+
+    /**
+     * To run the stream on the main thread.
+     */
+    private Instrumentation instrumentation;
+
+    /**
+     * Number of queries read so far.
+     */
+    private final AtomicInteger readCount = new AtomicInteger();
+
+    /**
+     * Released to let the first query finish reading.
+     */
+    private final CountDownLatch releaseFirstRead = new CountDownLatch(1);
+
+    /**
+     * Counted down once the first query starts reading.
+     */
+    private final CountDownLatch firstReadStarted = new CountDownLatch(1);
+
+    /**
+     * Results delivered to the observer, which are the number of the query they came from.
+     */
+    private final List<Integer> results = new CopyOnWriteArrayList<>();
+
+    /**
+     * Stream under test. The first query it reads blocks until {@link #releaseFirstRead} is
+     * released.
+     */
+    private ProductQueryStream<Integer> stream;
+
+    /**
+     * To query an isolated product provider.
+     */
+    @Rule
+    public ProviderTestRule providerTestRule =
+            new ProviderTestRule.Builder(ProductProvider.class, ProductContract.CONTENT_AUTHORITY)
+                    .build();
+
+    /**
+     * Callback invoked before each test. It creates {@link #stream} on the main thread.
+     */
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        ProductQueryStream.Reader<Integer> reader = (cursor, queryStartNanos) -> {
+            int queryNumber = readCount.incrementAndGet();
+            if (queryNumber == 1) {
+                firstReadStarted.countDown();
+                try {
+                    releaseFirstRead.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return queryNumber;
+        };
+        instrumentation.runOnMainSync(() -> stream = new ProductQueryStream<>(
+                providerTestRule.getResolver(),
+                ProductContract.ProductStatsEntry.CONTENT_URI,
+                null,
+                ProductContract.ProductEntry.CONTENT_URI,
+                reader,
+                results::add
+        ));
+    }
+
+    /**
+     * Callback invoked after each test. It closes {@link #stream}.
+     */
+    @After
+    public void tearDown() {
+        releaseFirstRead.countDown();
+        instrumentation.runOnMainSync(() -> stream.close());
+    }
+
+    /**
+     * Verify that changes notified while a query is in flight do not cancel it, and are coalesced
+     * into a single query run after its result is delivered.
+     */
+    @Test
+    public void onContentChanged_DuringQuery_DeliversItAndRunsOnceMore() throws Exception {
+
+        instrumentation.runOnMainSync(() -> stream.start());
+        assertTrue(firstReadStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < CHANGE_COUNT; i++) {
+            instrumentation.runOnMainSync(() -> stream.onContentChanged());
+        }
+        releaseFirstRead.countDown();
+
+        assertTrue(awaitResultCount(2));
+        Thread.sleep(QUIET_MILLIS);
+        instrumentation.waitForIdleSync();
+
+        assertEquals(Arrays.asList(1, 2), results);
+        assertEquals(2, readCount.get());
+    }
+
+    /**
+     * Verify that stopping the stream cancels the query in flight, so its result is never
+     * delivered, and that starting it again runs the query again.
+     */
+    @Test
+    public void stop_DuringQuery_DropsItsResult() throws Exception {
+
+        instrumentation.runOnMainSync(() -> stream.start());
+        assertTrue(firstReadStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        instrumentation.runOnMainSync(() -> stream.stop());
+        releaseFirstRead.countDown();
+        Thread.sleep(QUIET_MILLIS);
+        instrumentation.waitForIdleSync();
+        assertFalse(results.contains(1));
+
+        instrumentation.runOnMainSync(() -> stream.start());
+
+        assertTrue(awaitResultCount(1));
+        assertEquals(Arrays.asList(2), results);
+    }
+
+    /**
+     * Verify that the product provider passes the signal of a query on to the database, so a
+     * cancelled query stops with an {@link OperationCanceledException} instead of running to
+     * completion. The provider is called directly, since a content resolver already throws for a
+     * signal cancelled before it is called.
+     */
+    @Test
+    public void query_CancelledSignal_ThrowsOperationCanceledException() {
+
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+
+        Uri[] uris = {
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductContract.ProductEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT, "10")
+                        .build(),
+                ProductContract.ProductEntry.SEARCH_URI.buildUpon()
+                        .appendQueryParameter(ProductContract.QUERY_PARAMETER_QUERY, "shirt")
+                        .build()
+        };
+        try (ContentProviderClient client = providerTestRule.getResolver()
+                .acquireContentProviderClient(ProductContract.CONTENT_AUTHORITY)) {
+            ContentProvider provider = client.getLocalContentProvider();
+            for (Uri uri : uris) {
+                boolean isCancelled = false;
+                try (Cursor cursor = provider.query(uri, null, null, null, null, signal)) {
+                    if (cursor != null) {
+                        cursor.getCount();
+                    }
+                } catch (OperationCanceledException e) {
+                    isCancelled = true;
+                }
+                assertTrue(uri.toString(), isCancelled);
+            }
+        }
+    }
+
+    /**
+     * Waits until the observer received at least some number of results.
+     *
+     * @param count Number of results to wait for.
+     * @return True if they were received before {@link #TIMEOUT_SECONDS}.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private boolean awaitResultCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (results.size() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
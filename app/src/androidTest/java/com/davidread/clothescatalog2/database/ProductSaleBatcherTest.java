@@ -0,0 +1,234 @@
+package com.davidread.clothescatalog2.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.provider.ProviderTestRule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class tests how {@link ProductSaleBatcher} counts sales until they are written and
+ * reconciles them with the result of the write.
+ */
+public class ProductSaleBatcherTest {
+
+    /**
+     * Quantity of the product inserted before each test.
+     */
+    private static final int STORED_QUANTITY = 10;
+
+    /**
+     * Quiet period of {@link #saleBatcher} in milliseconds, long enough that sales are only
+     * written when a test flushes them.
+     */
+    private static final long QUIET_PERIOD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * Time in seconds to wait for a write to finish.
+     */
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /**
+     * To run the batcher on the main thread.
+     */
+    private Instrumentation instrumentation;
+
+    /**
+     * Ids of the products whose sales failed.
+     */
+    private final List<Long> failedIds = new CopyOnWriteArrayList<>();
+
+    /**
+     * Counted down when the quantity of a product changes. Set right before a flush, so only the
+     * change reported by the write counts it down.
+     */
+    private volatile CountDownLatch quantityChanged = new CountDownLatch(0);
+
+    /**
+     * Batcher under test.
+     */
+    private ProductSaleBatcher saleBatcher;
+
+    /**
+     * Id of the product inserted before each test.
+     */
+    private long id;
+
+    /**
+     * To sell products in an isolated product provider.
+     */
+    @Rule
+    public ProviderTestRule providerTestRule =
+            new ProviderTestRule.Builder(ProductProvider.class, ProductContract.CONTENT_AUTHORITY)
+                    .build();
+
+    /**
+     * Callback invoked before each test. It inserts a product and creates {@link #saleBatcher} on
+     * the main thread.
+     */
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_NAME, "Green T-Shirt");
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, 1999);
+        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, STORED_QUANTITY);
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER, "Garment District");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "212-555-0100");
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL, "sales@garment.com");
+        values.putNull(ProductContract.ProductEntry.COLUMN_PICTURE_PATH);
+        Uri insertUri = providerTestRule.getResolver().insert(
+                ProductContract.ProductEntry.CONTENT_URI,
+                values
+        );
+        assertNotNull(insertUri);
+        id = ContentUris.parseId(insertUri);
+
+        ProductSaleBatcher.Listener listener = new ProductSaleBatcher.Listener() {
+            @Override
+            public void onQuantityChanged(long id) {
+                quantityChanged.countDown();
+            }
+
+            @Override
+            public void onSaleFailed(long id) {
+                failedIds.add(id);
+            }
+        };
+        instrumentation.runOnMainSync(() -> saleBatcher = new ProductSaleBatcher(
+                new ProductWriteExecutor(providerTestRule.getResolver()),
+                listener,
+                QUIET_PERIOD_MILLIS
+        ));
+    }
+
+    /**
+     * Callback invoked after each test. It closes {@link #saleBatcher}.
+     */
+    @After
+    public void tearDown() {
+        instrumentation.runOnMainSync(() -> saleBatcher.close());
+    }
+
+    /**
+     * Verify that units sold but not written yet, and units being written, are both subtracted
+     * from the stored quantity, and that units still pending are subtracted from the quantity
+     * confirmed by the write.
+     */
+    @Test
+    public void getQuantity_PendingAndInFlightSales_SubtractsBoth() throws Exception {
+
+        long readStartNanos = SystemClock.elapsedRealtimeNanos();
+        int[] quantities = new int[2];
+        instrumentation.runOnMainSync(() -> {
+            sell(2, readStartNanos);
+            quantityChanged = new CountDownLatch(1);
+            saleBatcher.flush();
+            sell(1, readStartNanos);
+            quantities[0] = saleBatcher.getQuantity(id, STORED_QUANTITY, readStartNanos);
+        });
+        assertTrue(quantityChanged.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        instrumentation.runOnMainSync(() -> quantities[1] =
+                saleBatcher.getQuantity(id, STORED_QUANTITY, readStartNanos));
+
+        assertEquals(STORED_QUANTITY - 3, quantities[0]);
+        assertEquals(STORED_QUANTITY - 3, quantities[1]);
+        assertTrue(failedIds.isEmpty());
+    }
+
+    /**
+     * Verify that when a write fails, the listener is told and the units it held are no longer
+     * subtracted, so the stored quantity is shown again.
+     */
+    @Test
+    public void flush_FailedSale_DropsCountsAndReportsFailure() throws Exception {
+
+        // Sell more units than are stored, as a stale quantity shown to the user would allow.
+        long readStartNanos = SystemClock.elapsedRealtimeNanos();
+        int staleQuantity = STORED_QUANTITY + 5;
+        instrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < staleQuantity; i++) {
+                saleBatcher.sell(id, staleQuantity - i);
+            }
+            quantityChanged = new CountDownLatch(1);
+            saleBatcher.flush();
+        });
+        assertTrue(quantityChanged.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        int[] quantity = new int[1];
+        instrumentation.runOnMainSync(() -> quantity[0] =
+                saleBatcher.getQuantity(id, STORED_QUANTITY, readStartNanos));
+
+        assertEquals(1, failedIds.size());
+        assertEquals(id, (long) failedIds.get(0));
+        assertEquals(STORED_QUANTITY, quantity[0]);
+    }
+
+    /**
+     * Verify that the quantity confirmed by a write is shown instead of quantities read before the
+     * write finished, and that it is dropped once data read after the write is reloaded.
+     */
+    @Test
+    public void onDataReloaded_AfterWrite_DropsConfirmation() throws Exception {
+
+        long beforeWriteNanos = SystemClock.elapsedRealtimeNanos();
+        instrumentation.runOnMainSync(() -> {
+            sell(4, beforeWriteNanos);
+            quantityChanged = new CountDownLatch(1);
+            saleBatcher.flush();
+        });
+        assertTrue(quantityChanged.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        long afterWriteNanos = SystemClock.elapsedRealtimeNanos();
+
+        int[] quantities = new int[4];
+        instrumentation.runOnMainSync(() -> {
+            // Rows read before the write still hold the stale quantity, rows read after it hold
+            // whatever the product provider returned.
+            quantities[0] = saleBatcher.getQuantity(id, STORED_QUANTITY, beforeWriteNanos);
+            quantities[1] = saleBatcher.getQuantity(id, 3, afterWriteNanos);
+
+            // A reload that started before the write does not reflect it.
+            saleBatcher.onDataReloaded(beforeWriteNanos);
+            quantities[2] = saleBatcher.getQuantity(id, STORED_QUANTITY, beforeWriteNanos);
+
+            // A reload that started after the write does.
+            saleBatcher.onDataReloaded(afterWriteNanos);
+            quantities[3] = saleBatcher.getQuantity(id, STORED_QUANTITY, beforeWriteNanos);
+        });
+
+        assertEquals(STORED_QUANTITY - 4, quantities[0]);
+        assertEquals(3, quantities[1]);
+        assertEquals(STORED_QUANTITY - 4, quantities[2]);
+        assertEquals(STORED_QUANTITY, quantities[3]);
+    }
+
+    /**
+     * Sells units of the inserted product one at a time, as repeated taps on its Sale button
+     * would. Must be called on the main thread.
+     *
+     * @param count          Number of units to sell.
+     * @param readStartNanos Time the stored quantity was read.
+     */
+    private void sell(int count, long readStartNanos) {
+        for (int i = 0; i < count; i++) {
+            saleBatcher.sell(id, saleBatcher.getQuantity(id, STORED_QUANTITY, readStartNanos));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.davidread.clothescatalog2.database;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.database.MatrixCursor;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+
+/**
+ * This class tests how {@link ProductSnapshot} tells whether a product changed.
+ */
+public class ProductSnapshotTest {
+
+    /**
+     * Verify that {@link ProductSnapshot#isSameContent(int, ProductSnapshot, int)} tells apart a
+     * product whose price went up by a cent while its quantity went down by 31, a change that
+     * leaves a hash of the columns as it was.
+     */
+    @Test
+    public void isSameContent_PriceAndQuantityChangeWithEqualHash_ReturnsFalse() {
+
+        ProductSnapshot oldSnapshot = readSingleRow(1, "Blue T-Shirt", 1000, 40, null);
+        ProductSnapshot newSnapshot = readSingleRow(1, "Blue T-Shirt", 1001, 9, null);
+        ProductSnapshot sameSnapshot = readSingleRow(1, "Blue T-Shirt", 1000, 40, null);
+
+        assertFalse(oldSnapshot.isSameContent(0, newSnapshot, 0));
+        assertTrue(oldSnapshot.isSameContent(0, sameSnapshot, 0));
+    }
+
+    /**
+     * Reads a snapshot holding a single product.
+     *
+     * @param id          Id of the product.
+     * @param name        Name of the product.
+     * @param price       Price of the product in cents.
+     * @param quantity    Quantity of the product.
+     * @param picturePath Picture path of the product. {@code null} if it has no photo.
+     * @return The snapshot.
+     */
+    @NonNull
+    private ProductSnapshot readSingleRow(
+            long id,
+            @NonNull String name,
+            long price,
+            int quantity,
+            @Nullable String picturePath
+    ) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                ProductContract.ProductEntry._ID,
+                ProductContract.ProductEntry.COLUMN_NAME,
+                ProductContract.ProductEntry.COLUMN_PRICE,
+                ProductContract.ProductEntry.COLUMN_QUANTITY,
+                ProductContract.ProductEntry.COLUMN_PICTURE_PATH
+        });
+        cursor.addRow(new Object[]{id, name, price, quantity, picturePath});
+        try {
+            return ProductSnapshot.read(cursor, SystemClock.elapsedRealtimeNanos());
+        } finally {
+            cursor.close();
+        }
+    }
+}
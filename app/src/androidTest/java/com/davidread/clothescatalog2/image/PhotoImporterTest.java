@@ -0,0 +1,151 @@
+package com.davidread.clothescatalog2.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class tests the photos written by {@link PhotoImporter}.
+ */
+public class PhotoImporterTest {
+
+    /**
+     * Size in pixels of the sides of the imported photo. The long side is above the size photos
+     * are copied as they are, so the photo is encoded again.
+     */
+    private static final int PHOTO_WIDTH = 3000;
+    private static final int PHOTO_HEIGHT = 1000;
+
+    /**
+     * Time in seconds to wait for an import to finish.
+     */
+    private static final long IMPORT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Any context of this app.
+     */
+    private Context context;
+
+    /**
+     * Photo to import. {@code null} until it is written.
+     */
+    private File sourceFile;
+
+    /**
+     * Imported photo. {@code null} until the import finishes.
+     */
+    private File importedFile;
+
+    /**
+     * Callback invoked before each test. It initializes {@link #context}.
+     */
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    /**
+     * Callback invoked after each test. It deletes the photos it wrote.
+     */
+    @After
+    public void tearDown() {
+        if (sourceFile != null) {
+            sourceFile.delete();
+        }
+        if (importedFile != null) {
+            importedFile.delete();
+        }
+    }
+
+    /**
+     * Verify that when {@link PhotoImporter} encodes again a photo whose EXIF orientation tag
+     * rotates it by 90 degrees, the imported photo is rotated upright, so its sides are swapped.
+     */
+    @Test
+    public void start_RotatedOversizedPhoto_StoresPhotoUpright() throws Exception {
+
+        sourceFile = writePhoto(ExifInterface.ORIENTATION_ROTATE_90);
+
+        importedFile = importPhoto(Uri.fromFile(sourceFile));
+
+        assertNotNull(importedFile);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(importedFile.getAbsolutePath(), options);
+        assertTrue(options.outHeight > options.outWidth);
+        assertEquals(PHOTO_WIDTH / 2, options.outHeight);
+        assertEquals(PHOTO_HEIGHT / 2, options.outWidth);
+    }
+
+    /**
+     * Writes a landscape JPEG with the given EXIF orientation tag into the cache directory.
+     *
+     * @param orientation One of the {@code ORIENTATION_} values of {@link ExifInterface}.
+     * @return The photo.
+     * @throws IOException If writing fails.
+     */
+    @NonNull
+    private File writePhoto(int orientation) throws IOException {
+        File file = File.createTempFile("rotated", ".jpg", context.getCacheDir());
+        Bitmap bitmap = Bitmap.createBitmap(PHOTO_WIDTH, PHOTO_HEIGHT, Bitmap.Config.RGB_565);
+        bitmap.eraseColor(Color.GRAY);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, outputStream);
+        } finally {
+            bitmap.recycle();
+        }
+        ExifInterface exifInterface = new ExifInterface(file.getAbsolutePath());
+        exifInterface.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+        exifInterface.saveAttributes();
+        return file;
+    }
+
+    /**
+     * Imports a photo with {@link PhotoImporter} and waits for the import to finish.
+     *
+     * @param uri URI of the photo.
+     * @return The imported photo. {@code null} if the import failed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @Nullable
+    private File importPhoto(@NonNull Uri uri) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<File> result = new AtomicReference<>();
+        PhotoImporter photoImporter = new PhotoImporter(context, new PhotoImporter.Listener() {
+            @Override
+            public void onPhotoImportProgress(int percent) {
+            }
+
+            @Override
+            public void onPhotoImportFinished(@Nullable File file) {
+                result.set(file);
+                finished.countDown();
+            }
+        });
+        photoImporter.start(uri);
+        assertTrue(finished.await(IMPORT_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result.get();
+    }
+}
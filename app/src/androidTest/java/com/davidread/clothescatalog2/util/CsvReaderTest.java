@@ -0,0 +1,75 @@
+package com.davidread.clothescatalog2.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class tests how {@link CsvReader} splits its input into records and fields.
+ */
+public class CsvReaderTest {
+
+    /**
+     * Verify that when {@link CsvReader#readRecord(List)} reads quoted fields, commas, doubled
+     * quotes, and line breaks within them are kept as part of the field, and that the line number
+     * of the next record counts the quoted line break.
+     */
+    @Test
+    public void readRecord_QuotedFields_KeepsCommasQuotesAndLineBreaks() throws IOException {
+
+        CsvReader csvReader = new CsvReader(new StringReader(
+                "plain,\"a, b\",\"say \"\"hi\"\"\",\"first\nsecond\"\nnext\n"
+        ));
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(csvReader.readRecord(fields));
+        assertEquals(Arrays.asList("plain", "a, b", "say \"hi\"", "first\nsecond"), fields);
+        assertEquals(1, csvReader.getRecordLineNumber());
+        assertTrue(csvReader.readRecord(fields));
+        assertEquals(Arrays.asList("next"), fields);
+        assertEquals(3, csvReader.getRecordLineNumber());
+        assertFalse(csvReader.readRecord(fields));
+    }
+
+    /**
+     * Verify that when the carriage return and line feed ending a record are read into the buffer
+     * separately, {@link CsvReader#readRecord(List)} ends the record once rather than reading an
+     * extra blank record.
+     */
+    @Test
+    public void readRecord_CrLfSplitAcrossBuffers_EndsRecordOnce() throws IOException {
+
+        // A buffer of 3 characters ends right after the first carriage return.
+        CsvReader csvReader = new CsvReader(new StringReader("ab\r\ncd\r\n"), 3);
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(csvReader.readRecord(fields));
+        assertEquals(Arrays.asList("ab"), fields);
+        assertTrue(csvReader.readRecord(fields));
+        assertEquals(Arrays.asList("cd"), fields);
+        assertEquals(2, csvReader.getRecordLineNumber());
+        assertFalse(csvReader.readRecord(fields));
+    }
+
+    /**
+     * Verify that when the input starts with a byte order mark,
+     * {@link CsvReader#readRecord(List)} leaves it out of the first field.
+     */
+    @Test
+    public void readRecord_ByteOrderMark_SkipsIt() throws IOException {
+
+        CsvReader csvReader = new CsvReader(new StringReader("\uFEFFname,price\n"));
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(csvReader.readRecord(fields));
+        assertEquals(Arrays.asList("name", "price"), fields);
+    }
+}
@@ -1,10 +1,10 @@
 package com.davidread.clothescatalog2.adapter;
 
-import android.database.Cursor;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -12,17 +12,32 @@ import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.davidread.clothescatalog2.R;
-import com.davidread.clothescatalog2.database.ProductContract;
 import com.davidread.clothescatalog2.database.ProductProviderUtils;
+import com.davidread.clothescatalog2.database.ProductSaleBatcher;
+import com.davidread.clothescatalog2.database.ProductSnapshot;
+import com.davidread.clothescatalog2.image.ImageLoader;
 
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
- * Adapts a {@link Cursor} of product provider data for a {@link RecyclerView}.
+ * Adapts a {@link ProductSnapshot} or a {@link ProductPagedList} of product provider data for a
+ * {@link RecyclerView}. Both are read into arrays on a background thread, so binding a list item
+ * only reads arrays.
  */
 public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdapter.ProductViewHolder> {
 
+    /**
+     * Loads thumbnails of product photos into list items.
+     */
+    private final ImageLoader imageLoader;
+
+    /**
+     * Accounts for sales that have not been reloaded from the product provider yet in the
+     * quantity shown in list items.
+     */
+    private final ProductSaleBatcher saleBatcher;
+
     /**
      * Listener that specifies what to do when a list item is clicked.
      */
@@ -34,30 +49,42 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
     private final BiConsumer<Long, Integer> onSaleButtonClickListener;
 
     /**
-     * {@link Cursor} to be adapted.
+     * {@link ProductSnapshot} to be adapted. Is ignored while {@link #pagedList} is set.
      */
-    private Cursor cursor;
+    private ProductSnapshot snapshot;
 
     /**
-     * Id column index for retrieving ids from {@link #cursor}.
+     * {@link ProductPagedList} to be adapted.
      */
-    private int idColumnIndex;
+    private ProductPagedList pagedList;
+
+    /**
+     * Snapshot and row of the item {@link #moveToItem(int)} last moved to.
+     */
+    private ProductSnapshot itemSnapshot;
+    private int itemRow;
 
     /**
      * Constructs a new adapter with listeners for handling clicks.
      *
+     * @param imageLoader               Loads thumbnails of product photos into list items.
+     * @param saleBatcher               Accounts for sales that have not been reloaded from the
+     *                                  product provider yet in the quantity shown in list items.
      * @param onItemClickListener       Listener that specifies what to do when a list item is
      *                                  clicked.
      * @param onSaleButtonClickListener Listener that specifies what to do when the sale button in a
      *                                  list item is clicked.
      */
     public ProductCursorAdapter(
+            @NonNull ImageLoader imageLoader,
+            @NonNull ProductSaleBatcher saleBatcher,
             @NonNull Consumer<Long> onItemClickListener,
             @NonNull BiConsumer<Long, Integer> onSaleButtonClickListener
     ) {
+        this.imageLoader = imageLoader;
+        this.saleBatcher = saleBatcher;
         this.onItemClickListener = onItemClickListener;
         this.onSaleButtonClickListener = onSaleButtonClickListener;
-        setHasStableIds(true);
     }
 
     /**
@@ -86,16 +113,73 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
      */
     @Override
     public void onBindViewHolder(@NonNull ProductCursorAdapter.ProductViewHolder holder, int position) {
-        cursor.moveToPosition(position);
-        int nameColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_NAME);
-        int quantityColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_QUANTITY);
-        String name = cursor.getString(nameColumnIndex);
-        String price = ProductProviderUtils.getCurrencyFormatPrice(cursor);
-        String quantity = cursor.getString(quantityColumnIndex);
-
-        holder.getNameTextView().setText(name);
-        holder.getPriceTextView().setText(price);
-        holder.getQuantityTextView().setText(quantity);
+        if (!moveToItem(position)) {
+            // Page containing this item is still being fetched.
+            holder.getNameTextView().setText(null);
+            holder.getPriceTextView().setText(null);
+            holder.getQuantityTextView().setText(null);
+            showSampleImageInThumbnailImageView(holder);
+            return;
+        }
+        String picturePath = itemSnapshot.getPicturePath(itemRow);
+        bindText(holder, itemSnapshot, itemRow);
+        if (picturePath == null) {
+            showSampleImageInThumbnailImageView(holder);
+        } else {
+            imageLoader.loadThumbnail(picturePath, holder.getThumbnailImageView());
+        }
+    }
+
+    /**
+     * Binds the name, price, and quantity of a product onto a {@link ProductViewHolder}. Numbers
+     * are written into the buffers of the view holder, so this allocates nothing.
+     *
+     * @param holder The {@link ProductViewHolder} to update.
+     * @param item   Snapshot holding the product.
+     * @param row    Row of the product in the snapshot.
+     */
+    void bindText(@NonNull ProductViewHolder holder, @NonNull ProductSnapshot item, int row) {
+        holder.getNameTextView().setText(item.getName(row));
+        char[] priceBuffer = holder.getPriceBuffer();
+        holder.getPriceTextView().setText(
+                priceBuffer,
+                0,
+                ProductProviderUtils.writeCurrencyPrice(item.getPrice(row), priceBuffer)
+        );
+        char[] quantityBuffer = holder.getQuantityBuffer();
+        holder.getQuantityTextView().setText(
+                quantityBuffer,
+                0,
+                ProductProviderUtils.writeNumber(
+                        saleBatcher.getQuantity(
+                                item.getId(row),
+                                item.getQuantity(row),
+                                item.getReadStartNanos()
+                        ),
+                        quantityBuffer
+                )
+        );
+    }
+
+    /**
+     * Invoked when a {@link ProductViewHolder} is recycled. It cancels any thumbnail still being
+     * loaded into it.
+     *
+     * @param holder The {@link ProductViewHolder} being recycled.
+     */
+    @Override
+    public void onViewRecycled(@NonNull ProductViewHolder holder) {
+        imageLoader.cancel(holder.getThumbnailImageView());
+    }
+
+    /**
+     * Shows the sample image in the thumbnail of the given {@link ProductViewHolder}.
+     *
+     * @param holder The {@link ProductViewHolder} to update.
+     */
+    private void showSampleImageInThumbnailImageView(@NonNull ProductViewHolder holder) {
+        imageLoader.cancel(holder.getThumbnailImageView());
+        holder.getThumbnailImageView().setImageResource(R.drawable.ic_sample_image);
     }
 
     /**
@@ -105,15 +189,19 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
      */
     @Override
     public int getItemCount() {
-        if (cursor == null) {
-            return 0;
+        if (pagedList != null) {
+            return pagedList.getCount();
+        } else if (snapshot != null) {
+            return snapshot.getCount();
         } else {
-            return cursor.getCount();
+            return 0;
         }
     }
 
     /**
-     * Returns the id of the item at the given position.
+     * Returns the id of the item at the given position. Stable ids are not enabled, since a
+     * position of a {@link ProductPagedList} has no id until its page is fetched, so the id of a
+     * position may change from {@link RecyclerView#NO_ID} to that of a product.
      *
      * @param position Position of the item in the adapter.
      * @return The id of the item. {@link RecyclerView#NO_ID} if no id exists for the given
@@ -121,46 +209,57 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
      */
     @Override
     public long getItemId(int position) {
-        if (cursor == null || position < 0 || position >= getItemCount()) {
+        if (!moveToItem(position)) {
             return RecyclerView.NO_ID;
         } else {
-            cursor.moveToPosition(position);
-            return cursor.getLong(idColumnIndex);
+            return itemSnapshot.getId(itemRow);
         }
     }
 
     /**
-     * Set a new {@link Cursor} to adapt.
+     * Set a new {@link ProductSnapshot} to adapt.
+     *
+     * @param newSnapshot {@link ProductSnapshot} to adapt. {@code null} to adapt nothing.
      */
-    public void setCursor(@Nullable Cursor newCursor) {
-        if (cursor != null && newCursor != cursor) {
-            cursor.close();
-        }
-        cursor = newCursor;
-        if (newCursor != null) {
-            idColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry._ID);
-        }
+    public void setSnapshot(@Nullable ProductSnapshot newSnapshot) {
+        snapshot = newSnapshot;
         notifyDataSetChanged();
     }
 
     /**
-     * Returns the {@link Cursor} being adapted pointing at the given position.
+     * Set a new {@link ProductPagedList} to adapt. While it is set, it is adapted instead of any
+     * {@link ProductSnapshot} set with {@link #setSnapshot(ProductSnapshot)}. The caller remains
+     * responsible for closing it and for forwarding its {@link ProductPagedList.Callback} events
+     * to this adapter.
+     *
+     * @param newPagedList {@link ProductPagedList} to adapt. {@code null} to adapt the
+     *                     {@link ProductSnapshot} instead.
+     */
+    public void setPagedList(@Nullable ProductPagedList newPagedList) {
+        pagedList = newPagedList;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Points {@link #itemSnapshot} and {@link #itemRow} at the item at the given position.
      *
      * @param position Position of the item in the adapter.
-     * @return {@link Cursor} moved to the given position. {@code null} if no {@link Cursor} is
-     * being adapted or if the given position is out of bounds.
-     */
-    @Nullable
-    public Cursor getItem(int position) {
-        boolean isMoveSuccessful = false;
-        if (cursor != null) {
-            isMoveSuccessful = cursor.moveToPosition(position);
+     * @return True if they were moved. False if nothing is being adapted, if the given position
+     * is out of bounds, or if the page containing the given position is still being fetched.
+     */
+    private boolean moveToItem(int position) {
+        if (pagedList != null) {
+            itemSnapshot = pagedList.getPage(position);
+            itemRow = pagedList.getIndexInPage(position);
+            return itemSnapshot != null;
         }
-        if (isMoveSuccessful) {
-            return cursor;
-        } else {
-            return null;
+        if (snapshot == null || position < 0 || position >= snapshot.getCount()) {
+            itemSnapshot = null;
+            return false;
         }
+        itemSnapshot = snapshot;
+        itemRow = position;
+        return true;
     }
 
     /**
@@ -169,6 +268,11 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
      */
     protected class ProductViewHolder extends RecyclerView.ViewHolder {
 
+        /**
+         * Holds the thumbnail of the product's photo.
+         */
+        private final ImageView thumbnailImageView;
+
         /**
          * Holds the name of the product.
          */
@@ -184,6 +288,14 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
          */
         private final TextView quantityTextView;
 
+        /**
+         * Hold the text shown in {@link #priceTextView} and {@link #quantityTextView}. They are
+         * rewritten on every bind, right before the text is set again, as
+         * {@link TextView#setText(char[], int, int)} requires.
+         */
+        private final char[] priceBuffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+        private final char[] quantityBuffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+
         /**
          * Constructs a new view holder for the given item view.
          *
@@ -191,15 +303,29 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
          */
         public ProductViewHolder(@NonNull View itemView) {
             super(itemView);
+            thumbnailImageView = itemView.findViewById(R.id.thumbnail_image_view);
             nameTextView = itemView.findViewById(R.id.name_text_view);
             priceTextView = itemView.findViewById(R.id.price_text_view);
             quantityTextView = itemView.findViewById(R.id.quantity_text_view);
 
-            itemView.setOnClickListener((view) -> onItemClickListener.accept(getItemId()));
+            itemView.setOnClickListener((view) -> {
+                long id = getProductId();
+                if (id != RecyclerView.NO_ID) {
+                    onItemClickListener.accept(id);
+                }
+            });
             Button saleButton = itemView.findViewById(R.id.sale_button);
-            saleButton.setOnClickListener(
-                    (view) -> onSaleButtonClickListener.accept(getItemId(), getQuantity())
-            );
+            saleButton.setOnClickListener((view) -> {
+                long id = getProductId();
+                int quantity = getQuantity();
+                if (id != RecyclerView.NO_ID && quantity != -1) {
+                    onSaleButtonClickListener.accept(id, quantity);
+                }
+            });
+        }
+
+        public ImageView getThumbnailImageView() {
+            return thumbnailImageView;
         }
 
         public TextView getNameTextView() {
@@ -214,18 +340,39 @@ public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdap
             return quantityTextView;
         }
 
+        public char[] getPriceBuffer() {
+            return priceBuffer;
+        }
+
+        public char[] getQuantityBuffer() {
+            return quantityBuffer;
+        }
+
+        /**
+         * Returns the id of the product that corresponds with this view holder.
+         *
+         * @return Id corresponding with this view holder. {@link RecyclerView#NO_ID} if the
+         * product is still being fetched.
+         */
+        private long getProductId() {
+            return ProductCursorAdapter.this.getItemId(getAdapterPosition());
+        }
+
         /**
-         * Returns the quantity of the product that corresponds with this view holder.
+         * Returns the quantity shown for the product that corresponds with this view holder.
          *
-         * @return Quantity corresponding with this view holder.
+         * @return Quantity corresponding with this view holder. {@code -1} if the product is still
+         * being fetched.
          */
         private int getQuantity() {
-            Cursor cursor = getItem(getAdapterPosition());
-            assert cursor != null;
-            int quantityColumnIndex = cursor.getColumnIndex(
-                    ProductContract.ProductEntry.COLUMN_QUANTITY
+            if (!moveToItem(getAdapterPosition())) {
+                return -1;
+            }
+            return saleBatcher.getQuantity(
+                    itemSnapshot.getId(itemRow),
+                    itemSnapshot.getQuantity(itemRow),
+                    itemSnapshot.getReadStartNanos()
             );
-            return cursor.getInt(quantityColumnIndex);
         }
     }
 }
@@ -0,0 +1,1090 @@
+package com.davidread.clothescatalog2.adapter;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import com.davidread.clothescatalog2.database.ProductContract;
+import com.davidread.clothescatalog2.database.ProductSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A list of products from the product provider that is fetched one page at a time using keyset
+ * pagination. Pages are fetched on a background thread ahead of the scroll position, and only a
+ * bounded number of pages are kept in memory at once, so memory use depends on the page size rather
+ * than the size of the products table. Each page is read into a {@link ProductSnapshot} on the
+ * background thread and its {@link Cursor} is closed right away, so the main thread only reads
+ * arrays.
+ * <p>
+ * Changes in the product provider are applied as row-level patches. An update of a single product
+ * refetches only the page holding it, and any other change refetches only the pages in memory and
+ * diffs them against their previous contents on the background thread. Either way, only the rows
+ * that actually changed are reported to the callback. While the list is stopped with
+ * {@link #stop()}, changes are only remembered, and the list is refreshed once it is started again.
+ * All public methods must be called on the main thread.
+ * <p>
+ * The list may be sorted by name, price, or quantity and filtered to low stock products with
+ * {@link #setOrder(String, String)}. The product provider sorts and filters with its indexes, and
+ * the keyset of each page becomes the sort value and id of the last product of the previous page,
+ * so every page is still fetched without skipping rows.
+ */
+public class ProductPagedList {
+
+    /**
+     * Callback invoked on the main thread when data in a {@link ProductPagedList} is fetched or
+     * changes. The {@link ListUpdateCallback} methods report changes of individual rows.
+     */
+    public interface Callback extends ListUpdateCallback {
+
+        /**
+         * Invoked when the whole list has been fetched for the first time.
+         *
+         * @param count Number of products in the list.
+         */
+        void onListLoaded(int count);
+
+        /**
+         * Invoked after changes in the product provider have been applied to the list and reported
+         * through the {@link ListUpdateCallback} methods.
+         *
+         * @param count Number of products in the list.
+         */
+        void onListUpdated(int count);
+    }
+
+    /**
+     * Default number of products in a page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /**
+     * Default number of products ahead of and behind the scroll position to fetch in advance.
+     */
+    public static final int DEFAULT_PREFETCH_DISTANCE = 25;
+
+    /**
+     * Default maximum number of pages kept in memory at once.
+     */
+    public static final int DEFAULT_MAX_RESIDENT_PAGES = 6;
+
+    /**
+     * Keyset of the first page. Ids in the products table start at 1.
+     */
+    private static final PageKey FIRST_PAGE_KEY = new PageKey(null, 0);
+
+    /**
+     * To fetch pages from the product provider.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * List of columns to put into each page.
+     */
+    private final String[] projection;
+
+    /**
+     * Number of products in a page.
+     */
+    private final int pageSize;
+
+    /**
+     * Number of products ahead of and behind the scroll position to fetch in advance.
+     */
+    private final int prefetchDistance;
+
+    /**
+     * Callback to invoke when data is fetched.
+     */
+    private final Callback callback;
+
+    /**
+     * Fetches pages one at a time on a background thread.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Posts fetched pages back to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Pages currently kept in memory keyed by page index, in least recently used order. The least
+     * recently used page is dropped when more than the maximum number of pages are kept.
+     */
+    private final LinkedHashMap<Integer, Page> residentPages;
+
+    /**
+     * Keyset of each page discovered so far. The keyset of a page is the sort value and id of the
+     * last product in the previous page.
+     */
+    private final ArrayList<PageKey> pageKeys = new ArrayList<>();
+
+    /**
+     * Indices of pages currently being fetched.
+     */
+    private final Set<Integer> loadingPages = new HashSet<>();
+
+    /**
+     * Applies changes in the product provider to this list.
+     */
+    private final ContentObserver contentObserver;
+
+    /**
+     * Sort order of the list. One of the values of {@link ProductContract#QUERY_PARAMETER_SORT}.
+     * Read on the background thread, where a change is only seen by fetches that are discarded.
+     */
+    private volatile String sort = ProductContract.SORT_ID;
+
+    /**
+     * Filter of the list. {@link ProductContract#FILTER_LOW_STOCK}, or {@code null} for every
+     * product. Read on the background thread like {@link #sort}.
+     */
+    private volatile String filter;
+
+    /**
+     * Number of products in the list.
+     */
+    private int count;
+
+    /**
+     * Time in {@link SystemClock#elapsedRealtimeNanos()} right before the fetch behind the last
+     * {@link Callback#onListLoaded(int)} started. Every page in memory was read after it.
+     */
+    private long loadStartNanos;
+
+    /**
+     * Position of the product most recently requested with {@link #getPage(int)}.
+     */
+    private int lastRequestedPosition;
+
+    /**
+     * Incremented each time the pages in memory are replaced by a refresh. Fetches started for an
+     * older generation are discarded.
+     */
+    private int generation;
+
+    /**
+     * Whether the list has been fetched for the first time.
+     */
+    private boolean isLoaded;
+
+    /**
+     * Whether a refresh is being fetched. Pages are not fetched meanwhile, since their keysets may
+     * be about to change.
+     */
+    private boolean isRefreshing;
+
+    /**
+     * Whether another refresh must be fetched once the current one finishes, because the product
+     * provider changed after it started.
+     */
+    private boolean isRefreshPending;
+
+    /**
+     * Whether {@link #stop()} was called more recently than {@link #start()}.
+     */
+    private boolean isStopped;
+
+    /**
+     * Whether the product provider changed while the list was stopped.
+     */
+    private boolean isChangedWhileStopped;
+
+    /**
+     * Whether {@link #contentObserver} is registered.
+     */
+    private boolean isObserving;
+
+    /**
+     * Whether {@link #close()} has been called.
+     */
+    private boolean isClosed;
+
+    /**
+     * Constructs a new {@link ProductPagedList} with default paging settings.
+     *
+     * @param contentResolver To fetch pages from the product provider.
+     * @param projection      List of columns to put into each page. Must contain the id column.
+     * @param callback        Callback to invoke when data is fetched.
+     */
+    public ProductPagedList(
+            @NonNull ContentResolver contentResolver,
+            @NonNull String[] projection,
+            @NonNull Callback callback
+    ) {
+        this(
+                contentResolver,
+                projection,
+                callback,
+                DEFAULT_PAGE_SIZE,
+                DEFAULT_PREFETCH_DISTANCE,
+                DEFAULT_MAX_RESIDENT_PAGES
+        );
+    }
+
+    /**
+     * Constructs a new {@link ProductPagedList}.
+     *
+     * @param contentResolver  To fetch pages from the product provider.
+     * @param projection       List of columns to put into each page. Must contain the id column.
+     * @param callback         Callback to invoke when data is fetched.
+     * @param pageSize         Number of products in a page.
+     * @param prefetchDistance Number of products ahead of and behind the scroll position to fetch
+     *                         in advance.
+     * @param maxResidentPages Maximum number of pages kept in memory at once.
+     */
+    public ProductPagedList(
+            @NonNull ContentResolver contentResolver,
+            @NonNull String[] projection,
+            @NonNull Callback callback,
+            int pageSize,
+            int prefetchDistance,
+            int maxResidentPages
+    ) {
+        this.contentResolver = contentResolver;
+        this.projection = projection;
+        this.callback = callback;
+        this.pageSize = pageSize;
+        this.prefetchDistance = prefetchDistance;
+        this.residentPages = new LinkedHashMap<Integer, Page>(maxResidentPages + 1, 1f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > maxResidentPages;
+            }
+        };
+        this.contentObserver = new ContentObserver(mainHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                refresh();
+            }
+
+            @Override
+            public void onChange(boolean selfChange, @Nullable Uri uri) {
+                onProductsChanged(uri);
+            }
+        };
+    }
+
+    /**
+     * Fetches the first page of the list in the background and starts listening for changes in
+     * the product provider.
+     */
+    public void load() {
+        if (isClosed || isLoaded || isRefreshing) {
+            return;
+        }
+        if (!isObserving) {
+            contentResolver.registerContentObserver(
+                    ProductContract.ProductEntry.CONTENT_URI,
+                    true,
+                    contentObserver
+            );
+            isObserving = true;
+        }
+
+        isRefreshing = true;
+        int loadGeneration = generation;
+        executor.execute(() -> {
+            long startNanos = SystemClock.elapsedRealtimeNanos();
+            int newCount = queryCount();
+            Page firstPage = queryPage(FIRST_PAGE_KEY);
+            mainHandler.post(() -> {
+                if (isClosed || loadGeneration != generation) {
+                    return;
+                }
+                isRefreshing = false;
+                isLoaded = true;
+                count = newCount;
+                loadStartNanos = startNanos;
+                pageKeys.clear();
+                pageKeys.add(FIRST_PAGE_KEY);
+                residentPages.clear();
+                if (firstPage != null) {
+                    residentPages.put(0, firstPage);
+                }
+                callback.onListLoaded(count);
+                onRefreshFinished();
+            });
+        });
+    }
+
+    /**
+     * Sorts and filters the list, and fetches it again from its first page in the background.
+     * Pages of the previous order are still returned until then, and
+     * {@link Callback#onListLoaded(int)} is invoked once the first page of the new order is
+     * fetched.
+     *
+     * @param newSort   One of the values of {@link ProductContract#QUERY_PARAMETER_SORT}.
+     * @param newFilter {@link ProductContract#FILTER_LOW_STOCK}, or {@code null} for every
+     *                  product.
+     */
+    public void setOrder(@NonNull String newSort, @Nullable String newFilter) {
+        if (newSort.equals(sort) && Objects.equals(newFilter, filter)) {
+            return;
+        }
+        sort = newSort;
+        filter = newFilter;
+        if (isClosed) {
+            return;
+        }
+
+        // Discard anything still being fetched for the previous order.
+        generation++;
+        loadingPages.clear();
+        isLoaded = false;
+        isRefreshing = false;
+        isRefreshPending = false;
+        lastRequestedPosition = 0;
+        load();
+    }
+
+    /**
+     * Returns the snapshot of the page holding the product at the given position and fetches
+     * nearby pages in the background. The product is at index {@link #getIndexInPage(int)} of
+     * the snapshot.
+     *
+     * @param position Position of the product in the list.
+     * @return Snapshot of the page. {@code null} if the page is not in memory yet.
+     * {@link ListUpdateCallback#onChanged(int, int, Object)} is invoked once it is fetched.
+     */
+    @Nullable
+    public ProductSnapshot getPage(int position) {
+        if (position < 0 || position >= count) {
+            return null;
+        }
+        lastRequestedPosition = position;
+        loadAround(position);
+        Page page = residentPages.get(position / pageSize);
+        if (page == null || position % pageSize >= page.snapshot.getCount()) {
+            return null;
+        }
+        return page.snapshot;
+    }
+
+    /**
+     * Returns the index of the product at the given position within the snapshot returned by
+     * {@link #getPage(int)}.
+     *
+     * @param position Position of the product in the list.
+     * @return Index of the product within its page.
+     */
+    public int getIndexInPage(int position) {
+        return position % pageSize;
+    }
+
+    /**
+     * Returns the number of products in the list.
+     *
+     * @return Number of products.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public long getLoadStartNanos() {
+        return loadStartNanos;
+    }
+
+    /**
+     * Starts applying changes in the product provider again. If any change happened while the
+     * list was stopped, the whole list is refreshed once.
+     */
+    public void start() {
+        if (isClosed || !isStopped) {
+            return;
+        }
+        isStopped = false;
+        if (isChangedWhileStopped) {
+            isChangedWhileStopped = false;
+            refresh();
+        }
+    }
+
+    /**
+     * Stops applying changes in the product provider, such as while the list is hidden, so no
+     * page is refetched or diffed meanwhile. Changes are remembered until {@link #start()} is
+     * called. A refresh already being fetched still finishes.
+     */
+    public void stop() {
+        isStopped = true;
+    }
+
+    /**
+     * Stops listening for changes in the product provider, stops fetching pages, and drops all
+     * pages in memory. This list may not be used afterwards.
+     */
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (isObserving) {
+            contentResolver.unregisterContentObserver(contentObserver);
+            isObserving = false;
+        }
+        executor.shutdownNow();
+        residentPages.clear();
+    }
+
+    /**
+     * Invoked when the product provider changes. An update of a single product refetches only the
+     * page holding it, if that page is in memory. Any other change refreshes the whole list, and so
+     * does any update while the list is sorted by something other than id or filtered, since the
+     * product may have moved into, out of, or within the list.
+     *
+     * @param uri Content URI the product provider notified with. {@code null} if unknown.
+     */
+    private void onProductsChanged(@Nullable Uri uri) {
+        if (isClosed) {
+            return;
+        }
+        if (isStopped) {
+            isChangedWhileStopped = true;
+            return;
+        }
+        if (!isLoaded) {
+            refresh();
+            return;
+        }
+        String operation = uri != null
+                ? uri.getQueryParameter(ProductContract.QUERY_PARAMETER_OPERATION)
+                : null;
+        long id = getChangedId(uri);
+        boolean isIdOrder = ProductContract.SORT_ID.equals(sort) && filter == null;
+        if (!ProductContract.OPERATION_UPDATE.equals(operation) || id == -1 || !isIdOrder) {
+            refresh();
+            return;
+        }
+        for (Map.Entry<Integer, Page> entry : residentPages.entrySet()) {
+            if (entry.getValue().indexOfId(id) != -1) {
+                reloadPage(entry.getKey());
+                return;
+            }
+        }
+        // The product is not in memory, so it will be fetched fresh once it is needed.
+    }
+
+    /**
+     * Refetches the number of products, the page keysets, and every page in memory in the
+     * background. The refetched pages are diffed against the pages in memory, and only the
+     * differences are reported to the callback. A change during the first load of the list, or
+     * during the load of a new order, is refreshed once that load finishes, since the load may have
+     * read the products before the change.
+     */
+    private void refresh() {
+        if (isClosed) {
+            return;
+        }
+        if (isStopped) {
+            isChangedWhileStopped = true;
+            return;
+        }
+        if (isRefreshing) {
+            isRefreshPending = true;
+            return;
+        }
+        if (!isLoaded) {
+            return;
+        }
+        isRefreshing = true;
+        isRefreshPending = false;
+        generation++;
+        int refreshGeneration = generation;
+        loadingPages.clear();
+
+        // Only diff the run of consecutive pages around the scroll position.
+        int windowFirstPageIndex = lastRequestedPosition / pageSize;
+        int windowLastPageIndex = windowFirstPageIndex - 1;
+        if (residentPages.containsKey(windowFirstPageIndex)) {
+            while (residentPages.containsKey(windowFirstPageIndex - 1)) {
+                windowFirstPageIndex--;
+            }
+            windowLastPageIndex = windowFirstPageIndex;
+            while (residentPages.containsKey(windowLastPageIndex + 1)) {
+                windowLastPageIndex++;
+            }
+        }
+        SparseArray<Page> oldPages = new SparseArray<>();
+        for (int pageIndex = windowFirstPageIndex; pageIndex <= windowLastPageIndex; pageIndex++) {
+            oldPages.put(pageIndex, residentPages.get(pageIndex));
+        }
+        int oldCount = count;
+        int windowStart = windowFirstPageIndex * pageSize;
+        int lastPageIndexToLoad = windowLastPageIndex;
+
+        executor.execute(() -> {
+            int newCount = queryCount();
+            ArrayList<PageKey> newPageKeys = queryPageKeys(FIRST_PAGE_KEY, lastPageIndexToLoad);
+            newPageKeys.add(0, FIRST_PAGE_KEY);
+            SparseArray<Page> newPages = new SparseArray<>();
+            for (int i = 0; i < oldPages.size(); i++) {
+                int pageIndex = oldPages.keyAt(i);
+                if (pageIndex < newPageKeys.size()) {
+                    Page page = queryPage(newPageKeys.get(pageIndex));
+                    if (page != null) {
+                        newPages.put(pageIndex, page);
+                    }
+                }
+            }
+            PageDiff diff = new PageDiff(oldPages, newPages);
+            DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(diff, false);
+            mainHandler.post(() -> {
+                if (isClosed || refreshGeneration != generation) {
+                    return;
+                }
+                isRefreshing = false;
+                residentPages.clear();
+                pageKeys.clear();
+                pageKeys.addAll(newPageKeys);
+                for (int i = 0; i < newPages.size(); i++) {
+                    residentPages.put(newPages.keyAt(i), newPages.valueAt(i));
+                }
+
+                // Report changes within the diffed pages, then the change in length past them.
+                diffResult.dispatchUpdatesTo(new OffsetListUpdateCallback(windowStart));
+                int impliedCount = oldCount + diff.getNewListSize() - diff.getOldListSize();
+                if (newCount > impliedCount) {
+                    callback.onInserted(impliedCount, newCount - impliedCount);
+                } else if (newCount < impliedCount) {
+                    callback.onRemoved(newCount, impliedCount - newCount);
+                }
+                count = newCount;
+                callback.onListUpdated(count);
+                onRefreshFinished();
+            });
+        });
+    }
+
+    /**
+     * Invoked when a refresh finishes. It starts a pending refresh, if any, or fetches the pages
+     * around the scroll position that were held back during the refresh.
+     */
+    private void onRefreshFinished() {
+        if (isRefreshPending) {
+            refresh();
+        } else if (count > 0) {
+            loadAround(Math.min(lastRequestedPosition, count - 1));
+        }
+    }
+
+    /**
+     * Refetches a single page in memory in the background and reports its changed rows to the
+     * callback. If the page no longer holds the same products in the same order, the whole list is
+     * refreshed instead.
+     *
+     * @param pageIndex Index of the page to refetch.
+     */
+    private void reloadPage(int pageIndex) {
+        if (isRefreshing) {
+            isRefreshPending = true;
+            return;
+        }
+        Page oldPage = residentPages.get(pageIndex);
+        if (oldPage == null || pageIndex >= pageKeys.size()) {
+            return;
+        }
+        if (loadingPages.contains(pageIndex)) {
+            // The page is already being refetched, but possibly from before this change.
+            refresh();
+            return;
+        }
+        loadingPages.add(pageIndex);
+        int loadGeneration = generation;
+        PageKey pageKey = pageKeys.get(pageIndex);
+
+        executor.execute(() -> {
+            Page newPage = queryPage(pageKey);
+            mainHandler.post(() -> {
+                if (isClosed || loadGeneration != generation) {
+                    return;
+                }
+                loadingPages.remove(pageIndex);
+                if (newPage == null) {
+                    return;
+                }
+                if (!Arrays.equals(oldPage.ids, newPage.ids)) {
+                    refresh();
+                    return;
+                }
+                residentPages.put(pageIndex, newPage);
+                int positionStart = pageIndex * pageSize;
+                for (int i = 0; i < newPage.ids.length; i++) {
+                    if (!oldPage.snapshot.isSameContent(i, newPage.snapshot, i)) {
+                        callback.onChanged(positionStart + i, 1, null);
+                    }
+                }
+                callback.onListUpdated(count);
+            });
+        });
+    }
+
+    /**
+     * Fetches every page within {@link #prefetchDistance} of the given position that is not in
+     * memory yet.
+     *
+     * @param position Position of the product in the list.
+     */
+    private void loadAround(int position) {
+        if (isClosed || isRefreshing) {
+            return;
+        }
+        int firstPageIndex = Math.max(0, position - prefetchDistance) / pageSize;
+        int lastPageIndex = Math.min(count - 1, position + prefetchDistance) / pageSize;
+        for (int pageIndex = firstPageIndex; pageIndex <= lastPageIndex; pageIndex++) {
+            if (!residentPages.containsKey(pageIndex) && !loadingPages.contains(pageIndex)) {
+                loadPage(pageIndex);
+            }
+        }
+    }
+
+    /**
+     * Fetches a single page in the background. If the keyset of the page is unknown, the keysets
+     * of the pages between the last known keyset and the page are discovered first.
+     *
+     * @param pageIndex Index of the page to fetch.
+     */
+    private void loadPage(int pageIndex) {
+        loadingPages.add(pageIndex);
+        int loadGeneration = generation;
+        int lastKnownPageIndex = pageKeys.size() - 1;
+        PageKey lastKnownPageKey = pageKeys.get(lastKnownPageIndex);
+        PageKey knownPageKey = pageIndex <= lastKnownPageIndex ? pageKeys.get(pageIndex) : null;
+
+        executor.execute(() -> {
+            ArrayList<PageKey> discoveredPageKeys = new ArrayList<>();
+            PageKey pageKey = knownPageKey;
+            if (pageKey == null) {
+                int pageCount = pageIndex - lastKnownPageIndex;
+                discoveredPageKeys = queryPageKeys(lastKnownPageKey, pageCount);
+                if (discoveredPageKeys.size() == pageCount) {
+                    pageKey = discoveredPageKeys.get(pageCount - 1);
+                }
+            }
+            Page page = pageKey != null ? queryPage(pageKey) : null;
+            ArrayList<PageKey> fetchedPageKeys = discoveredPageKeys;
+            mainHandler.post(() -> onPageLoaded(
+                    loadGeneration,
+                    pageIndex,
+                    lastKnownPageIndex,
+                    fetchedPageKeys,
+                    page
+            ));
+        });
+    }
+
+    /**
+     * Invoked on the main thread when a page fetched by {@link #loadPage(int)} is ready. It keeps
+     * discovered keysets, keeps the page in memory, and invokes the callback.
+     *
+     * @param loadGeneration     Generation the page was fetched for.
+     * @param pageIndex          Index of the fetched page.
+     * @param lastKnownPageIndex Index of the last page whose keyset was known when fetching began.
+     * @param discoveredPageKeys Keysets of the pages following the last known page.
+     * @param page               The fetched page. {@code null} if the page is past the end of the
+     *                           list or if fetching failed.
+     */
+    private void onPageLoaded(
+            int loadGeneration,
+            int pageIndex,
+            int lastKnownPageIndex,
+            @NonNull ArrayList<PageKey> discoveredPageKeys,
+            @Nullable Page page
+    ) {
+        if (isClosed || loadGeneration != generation) {
+            return;
+        }
+        loadingPages.remove(pageIndex);
+        if (pageKeys.size() == lastKnownPageIndex + 1) {
+            pageKeys.addAll(discoveredPageKeys);
+        }
+        if (page == null) {
+            return;
+        }
+        residentPages.put(pageIndex, page);
+        int positionStart = pageIndex * pageSize;
+        int itemCount = Math.min(page.ids.length, count - positionStart);
+        if (itemCount > 0) {
+            callback.onChanged(positionStart, itemCount, null);
+        }
+    }
+
+    /**
+     * Queries the number of products in the product provider that match {@link #filter}. Must be
+     * called on a background thread.
+     *
+     * @return Number of products.
+     */
+    private int queryCount() {
+        Cursor cursor = contentResolver.query(
+                ProductContract.ProductEntry.buildFilterUri(filter),
+                new String[]{"COUNT(*)"},
+                null,
+                null,
+                null
+        );
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Queries the keysets of consecutive pages following some page. Only the id and sort columns
+     * are read, so this is much cheaper than fetching the pages themselves. Must be called on a
+     * background thread.
+     *
+     * @param afterKey  Keyset of the page to start after.
+     * @param pageCount Number of page keysets to discover.
+     * @return Keysets of up to {@code pageCount} pages following the given keyset. Is shorter if
+     * the end of the list is reached.
+     */
+    @NonNull
+    private ArrayList<PageKey> queryPageKeys(@NonNull PageKey afterKey, int pageCount) {
+        ArrayList<PageKey> keys = new ArrayList<>();
+        if (pageCount <= 0) {
+            return keys;
+        }
+        String pageSort = sort;
+        String sortColumn = ProductContract.ProductEntry.getSortColumn(pageSort);
+        boolean isSortedById = ProductContract.SORT_ID.equals(pageSort);
+        Cursor cursor = contentResolver.query(
+                buildPageUri(pageSort, afterKey, pageCount * pageSize),
+                isSortedById
+                        ? new String[]{ProductContract.ProductEntry._ID}
+                        : new String[]{ProductContract.ProductEntry._ID, sortColumn},
+                null,
+                null,
+                null
+        );
+        if (cursor == null) {
+            return keys;
+        }
+        try {
+            int rowIndex = 0;
+            while (cursor.moveToNext()) {
+                rowIndex++;
+                if (rowIndex % pageSize == 0) {
+                    keys.add(new PageKey(
+                            isSortedById ? null : cursor.getString(1),
+                            cursor.getLong(0)
+                    ));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return keys;
+    }
+
+    /**
+     * Queries a single page of products. The page's rows are read into a snapshot and the
+     * {@link Cursor} is closed before returning. Must be called on a background thread.
+     *
+     * @param afterKey Keyset of the page.
+     * @return The page. {@code null} if the query failed.
+     */
+    @Nullable
+    private Page queryPage(@NonNull PageKey afterKey) {
+        // The query fills the first window of the cursor, so the rows are read from here on.
+        long readStartNanos = SystemClock.elapsedRealtimeNanos();
+        Cursor cursor = contentResolver.query(
+                buildPageUri(sort, afterKey, pageSize),
+                projection,
+                null,
+                null,
+                null
+        );
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return new Page(ProductSnapshot.read(cursor, readStartNanos));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the content URI of the page of products following a keyset in the given order.
+     *
+     * @param pageSort Sort order of the page.
+     * @param afterKey Keyset of the page.
+     * @param limit    Maximum number of products in the page.
+     * @return Content URI of the page.
+     */
+    @NonNull
+    private Uri buildPageUri(@NonNull String pageSort, @NonNull PageKey afterKey, int limit) {
+        return ProductContract.ProductEntry.buildPageUri(
+                pageSort,
+                filter,
+                afterKey.sortValue,
+                afterKey.id,
+                limit
+        );
+    }
+
+    /**
+     * Returns the id of the single product a notification URI refers to.
+     *
+     * @param uri Content URI the product provider notified with.
+     * @return Id of the product. {@code -1} if the content URI refers to all products.
+     */
+    private static long getChangedId(@Nullable Uri uri) {
+        if (uri == null || uri.getPathSegments().size() < 2) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(uri.getLastPathSegment());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Keyset of a page. It is the sort value and id of the last product in the previous page.
+     */
+    private static final class PageKey {
+
+        /**
+         * Value of the sort column of the last product in the previous page, as text. {@code null}
+         * for the first page, or while the list is sorted by id.
+         */
+        final String sortValue;
+
+        /**
+         * Id of the last product in the previous page. {@code 0} for the first page.
+         */
+        final long id;
+
+        /**
+         * Constructs a new {@link PageKey}.
+         *
+         * @param sortValue Value of the sort column of the last product in the previous page.
+         * @param id        Id of the last product in the previous page.
+         */
+        PageKey(@Nullable String sortValue, long id) {
+            this.sortValue = sortValue;
+            this.id = id;
+        }
+    }
+
+    /**
+     * A single page of products, along with the id of each of its rows. They are read once on the
+     * background thread so pages can be diffed cheaply.
+     */
+    private static final class Page {
+
+        /**
+         * Rows of the page.
+         */
+        final ProductSnapshot snapshot;
+
+        /**
+         * Id of each row.
+         */
+        final long[] ids;
+
+        /**
+         * Constructs a new {@link Page}, reading the id of each row. Must be called on a
+         * background thread.
+         *
+         * @param snapshot Rows of the page.
+         */
+        Page(@NonNull ProductSnapshot snapshot) {
+            this.snapshot = snapshot;
+            int rowCount = snapshot.getCount();
+            this.ids = new long[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                ids[row] = snapshot.getId(row);
+            }
+        }
+
+        /**
+         * Returns the row holding a product.
+         *
+         * @param id Id of the product.
+         * @return Index of the row. {@code -1} if the product is not in this page.
+         */
+        int indexOfId(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Compares consecutive pages before and after a refresh by product id and by the values of
+     * every column.
+     */
+    private static final class PageDiff extends DiffUtil.Callback {
+
+        /**
+         * Ids of the rows of the old and new pages, concatenated in order.
+         */
+        private final long[] oldIds;
+        private final long[] newIds;
+
+        /**
+         * Page of each row of the old and new pages, concatenated in order, and the position of
+         * the first row of that page. A row is at index {@code position - rowPageStarts[position]}
+         * of its page.
+         */
+        private final Page[] oldRowPages;
+        private final int[] oldRowPageStarts;
+        private final Page[] newRowPages;
+        private final int[] newRowPageStarts;
+
+        /**
+         * Constructs a new {@link PageDiff}.
+         *
+         * @param oldPages Consecutive pages before the refresh, keyed by page index.
+         * @param newPages Pages after the refresh with the same page indices. Pages past the end
+         *                 of the list are missing.
+         */
+        PageDiff(@NonNull SparseArray<Page> oldPages, @NonNull SparseArray<Page> newPages) {
+            oldIds = concatenateIds(oldPages);
+            newIds = concatenateIds(newPages);
+            oldRowPages = new Page[oldIds.length];
+            oldRowPageStarts = new int[oldIds.length];
+            fillRowPages(oldPages, oldRowPages, oldRowPageStarts);
+            newRowPages = new Page[newIds.length];
+            newRowPageStarts = new int[newIds.length];
+            fillRowPages(newPages, newRowPages, newRowPageStarts);
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldIds.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newIds.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldIds[oldItemPosition] == newIds[newItemPosition];
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldRowPages[oldItemPosition].snapshot.isSameContent(
+                    oldItemPosition - oldRowPageStarts[oldItemPosition],
+                    newRowPages[newItemPosition].snapshot,
+                    newItemPosition - newRowPageStarts[newItemPosition]
+            );
+        }
+
+        /**
+         * Concatenates the ids of pages in order of page index.
+         *
+         * @param pages Pages keyed by page index.
+         * @return Concatenated ids.
+         */
+        @NonNull
+        private static long[] concatenateIds(@NonNull SparseArray<Page> pages) {
+            int length = 0;
+            for (int i = 0; i < pages.size(); i++) {
+                length += pages.valueAt(i).ids.length;
+            }
+            long[] ids = new long[length];
+            int offset = 0;
+            for (int i = 0; i < pages.size(); i++) {
+                long[] pageIds = pages.valueAt(i).ids;
+                System.arraycopy(pageIds, 0, ids, offset, pageIds.length);
+                offset += pageIds.length;
+            }
+            return ids;
+        }
+
+        /**
+         * Records the page of each row of pages concatenated in order of page index, and the
+         * position of the first row of that page.
+         *
+         * @param pages         Pages keyed by page index.
+         * @param rowPages      Array to put the page of each row in.
+         * @param rowPageStarts Array to put the position of the first row of each row's page in.
+         */
+        private static void fillRowPages(
+                @NonNull SparseArray<Page> pages,
+                @NonNull Page[] rowPages,
+                @NonNull int[] rowPageStarts
+        ) {
+            int offset = 0;
+            for (int i = 0; i < pages.size(); i++) {
+                Page page = pages.valueAt(i);
+                Arrays.fill(rowPages, offset, offset + page.ids.length, page);
+                Arrays.fill(rowPageStarts, offset, offset + page.ids.length, offset);
+                offset += page.ids.length;
+            }
+        }
+    }
+
+    /**
+     * Forwards row changes reported by a diff to the callback, shifted by the position of the
+     * first diffed row.
+     */
+    private final class OffsetListUpdateCallback implements ListUpdateCallback {
+
+        /**
+         * Position of the first diffed row in the list.
+         */
+        private final int offset;
+
+        /**
+         * Constructs a new {@link OffsetListUpdateCallback}.
+         *
+         * @param offset Position of the first diffed row in the list.
+         */
+        OffsetListUpdateCallback(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            callback.onInserted(offset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            callback.onRemoved(offset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            callback.onMoved(offset + fromPosition, offset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            callback.onChanged(offset + position, count, payload);
+        }
+    }
+}
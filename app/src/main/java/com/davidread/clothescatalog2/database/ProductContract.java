@@ -1,9 +1,13 @@
 package com.davidread.clothescatalog2.database;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 /**
  * A class that defines constants to help work with content URIs, column names, and other features
  * of the content provider.
@@ -25,6 +29,182 @@ public final class ProductContract {
      */
     public static final String PATH_PRODUCTS = "products";
 
+    /**
+     * Path to append to {@link ProductEntry#CONTENT_URI} to search products by name and supplier.
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Query parameter to append to {@link ProductEntry#SEARCH_URI} holding the text to search for.
+     * Each word of the text matches any word in a product's name or supplier starting with it.
+     */
+    public static final String QUERY_PARAMETER_QUERY = "query";
+
+    /**
+     * Path to append to {@link ProductEntry#CONTENT_URI} to refer to inventory totals.
+     */
+    public static final String PATH_STATS = "stats";
+
+    /**
+     * Path to append to {@link #BASE_CONTENT_URI} to refer to the suppliers table, or to
+     * {@link ProductStatsEntry#CONTENT_URI} to refer to the inventory totals of each supplier.
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Path to append to {@link #BASE_CONTENT_URI} to refer to the reference counts of photos.
+     */
+    public static final String PATH_PHOTOS = "photos";
+
+    /**
+     * A product is low on stock when its quantity is at most this. It is part of the schema of the
+     * inventory totals and of the low stock indexes, so changing it requires a migration that
+     * recomputes them.
+     */
+    public static final int LOW_STOCK_THRESHOLD = 5;
+
+    /**
+     * Query parameter to append to {@link ProductEntry#CONTENT_URI} to limit the number of rows
+     * returned by a query.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameter to append to {@link ProductEntry#CONTENT_URI} to only return rows whose id
+     * is greater than the given id. Rows are returned in ascending id order when it is present, so
+     * it may be used as a keyset to fetch the page of rows that follows some last seen row.
+     */
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+    /**
+     * Query parameter to append to {@link ProductEntry#CONTENT_URI} to sort rows in ascending
+     * order of one of {@link #SORT_ID}, {@link #SORT_NAME}, {@link #SORT_PRICE}, or
+     * {@link #SORT_QUANTITY}, with ties in ascending id order. Any other value fails the query.
+     * Rows are sorted by id when it is absent.
+     */
+    public static final String QUERY_PARAMETER_SORT = "sort";
+
+    /**
+     * Values of {@link #QUERY_PARAMETER_SORT}.
+     */
+    public static final String SORT_ID = "id";
+    public static final String SORT_NAME = "name";
+    public static final String SORT_PRICE = "price";
+    public static final String SORT_QUANTITY = "quantity";
+
+    /**
+     * Query parameter to append to {@link ProductEntry#CONTENT_URI} along with
+     * {@link #QUERY_PARAMETER_AFTER_ID} when rows are sorted by something other than their id. It
+     * holds the value of the sort column of the last seen row, and only rows that sort after that
+     * row are returned. It is absent for the first page, as is {@link #QUERY_PARAMETER_AFTER_ID},
+     * and the query fails if only one of the two is present.
+     */
+    public static final String QUERY_PARAMETER_AFTER_KEY = "after_key";
+
+    /**
+     * Query parameter to append to {@link ProductEntry#CONTENT_URI} to only return rows matching
+     * a filter. Its only supported value is {@link #FILTER_LOW_STOCK}. Any other value fails the
+     * query.
+     */
+    public static final String QUERY_PARAMETER_FILTER = "filter";
+
+    /**
+     * Value of {@link #QUERY_PARAMETER_FILTER} that only returns products whose quantity is at
+     * most {@link #LOW_STOCK_THRESHOLD}.
+     */
+    public static final String FILTER_LOW_STOCK = "low_stock";
+
+    /**
+     * Query parameter appended to the content URIs that the product provider notifies observers
+     * with. Its value is one of {@link #OPERATION_INSERT}, {@link #OPERATION_UPDATE}, or
+     * {@link #OPERATION_DELETE}. The content URI refers to a single product when a single product
+     * changed, and to all products otherwise.
+     */
+    public static final String QUERY_PARAMETER_OPERATION = "operation";
+
+    /**
+     * Values of {@link #QUERY_PARAMETER_OPERATION}.
+     */
+    public static final String OPERATION_INSERT = "insert";
+    public static final String OPERATION_UPDATE = "update";
+    public static final String OPERATION_DELETE = "delete";
+
+    /**
+     * Method name to pass to {@link android.content.ContentResolver#call(Uri, String, String,
+     * android.os.Bundle)} to sell units of a single product. The id of the product is passed as
+     * the argument, and the number of units to sell is passed in the extras under
+     * {@link #EXTRA_COUNT}. The quantity is decremented in a single statement that only succeeds
+     * if enough units are in stock. The new quantity is returned under {@link #EXTRA_QUANTITY},
+     * which is {@code -1} if the product does not exist or does not have enough units in stock.
+     */
+    public static final String METHOD_SELL = "sell";
+
+    /**
+     * Method name to pass to {@link android.content.ContentResolver#call(Uri, String, String,
+     * android.os.Bundle)} to sell units of many products within a single transaction. The ids of
+     * the products are passed in the extras under {@link #EXTRA_IDS}, and the number of units to
+     * sell of each are passed under {@link #EXTRA_COUNTS}. Each product is sold as with
+     * {@link #METHOD_SELL}, and their new quantities are returned under
+     * {@link #EXTRA_QUANTITIES}.
+     */
+    public static final String METHOD_SELL_BATCH = "sell_batch";
+
+    /**
+     * Method name to pass to {@link android.content.ContentResolver#call(Uri, String, String,
+     * android.os.Bundle)} to get the name of the SQLite tuning profile in use. It is returned
+     * under {@link #EXTRA_TUNING_PROFILE}.
+     */
+    public static final String METHOD_GET_TUNING_PROFILE = "get_tuning_profile";
+
+    /**
+     * Method name to pass to {@link android.content.ContentResolver#call(Uri, String, String,
+     * android.os.Bundle)} to change the SQLite tuning profile. The name of the profile is passed as
+     * the argument. The database is reopened with the new profile, which is remembered across app
+     * restarts. The name of the profile in use afterwards is returned under
+     * {@link #EXTRA_TUNING_PROFILE}.
+     */
+    public static final String METHOD_SET_TUNING_PROFILE = "set_tuning_profile";
+
+    /**
+     * Names of the SQLite tuning profiles. {@link #TUNING_PROFILE_BALANCED} uses write-ahead
+     * logging with relaxed syncing and larger caches, and is the default.
+     * {@link #TUNING_PROFILE_DURABLE} uses write-ahead logging but syncs every transaction.
+     * {@link #TUNING_PROFILE_LEGACY} keeps SQLite's defaults with a rollback journal.
+     */
+    public static final String TUNING_PROFILE_BALANCED = "balanced";
+    public static final String TUNING_PROFILE_DURABLE = "durable";
+    public static final String TUNING_PROFILE_LEGACY = "legacy";
+
+    /**
+     * Extras key for the name of a SQLite tuning profile.
+     */
+    public static final String EXTRA_TUNING_PROFILE = "tuning_profile";
+
+    /**
+     * Extras key for the number of units to sell with {@link #METHOD_SELL}. Defaults to 1.
+     */
+    public static final String EXTRA_COUNT = "count";
+
+    /**
+     * Extras key for the quantity of a product after {@link #METHOD_SELL}.
+     */
+    public static final String EXTRA_QUANTITY = "quantity";
+
+    /**
+     * Extras key for the {@code long[]} of product ids to sell with {@link #METHOD_SELL_BATCH}.
+     */
+    public static final String EXTRA_IDS = "ids";
+
+    /**
+     * Extras key for the {@code int[]} of units to sell with {@link #METHOD_SELL_BATCH}.
+     */
+    public static final String EXTRA_COUNTS = "counts";
+
+    /**
+     * Extras key for the {@code int[]} of quantities after {@link #METHOD_SELL_BATCH}.
+     */
+    public static final String EXTRA_QUANTITIES = "quantities";
+
     private ProductContract() {
         // Private constructor prevents accidental instantiation of this class.
     }
@@ -39,6 +219,13 @@ public final class ProductContract {
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
+        /**
+         * Content URI to search the products table. Matches are ranked so that products whose
+         * name starts with the searched text come first, followed by products with a word in
+         * their name starting with it, followed by all other matches.
+         */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
         /**
          * MIME type of a single piece of data in the products table.
          */
@@ -54,13 +241,260 @@ public final class ProductContract {
          */
         public static final String TABLE_NAME = "products";
 
-        // Column names of the products table.
+        /**
+         * Name of the view that joins each product with its supplier. It has every column below,
+         * so it is what products are queried from.
+         */
+        public static final String VIEW_NAME = "products_with_suppliers";
+
+        // Column names of the products table. Prices are stored as whole cents, which may be
+        // put as an Integer or a Long.
         public static final String COLUMN_NAME = "name";
         public static final String COLUMN_PRICE = "price";
         public static final String COLUMN_QUANTITY = "quantity";
+        public static final String COLUMN_SUPPLIER_ID = "supplier_id";
+        public static final String COLUMN_PICTURE_PATH = "picture_path";
+
+        // Column names joined in from the suppliers table. They may be written through the
+        // product provider as if they were columns of the products table, in which case the
+        // supplier with the given name is created or has its contact details updated.
         public static final String COLUMN_SUPPLIER = "supplier";
         public static final String COLUMN_SUPPLIER_PHONE_NUMBER = "supplier_phone_number";
         public static final String COLUMN_SUPPLIER_EMAIL = "supplier_email";
-        public static final String COLUMN_PICTURE_PATH = "picture_path";
+
+        /**
+         * Returns a content URI that refers to the page of at most {@code limit} products whose
+         * ids follow {@code afterId} in ascending order.
+         *
+         * @param afterId Id of the last row of the previous page. Use {@code 0} for the first
+         *                page.
+         * @param limit   Maximum number of rows in the page.
+         * @return Content URI of the page.
+         */
+        @NonNull
+        public static Uri buildPageUri(long afterId, int limit) {
+            return buildPageUri(SORT_ID, null, null, afterId, limit);
+        }
+
+        /**
+         * Returns a content URI that refers to the page of at most {@code limit} products that
+         * follow some last seen product in the given sort order.
+         *
+         * @param sort     One of the values of {@link #QUERY_PARAMETER_SORT}.
+         * @param filter   {@link #FILTER_LOW_STOCK}, or {@code null} for every product.
+         * @param afterKey Value of the sort column of the last row of the previous page.
+         *                 {@code null} for the first page, or when sorting by id.
+         * @param afterId  Id of the last row of the previous page. Use {@code 0} for the first
+         *                 page. Ignored for the first page when not sorting by id.
+         * @param limit    Maximum number of rows in the page.
+         * @return Content URI of the page.
+         */
+        @NonNull
+        public static Uri buildPageUri(
+                @NonNull String sort,
+                @Nullable String filter,
+                @Nullable String afterKey,
+                long afterId,
+                int limit
+        ) {
+            Uri.Builder builder = buildFilterUri(filter).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SORT, sort);
+            if (afterKey != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey);
+            }
+            if (afterKey != null || SORT_ID.equals(sort)) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Returns a content URI that refers to the products matching a filter.
+         *
+         * @param filter {@link #FILTER_LOW_STOCK}, or {@code null} for every product.
+         * @return Content URI of the products.
+         */
+        @NonNull
+        public static Uri buildFilterUri(@Nullable String filter) {
+            if (filter == null) {
+                return CONTENT_URI;
+            }
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_FILTER, filter)
+                    .build();
+        }
+
+        /**
+         * Returns the column that products are sorted by for a value of
+         * {@link #QUERY_PARAMETER_SORT}.
+         *
+         * @param sort Value of {@link #QUERY_PARAMETER_SORT}.
+         * @return Name of the column. {@code null} if the value is not supported.
+         */
+        @Nullable
+        public static String getSortColumn(@NonNull String sort) {
+            switch (sort) {
+                case SORT_ID:
+                    return _ID;
+                case SORT_NAME:
+                    return COLUMN_NAME;
+                case SORT_PRICE:
+                    return COLUMN_PRICE;
+                case SORT_QUANTITY:
+                    return COLUMN_QUANTITY;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * Returns a content URI that searches products.
+         *
+         * @param query Text to search for.
+         * @param limit Maximum number of matches to return.
+         * @return Content URI of the search.
+         */
+        @NonNull
+        public static Uri buildSearchUri(@NonNull String query, int limit) {
+            return SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_QUERY, query)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Returns a content URI to notify observers with when products change.
+         *
+         * @param id        Id of the single product that changed. {@code -1} if many products
+         *                  changed.
+         * @param operation One of {@link #OPERATION_INSERT}, {@link #OPERATION_UPDATE}, or
+         *                  {@link #OPERATION_DELETE}.
+         * @return Content URI of the change.
+         */
+        @NonNull
+        public static Uri buildChangeUri(long id, @NonNull String operation) {
+            Uri uri = id != -1 ? ContentUris.withAppendedId(CONTENT_URI, id) : CONTENT_URI;
+            return uri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_OPERATION, operation)
+                    .build();
+        }
+    }
+
+    /**
+     * A class that defines constants to help work with data in the suppliers table. Each product
+     * refers to one supplier, so a supplier's contact details are stored once no matter how many
+     * products it supplies.
+     */
+    public static class SupplierEntry implements BaseColumns {
+
+        /**
+         * Content URI to refer to data in the suppliers table.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * MIME type of a single piece of data in the suppliers table.
+         */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * MIME type of a list of data in the suppliers table.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Table name of the suppliers table.
+         */
+        public static final String TABLE_NAME = "suppliers";
+
+        // Column names of the suppliers table.
+        public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_PHONE_NUMBER = "phone_number";
+        public static final String COLUMN_EMAIL = "email";
+    }
+
+    /**
+     * A class that defines constants to help work with the inventory totals over all products.
+     * They are a single row kept up to date as products change, so reading them never scans the
+     * products table.
+     */
+    public static class ProductStatsEntry implements BaseColumns {
+
+        /**
+         * Content URI to refer to the inventory totals.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(ProductEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * MIME type of the inventory totals.
+         */
+        public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /**
+         * Table name of the inventory totals table.
+         */
+        public static final String TABLE_NAME = "product_stats";
+
+        // Column names of the inventory totals table.
+        public static final String COLUMN_PRODUCT_COUNT = "product_count";
+        public static final String COLUMN_TOTAL_UNITS = "total_units";
+        public static final String COLUMN_TOTAL_VALUE = "total_value";
+        public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+    }
+
+    /**
+     * A class that defines constants to help work with the inventory totals of each supplier.
+     * There is one row per supplier, kept up to date as products change. The columns of
+     * {@link ProductStatsEntry} are also present with the totals of the supplier's products.
+     */
+    public static class SupplierStatsEntry implements BaseColumns {
+
+        /**
+         * Content URI to refer to the inventory totals of each supplier.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(ProductStatsEntry.CONTENT_URI, PATH_SUPPLIERS);
+
+        /**
+         * MIME type of a list of inventory totals of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /**
+         * Table name of the supplier totals table.
+         */
+        public static final String TABLE_NAME = "supplier_stats";
+
+        // Column names of the supplier totals table.
+        public static final String COLUMN_SUPPLIER = "supplier";
+    }
+
+    /**
+     * A class that defines constants to help work with the reference counts of product photos.
+     * There is one row per distinct picture path of the products table, holding the number of
+     * products whose picture path it is. Rows are kept up to date as products change, and a row is
+     * deleted once no product refers to its photo anymore. They may only be queried.
+     */
+    public static class PhotoEntry implements BaseColumns {
+
+        /**
+         * Content URI to refer to the reference counts of photos.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PHOTOS);
+
+        /**
+         * MIME type of a list of reference counts of photos.
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PHOTOS;
+
+        /**
+         * Table name of the photo reference counts table.
+         */
+        public static final String TABLE_NAME = "photos";
+
+        // Column names of the photo reference counts table.
+        public static final String COLUMN_PATH = "path";
+        public static final String COLUMN_REFERENCE_COUNT = "reference_count";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,709 @@
+package com.davidread.clothescatalog2.database;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.davidread.clothescatalog2.util.CsvReader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports products into the product provider from a CSV file. The file is read through a buffer
+ * and parsed one record at a time, so memory use stays the same no matter how large the file is.
+ * Each row is validated with the same rules as {@link ProductProvider}, and valid rows are inserted
+ * in chunks, each within a single transaction, through {@link ProductWriteExecutor} so that other
+ * writes take turns with the import. When writing falls behind, parsing waits for a chunk to
+ * finish before reading more. Progress and the result, including the rows that were skipped, are
+ * delivered to a listener on the main thread. The listener may be replaced while the import runs,
+ * so an import started by an activity outlives it when the activity is recreated.
+ * <p>
+ * The first record of the file must be a header naming the columns of
+ * {@link ProductContract.ProductEntry}, in any order. Every column is required except the picture
+ * path. Prices are in dollars with at most two decimal places, such as {@code 19.99}.
+ */
+public class ProductCsvImporter {
+
+    /**
+     * Listener invoked on the main thread as an import progresses.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked each time a chunk of rows has been read.
+         *
+         * @param rowsRead     Number of rows read so far.
+         * @param rowsImported Number of rows inserted so far.
+         * @param percent      Share of the file read so far in percent. {@code -1} if the size of
+         *                     the file is unknown.
+         */
+        void onImportProgress(long rowsRead, long rowsImported, int percent);
+
+        /**
+         * Invoked once the import ends, whether it finished, failed, or was cancelled.
+         *
+         * @param result Result of the import.
+         */
+        void onImportFinished(@NonNull Result result);
+    }
+
+    /**
+     * A row of the file that was skipped, and why.
+     */
+    public static final class RowError {
+
+        /**
+         * Number of the line of the file the row starts on.
+         */
+        private final long lineNumber;
+
+        /**
+         * Why the row was skipped.
+         */
+        private final String message;
+
+        /**
+         * Constructs a new {@link RowError}.
+         *
+         * @param lineNumber Number of the line of the file the row starts on.
+         * @param message    Why the row was skipped.
+         */
+        RowError(long lineNumber, @NonNull String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @NonNull
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /**
+     * Result of an import.
+     */
+    public static final class Result {
+
+        /**
+         * Number of rows read, not counting the header and blank lines.
+         */
+        private final long rowsRead;
+
+        /**
+         * Number of rows inserted.
+         */
+        private final long rowsImported;
+
+        /**
+         * Number of rows skipped.
+         */
+        private final long rowsSkipped;
+
+        /**
+         * Errors of the first {@link #MAX_REPORTED_ERRORS} rows skipped.
+         */
+        private final List<RowError> errors;
+
+        /**
+         * Why the whole import failed. {@code null} if it did not fail.
+         */
+        private final String failureMessage;
+
+        /**
+         * Whether the import was cancelled before reaching the end of the file.
+         */
+        private final boolean isCancelled;
+
+        /**
+         * Constructs a new {@link Result}.
+         *
+         * @param rowsRead       Number of rows read.
+         * @param rowsImported   Number of rows inserted.
+         * @param rowsSkipped    Number of rows skipped.
+         * @param errors         Errors of the first rows skipped.
+         * @param failureMessage Why the whole import failed. {@code null} if it did not fail.
+         * @param isCancelled    Whether the import was cancelled.
+         */
+        Result(
+                long rowsRead,
+                long rowsImported,
+                long rowsSkipped,
+                @NonNull List<RowError> errors,
+                @Nullable String failureMessage,
+                boolean isCancelled
+        ) {
+            this.rowsRead = rowsRead;
+            this.rowsImported = rowsImported;
+            this.rowsSkipped = rowsSkipped;
+            this.errors = Collections.unmodifiableList(errors);
+            this.failureMessage = failureMessage;
+            this.isCancelled = isCancelled;
+        }
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        public long getRowsSkipped() {
+            return rowsSkipped;
+        }
+
+        @NonNull
+        public List<RowError> getErrors() {
+            return errors;
+        }
+
+        @Nullable
+        public String getFailureMessage() {
+            return failureMessage;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+    }
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductCsvImporter.class.getSimpleName();
+
+    /**
+     * Name of the background thread that reads the file.
+     */
+    private static final String THREAD_NAME = "ProductImporter";
+
+    /**
+     * Number of rows inserted within each transaction.
+     */
+    static final int CHUNK_SIZE = 500;
+
+    /**
+     * Maximum number of chunks read but not yet written. Reading waits once it is reached.
+     */
+    private static final int MAX_CHUNKS_IN_FLIGHT = 2;
+
+    /**
+     * Maximum number of skipped rows whose errors are kept for the result.
+     */
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    /**
+     * Columns read from the file, in the order their values are looked up.
+     */
+    private static final String[] COLUMNS = {
+            ProductContract.ProductEntry.COLUMN_NAME,
+            ProductContract.ProductEntry.COLUMN_PRICE,
+            ProductContract.ProductEntry.COLUMN_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_SUPPLIER,
+            ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+            ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL,
+            ProductContract.ProductEntry.COLUMN_PICTURE_PATH
+    };
+
+    /**
+     * Indexes of the columns within {@link #COLUMNS}.
+     */
+    private static final int NAME = 0;
+    private static final int PRICE = 1;
+    private static final int QUANTITY = 2;
+    private static final int SUPPLIER = 3;
+    private static final int SUPPLIER_PHONE_NUMBER = 4;
+    private static final int SUPPLIER_EMAIL = 5;
+    private static final int PICTURE_PATH = 6;
+
+    /**
+     * To open the file and insert products into the product provider.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Performs the inserts.
+     */
+    private final ProductWriteExecutor productWriteExecutor;
+
+    /**
+     * Listener to invoke as the import progresses. {@code null} while detached. Only accessed on
+     * the main thread.
+     */
+    private Listener listener;
+
+    /**
+     * Result of the import if it ended while no listener was set. It is delivered once one is set.
+     * Only accessed on the main thread.
+     */
+    private Result undeliveredResult;
+
+    /**
+     * Posts progress and the result to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * One permit for each chunk that may be read but not yet written.
+     */
+    private final Semaphore chunkPermits = new Semaphore(MAX_CHUNKS_IN_FLIGHT);
+
+    /**
+     * Number of rows inserted so far.
+     */
+    private final AtomicLong rowsImported = new AtomicLong();
+
+    /**
+     * Number of rows skipped so far.
+     */
+    private final AtomicLong rowsSkipped = new AtomicLong();
+
+    /**
+     * Errors of the first {@link #MAX_REPORTED_ERRORS} rows skipped. Guarded by itself.
+     */
+    private final List<RowError> errors = new ArrayList<>();
+
+    /**
+     * Whether {@link #cancel()} was called.
+     */
+    private volatile boolean isCancelled;
+
+    /**
+     * Whether {@link #start(Uri)} was called.
+     */
+    private boolean isStarted;
+
+    /**
+     * Constructs a new {@link ProductCsvImporter}. Each one imports a single file.
+     *
+     * @param context  Any context of this app.
+     * @param listener Listener to invoke on the main thread as the import progresses. {@code null}
+     *                 to set one later with {@link #setListener(Listener)}.
+     */
+    public ProductCsvImporter(@NonNull Context context, @Nullable Listener listener) {
+        this(
+                context.getApplicationContext().getContentResolver(),
+                ProductWriteExecutor.getInstance(context),
+                listener
+        );
+    }
+
+    /**
+     * Constructs a new {@link ProductCsvImporter} that imports through the given resolver.
+     *
+     * @param contentResolver      To open the file and insert products into the product provider.
+     * @param productWriteExecutor Performs the inserts.
+     * @param listener             Listener to invoke on the main thread as the import progresses.
+     */
+    ProductCsvImporter(
+            @NonNull ContentResolver contentResolver,
+            @NonNull ProductWriteExecutor productWriteExecutor,
+            @Nullable Listener listener
+    ) {
+        this.contentResolver = contentResolver;
+        this.productWriteExecutor = productWriteExecutor;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts importing products from a CSV file in the background.
+     *
+     * @param uri Content URI of the file.
+     * @throws IllegalStateException If the import was already started.
+     */
+    public void start(@NonNull Uri uri) {
+        if (isStarted) {
+            throw new IllegalStateException("import already started");
+        }
+        isStarted = true;
+        new Thread(() -> run(uri), THREAD_NAME).start();
+    }
+
+    /**
+     * Replaces the listener to invoke as the import progresses. Progress made while no listener is
+     * set is dropped, but a result is kept and delivered to the next listener set. Must be called
+     * on the main thread.
+     *
+     * @param newListener Listener to invoke from now on. {@code null} to detach the current one,
+     *                    such as when the activity it belongs to is destroyed.
+     */
+    public void setListener(@Nullable Listener newListener) {
+        listener = newListener;
+        if (listener != null && undeliveredResult != null) {
+            Result result = undeliveredResult;
+            undeliveredResult = null;
+            listener.onImportFinished(result);
+        }
+    }
+
+    /**
+     * Stops reading the file. Chunks already read are still inserted, and the listener is still
+     * invoked with the result once they are.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * Reads the whole file, waits for every chunk to be written, and delivers the result. It is
+     * run on the background thread.
+     *
+     * @param uri Content URI of the file.
+     */
+    private void run(@NonNull Uri uri) {
+        long rowsRead = 0;
+        String failureMessage = null;
+        try (AssetFileDescriptor fileDescriptor = contentResolver.openAssetFileDescriptor(
+                uri,
+                "r"
+        )) {
+            if (fileDescriptor == null) {
+                throw new IOException("cannot open " + uri);
+            }
+            CountingInputStream inputStream = new CountingInputStream(
+                    fileDescriptor.createInputStream()
+            );
+            try (CsvReader csvReader = new CsvReader(
+                    new InputStreamReader(inputStream, StandardCharsets.UTF_8)
+            )) {
+                rowsRead = importRecords(csvReader, inputStream, fileDescriptor.getLength());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, e.toString());
+            failureMessage = e.getMessage() != null ? e.getMessage() : e.toString();
+        } catch (SecurityException e) {
+            Log.e(TAG, e.toString());
+            failureMessage = e.toString();
+        }
+
+        // Wait for every chunk still being written.
+        chunkPermits.acquireUninterruptibly(MAX_CHUNKS_IN_FLIGHT);
+        chunkPermits.release(MAX_CHUNKS_IN_FLIGHT);
+
+        List<RowError> reportedErrors;
+        synchronized (errors) {
+            reportedErrors = new ArrayList<>(errors);
+        }
+        Result result = new Result(
+                rowsRead,
+                rowsImported.get(),
+                rowsSkipped.get(),
+                reportedErrors,
+                failureMessage,
+                isCancelled
+        );
+        Log.i(TAG, String.format(
+                Locale.US,
+                "imported %d of %d rows",
+                result.getRowsImported(),
+                result.getRowsRead()
+        ));
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onImportFinished(result);
+            } else {
+                undeliveredResult = result;
+            }
+        });
+    }
+
+    /**
+     * Reads the header and every row of the file, and submits valid rows to be inserted in
+     * chunks.
+     *
+     * @param csvReader   Reads records of the file.
+     * @param inputStream Counts the bytes of the file read so far.
+     * @param totalBytes  Size of the file in bytes. Negative if unknown.
+     * @return The number of rows read.
+     * @throws IOException If reading fails or the header is missing a required column.
+     */
+    private long importRecords(
+            @NonNull CsvReader csvReader,
+            @NonNull CountingInputStream inputStream,
+            long totalBytes
+    ) throws IOException {
+
+        // Find where each column is from the header.
+        List<String> fields = new ArrayList<>();
+        if (!csvReader.readRecord(fields)) {
+            throw new IOException("file is empty");
+        }
+        int fieldCount = fields.size();
+        int[] columnIndices = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columnIndices[i] = indexOfIgnoreCase(fields, COLUMNS[i]);
+            if (columnIndices[i] == -1 && i != PICTURE_PATH) {
+                throw new IOException("header has no " + COLUMNS[i] + " column");
+            }
+        }
+
+        // Parse rows and write them a chunk at a time.
+        long rowsRead = 0;
+        ContentValues[] chunk = new ContentValues[CHUNK_SIZE];
+        int chunkSize = 0;
+        long chunkLineNumber = 0;
+        while (!isCancelled && csvReader.readRecord(fields)) {
+            if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                // Blank line.
+                continue;
+            }
+            rowsRead++;
+            long lineNumber = csvReader.getRecordLineNumber();
+            ContentValues values = parseRow(fields, fieldCount, columnIndices, lineNumber);
+            if (values == null) {
+                continue;
+            }
+            if (chunkSize == 0) {
+                chunkLineNumber = lineNumber;
+            }
+            chunk[chunkSize++] = values;
+            if (chunkSize == chunk.length) {
+                writeChunk(chunk, chunkLineNumber);
+                chunk = new ContentValues[CHUNK_SIZE];
+                chunkSize = 0;
+                postProgress(rowsRead, inputStream.getCount(), totalBytes);
+            }
+        }
+        if (chunkSize > 0) {
+            writeChunk(Arrays.copyOf(chunk, chunkSize), chunkLineNumber);
+        }
+        postProgress(rowsRead, inputStream.getCount(), totalBytes);
+        return rowsRead;
+    }
+
+    /**
+     * Converts the fields of a row into product values and validates them. If the row is invalid,
+     * it is skipped and its error is recorded.
+     *
+     * @param fields        Fields of the row.
+     * @param fieldCount    Number of fields in the header.
+     * @param columnIndices Index of each of {@link #COLUMNS} within the fields. {@code -1} if the
+     *                      column is absent.
+     * @param lineNumber    Number of the line the row starts on.
+     * @return The product values. {@code null} if the row is invalid.
+     */
+    @Nullable
+    private ContentValues parseRow(
+            @NonNull List<String> fields,
+            int fieldCount,
+            @NonNull int[] columnIndices,
+            long lineNumber
+    ) {
+        if (fields.size() != fieldCount) {
+            skipRow(lineNumber, "expected " + fieldCount + " fields but found " + fields.size());
+            return null;
+        }
+        long price = ProductProviderUtils.parseCents(fields.get(columnIndices[PRICE]).trim());
+        if (price == -1) {
+            skipRow(lineNumber, "invalid price");
+            return null;
+        }
+        int quantity = parseQuantity(fields.get(columnIndices[QUANTITY]).trim());
+        if (quantity == -1) {
+            skipRow(lineNumber, "invalid quantity");
+            return null;
+        }
+        String picturePath = columnIndices[PICTURE_PATH] != -1
+                ? fields.get(columnIndices[PICTURE_PATH]).trim()
+                : "";
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMNS[NAME], fields.get(columnIndices[NAME]).trim());
+        values.put(COLUMNS[PRICE], price);
+        values.put(COLUMNS[QUANTITY], quantity);
+        values.put(COLUMNS[SUPPLIER], fields.get(columnIndices[SUPPLIER]).trim());
+        values.put(
+                COLUMNS[SUPPLIER_PHONE_NUMBER],
+                fields.get(columnIndices[SUPPLIER_PHONE_NUMBER]).trim()
+        );
+        values.put(COLUMNS[SUPPLIER_EMAIL], fields.get(columnIndices[SUPPLIER_EMAIL]).trim());
+        if (picturePath.isEmpty()) {
+            values.putNull(COLUMNS[PICTURE_PATH]);
+        } else {
+            values.put(COLUMNS[PICTURE_PATH], picturePath);
+        }
+        if (!ProductProvider.isValidInsertion(values)) {
+            skipRow(lineNumber, "empty name or supplier details");
+            return null;
+        }
+        return values;
+    }
+
+    /**
+     * Submits a chunk of valid rows to be inserted within a single transaction. It first waits
+     * until fewer than {@link #MAX_CHUNKS_IN_FLIGHT} chunks are waiting to be written.
+     *
+     * @param chunk      Rows to insert.
+     * @param lineNumber Number of the line the first row starts on.
+     */
+    private void writeChunk(@NonNull ContentValues[] chunk, long lineNumber) {
+        chunkPermits.acquireUninterruptibly();
+        productWriteExecutor.submit(() -> {
+            try {
+                int countRowsInserted = contentResolver.bulkInsert(
+                        ProductContract.ProductEntry.CONTENT_URI,
+                        chunk
+                );
+                if (countRowsInserted == chunk.length) {
+                    rowsImported.addAndGet(countRowsInserted);
+                } else {
+                    skipRows(lineNumber, chunk.length, "could not insert " + chunk.length
+                            + " rows starting here");
+                }
+                return countRowsInserted;
+            } catch (RuntimeException e) {
+                skipRows(lineNumber, chunk.length, e.toString());
+                throw e;
+            } finally {
+                chunkPermits.release();
+            }
+        }, null);
+    }
+
+    /**
+     * Posts the progress of the import to the listener.
+     *
+     * @param rowsRead   Number of rows read so far.
+     * @param bytesRead  Number of bytes of the file read so far.
+     * @param totalBytes Size of the file in bytes. Negative if unknown.
+     */
+    private void postProgress(long rowsRead, long bytesRead, long totalBytes) {
+        long rowsImportedSoFar = rowsImported.get();
+        int percent = totalBytes > 0 ? (int) Math.min(bytesRead * 100 / totalBytes, 100) : -1;
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onImportProgress(rowsRead, rowsImportedSoFar, percent);
+            }
+        });
+    }
+
+    /**
+     * Records that a row was skipped.
+     *
+     * @param lineNumber Number of the line the row starts on.
+     * @param message    Why the row was skipped.
+     */
+    private void skipRow(long lineNumber, @NonNull String message) {
+        skipRows(lineNumber, 1, message);
+    }
+
+    /**
+     * Records that consecutive rows were skipped for the same reason.
+     *
+     * @param lineNumber Number of the line the first row starts on.
+     * @param count      Number of rows skipped.
+     * @param message    Why the rows were skipped.
+     */
+    private void skipRows(long lineNumber, int count, @NonNull String message) {
+        rowsSkipped.addAndGet(count);
+        synchronized (errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(lineNumber, message));
+            }
+        }
+    }
+
+    /**
+     * Parses a quantity.
+     *
+     * @param text Non-negative whole number.
+     * @return The quantity. {@code -1} if the text is not a valid quantity.
+     */
+    private static int parseQuantity(@NonNull String text) {
+        try {
+            int quantity = Integer.parseInt(text);
+            return quantity >= 0 ? quantity : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the index of the first string in a list equal to the given one, ignoring case and
+     * surrounding whitespace.
+     *
+     * @param strings List to search.
+     * @param string  String to find.
+     * @return The index. {@code -1} if no string in the list is equal.
+     */
+    private static int indexOfIgnoreCase(@NonNull List<String> strings, @NonNull String string) {
+        for (int i = 0; i < strings.size(); i++) {
+            if (strings.get(i).trim().equalsIgnoreCase(string)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * An {@link InputStream} that counts the bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Number of bytes read so far.
+         */
+        private long count;
+
+        /**
+         * Constructs a new {@link CountingInputStream}.
+         *
+         * @param in Stream to read from.
+         */
+        CountingInputStream(@NonNull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -19,28 +19,175 @@ public class ProductDbHelper extends SQLiteOpenHelper {
     private static final String DB_NAME = "products.db";
 
     /**
-     * Version for the database schema. Is constant since the schema will not be upgraded.
+     * Names of the indexes on the products table.
      */
-    private static final int DB_VERSION = 1;
+    static final String INDEX_PRODUCTS_NAME = "products_name_index";
+    static final String INDEX_PRODUCTS_SUPPLIER = "products_supplier_index";
+    static final String INDEX_PRODUCTS_QUANTITY = "products_quantity_index";
+    static final String INDEX_PRODUCTS_SUPPLIER_ID = "products_supplier_id_index";
+    static final String INDEX_PRODUCTS_PRICE = "products_price_index";
+    static final String INDEX_PRODUCTS_LOW_STOCK_NAME = "products_low_stock_name_index";
+    static final String INDEX_PRODUCTS_LOW_STOCK_PRICE = "products_low_stock_price_index";
 
+    /**
+     * Name of the full-text search table that mirrors the name and supplier columns of the
+     * products table. The docid of each of its rows is the id of the product.
+     */
+    static final String TABLE_PRODUCTS_FTS = "products_fts";
 
     /**
-     * Constructs a new {@link ProductDbHelper}.
+     * Name of the table that queues the paths of photos no product refers to anymore, so their
+     * files can be deleted. Its only column is {@link ProductContract.PhotoEntry#COLUMN_PATH}.
+     */
+    static final String TABLE_ORPHANED_PHOTOS = "orphaned_photos";
+
+    /**
+     * Migrations of the database schema, in order. The migration at index {@code i} upgrades the
+     * schema from version {@code i + 1} to version {@code i + 2}. To change the schema, append a
+     * new migration here. Never edit or remove a migration that has shipped.
+     */
+    private static final Migration[] MIGRATIONS = {
+            ProductDbHelper::addProductsIndexes,
+            ProductDbHelper::addProductsSearchTable,
+            ProductDbHelper::addStatsTables,
+            ProductDbHelper::normalizeSuppliers,
+            ProductDbHelper::addPhotoReferenceCounts,
+            ProductDbHelper::addOrphanedPhotosQueue,
+            ProductDbHelper::addSortIndexes
+    };
+
+    /**
+     * Version for the database schema. Version 1 is the schema created by
+     * {@link #createProductsTable(SQLiteDatabase)}, and each migration adds one version.
+     */
+    static final int DB_VERSION = 1 + MIGRATIONS.length;
+
+    /**
+     * A single step that upgrades the database schema by one version.
+     */
+    interface Migration {
+
+        /**
+         * Upgrades the database schema by one version. It is run within the transaction of
+         * {@link #onCreate(SQLiteDatabase)} or {@link #onUpgrade(SQLiteDatabase, int, int)}.
+         *
+         * @param db The database being upgraded.
+         */
+        void migrate(@NonNull SQLiteDatabase db);
+    }
+
+    /**
+     * SQLite settings applied each time the database is opened.
+     */
+    private final ProductDbTuning tuning;
+
+    /**
+     * Constructs a new {@link ProductDbHelper} with the default tuning profile.
      *
      * @param context For the superclass.
      */
     public ProductDbHelper(@Nullable Context context) {
-        super(context, DB_NAME, null, DB_VERSION);
+        this(context, ProductDbTuning.BALANCED);
+    }
+
+    /**
+     * Constructs a new {@link ProductDbHelper}.
+     *
+     * @param context For the superclass.
+     * @param tuning  SQLite settings applied each time the database is opened.
+     */
+    public ProductDbHelper(@Nullable Context context, @NonNull ProductDbTuning tuning) {
+        this(context, DB_NAME, tuning);
+    }
+
+    /**
+     * Constructs a new {@link ProductDbHelper} for a database with the given file name.
+     *
+     * @param context For the superclass.
+     * @param name    File name for the database. {@code null} for an in-memory database.
+     * @param tuning  SQLite settings applied each time the database is opened.
+     */
+    ProductDbHelper(
+            @Nullable Context context,
+            @Nullable String name,
+            @NonNull ProductDbTuning tuning
+    ) {
+        super(context, name, null, DB_VERSION);
+        this.tuning = tuning;
+    }
+
+    /**
+     * Returns the SQLite settings applied each time the database is opened.
+     *
+     * @return The tuning profile.
+     */
+    @NonNull
+    public ProductDbTuning getTuning() {
+        return tuning;
+    }
+
+    /**
+     * Callback invoked when the database connection is being configured, before it is created or
+     * upgraded. It enforces foreign keys and applies {@link #tuning}.
+     *
+     * @param db The database being configured.
+     */
+    @Override
+    public void onConfigure(@NonNull SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+        if (tuning.isWriteAheadLoggingEnabled()) {
+            db.enableWriteAheadLogging();
+        } else {
+            db.disableWriteAheadLogging();
+        }
+        tuning.applyPragmas(db);
     }
 
     /**
      * Callback invoked when the database is created for the first time. It initializes the database
-     * by creating a new products table.
+     * by creating the version 1 products table and running every migration, so a new database has
+     * exactly the same schema as an upgraded one.
      *
      * @param db The database being created.
      */
     @Override
     public void onCreate(@NonNull SQLiteDatabase db) {
+        createProductsTable(db);
+        migrate(db, 1, DB_VERSION);
+    }
+
+    /**
+     * Callback invoked when the database schema is upgraded. It runs every migration between the
+     * old and the new version in order.
+     *
+     * @param db         The database being upgraded.
+     * @param oldVersion The old database version.
+     * @param newVersion The new database version.
+     */
+    @Override
+    public void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+        migrate(db, oldVersion, newVersion);
+    }
+
+    /**
+     * Runs the migrations that upgrade the database schema between two versions.
+     *
+     * @param db          The database being upgraded.
+     * @param fromVersion Version of the current schema.
+     * @param toVersion   Version to upgrade the schema to.
+     */
+    private static void migrate(@NonNull SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion; version < toVersion; version++) {
+            MIGRATIONS[version - 1].migrate(db);
+        }
+    }
+
+    /**
+     * Creates the products table as it was in version 1 of the schema.
+     *
+     * @param db The database being created.
+     */
+    private static void createProductsTable(@NonNull SQLiteDatabase db) {
         final String SQL_CREATE_PRODUCTS_TABLE = "CREATE TABLE " + ProductContract.ProductEntry.TABLE_NAME + " ("
                 + ProductContract.ProductEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + ProductContract.ProductEntry.COLUMN_NAME + " TEXT NOT NULL, "
@@ -54,14 +201,516 @@ public class ProductDbHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * Callback invoked when the database schema is upgraded. It does nothing, since the schema will
-     * not be upgraded.
+     * Migration to version 2. It adds indexes on the name, supplier, and quantity columns so that
+     * filtering and sorting on them no longer scans the whole products table. The name index is
+     * case insensitive to match how names are searched and sorted.
      *
-     * @param db         The database being upgraded.
-     * @param oldVersion The old database version.
-     * @param newVersion The new database version.
+     * @param db The database being upgraded.
      */
-    @Override
-    public void onUpgrade(@NonNull SQLiteDatabase db, int oldVersion, int newVersion) {
+    private static void addProductsIndexes(@NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_NAME + " ON "
+                + ProductContract.ProductEntry.TABLE_NAME + " ("
+                + ProductContract.ProductEntry.COLUMN_NAME + " COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_SUPPLIER + " ON "
+                + ProductContract.ProductEntry.TABLE_NAME + " ("
+                + ProductContract.ProductEntry.COLUMN_SUPPLIER + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_QUANTITY + " ON "
+                + ProductContract.ProductEntry.TABLE_NAME + " ("
+                + ProductContract.ProductEntry.COLUMN_QUANTITY + ");");
+    }
+
+    /**
+     * Migration to version 3. It adds a full-text search table mirroring the name and supplier
+     * columns of the products table, fills it with every existing product, and adds triggers that
+     * keep it in sync with the products table. Prefixes of 2 and 3 characters are indexed so that
+     * searching while typing stays fast.
+     *
+     * @param db The database being upgraded.
+     */
+    private static void addProductsSearchTable(@NonNull SQLiteDatabase db) {
+        final String name = ProductContract.ProductEntry.COLUMN_NAME;
+        final String supplier = ProductContract.ProductEntry.COLUMN_SUPPLIER;
+        final String id = ProductContract.ProductEntry._ID;
+        final String products = ProductContract.ProductEntry.TABLE_NAME;
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PRODUCTS_FTS + " USING fts4("
+                + name + ", " + supplier + ", prefix=\"2,3\");");
+        db.execSQL("INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, " + name + ", " + supplier
+                + ") SELECT " + id + ", " + name + ", " + supplier + " FROM " + products + ";");
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_FTS + "_insert AFTER INSERT ON " + products
+                + " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, " + name + ", "
+                + supplier + ") VALUES (new." + id + ", new." + name + ", new." + supplier
+                + "); END;");
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_FTS + "_update AFTER UPDATE OF " + name
+                + ", " + supplier + " ON " + products + " BEGIN UPDATE " + TABLE_PRODUCTS_FTS
+                + " SET " + name + " = new." + name + ", " + supplier + " = new." + supplier
+                + " WHERE docid = old." + id + "; END;");
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_FTS + "_delete AFTER DELETE ON " + products
+                + " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + id
+                + "; END;");
+    }
+
+    /**
+     * Migration to version 4. It adds tables holding inventory totals over all products and per
+     * supplier, computes them from every existing product, and adds triggers that adjust them by
+     * the difference each inserted, updated, or deleted product makes. Reading the totals is then
+     * a lookup of a single row no matter how many products there are.
+     *
+     * @param db The database being upgraded.
+     */
+    private static void addStatsTables(@NonNull SQLiteDatabase db) {
+        final String products = ProductContract.ProductEntry.TABLE_NAME;
+        final String price = ProductContract.ProductEntry.COLUMN_PRICE;
+        final String quantity = ProductContract.ProductEntry.COLUMN_QUANTITY;
+        final String supplier = ProductContract.ProductEntry.COLUMN_SUPPLIER;
+        final String productStats = ProductContract.ProductStatsEntry.TABLE_NAME;
+        final String supplierStats = ProductContract.SupplierStatsEntry.TABLE_NAME;
+        final String productCount = ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT;
+        final String totalUnits = ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS;
+        final String totalValue = ProductContract.ProductStatsEntry.COLUMN_TOTAL_VALUE;
+        final String lowStockCount = ProductContract.ProductStatsEntry.COLUMN_LOW_STOCK_COUNT;
+        final String totalColumns = productCount + " INTEGER NOT NULL DEFAULT 0, "
+                + totalUnits + " INTEGER NOT NULL DEFAULT 0, "
+                + totalValue + " INTEGER NOT NULL DEFAULT 0, "
+                + lowStockCount + " INTEGER NOT NULL DEFAULT 0";
+
+        // The low stock threshold is written out, so this migration never changes once shipped.
+        final String totals = "COUNT(*), IFNULL(SUM(" + quantity + "), 0), IFNULL(SUM(" + price
+                + " * " + quantity + "), 0), IFNULL(SUM(" + quantity + " <= 5), 0)";
+
+        db.execSQL("CREATE TABLE " + productStats + " ("
+                + ProductContract.ProductStatsEntry._ID + " INTEGER PRIMARY KEY CHECK ("
+                + ProductContract.ProductStatsEntry._ID + " = 1), " + totalColumns + ");");
+        db.execSQL("INSERT INTO " + productStats + " SELECT 1, " + totals + " FROM " + products
+                + ";");
+        db.execSQL("CREATE TABLE " + supplierStats + " ("
+                + ProductContract.SupplierStatsEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + " TEXT NOT NULL UNIQUE, "
+                + totalColumns + ");");
+        db.execSQL("INSERT INTO " + supplierStats + " ("
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + ", " + productCount + ", "
+                + totalUnits + ", " + totalValue + ", " + lowStockCount + ") SELECT " + supplier
+                + ", " + totals + " FROM " + products + " GROUP BY " + supplier + ";");
+
+        db.execSQL("CREATE TRIGGER " + productStats + "_insert AFTER INSERT ON " + products
+                + " BEGIN "
+                + adjustTotalsSql(productStats, null, "new", "+") + " "
+                + "INSERT OR IGNORE INTO " + supplierStats + " ("
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + ") VALUES (new." + supplier
+                + "); "
+                + adjustTotalsSql(supplierStats, "new", "new", "+") + " "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + productStats + "_delete AFTER DELETE ON " + products
+                + " BEGIN "
+                + adjustTotalsSql(productStats, null, "old", "-") + " "
+                + adjustTotalsSql(supplierStats, "old", "old", "-") + " "
+                + deleteEmptySupplierStatsSql("old") + " "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + productStats + "_update AFTER UPDATE OF " + price + ", "
+                + quantity + ", " + supplier + " ON " + products
+                + " BEGIN "
+                + adjustTotalsSql(productStats, null, "old", "-") + " "
+                + adjustTotalsSql(productStats, null, "new", "+") + " "
+                + adjustTotalsSql(supplierStats, "old", "old", "-") + " "
+                + deleteEmptySupplierStatsSql("old") + " "
+                + "INSERT OR IGNORE INTO " + supplierStats + " ("
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + ") VALUES (new." + supplier
+                + "); "
+                + adjustTotalsSql(supplierStats, "new", "new", "+") + " "
+                + "END;");
+    }
+
+    /**
+     * Returns a trigger statement of migrations 4 and 5 that adds a product to, or removes a
+     * product from, a table of inventory totals. Migration 5 only uses it without a supplier row.
+     * The low stock threshold of those migrations is written out rather than read from
+     * {@link ProductContract#LOW_STOCK_THRESHOLD}, so they never change once shipped.
+     *
+     * @param table       Table of inventory totals to update.
+     * @param supplierRow {@code "new"} or {@code "old"} to only update the totals of that row's
+     *                    supplier. {@code null} to update every row.
+     * @param productRow  {@code "new"} or {@code "old"}, the row of the product to add or remove.
+     * @param operator    {@code "+"} to add the product, {@code "-"} to remove it.
+     * @return The statement.
+     */
+    @NonNull
+    private static String adjustTotalsSql(
+            @NonNull String table,
+            @Nullable String supplierRow,
+            @NonNull String productRow,
+            @NonNull String operator
+    ) {
+        final String price = productRow + "." + ProductContract.ProductEntry.COLUMN_PRICE;
+        final String quantity = productRow + "." + ProductContract.ProductEntry.COLUMN_QUANTITY;
+        final String productCount = ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT;
+        final String totalUnits = ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS;
+        final String totalValue = ProductContract.ProductStatsEntry.COLUMN_TOTAL_VALUE;
+        final String lowStockCount = ProductContract.ProductStatsEntry.COLUMN_LOW_STOCK_COUNT;
+        return "UPDATE " + table + " SET "
+                + productCount + " = " + productCount + " " + operator + " 1, "
+                + totalUnits + " = " + totalUnits + " " + operator + " " + quantity + ", "
+                + totalValue + " = " + totalValue + " " + operator + " " + price + " * "
+                + quantity + ", "
+                + lowStockCount + " = " + lowStockCount + " " + operator + " (" + quantity
+                + " <= 5)"
+                + (supplierRow != null
+                ? " WHERE " + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + " = "
+                + supplierRow + "." + ProductContract.ProductEntry.COLUMN_SUPPLIER
+                : "")
+                + ";";
+    }
+
+    /**
+     * Returns a trigger statement of migration 4 that deletes the totals of a supplier once it has
+     * no products left.
+     *
+     * @param supplierRow {@code "new"} or {@code "old"}, the row holding the supplier.
+     * @return The statement.
+     */
+    @NonNull
+    private static String deleteEmptySupplierStatsSql(@NonNull String supplierRow) {
+        return "DELETE FROM " + ProductContract.SupplierStatsEntry.TABLE_NAME + " WHERE "
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + " = " + supplierRow + "."
+                + ProductContract.ProductEntry.COLUMN_SUPPLIER + " AND "
+                + ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT + " = 0;";
+    }
+
+    /**
+     * Migration to version 5. It moves the supplier, supplier phone number, and supplier email
+     * columns of the products table into a suppliers table with one row per distinct supplier, and
+     * replaces them with a foreign key to it. Where products of the same supplier disagree on its
+     * contact details, those of the most recently added product are kept. A view joining each
+     * product with its supplier keeps the old columns available to queries. The products table is
+     * rebuilt since SQLite cannot drop columns, so its indexes and triggers are created again, and
+     * triggers on the suppliers table keep the search and supplier totals tables up to date when a
+     * supplier is renamed.
+     *
+     * @param db The database being upgraded.
+     */
+    private static void normalizeSuppliers(@NonNull SQLiteDatabase db) {
+        final String products = ProductContract.ProductEntry.TABLE_NAME;
+        final String productsNew = products + "_new";
+        final String id = ProductContract.ProductEntry._ID;
+        final String name = ProductContract.ProductEntry.COLUMN_NAME;
+        final String price = ProductContract.ProductEntry.COLUMN_PRICE;
+        final String quantity = ProductContract.ProductEntry.COLUMN_QUANTITY;
+        final String supplierId = ProductContract.ProductEntry.COLUMN_SUPPLIER_ID;
+        final String picturePath = ProductContract.ProductEntry.COLUMN_PICTURE_PATH;
+        final String supplier = ProductContract.ProductEntry.COLUMN_SUPPLIER;
+        final String supplierPhoneNumber = ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER;
+        final String supplierEmail = ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL;
+        final String suppliers = ProductContract.SupplierEntry.TABLE_NAME;
+        final String suppliersName = ProductContract.SupplierEntry.COLUMN_NAME;
+        final String suppliersPhoneNumber = ProductContract.SupplierEntry.COLUMN_PHONE_NUMBER;
+        final String suppliersEmail = ProductContract.SupplierEntry.COLUMN_EMAIL;
+        final String supplierStats = ProductContract.SupplierStatsEntry.TABLE_NAME;
+        final String productStats = ProductContract.ProductStatsEntry.TABLE_NAME;
+
+        // Create the suppliers table with one row per distinct supplier.
+        db.execSQL("CREATE TABLE " + suppliers + " ("
+                + ProductContract.SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + suppliersName + " TEXT NOT NULL UNIQUE, "
+                + suppliersPhoneNumber + " TEXT NOT NULL, "
+                + suppliersEmail + " TEXT NOT NULL);");
+        db.execSQL("INSERT INTO " + suppliers + " (" + suppliersName + ", " + suppliersPhoneNumber
+                + ", " + suppliersEmail + ") SELECT " + supplier + ", " + supplierPhoneNumber + ", "
+                + supplierEmail + " FROM " + products + " WHERE " + id + " IN (SELECT MAX(" + id
+                + ") FROM " + products + " GROUP BY " + supplier + ") ORDER BY " + id + ";");
+
+        // Rebuild the products table with a foreign key in place of the supplier columns. The
+        // AUTOINCREMENT counter moves along, so ids of deleted products are never reused.
+        db.execSQL("CREATE TABLE " + productsNew + " ("
+                + id + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + name + " TEXT NOT NULL, "
+                + price + " INTEGER NOT NULL DEFAULT 0, "
+                + quantity + " INTEGER NOT NULL DEFAULT 0, "
+                + supplierId + " INTEGER NOT NULL REFERENCES " + suppliers + " ("
+                + ProductContract.SupplierEntry._ID + "), "
+                + picturePath + " TEXT);");
+        db.execSQL("INSERT INTO " + productsNew + " (" + id + ", " + name + ", " + price + ", "
+                + quantity + ", " + supplierId + ", " + picturePath + ") SELECT p." + id + ", p."
+                + name + ", p." + price + ", p." + quantity + ", s."
+                + ProductContract.SupplierEntry._ID + ", p." + picturePath + " FROM " + products
+                + " p JOIN " + suppliers + " s ON s." + suppliersName + " = p." + supplier + ";");
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + productsNew + "';");
+        db.execSQL("UPDATE sqlite_sequence SET name = '" + productsNew + "' WHERE name = '"
+                + products + "';");
+        db.execSQL("DROP TABLE " + products + ";");
+        db.execSQL("ALTER TABLE " + productsNew + " RENAME TO " + products + ";");
+
+        // Indexes. Dropping the table also dropped those of migration 2.
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_NAME + " ON " + products + " (" + name
+                + " COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_QUANTITY + " ON " + products + " ("
+                + quantity + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_SUPPLIER_ID + " ON " + products + " ("
+                + supplierId + ");");
+
+        // View with the columns the products table had before.
+        db.execSQL("CREATE VIEW " + ProductContract.ProductEntry.VIEW_NAME + " AS SELECT p." + id
+                + " AS " + id + ", p." + name + " AS " + name + ", p." + price + " AS " + price
+                + ", p." + quantity + " AS " + quantity + ", p." + supplierId + " AS " + supplierId
+                + ", s." + suppliersName + " AS " + supplier + ", s." + suppliersPhoneNumber
+                + " AS " + supplierPhoneNumber + ", s." + suppliersEmail + " AS " + supplierEmail
+                + ", p." + picturePath + " AS " + picturePath + " FROM " + products + " p JOIN "
+                + suppliers + " s ON s." + ProductContract.SupplierEntry._ID + " = p."
+                + supplierId + ";");
+
+        // Search triggers. The search table keeps the supplier name, so it needs no rebuild.
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_FTS + "_insert AFTER INSERT ON " + products
+                + " BEGIN INSERT INTO " + TABLE_PRODUCTS_FTS + " (docid, " + name + ", "
+                + supplier + ") VALUES (new." + id + ", new." + name + ", "
+                + supplierNameSql("new") + "); END;");
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_FTS + "_update AFTER UPDATE OF " + name
+                + ", " + supplierId + " ON " + products + " BEGIN UPDATE " + TABLE_PRODUCTS_FTS
+                + " SET " + name + " = new." + name + ", " + supplier + " = "
+                + supplierNameSql("new") + " WHERE docid = old." + id + "; END;");
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_FTS + "_delete AFTER DELETE ON " + products
+                + " BEGIN DELETE FROM " + TABLE_PRODUCTS_FTS + " WHERE docid = old." + id
+                + "; END;");
+
+        // Totals triggers. Supplier totals stay keyed by supplier name.
+        db.execSQL("CREATE TRIGGER " + productStats + "_insert AFTER INSERT ON " + products
+                + " BEGIN "
+                + adjustTotalsSql(productStats, null, "new", "+") + " "
+                + insertSupplierStatsSql("new") + " "
+                + adjustSupplierTotalsSql("new", "+") + " "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + productStats + "_delete AFTER DELETE ON " + products
+                + " BEGIN "
+                + adjustTotalsSql(productStats, null, "old", "-") + " "
+                + adjustSupplierTotalsSql("old", "-") + " "
+                + deleteEmptySupplierStatsByIdSql("old") + " "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + productStats + "_update AFTER UPDATE OF " + price + ", "
+                + quantity + ", " + supplierId + " ON " + products
+                + " BEGIN "
+                + adjustTotalsSql(productStats, null, "old", "-") + " "
+                + adjustTotalsSql(productStats, null, "new", "+") + " "
+                + adjustSupplierTotalsSql("old", "-") + " "
+                + deleteEmptySupplierStatsByIdSql("old") + " "
+                + insertSupplierStatsSql("new") + " "
+                + adjustSupplierTotalsSql("new", "+") + " "
+                + "END;");
+
+        // Renaming a supplier renames it in the search and supplier totals tables.
+        db.execSQL("CREATE TRIGGER " + suppliers + "_rename AFTER UPDATE OF " + suppliersName
+                + " ON " + suppliers + " BEGIN UPDATE " + TABLE_PRODUCTS_FTS + " SET " + supplier
+                + " = new." + suppliersName + " WHERE docid IN (SELECT " + id + " FROM " + products
+                + " WHERE " + supplierId + " = new." + ProductContract.SupplierEntry._ID + "); "
+                + "UPDATE " + supplierStats + " SET "
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + " = new." + suppliersName
+                + " WHERE " + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + " = old."
+                + suppliersName + "; END;");
+    }
+
+    /**
+     * Returns an expression of migration 5 that selects the name of the supplier of a product.
+     *
+     * @param productRow {@code "new"} or {@code "old"}, the row of the product.
+     * @return The expression.
+     */
+    @NonNull
+    private static String supplierNameSql(@NonNull String productRow) {
+        return "(SELECT " + ProductContract.SupplierEntry.COLUMN_NAME + " FROM "
+                + ProductContract.SupplierEntry.TABLE_NAME + " WHERE "
+                + ProductContract.SupplierEntry._ID + " = " + productRow + "."
+                + ProductContract.ProductEntry.COLUMN_SUPPLIER_ID + ")";
+    }
+
+    /**
+     * Returns a trigger statement of migration 5 that adds a product to, or removes a product
+     * from, the totals of its supplier. Its low stock threshold is written out, so it never
+     * changes once shipped.
+     *
+     * @param productRow {@code "new"} or {@code "old"}, the row of the product to add or remove.
+     * @param operator   {@code "+"} to add the product, {@code "-"} to remove it.
+     * @return The statement.
+     */
+    @NonNull
+    private static String adjustSupplierTotalsSql(
+            @NonNull String productRow,
+            @NonNull String operator
+    ) {
+        final String price = productRow + "." + ProductContract.ProductEntry.COLUMN_PRICE;
+        final String quantity = productRow + "." + ProductContract.ProductEntry.COLUMN_QUANTITY;
+        final String productCount = ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT;
+        final String totalUnits = ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS;
+        final String totalValue = ProductContract.ProductStatsEntry.COLUMN_TOTAL_VALUE;
+        final String lowStockCount = ProductContract.ProductStatsEntry.COLUMN_LOW_STOCK_COUNT;
+        return "UPDATE " + ProductContract.SupplierStatsEntry.TABLE_NAME + " SET "
+                + productCount + " = " + productCount + " " + operator + " 1, "
+                + totalUnits + " = " + totalUnits + " " + operator + " " + quantity + ", "
+                + totalValue + " = " + totalValue + " " + operator + " " + price + " * "
+                + quantity + ", "
+                + lowStockCount + " = " + lowStockCount + " " + operator + " (" + quantity
+                + " <= 5)"
+                + " WHERE " + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + " = "
+                + supplierNameSql(productRow) + ";";
+    }
+
+    /**
+     * Returns a trigger statement of migration 5 that creates empty totals for the supplier of a
+     * product unless it already has totals.
+     *
+     * @param productRow {@code "new"} or {@code "old"}, the row of the product.
+     * @return The statement.
+     */
+    @NonNull
+    private static String insertSupplierStatsSql(@NonNull String productRow) {
+        return "INSERT OR IGNORE INTO " + ProductContract.SupplierStatsEntry.TABLE_NAME + " ("
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + ") VALUES ("
+                + supplierNameSql(productRow) + ");";
+    }
+
+    /**
+     * Returns a trigger statement of migration 5 that deletes the totals of the supplier of a
+     * product once the supplier has no products left.
+     *
+     * @param productRow {@code "new"} or {@code "old"}, the row of the product.
+     * @return The statement.
+     */
+    @NonNull
+    private static String deleteEmptySupplierStatsByIdSql(@NonNull String productRow) {
+        return "DELETE FROM " + ProductContract.SupplierStatsEntry.TABLE_NAME + " WHERE "
+                + ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER + " = "
+                + supplierNameSql(productRow) + " AND "
+                + ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT + " = 0;";
+    }
+
+    /**
+     * Migration to version 6. It adds a table counting the products that refer to each photo,
+     * computes it from every existing product, and adds triggers that adjust it as products are
+     * inserted, deleted, or have their picture path changed. A photo's row is deleted once its
+     * count drops to zero. Photos are stored once per distinct content, so many products may share
+     * one file, and the counts tell when a file is no longer needed without scanning the products
+     * table.
+     *
+     * @param db The database being upgraded.
+     */
+    private static void addPhotoReferenceCounts(@NonNull SQLiteDatabase db) {
+        final String products = ProductContract.ProductEntry.TABLE_NAME;
+        final String picturePath = ProductContract.ProductEntry.COLUMN_PICTURE_PATH;
+        final String photos = ProductContract.PhotoEntry.TABLE_NAME;
+        final String path = ProductContract.PhotoEntry.COLUMN_PATH;
+        final String referenceCount = ProductContract.PhotoEntry.COLUMN_REFERENCE_COUNT;
+
+        db.execSQL("CREATE TABLE " + photos + " ("
+                + ProductContract.PhotoEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + path + " TEXT NOT NULL UNIQUE, "
+                + referenceCount + " INTEGER NOT NULL DEFAULT 0);");
+        db.execSQL("INSERT INTO " + photos + " (" + path + ", " + referenceCount + ") SELECT "
+                + picturePath + ", COUNT(*) FROM " + products + " WHERE " + picturePath
+                + " IS NOT NULL GROUP BY " + picturePath + ";");
+
+        db.execSQL("CREATE TRIGGER " + photos + "_insert AFTER INSERT ON " + products
+                + " WHEN new." + picturePath + " IS NOT NULL BEGIN "
+                + addPhotoReferenceSql("new") + " "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + photos + "_delete AFTER DELETE ON " + products
+                + " WHEN old." + picturePath + " IS NOT NULL BEGIN "
+                + removePhotoReferenceSql("old") + " "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + photos + "_update_old AFTER UPDATE OF " + picturePath
+                + " ON " + products + " WHEN old." + picturePath + " IS NOT NULL AND old."
+                + picturePath + " IS NOT new." + picturePath + " BEGIN "
+                + removePhotoReferenceSql("old") + " "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + photos + "_update_new AFTER UPDATE OF " + picturePath
+                + " ON " + products + " WHEN new." + picturePath + " IS NOT NULL AND old."
+                + picturePath + " IS NOT new." + picturePath + " BEGIN "
+                + addPhotoReferenceSql("new") + " "
+                + "END;");
+    }
+
+    /**
+     * Returns trigger statements of migration 6 that count a product as referring to its photo.
+     *
+     * @param productRow {@code "new"} or {@code "old"}, the row of the product.
+     * @return The statements.
+     */
+    @NonNull
+    private static String addPhotoReferenceSql(@NonNull String productRow) {
+        final String photos = ProductContract.PhotoEntry.TABLE_NAME;
+        final String path = ProductContract.PhotoEntry.COLUMN_PATH;
+        final String referenceCount = ProductContract.PhotoEntry.COLUMN_REFERENCE_COUNT;
+        final String picturePath = productRow + "."
+                + ProductContract.ProductEntry.COLUMN_PICTURE_PATH;
+        return "INSERT OR IGNORE INTO " + photos + " (" + path + ") VALUES (" + picturePath
+                + "); UPDATE " + photos + " SET " + referenceCount + " = " + referenceCount
+                + " + 1 WHERE " + path + " = " + picturePath + ";";
+    }
+
+    /**
+     * Returns trigger statements of migration 6 that stop counting a product as referring to its
+     * photo, and delete the photo's row once no product refers to it.
+     *
+     * @param productRow {@code "new"} or {@code "old"}, the row of the product.
+     * @return The statements.
+     */
+    @NonNull
+    private static String removePhotoReferenceSql(@NonNull String productRow) {
+        final String photos = ProductContract.PhotoEntry.TABLE_NAME;
+        final String path = ProductContract.PhotoEntry.COLUMN_PATH;
+        final String referenceCount = ProductContract.PhotoEntry.COLUMN_REFERENCE_COUNT;
+        final String picturePath = productRow + "."
+                + ProductContract.ProductEntry.COLUMN_PICTURE_PATH;
+        return "UPDATE " + photos + " SET " + referenceCount + " = " + referenceCount
+                + " - 1 WHERE " + path + " = " + picturePath + "; DELETE FROM " + photos
+                + " WHERE " + path + " = " + picturePath + " AND " + referenceCount + " <= 0;";
+    }
+
+    /**
+     * Migration to version 7. It adds a table that queues the path of each photo whose last
+     * reference goes away, and triggers that fill it as rows are deleted from the photo reference
+     * counts table and take paths back out of it when a photo is referred to again. The product
+     * provider reads the queue after products change to delete orphaned files right away, instead
+     * of scanning the products table for every file.
+     *
+     * @param db The database being upgraded.
+     */
+    private static void addOrphanedPhotosQueue(@NonNull SQLiteDatabase db) {
+        final String photos = ProductContract.PhotoEntry.TABLE_NAME;
+        final String path = ProductContract.PhotoEntry.COLUMN_PATH;
+
+        db.execSQL("CREATE TABLE " + TABLE_ORPHANED_PHOTOS + " ("
+                + path + " TEXT PRIMARY KEY NOT NULL);");
+
+        db.execSQL("CREATE TRIGGER " + TABLE_ORPHANED_PHOTOS + "_insert AFTER DELETE ON "
+                + photos + " BEGIN "
+                + "INSERT OR IGNORE INTO " + TABLE_ORPHANED_PHOTOS + " (" + path + ") VALUES (old."
+                + path + "); "
+                + "END;");
+        db.execSQL("CREATE TRIGGER " + TABLE_ORPHANED_PHOTOS + "_delete AFTER INSERT ON "
+                + photos + " BEGIN "
+                + "DELETE FROM " + TABLE_ORPHANED_PHOTOS + " WHERE " + path + " = new." + path
+                + "; "
+                + "END;");
+    }
+
+    /**
+     * Migration to version 8. It adds an index on the price column, so products can be paged in
+     * price order without sorting the whole table, and partial indexes on the name and price of
+     * low stock products, so the low stock filter in name or price order reads only matching rows.
+     * Low stock products in quantity order are already read off the quantity index. The partial
+     * indexes are only used for the exact {@code quantity <= 5} expression that the product
+     * provider filters with. The threshold is written out, so this migration never changes once
+     * shipped, and changing {@link ProductContract#LOW_STOCK_THRESHOLD} requires a migration that
+     * rebuilds these indexes.
+     *
+     * @param db The database being upgraded.
+     */
+    private static void addSortIndexes(@NonNull SQLiteDatabase db) {
+        final String products = ProductContract.ProductEntry.TABLE_NAME;
+        final String name = ProductContract.ProductEntry.COLUMN_NAME;
+        final String price = ProductContract.ProductEntry.COLUMN_PRICE;
+        final String lowStockWhere = " WHERE " + ProductContract.ProductEntry.COLUMN_QUANTITY
+                + " <= 5";
+
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_PRICE + " ON " + products + " (" + price
+                + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_LOW_STOCK_NAME + " ON " + products + " ("
+                + name + " COLLATE NOCASE)" + lowStockWhere + ";");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_LOW_STOCK_PRICE + " ON " + products + " ("
+                + price + ")" + lowStockWhere + ";");
     }
 }
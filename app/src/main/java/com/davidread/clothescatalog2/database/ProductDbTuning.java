@@ -0,0 +1,211 @@
+package com.davidread.clothescatalog2.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A named set of SQLite settings that {@link ProductDbHelper} applies each time it opens the
+ * database. It controls the journal mode, how often SQLite waits for writes to reach storage, and
+ * how much memory SQLite may use for caching pages, memory mapping the database file, and
+ * temporary tables.
+ * <p>
+ * With write-ahead logging, readers no longer wait for writers and Android keeps a pool of
+ * connections so several queries can run at once. The other settings are pragmas, which only
+ * apply to the primary connection. That connection performs every write, so the synchronous level
+ * applies to all writes, while pooled read connections keep SQLite's default cache settings.
+ */
+public final class ProductDbTuning {
+
+    /**
+     * Values of the synchronous pragma.
+     */
+    public static final int SYNCHRONOUS_OFF = 0;
+    public static final int SYNCHRONOUS_NORMAL = 1;
+    public static final int SYNCHRONOUS_FULL = 2;
+
+    /**
+     * SQLite's defaults with a rollback journal. Readers and writers block each other.
+     */
+    public static final ProductDbTuning LEGACY = new ProductDbTuning(
+            ProductContract.TUNING_PROFILE_LEGACY,
+            false,
+            SYNCHRONOUS_FULL,
+            0,
+            0,
+            false
+    );
+
+    /**
+     * Write-ahead logging, so reads run on pooled connections without waiting for writes. Writes on
+     * the primary connection wait less for storage and use a larger page cache, memory mapping,
+     * and temporary tables in memory. Pooled read connections only get write-ahead logging. A
+     * committed transaction may be lost on power failure, but the database is never corrupted. Is
+     * the default.
+     */
+    public static final ProductDbTuning BALANCED = new ProductDbTuning(
+            ProductContract.TUNING_PROFILE_BALANCED,
+            true,
+            SYNCHRONOUS_NORMAL,
+            8 * 1024,
+            64L * 1024 * 1024,
+            true
+    );
+
+    /**
+     * Write-ahead logging, so reads run on pooled connections without waiting for writes. Writes on
+     * the primary connection wait for every committed transaction to reach storage, and use a
+     * larger page cache and temporary tables in memory. Pooled read connections only get
+     * write-ahead logging.
+     */
+    public static final ProductDbTuning DURABLE = new ProductDbTuning(
+            ProductContract.TUNING_PROFILE_DURABLE,
+            true,
+            SYNCHRONOUS_FULL,
+            8 * 1024,
+            0,
+            true
+    );
+
+    /**
+     * Every profile, in order of {@link #getName()}.
+     */
+    private static final ProductDbTuning[] PROFILES = {BALANCED, DURABLE, LEGACY};
+
+    /**
+     * Name of this profile. One of the {@code TUNING_PROFILE_} constants of
+     * {@link ProductContract}.
+     */
+    private final String name;
+
+    /**
+     * Whether write-ahead logging is enabled.
+     */
+    private final boolean isWriteAheadLoggingEnabled;
+
+    /**
+     * Value of the synchronous pragma.
+     */
+    private final int synchronous;
+
+    /**
+     * Size of the page cache in KiB. {@code 0} to keep SQLite's default.
+     */
+    private final int cacheSizeKib;
+
+    /**
+     * Maximum number of bytes of the database file to memory map. {@code 0} to disable memory
+     * mapping.
+     */
+    private final long mmapSizeBytes;
+
+    /**
+     * Whether temporary tables and indexes are kept in memory rather than in files.
+     */
+    private final boolean isTempStoreInMemory;
+
+    /**
+     * Constructs a new {@link ProductDbTuning}.
+     *
+     * @param name                       Name of the profile.
+     * @param isWriteAheadLoggingEnabled Whether write-ahead logging is enabled.
+     * @param synchronous                Value of the synchronous pragma.
+     * @param cacheSizeKib               Size of the page cache in KiB. {@code 0} to keep SQLite's
+     *                                   default.
+     * @param mmapSizeBytes              Maximum number of bytes of the database file to memory
+     *                                   map. {@code 0} to disable memory mapping.
+     * @param isTempStoreInMemory        Whether temporary tables and indexes are kept in memory.
+     */
+    private ProductDbTuning(
+            @NonNull String name,
+            boolean isWriteAheadLoggingEnabled,
+            int synchronous,
+            int cacheSizeKib,
+            long mmapSizeBytes,
+            boolean isTempStoreInMemory
+    ) {
+        this.name = name;
+        this.isWriteAheadLoggingEnabled = isWriteAheadLoggingEnabled;
+        this.synchronous = synchronous;
+        this.cacheSizeKib = cacheSizeKib;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.isTempStoreInMemory = isTempStoreInMemory;
+    }
+
+    /**
+     * Returns the profile with the given name.
+     *
+     * @param name Name of the profile.
+     * @return The profile. {@code null} if no profile has the given name.
+     */
+    @Nullable
+    public static ProductDbTuning forName(@Nullable String name) {
+        for (ProductDbTuning profile : PROFILES) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns every profile.
+     *
+     * @return Every profile.
+     */
+    @NonNull
+    public static ProductDbTuning[] getProfiles() {
+        return PROFILES.clone();
+    }
+
+    /**
+     * Returns the name of this profile.
+     *
+     * @return One of the {@code TUNING_PROFILE_} constants of {@link ProductContract}.
+     */
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns whether this profile enables write-ahead logging. Unlike the pragmas, it applies to
+     * every connection, including pooled read connections.
+     *
+     * @return True if write-ahead logging is enabled.
+     */
+    public boolean isWriteAheadLoggingEnabled() {
+        return isWriteAheadLoggingEnabled;
+    }
+
+    /**
+     * Applies the pragmas of this profile to the primary connection of a database that is being
+     * configured.
+     *
+     * @param db The database being configured.
+     */
+    void applyPragmas(@NonNull SQLiteDatabase db) {
+        executePragma(db, "PRAGMA synchronous = " + synchronous);
+        if (cacheSizeKib > 0) {
+            // A negative cache size is in KiB rather than in pages.
+            executePragma(db, "PRAGMA cache_size = -" + cacheSizeKib);
+        }
+        executePragma(db, "PRAGMA mmap_size = " + mmapSizeBytes);
+        executePragma(db, "PRAGMA temp_store = " + (isTempStoreInMemory ? "MEMORY" : "DEFAULT"));
+    }
+
+    /**
+     * Executes a pragma. Some pragmas return a row, which {@link SQLiteDatabase#execSQL(String)}
+     * rejects, so every pragma is executed as a query.
+     *
+     * @param db  Database to execute the pragma on.
+     * @param sql The pragma statement.
+     */
+    private static void executePragma(@NonNull SQLiteDatabase db, @NonNull String sql) {
+        try (Cursor cursor = db.rawQuery(sql, null)) {
+            cursor.moveToFirst();
+        }
+    }
+}
@@ -0,0 +1,607 @@
+package com.davidread.clothescatalog2.database;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Exports every product in the product provider to a CSV or JSON file. Products are queried one
+ * page at a time in ascending id order and each row is written straight from the {@link Cursor}
+ * into a buffered writer, so memory use stays the same no matter how many products there are.
+ * Text columns are copied into reused buffers rather than read as strings, and prices are written
+ * digit by digit from their cents. Progress and the result are delivered to a listener on the main
+ * thread. The listener may be replaced while the export runs, so an export started by an activity
+ * outlives it when the activity is recreated.
+ * <p>
+ * The CSV file has a header naming the columns of {@link ProductContract.ProductEntry}, so it may
+ * be imported again with {@link ProductCsvImporter}. The JSON file is an array holding an object
+ * for each product. In both, prices are in dollars with two decimal places, such as
+ * {@code 19.99}.
+ */
+public class ProductExporter {
+
+    /**
+     * Formats a file may be exported in.
+     */
+    public enum Format {
+
+        /**
+         * Comma separated values with a header row.
+         */
+        CSV("text/csv", "csv"),
+
+        /**
+         * An array of JSON objects.
+         */
+        JSON("application/json", "json");
+
+        /**
+         * MIME type of a file in this format.
+         */
+        private final String mimeType;
+
+        /**
+         * Extension of the name of a file in this format.
+         */
+        private final String extension;
+
+        /**
+         * Constructs a new {@link Format}.
+         *
+         * @param mimeType  MIME type of a file in this format.
+         * @param extension Extension of the name of a file in this format.
+         */
+        Format(@NonNull String mimeType, @NonNull String extension) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+
+        @NonNull
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        @NonNull
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    /**
+     * Listener invoked on the main thread as an export progresses.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked each time a page of products has been written.
+         *
+         * @param rowsWritten Number of products written so far.
+         * @param percent     Share of the products written so far in percent. {@code -1} if the
+         *                    number of products is unknown.
+         */
+        void onExportProgress(long rowsWritten, int percent);
+
+        /**
+         * Invoked once the export ends, whether it finished, failed, or was cancelled.
+         *
+         * @param result Result of the export.
+         */
+        void onExportFinished(@NonNull Result result);
+    }
+
+    /**
+     * Result of an export.
+     */
+    public static final class Result {
+
+        /**
+         * Number of products written.
+         */
+        private final long rowsWritten;
+
+        /**
+         * Why the export failed. {@code null} if it did not fail.
+         */
+        private final String failureMessage;
+
+        /**
+         * Whether the export was cancelled before every product was written.
+         */
+        private final boolean isCancelled;
+
+        /**
+         * Constructs a new {@link Result}.
+         *
+         * @param rowsWritten    Number of products written.
+         * @param failureMessage Why the export failed. {@code null} if it did not fail.
+         * @param isCancelled    Whether the export was cancelled.
+         */
+        Result(long rowsWritten, @Nullable String failureMessage, boolean isCancelled) {
+            this.rowsWritten = rowsWritten;
+            this.failureMessage = failureMessage;
+            this.isCancelled = isCancelled;
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        @Nullable
+        public String getFailureMessage() {
+            return failureMessage;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+    }
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductExporter.class.getSimpleName();
+
+    /**
+     * Name of the background thread that writes the file.
+     */
+    private static final String THREAD_NAME = "ProductExporter";
+
+    /**
+     * Number of products queried at once.
+     */
+    static final int PAGE_SIZE = 1000;
+
+    /**
+     * Number of characters buffered before they are encoded and written to the file.
+     */
+    private static final int WRITER_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Columns written to the file, in order.
+     */
+    static final String[] COLUMNS = {
+            ProductContract.ProductEntry._ID,
+            ProductContract.ProductEntry.COLUMN_NAME,
+            ProductContract.ProductEntry.COLUMN_PRICE,
+            ProductContract.ProductEntry.COLUMN_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_SUPPLIER,
+            ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+            ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL,
+            ProductContract.ProductEntry.COLUMN_PICTURE_PATH
+    };
+
+    /**
+     * Indexes of the columns within {@link #COLUMNS}, which are also their indexes within each
+     * queried {@link Cursor}.
+     */
+    private static final int ID = 0;
+    private static final int PRICE = 2;
+    private static final int QUANTITY = 3;
+
+    /**
+     * Digits of hexadecimal numbers, for escaping control characters in JSON strings.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * To query products and open the file.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Listener to invoke as the export progresses. {@code null} while detached. Only accessed on
+     * the main thread.
+     */
+    private Listener listener;
+
+    /**
+     * Result of the export if it ended while no listener was set. It is delivered once one is set.
+     * Only accessed on the main thread.
+     */
+    private Result undeliveredResult;
+
+    /**
+     * Posts progress and the result to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Text copied out of the {@link Cursor}. It is reused for every text column of every row.
+     */
+    private final CharArrayBuffer textBuffer = new CharArrayBuffer(128);
+
+    /**
+     * Characters of a number being written. It is reused for every number.
+     */
+    private final char[] numberBuffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+
+    /**
+     * Whether {@link #cancel()} was called.
+     */
+    private volatile boolean isCancelled;
+
+    /**
+     * Whether {@link #start(Uri, Format)} was called.
+     */
+    private boolean isStarted;
+
+    /**
+     * Constructs a new {@link ProductExporter}. Each one exports a single file.
+     *
+     * @param context  Any context of this app.
+     * @param listener Listener to invoke on the main thread as the export progresses. {@code null}
+     *                 to set one later with {@link #setListener(Listener)}.
+     */
+    public ProductExporter(@NonNull Context context, @Nullable Listener listener) {
+        this(context.getApplicationContext().getContentResolver(), listener);
+    }
+
+    /**
+     * Constructs a new {@link ProductExporter} that queries through the given resolver.
+     *
+     * @param contentResolver To query products and open the file.
+     * @param listener        Listener to invoke on the main thread as the export progresses.
+     */
+    ProductExporter(@NonNull ContentResolver contentResolver, @Nullable Listener listener) {
+        this.contentResolver = contentResolver;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts exporting every product in the background. Anything already in the file is replaced.
+     *
+     * @param uri    Content or file URI of the file to write.
+     * @param format Format to write the file in.
+     * @throws IllegalStateException If the export was already started.
+     */
+    public void start(@NonNull Uri uri, @NonNull Format format) {
+        if (isStarted) {
+            throw new IllegalStateException("export already started");
+        }
+        isStarted = true;
+        new Thread(() -> run(uri, format), THREAD_NAME).start();
+    }
+
+    /**
+     * Replaces the listener to invoke as the export progresses. Progress made while no listener is
+     * set is dropped, but a result is kept and delivered to the next listener set. Must be called
+     * on the main thread.
+     *
+     * @param newListener Listener to invoke from now on. {@code null} to detach the current one,
+     *                    such as when the activity it belongs to is destroyed.
+     */
+    public void setListener(@Nullable Listener newListener) {
+        listener = newListener;
+        if (listener != null && undeliveredResult != null) {
+            Result result = undeliveredResult;
+            undeliveredResult = null;
+            listener.onExportFinished(result);
+        }
+    }
+
+    /**
+     * Stops writing products. The file is left holding only the products written so far.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * Writes the whole file and delivers the result. It is run on the background thread.
+     *
+     * @param uri    Content or file URI of the file to write.
+     * @param format Format to write the file in.
+     */
+    private void run(@NonNull Uri uri, @NonNull Format format) {
+        long[] rowsWritten = new long[1];
+        String failureMessage = null;
+        try (OutputStream outputStream = contentResolver.openOutputStream(uri, "wt")) {
+            if (outputStream == null) {
+                throw new IOException("cannot open " + uri);
+            }
+            Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(outputStream, StandardCharsets.UTF_8),
+                    WRITER_BUFFER_SIZE
+            );
+            exportProducts(writer, format, rowsWritten);
+            writer.flush();
+        } catch (IOException | RuntimeException e) {
+            // A provider or cursor may fail with an SQLiteException or IllegalStateException, which
+            // must be reported rather than crash the app from this background thread.
+            Log.e(TAG, e.toString());
+            failureMessage = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+
+        Result result = new Result(rowsWritten[0], failureMessage, isCancelled);
+        Log.i(TAG, String.format(Locale.US, "exported %d rows", result.getRowsWritten()));
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onExportFinished(result);
+            } else {
+                undeliveredResult = result;
+            }
+        });
+    }
+
+    /**
+     * Writes every product to the file one page at a time.
+     *
+     * @param writer      Writer of the file.
+     * @param format      Format to write the file in.
+     * @param rowsWritten Array whose only element is updated with the number of products written.
+     * @throws IOException If writing or querying fails.
+     */
+    private void exportProducts(
+            @NonNull Writer writer,
+            @NonNull Format format,
+            @NonNull long[] rowsWritten
+    ) throws IOException {
+        long totalRows = queryProductCount();
+        writeHeader(writer, format);
+        long afterId = 0;
+        while (!isCancelled) {
+            Cursor cursor = contentResolver.query(
+                    ProductContract.ProductEntry.buildPageUri(afterId, PAGE_SIZE),
+                    COLUMNS,
+                    null,
+                    null,
+                    null
+            );
+            if (cursor == null) {
+                throw new IOException("cannot query products after id " + afterId);
+            }
+            int rowCount;
+            try {
+                rowCount = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    if (format == Format.CSV) {
+                        writeCsvRow(writer, cursor);
+                    } else {
+                        writeJsonRow(writer, cursor, rowsWritten[0] == 0);
+                    }
+                    afterId = cursor.getLong(ID);
+                    rowsWritten[0]++;
+                }
+            } finally {
+                cursor.close();
+            }
+            postProgress(rowsWritten[0], totalRows);
+            if (rowCount < PAGE_SIZE) {
+                break;
+            }
+        }
+        writeFooter(writer, format);
+    }
+
+    /**
+     * Returns the number of products in the product provider, for reporting progress.
+     *
+     * @return Number of products. {@code -1} if it cannot be queried.
+     */
+    private long queryProductCount() {
+        try (Cursor cursor = contentResolver.query(
+                ProductContract.ProductStatsEntry.CONTENT_URI,
+                new String[]{ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT},
+                null,
+                null,
+                null
+        )) {
+            return cursor != null && cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    /**
+     * Writes what comes before the first product.
+     *
+     * @param writer Writer of the file.
+     * @param format Format to write the file in.
+     * @throws IOException If writing fails.
+     */
+    private void writeHeader(@NonNull Writer writer, @NonNull Format format) throws IOException {
+        if (format == Format.CSV) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(COLUMNS[i]);
+            }
+            writer.write("\r\n");
+        } else {
+            writer.write('[');
+        }
+    }
+
+    /**
+     * Writes what comes after the last product.
+     *
+     * @param writer Writer of the file.
+     * @param format Format to write the file in.
+     * @throws IOException If writing fails.
+     */
+    private void writeFooter(@NonNull Writer writer, @NonNull Format format) throws IOException {
+        if (format == Format.JSON) {
+            writer.write("\n]\n");
+        }
+    }
+
+    /**
+     * Writes the product the cursor points at as a CSV record.
+     *
+     * @param writer Writer of the file.
+     * @param cursor Cursor pointing at a product, holding {@link #COLUMNS} in order.
+     * @throws IOException If writing fails.
+     */
+    private void writeCsvRow(@NonNull Writer writer, @NonNull Cursor cursor) throws IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (i == ID || i == QUANTITY) {
+                writeLong(writer, cursor.getLong(i));
+            } else if (i == PRICE) {
+                writeCents(writer, cursor.getLong(i));
+            } else if (!cursor.isNull(i)) {
+                cursor.copyStringToBuffer(i, textBuffer);
+                writeCsvField(writer, textBuffer.data, textBuffer.sizeCopied);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Writes the product the cursor points at as a JSON object.
+     *
+     * @param writer  Writer of the file.
+     * @param cursor  Cursor pointing at a product, holding {@link #COLUMNS} in order.
+     * @param isFirst Whether it is the first product written.
+     * @throws IOException If writing fails.
+     */
+    private void writeJsonRow(@NonNull Writer writer, @NonNull Cursor cursor, boolean isFirst)
+            throws IOException {
+        writer.write(isFirst ? "\n{" : ",\n{");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write('"');
+            writer.write(COLUMNS[i]);
+            writer.write("\":");
+            if (i == ID || i == QUANTITY) {
+                writeLong(writer, cursor.getLong(i));
+            } else if (i == PRICE) {
+                writeCents(writer, cursor.getLong(i));
+            } else if (cursor.isNull(i)) {
+                writer.write("null");
+            } else {
+                cursor.copyStringToBuffer(i, textBuffer);
+                writeJsonString(writer, textBuffer.data, textBuffer.sizeCopied);
+            }
+        }
+        writer.write('}');
+    }
+
+    /**
+     * Writes text as a CSV field, quoting it only if it holds a comma, quote, or line break.
+     *
+     * @param writer Writer of the file.
+     * @param chars  Array holding the text.
+     * @param length Number of characters of the text at the start of the array.
+     * @throws IOException If writing fails.
+     */
+    private static void writeCsvField(@NonNull Writer writer, @NonNull char[] chars, int length)
+            throws IOException {
+        boolean isQuoted = false;
+        for (int i = 0; i < length && !isQuoted; i++) {
+            char c = chars[i];
+            isQuoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!isQuoted) {
+            writer.write(chars, 0, length);
+            return;
+        }
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] == '"') {
+                // Write up to and including the quote, then double it.
+                writer.write(chars, start, i + 1 - start);
+                writer.write('"');
+                start = i + 1;
+            }
+        }
+        writer.write(chars, start, length - start);
+        writer.write('"');
+    }
+
+    /**
+     * Writes text as a JSON string, escaping quotes, backslashes, and control characters.
+     *
+     * @param writer Writer of the file.
+     * @param chars  Array holding the text.
+     * @param length Number of characters of the text at the start of the array.
+     * @throws IOException If writing fails.
+     */
+    private static void writeJsonString(@NonNull Writer writer, @NonNull char[] chars, int length)
+            throws IOException {
+        writer.write('"');
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            writer.write(chars, start, i - start);
+            start = i + 1;
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c == '\n') {
+                writer.write("\\n");
+            } else if (c == '\r') {
+                writer.write("\\r");
+            } else if (c == '\t') {
+                writer.write("\\t");
+            } else {
+                writer.write("\\u00");
+                writer.write(HEX_DIGITS[c >> 4]);
+                writer.write(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        writer.write(chars, start, length - start);
+        writer.write('"');
+    }
+
+    /**
+     * Writes a whole number without allocating.
+     *
+     * @param writer Writer of the file.
+     * @param value  Number to write.
+     * @throws IOException If writing fails.
+     */
+    private void writeLong(@NonNull Writer writer, long value) throws IOException {
+        writer.write(numberBuffer, 0, ProductProviderUtils.writeNumber(value, numberBuffer));
+    }
+
+    /**
+     * Writes an amount of cents in dollars with two decimal places, such as {@code 19.99},
+     * without allocating.
+     *
+     * @param writer Writer of the file.
+     * @param cents  Amount in cents.
+     * @throws IOException If writing fails.
+     */
+    private void writeCents(@NonNull Writer writer, long cents) throws IOException {
+        writer.write(numberBuffer, 0, ProductProviderUtils.writeDecimalPrice(cents, numberBuffer));
+    }
+
+    /**
+     * Posts the progress of the export to the listener.
+     *
+     * @param rowsWritten Number of products written so far.
+     * @param totalRows   Number of products to write. Negative if unknown.
+     */
+    private void postProgress(long rowsWritten, long totalRows) {
+        int percent = totalRows > 0 ? (int) Math.min(rowsWritten * 100 / totalRows, 100) : -1;
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onExportProgress(rowsWritten, percent);
+            }
+        });
+    }
+}
@@ -0,0 +1,118 @@
+package com.davidread.clothescatalog2.database;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Describes where the columns of {@link ProductContract.ProductEntry} are within the rows of a
+ * {@link Cursor}, and reads them with typed getters. The column indices are looked up once when it
+ * is created, so reading a row afterwards takes only array reads. It is immutable and may be used
+ * for every {@link Cursor} with the same columns in the same order, such as every page of a
+ * {@link com.davidread.clothescatalog2.adapter.ProductPagedList}.
+ */
+public final class ProductProjection {
+
+    /**
+     * Index of each column. {@code -1} if the column is absent.
+     */
+    private final int idColumnIndex;
+    private final int nameColumnIndex;
+    private final int priceColumnIndex;
+    private final int quantityColumnIndex;
+    private final int picturePathColumnIndex;
+
+    /**
+     * Constructs a new {@link ProductProjection}.
+     *
+     * @param columnNames Names of the columns in the order they appear in each row.
+     */
+    private ProductProjection(@NonNull String[] columnNames) {
+        idColumnIndex = indexOf(columnNames, ProductContract.ProductEntry._ID);
+        nameColumnIndex = indexOf(columnNames, ProductContract.ProductEntry.COLUMN_NAME);
+        priceColumnIndex = indexOf(columnNames, ProductContract.ProductEntry.COLUMN_PRICE);
+        quantityColumnIndex = indexOf(columnNames, ProductContract.ProductEntry.COLUMN_QUANTITY);
+        picturePathColumnIndex = indexOf(
+                columnNames,
+                ProductContract.ProductEntry.COLUMN_PICTURE_PATH
+        );
+    }
+
+    /**
+     * Returns a {@link ProductProjection} for the rows of a {@link Cursor}.
+     *
+     * @param cursor Cursor to describe.
+     * @return The projection.
+     */
+    @NonNull
+    public static ProductProjection of(@NonNull Cursor cursor) {
+        return new ProductProjection(cursor.getColumnNames());
+    }
+
+    /**
+     * Returns the id of the product the cursor points at.
+     *
+     * @param cursor Cursor pointing at a row with the columns of this projection.
+     * @return The id.
+     */
+    public long getId(@NonNull Cursor cursor) {
+        return cursor.getLong(idColumnIndex);
+    }
+
+    /**
+     * Returns the name of the product the cursor points at.
+     *
+     * @param cursor Cursor pointing at a row with the columns of this projection.
+     * @return The name.
+     */
+    @NonNull
+    public String getName(@NonNull Cursor cursor) {
+        return cursor.getString(nameColumnIndex);
+    }
+
+    /**
+     * Returns the price of the product the cursor points at.
+     *
+     * @param cursor Cursor pointing at a row with the columns of this projection.
+     * @return The price in cents.
+     */
+    public long getPrice(@NonNull Cursor cursor) {
+        return cursor.getLong(priceColumnIndex);
+    }
+
+    /**
+     * Returns the quantity of the product the cursor points at.
+     *
+     * @param cursor Cursor pointing at a row with the columns of this projection.
+     * @return The quantity.
+     */
+    public int getQuantity(@NonNull Cursor cursor) {
+        return cursor.getInt(quantityColumnIndex);
+    }
+
+    /**
+     * Returns the path of the photo of the product the cursor points at.
+     *
+     * @param cursor Cursor pointing at a row with the columns of this projection.
+     * @return The path. {@code null} if the product has no photo or this projection has no
+     * picture path column.
+     */
+    @Nullable
+    public String getPicturePath(@NonNull Cursor cursor) {
+        return picturePathColumnIndex != -1 ? cursor.getString(picturePathColumnIndex) : null;
+    }
+
+    /**
+     * Returns the index of a column name.
+     *
+     * @param columnNames Names of the columns.
+     * @param columnName  Name of the column to find.
+     * @return The index. {@code -1} if the column is absent.
+     */
+    private static int indexOf(@NonNull String[] columnNames, @NonNull String columnName) {
+        return Arrays.asList(columnNames).indexOf(columnName);
+    }
+}
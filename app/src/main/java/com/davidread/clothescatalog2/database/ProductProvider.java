@@ -1,15 +1,44 @@
 package com.davidread.clothescatalog2.database;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.database.CrossProcessCursorWrapper;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.davidread.clothescatalog2.image.PhotoStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A class that defines a {@link ContentProvider} for products data. Data is provided to
@@ -17,6 +46,11 @@ import androidx.annotation.Nullable;
  */
 public class ProductProvider extends ContentProvider {
 
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductProvider.class.getSimpleName();
+
     /**
      * URI matcher code for a content URI that refers to all products.
      */
@@ -27,6 +61,120 @@ public class ProductProvider extends ContentProvider {
      */
     private static final int URI_CODE_SINGLE_PRODUCT = 101;
 
+    /**
+     * URI matcher code for a content URI that searches products.
+     */
+    private static final int URI_CODE_SEARCH = 102;
+
+    /**
+     * URI matcher code for a content URI that refers to the inventory totals.
+     */
+    private static final int URI_CODE_STATS = 103;
+
+    /**
+     * URI matcher code for a content URI that refers to the inventory totals of each supplier.
+     */
+    private static final int URI_CODE_SUPPLIER_STATS = 104;
+
+    /**
+     * URI matcher code for a content URI that refers to all suppliers.
+     */
+    private static final int URI_CODE_ALL_SUPPLIERS = 105;
+
+    /**
+     * URI matcher code for a content URI that refers to a single supplier.
+     */
+    private static final int URI_CODE_SINGLE_SUPPLIER = 106;
+
+    /**
+     * URI matcher code for a content URI that refers to the reference counts of photos.
+     */
+    private static final int URI_CODE_PHOTOS = 107;
+
+    /**
+     * Selection that restricts a query on the products table to low stock products. The threshold
+     * is written into the statement rather than bound, so the low stock partial indexes apply.
+     */
+    private static final String SELECTION_LOW_STOCK = ProductContract.ProductEntry.COLUMN_QUANTITY
+            + " <= " + ProductContract.LOW_STOCK_THRESHOLD;
+
+    /**
+     * Selection that restricts a query on the products table to the products matching a
+     * full-text search expression. Tests check its query plan.
+     */
+    static final String SELECTION_SEARCH_MATCH = ProductContract.ProductEntry._ID
+            + " IN (SELECT docid FROM " + ProductDbHelper.TABLE_PRODUCTS_FTS
+            + " WHERE " + ProductDbHelper.TABLE_PRODUCTS_FTS + " MATCH ?)";
+
+    /**
+     * Sort order that ranks search matches. Products whose name starts with the searched text come
+     * first, then products with a word in their name starting with it, then all other matches.
+     */
+    private static final String SORT_ORDER_SEARCH_RANK = "CASE"
+            + " WHEN " + ProductContract.ProductEntry.COLUMN_NAME + " LIKE ? ESCAPE '\\' THEN 0"
+            + " WHEN ' ' || " + ProductContract.ProductEntry.COLUMN_NAME
+            + " LIKE ? ESCAPE '\\' THEN 1 ELSE 2 END, "
+            + ProductContract.ProductEntry.COLUMN_NAME + " COLLATE NOCASE, "
+            + ProductContract.ProductEntry._ID;
+
+    /**
+     * Statement that decrements the quantity of a single product only if enough units are in
+     * stock.
+     */
+    private static final String SQL_SELL = "UPDATE " + ProductContract.ProductEntry.TABLE_NAME
+            + " SET " + ProductContract.ProductEntry.COLUMN_QUANTITY + " = "
+            + ProductContract.ProductEntry.COLUMN_QUANTITY + " - ?"
+            + " WHERE " + ProductContract.ProductEntry._ID + " = ?"
+            + " AND " + ProductContract.ProductEntry.COLUMN_QUANTITY + " >= ?";
+
+    /**
+     * Query that selects the quantity of a single product.
+     */
+    private static final String SQL_SELECT_QUANTITY = "SELECT "
+            + ProductContract.ProductEntry.COLUMN_QUANTITY
+            + " FROM " + ProductContract.ProductEntry.TABLE_NAME
+            + " WHERE " + ProductContract.ProductEntry._ID + " = ?";
+
+    /**
+     * Query that selects the id of the supplier with a given name, or {@code -1} if there is none.
+     */
+    private static final String SQL_SELECT_SUPPLIER_ID = "SELECT IFNULL((SELECT "
+            + ProductContract.SupplierEntry._ID
+            + " FROM " + ProductContract.SupplierEntry.TABLE_NAME
+            + " WHERE " + ProductContract.SupplierEntry.COLUMN_NAME + " = ?), -1)";
+
+    /**
+     * Name of the shared preferences file that remembers the SQLite tuning profile.
+     */
+    private static final String PREFERENCES_NAME = "product_provider";
+
+    /**
+     * Shared preferences key of the name of the SQLite tuning profile.
+     */
+    private static final String PREFERENCE_TUNING_PROFILE = "tuning_profile";
+
+    /**
+     * Query that selects the path of every photo queued for deletion because no product refers to
+     * it anymore.
+     */
+    private static final String SQL_SELECT_ORPHANED_PHOTOS = "SELECT "
+            + ProductContract.PhotoEntry.COLUMN_PATH + " FROM "
+            + ProductDbHelper.TABLE_ORPHANED_PHOTOS;
+
+    /**
+     * Statement that removes a single photo from the queue of photos to delete.
+     */
+    private static final String SQL_DEQUEUE_ORPHANED_PHOTO = "DELETE FROM "
+            + ProductDbHelper.TABLE_ORPHANED_PHOTOS + " WHERE "
+            + ProductContract.PhotoEntry.COLUMN_PATH + " = ?";
+
+    /**
+     * Deletes orphaned photos on a background thread, so no request waits on file deletion. It
+     * also runs the deletions delayed until queued photos are old enough to delete.
+     */
+    private static final ScheduledExecutorService orphanedPhotoExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
     /**
      * Matches a content URI to a URI matcher code.
      */
@@ -42,21 +190,90 @@ public class ProductProvider extends ContentProvider {
                 ProductContract.CONTENT_AUTHORITY,
                 ProductContract.PATH_PRODUCTS + "/#", URI_CODE_SINGLE_PRODUCT
         );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SEARCH, URI_CODE_SEARCH
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_STATS, URI_CODE_STATS
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_STATS + "/"
+                        + ProductContract.PATH_SUPPLIERS, URI_CODE_SUPPLIER_STATS
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_SUPPLIERS, URI_CODE_ALL_SUPPLIERS
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_SUPPLIERS + "/#", URI_CODE_SINGLE_SUPPLIER
+        );
+        uriMatcher.addURI(
+                ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PHOTOS, URI_CODE_PHOTOS
+        );
     }
 
     /**
-     * Gets SQLite database references.
+     * Gets SQLite database references. Databases are only opened through it and it is only
+     * replaced while holding the lock on this content provider, so a database is never reopened
+     * after its helper is closed.
+     */
+    private volatile ProductDbHelper productDbHelper;
+
+    /**
+     * Database the calling thread is applying a batch on inside {@link #applyBatch(ArrayList)}.
+     * Is {@code null} when the calling thread is not applying a batch, in which case each
+     * operation gets its database from {@link #productDbHelper}.
+     */
+    private final ThreadLocal<SQLiteDatabase> batchDatabase = new ThreadLocal<>();
+
+    /**
+     * Content URIs whose change notifications are deferred while the calling thread is inside
+     * {@link #applyBatch(ArrayList)}. Is {@code null} when the calling thread is not applying a
+     * batch, in which case notifications are sent immediately.
+     */
+    private final ThreadLocal<Set<Uri>> pendingNotificationUris = new ThreadLocal<>();
+
+    /**
+     * Store holding the photos of products, which deletes photos no product refers to anymore.
+     */
+    private volatile PhotoStore photoStore;
+
+    /**
+     * Whether {@link #deleteOrphanedPhotos()} is scheduled and has not started yet.
+     */
+    private final AtomicBoolean isOrphanedPhotoDeletionScheduled = new AtomicBoolean();
+
+    /**
+     * Runs {@link #deleteOrphanedPhotos()} once the youngest photo left queued by the last run may
+     * be deleted. {@code null} if no photo was left queued. Only accessed on
+     * {@link #orphanedPhotoExecutor}.
      */
-    private ProductDbHelper productDbHelper;
+    private ScheduledFuture<?> delayedOrphanedPhotoDeletion;
 
     /**
-     * Callback invoked on this content provider's startup. It initializes {@link #productDbHelper}.
+     * Callback invoked on this content provider's startup. It initializes {@link #productDbHelper}
+     * with the SQLite tuning profile last set with
+     * {@link ProductContract#METHOD_SET_TUNING_PROFILE}.
      *
      * @return True if the provider was successfully loaded, false otherwise.
      */
     @Override
     public boolean onCreate() {
-        productDbHelper = new ProductDbHelper(getContext());
+        String profileName = getPreferences().getString(PREFERENCE_TUNING_PROFILE, null);
+        ProductDbTuning tuning = ProductDbTuning.forName(profileName);
+        productDbHelper = new ProductDbHelper(
+                getContext(),
+                tuning != null ? tuning : ProductDbTuning.BALANCED
+        );
+        photoStore = new PhotoStore(getContext());
+
+        // Photos orphaned too recently to delete during the last run are deleted now.
+        scheduleOrphanedPhotoDeletion();
         return true;
     }
 
@@ -74,17 +291,28 @@ public class ProductProvider extends ContentProvider {
         int match = uriMatcher.match(uri);
         switch (match) {
             case URI_CODE_ALL_PRODUCTS:
+            case URI_CODE_SEARCH:
                 return ProductContract.ProductEntry.CONTENT_LIST_TYPE;
             case URI_CODE_SINGLE_PRODUCT:
                 return ProductContract.ProductEntry.CONTENT_ITEM_TYPE;
+            case URI_CODE_STATS:
+                return ProductContract.ProductStatsEntry.CONTENT_ITEM_TYPE;
+            case URI_CODE_SUPPLIER_STATS:
+                return ProductContract.SupplierStatsEntry.CONTENT_LIST_TYPE;
+            case URI_CODE_ALL_SUPPLIERS:
+                return ProductContract.SupplierEntry.CONTENT_LIST_TYPE;
+            case URI_CODE_SINGLE_SUPPLIER:
+                return ProductContract.SupplierEntry.CONTENT_ITEM_TYPE;
+            case URI_CODE_PHOTOS:
+                return ProductContract.PhotoEntry.CONTENT_LIST_TYPE;
             default:
                 return null;
         }
     }
 
     /**
-     * Inserts a new product into this content provider. Registered observers will be notified of
-     * the insertion.
+     * Inserts a new product or supplier into this content provider. Registered observers will be
+     * notified of the insertion.
      *
      * @param uri    Content URI of the insertion request.
      * @param values A set of column name/value pairs to add to the database.
@@ -96,42 +324,206 @@ public class ProductProvider extends ContentProvider {
     public Uri insert(@NonNull Uri uri, @NonNull ContentValues values) {
 
         // Return null if ContentValues are invalid.
-        if (values.size() != 7 || !hasValidContentValues(values)) {
+        int match = uriMatcher.match(uri);
+        if (match == URI_CODE_ALL_SUPPLIERS
+                ? !isValidSupplierInsertion(values)
+                : !isValidInsertion(values)) {
             return null;
         }
 
         // Perform insert operation.
-        SQLiteDatabase db = productDbHelper.getWritableDatabase();
-        long insertId;
-        int match = uriMatcher.match(uri);
-        switch (match) {
-            case URI_CODE_ALL_PRODUCTS:
-                insertId = db.insert(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        null,
-                        values
-                );
-                break;
-            default:
-                insertId = -1;
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            long insertId = -1;
+            int countSuppliersChanged = 0;
+            switch (match) {
+                case URI_CODE_ALL_PRODUCTS:
+                    ContentValues productValues = new ContentValues(values);
+                    db.beginTransaction();
+                    try {
+                        countSuppliersChanged = moveSupplierColumns(db, productValues, null, null);
+                        if (countSuppliersChanged != -1) {
+                            insertId = insertProduct(db, productValues);
+                        }
+                        if (insertId != -1) {
+                            db.setTransactionSuccessful();
+                        }
+                    } finally {
+                        db.endTransaction();
+                    }
+                    break;
+                case URI_CODE_ALL_SUPPLIERS:
+                    insertId = db.insert(ProductContract.SupplierEntry.TABLE_NAME, null, values);
+                    break;
+                default:
+                    insertId = -1;
+            }
+
+            // Return null if the insertion operation failed.
+            if (insertId == -1) {
+                return null;
+            }
+
+            // Notify listeners of insertion.
+            if (match == URI_CODE_ALL_PRODUCTS) {
+                notifyChange(insertId, ProductContract.OPERATION_INSERT);
+            }
+            notifySuppliersChanged(countSuppliersChanged);
+
+            return ContentUris.withAppendedId(uri, insertId);
+        } finally {
+            db.releaseReference();
         }
+    }
 
-        // Return null if the insertion operation failed.
-        if (insertId == -1) {
-            return null;
+    /**
+     * Inserts many products into this content provider within a single transaction. Either every
+     * product is inserted or none of them are. Registered observers will be notified once after
+     * the whole batch is inserted.
+     *
+     * @param uri    Content URI of the insertion request.
+     * @param values An array of sets of column name/value pairs to add to the database.
+     * @return The number of products inserted. Is {@code 0} if any of the given
+     * {@link ContentValues} are invalid or if the insertion request fails.
+     */
+    @Override
+    public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+
+        // Return 0 if the URI does not refer to all products.
+        if (uriMatcher.match(uri) != URI_CODE_ALL_PRODUCTS) {
+            return 0;
         }
 
-        // Notify listeners of insertion.
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Return 0 if any ContentValues are invalid, so that the batch is never partially applied.
+        for (ContentValues value : values) {
+            if (!isValidInsertion(value)) {
+                return 0;
+            }
+        }
+
+        // Perform insert operations within one transaction. Rows naming a supplier with the same
+        // contact details as an earlier row reuse its supplier id rather than looking it up again.
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            int countRowsInserted = 0;
+            Map<String, Long> supplierIds = new HashMap<>();
+            db.beginTransaction();
+            try {
+                for (ContentValues value : values) {
+                    ContentValues productValues = new ContentValues(value);
+                    String supplierKey = value.getAsString(
+                            ProductContract.ProductEntry.COLUMN_SUPPLIER
+                    ) + '\n' + value.getAsString(
+                            ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    ) + '\n' + value.getAsString(
+                            ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL
+                    );
+                    Long supplierId = supplierIds.get(supplierKey);
+                    if (supplierId != null) {
+                        productValues.remove(ProductContract.ProductEntry.COLUMN_SUPPLIER);
+                        productValues.remove(
+                                ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                        );
+                        productValues.remove(ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL);
+                        productValues.put(
+                                ProductContract.ProductEntry.COLUMN_SUPPLIER_ID,
+                                supplierId
+                        );
+                    } else if (moveSupplierColumns(db, productValues, null, null) != -1) {
+                        supplierIds.put(
+                                supplierKey,
+                                productValues.getAsLong(
+                                        ProductContract.ProductEntry.COLUMN_SUPPLIER_ID
+                                )
+                        );
+                    } else {
+                        return 0;
+                    }
+                    if (insertProduct(db, productValues) == -1) {
+                        return 0;
+                    }
+                    countRowsInserted++;
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            // Notify listeners of insertion. Every product is notified, which covers any supplier
+            // whose contact details changed.
+            if (countRowsInserted > 0) {
+                notifyChange(-1, ProductContract.OPERATION_INSERT);
+                notifyChange(ProductContract.SupplierEntry.CONTENT_URI);
+            }
+
+            return countRowsInserted;
+        } finally {
+            db.releaseReference();
+        }
+    }
+
+    /**
+     * Applies a batch of {@link ContentProviderOperation}s within a single transaction. Either
+     * every operation is applied or none of them are. Registered observers will be notified once
+     * for each distinct content URI changed by the batch after the whole batch is applied.
+     *
+     * @param operations Operations to apply.
+     * @return Results of each operation.
+     * @throws OperationApplicationException If any operation fails. No operation is applied in
+     *                                       this case.
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations
+    ) throws OperationApplicationException {
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            Set<Uri> notificationUris = new LinkedHashSet<>();
+            ContentProviderResult[] results;
+            pendingNotificationUris.set(notificationUris);
+            batchDatabase.set(db);
+            db.beginTransaction();
+            try {
+                results = super.applyBatch(operations);
+                for (int i = 0; i < results.length; i++) {
+                    if (isFailedResult(operations.get(i), results[i])) {
+                        throw new OperationApplicationException(
+                                "operation " + i + " in batch failed"
+                        );
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                pendingNotificationUris.remove();
+                batchDatabase.remove();
+            }
+
+            // Notify listeners of the batch.
+            for (Uri notificationUri : notificationUris) {
+                notifyChange(notificationUri);
+            }
+            scheduleOrphanedPhotoDeletion();
 
-        return ContentUris.withAppendedId(uri, insertId);
+            return results;
+        } finally {
+            db.releaseReference();
+        }
     }
 
     /**
-     * Query products from this content provider. The return {@link Cursor} is registered to listen
+     * Query products or suppliers from this content provider. The return {@link Cursor} is registered to listen
      * for changes in the content provider.
      *
-     * @param uri           Content URI of the query request.
+     * @param uri           Content URI of the query request. A content URI that refers to all
+     *                      products may carry {@link ProductContract#QUERY_PARAMETER_LIMIT},
+     *                      {@link ProductContract#QUERY_PARAMETER_AFTER_ID}, and
+     *                      {@link ProductContract#QUERY_PARAMETER_AFTER_KEY} query parameters to
+     *                      fetch a single page of products, and
+     *                      {@link ProductContract#QUERY_PARAMETER_SORT} and
+     *                      {@link ProductContract#QUERY_PARAMETER_FILTER} query parameters to
+     *                      sort and filter them.
      * @param projection    List of columns to put into the {@link Cursor}. If {@code null} then all
      *                      columns are included.
      * @param selection     A selection criteria to apply when filtering rows. If {@code null} then
@@ -140,7 +532,8 @@ public class ProductProvider extends ContentProvider {
      *                      from selectionArgs, in order that they appear in the selection. The
      *                      values will be bound as {@link String}s.
      * @param sortOrder     How the rows in the cursor should be sorted. If {@code null} then the
-     *                      content provider default sort order is used.
+     *                      content provider default sort order is used. A page or sorted query
+     *                      of products fails if it is another order than the one it pages by.
      * @return A {@link Cursor} containing product data according to the query request. If
      * {@code null} then the query request failed.
      */
@@ -148,34 +541,307 @@ public class ProductProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
                         @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    /**
+     * Query products or suppliers from this content provider, as described in
+     * {@link #query(Uri, String[], String, String[], String)}, but cancellable while it runs.
+     *
+     * @param uri                Content URI of the query request.
+     * @param projection         List of columns to put into the {@link Cursor}.
+     * @param selection          A selection criteria to apply when filtering rows.
+     * @param selectionArgs      Values replacing the ?s in selection.
+     * @param sortOrder          How the rows in the cursor should be sorted.
+     * @param cancellationSignal Cancels the query while it runs or fills a window of the
+     *                           {@link Cursor}, which then throws
+     *                           {@link android.os.OperationCanceledException}. If {@code null}
+     *                           then the query is not cancellable.
+     * @return A {@link Cursor} containing product data according to the query request. If
+     * {@code null} then the query request failed.
+     */
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder,
+                        @Nullable CancellationSignal cancellationSignal) {
+
+        // The rows of the cursor are read after this returns, so it holds its own reference to
+        // the database until it is closed.
+        SQLiteDatabase db = acquireDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = queryDatabase(
+                    db,
+                    uri,
+                    projection,
+                    selection,
+                    selectionArgs,
+                    sortOrder,
+                    cancellationSignal
+            );
+        } finally {
+            if (cursor == null) {
+                db.releaseReference();
+            }
+        }
+        if (cursor == null) {
+            return null;
+        }
+        return new CrossProcessCursorWrapper(cursor) {
+            @Override
+            public void close() {
+                if (!isClosed()) {
+                    super.close();
+                    db.releaseReference();
+                }
+            }
+        };
+    }
+
+    /**
+     * Query products or suppliers from a database, as described in
+     * {@link #query(Uri, String[], String, String[], String)}.
+     *
+     * @param db                 Database to query.
+     * @param uri                Content URI of the query request.
+     * @param projection         List of columns to put into the {@link Cursor}.
+     * @param selection          A selection criteria to apply when filtering rows.
+     * @param selectionArgs      Values replacing the ?s in selection.
+     * @param sortOrder          How the rows in the cursor should be sorted.
+     * @param cancellationSignal Cancels the query while it runs. {@code null} if not cancellable.
+     * @return A {@link Cursor} containing product data according to the query request. If
+     * {@code null} then the query request failed.
+     */
+    @Nullable
+    private Cursor queryDatabase(@NonNull SQLiteDatabase db, @NonNull Uri uri,
+                                 @Nullable String[] projection, @Nullable String selection,
+                                 @Nullable String[] selectionArgs, @Nullable String sortOrder,
+                                 @Nullable CancellationSignal cancellationSignal) {
 
         // Perform query operation.
         Cursor cursor;
-        SQLiteDatabase db = productDbHelper.getReadableDatabase();
         int match = uriMatcher.match(uri);
         switch (match) {
             case URI_CODE_ALL_PRODUCTS:
+                String limit = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT);
+                String afterId = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_ID);
+                String afterKey = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_KEY);
+                String sort = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_SORT);
+                String filter = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_FILTER);
+
+                // Return null if paging query parameters are invalid.
+                if (!isValidPagingParameter(limit) || !isValidPagingParameter(afterId)) {
+                    return null;
+                }
+
+                // Return null if the sort key or filter is unsupported. Only the whitelisted
+                // columns are ever written into the statement.
+                String sortColumn = ProductContract.ProductEntry.getSortColumn(
+                        sort != null ? sort : ProductContract.SORT_ID
+                );
+                if (sortColumn == null
+                        || (filter != null && !ProductContract.FILTER_LOW_STOCK.equals(filter))) {
+                    return null;
+                }
+                // Return null if the keyset does not match the sort order. A non-id order needs
+                // both the sort value and the id of the last seen row, or neither.
+                boolean isSortedById = ProductContract.ProductEntry._ID.equals(sortColumn);
+                if (afterKey != null
+                        && (isSortedById || afterId == null || !isValidSortKey(sort, afterKey))) {
+                    return null;
+                }
+                if (!isSortedById && afterId != null && afterKey == null) {
+                    return null;
+                }
+
+                if (filter != null) {
+                    selection = DatabaseUtils.concatenateWhere(selection, SELECTION_LOW_STOCK);
+                }
+                String pagingSortOrder = null;
+                if (isSortedById) {
+                    // Keyset paging requires a stable ascending id order.
+                    if (afterId != null) {
+                        selection = DatabaseUtils.concatenateWhere(
+                                selection,
+                                ProductContract.ProductEntry._ID + ">?"
+                        );
+                        selectionArgs = DatabaseUtils.appendSelectionArgs(
+                                selectionArgs,
+                                new String[]{afterId}
+                        );
+                    }
+                    if (afterId != null || sort != null) {
+                        pagingSortOrder = ProductContract.ProductEntry._ID + " ASC";
+                    }
+                } else {
+                    // Rows are ordered by the sort column and then by id, which is the order of
+                    // the index on the sort column, so the keyset is the pair of both.
+                    String sortExpression = ProductContract.SORT_NAME.equals(sort)
+                            ? sortColumn + " COLLATE NOCASE"
+                            : sortColumn;
+                    String keyParameter = ProductContract.SORT_NAME.equals(sort)
+                            ? "?"
+                            : "CAST(? AS INTEGER)";
+                    if (afterKey != null) {
+                        selection = DatabaseUtils.concatenateWhere(
+                                selection,
+                                sortExpression + ">=" + keyParameter + " AND (" + sortExpression
+                                        + ">" + keyParameter + " OR "
+                                        + ProductContract.ProductEntry._ID + ">?)"
+                        );
+                        selectionArgs = DatabaseUtils.appendSelectionArgs(
+                                selectionArgs,
+                                new String[]{afterKey, afterKey, afterId}
+                        );
+                    }
+                    pagingSortOrder = sortExpression + " ASC, " + ProductContract.ProductEntry._ID
+                            + " ASC";
+                }
+
+                // Return null if the caller's sort order conflicts with the order of the keyset.
+                if (pagingSortOrder != null) {
+                    if (sortOrder != null && !pagingSortOrder.equalsIgnoreCase(sortOrder.trim())) {
+                        return null;
+                    }
+                    sortOrder = pagingSortOrder;
+                }
+
                 cursor = db.query(
-                        ProductContract.ProductEntry.TABLE_NAME,
+                        false,
+                        ProductContract.ProductEntry.VIEW_NAME,
                         projection,
                         selection,
                         selectionArgs,
                         null,
                         null,
-                        sortOrder
+                        sortOrder,
+                        limit,
+                        cancellationSignal
                 );
                 break;
             case URI_CODE_SINGLE_PRODUCT:
                 selection = ProductContract.ProductEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
                 cursor = db.query(
-                        ProductContract.ProductEntry.TABLE_NAME,
+                        false,
+                        ProductContract.ProductEntry.VIEW_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        null,
+                        cancellationSignal
+                );
+                break;
+            case URI_CODE_SEARCH:
+                String query = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_QUERY);
+                String searchLimit = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT);
+                String matchExpression = buildMatchExpression(query);
+
+                // Return null if the searched text has no words or the limit is invalid.
+                if (matchExpression == null || !isValidPagingParameter(searchLimit)) {
+                    return null;
+                }
+
+                // The ranking in the sort order has parameters too. They are bound after those of
+                // the selection since the sort order follows the selection in the statement.
+                String likePattern = escapeLikePattern(query.trim());
+                selection = DatabaseUtils.concatenateWhere(selection, SELECTION_SEARCH_MATCH);
+                selectionArgs = DatabaseUtils.appendSelectionArgs(
+                        selectionArgs,
+                        new String[]{matchExpression, likePattern + "%", "% " + likePattern + "%"}
+                );
+                cursor = db.query(
+                        false,
+                        ProductContract.ProductEntry.VIEW_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        SORT_ORDER_SEARCH_RANK,
+                        searchLimit,
+                        cancellationSignal
+                );
+                break;
+            case URI_CODE_STATS:
+                cursor = db.query(
+                        false,
+                        ProductContract.ProductStatsEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        null,
+                        cancellationSignal
+                );
+                break;
+            case URI_CODE_SUPPLIER_STATS:
+                cursor = db.query(
+                        false,
+                        ProductContract.SupplierStatsEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder != null
+                                ? sortOrder
+                                : ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER
+                                + " COLLATE NOCASE",
+                        null,
+                        cancellationSignal
+                );
+                break;
+            case URI_CODE_ALL_SUPPLIERS:
+                cursor = db.query(
+                        false,
+                        ProductContract.SupplierEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder != null
+                                ? sortOrder
+                                : ProductContract.SupplierEntry.COLUMN_NAME + " COLLATE NOCASE",
+                        null,
+                        cancellationSignal
+                );
+                break;
+            case URI_CODE_SINGLE_SUPPLIER:
+                selection = ProductContract.SupplierEntry._ID + "=?";
+                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                cursor = db.query(
+                        false,
+                        ProductContract.SupplierEntry.TABLE_NAME,
                         projection,
                         selection,
                         selectionArgs,
                         null,
                         null,
-                        sortOrder
+                        sortOrder,
+                        null,
+                        cancellationSignal
+                );
+                break;
+            case URI_CODE_PHOTOS:
+                cursor = db.query(
+                        false,
+                        ProductContract.PhotoEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder,
+                        null,
+                        cancellationSignal
                 );
                 break;
             default:
@@ -183,16 +849,26 @@ public class ProductProvider extends ContentProvider {
         }
 
         // Setup listener that will keep this Cursor and this content provider's data in sync.
+        // Searches, totals, and photo reference counts may be affected by a change of any
+        // product.
         if (cursor != null) {
-            cursor.setNotificationUri(getContext().getContentResolver(), uri);
+            Uri notificationUri;
+            if (match == URI_CODE_ALL_PRODUCTS || match == URI_CODE_SINGLE_PRODUCT) {
+                notificationUri = uri;
+            } else if (match == URI_CODE_ALL_SUPPLIERS || match == URI_CODE_SINGLE_SUPPLIER) {
+                notificationUri = ProductContract.SupplierEntry.CONTENT_URI;
+            } else {
+                notificationUri = ProductContract.ProductEntry.CONTENT_URI;
+            }
+            cursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         }
 
         return cursor;
     }
 
     /**
-     * Update products in this content provider. Registered observers will be notified of the
-     * update.
+     * Update products or suppliers in this content provider. Registered observers will be notified
+     * of the update.
      *
      * @param uri           Content URI of the update request.
      * @param values        A set of column name/value pairs to update in the database.
@@ -213,48 +889,105 @@ public class ProductProvider extends ContentProvider {
         }
 
         // Return -1 if ContentValues are invalid.
-        if (!hasValidContentValues(values)) {
+        int match = uriMatcher.match(uri);
+        boolean isSupplierUri = match == URI_CODE_ALL_SUPPLIERS
+                || match == URI_CODE_SINGLE_SUPPLIER;
+        if (isSupplierUri ? !hasValidSupplierValues(values) : !hasValidContentValues(values)) {
             return -1;
         }
 
         // Perform update operation.
         int countRowsUpdated;
-        SQLiteDatabase db = productDbHelper.getWritableDatabase();
-        int match = uriMatcher.match(uri);
-        switch (match) {
-            case URI_CODE_ALL_PRODUCTS:
-                countRowsUpdated = db.update(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        values,
-                        selection,
-                        selectionArgs
-                );
-                break;
-            case URI_CODE_SINGLE_PRODUCT:
-                selection = ProductContract.ProductEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                countRowsUpdated = db.update(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        values,
-                        selection,
-                        selectionArgs
-                );
-                break;
-            default:
-                countRowsUpdated = -1;
-        }
+        int countSuppliersChanged = 0;
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            switch (match) {
+                case URI_CODE_ALL_PRODUCTS:
+                case URI_CODE_SINGLE_PRODUCT:
+                    if (match == URI_CODE_SINGLE_PRODUCT) {
+                        selection = ProductContract.ProductEntry._ID + "=?";
+                        selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                    }
+                    ContentValues productValues = new ContentValues(values);
+                    db.beginTransaction();
+                    try {
+                        countSuppliersChanged = moveSupplierColumns(
+                                db,
+                                productValues,
+                                selection,
+                                selectionArgs
+                        );
+                        if (countSuppliersChanged == -1) {
+                            countRowsUpdated = -1;
+                        } else if (productValues.size() == 0) {
+                            // Only contact details of suppliers were given. No product row changes,
+                            // but every selected product now reads the new details.
+                            countRowsUpdated = (int) DatabaseUtils.queryNumEntries(
+                                    db,
+                                    ProductContract.ProductEntry.VIEW_NAME,
+                                    selection,
+                                    selectionArgs
+                            );
+                        } else {
+                            countRowsUpdated = db.update(
+                                    ProductContract.ProductEntry.TABLE_NAME,
+                                    productValues,
+                                    selectProductsFromView(selection),
+                                    selectionArgs
+                            );
+                        }
+                        if (countRowsUpdated != -1) {
+                            db.setTransactionSuccessful();
+                        }
+                    } finally {
+                        db.endTransaction();
+                    }
+                    break;
+                case URI_CODE_ALL_SUPPLIERS:
+                case URI_CODE_SINGLE_SUPPLIER:
+                    if (match == URI_CODE_SINGLE_SUPPLIER) {
+                        selection = ProductContract.SupplierEntry._ID + "=?";
+                        selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                    }
+                    try {
+                        countRowsUpdated = db.update(
+                                ProductContract.SupplierEntry.TABLE_NAME,
+                                values,
+                                selection,
+                                selectionArgs
+                        );
+                    } catch (SQLiteConstraintException e) {
+                        // Another supplier already has the name.
+                        countRowsUpdated = -1;
+                    }
+                    countSuppliersChanged = Math.max(countRowsUpdated, 0);
+                    break;
+                default:
+                    countRowsUpdated = -1;
+            }
 
-        // Notify listeners of update.
-        if (countRowsUpdated > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
-        }
+            // Notify listeners of update. Products read the name and contact details of their
+            // supplier, so changed suppliers change every product.
+            if (countRowsUpdated > 0 && countSuppliersChanged == 0 && !isSupplierUri) {
+                notifyChange(getChangedId(uri, match), ProductContract.OPERATION_UPDATE);
+            }
+            if (countRowsUpdated > 0 && (isSupplierUri || hasSupplierColumns(values))) {
+                notifySuppliersChanged(countSuppliersChanged);
+            }
+            if (countRowsUpdated > 0
+                    && values.containsKey(ProductContract.ProductEntry.COLUMN_PICTURE_PATH)) {
+                scheduleOrphanedPhotoDeletion();
+            }
 
-        return countRowsUpdated;
+            return countRowsUpdated;
+        } finally {
+            db.releaseReference();
+        }
     }
 
     /**
-     * Delete products from this content provider. Registered observers will be notified of this
-     * deletion.
+     * Delete products or suppliers from this content provider. A supplier that still has products
+     * cannot be deleted. Registered observers will be notified of this deletion.
      *
      * @param uri           Content URI of the delete request.
      * @param selection     A selection criteria to apply when filtering rows. If {@code null} then
@@ -270,35 +1003,815 @@ public class ProductProvider extends ContentProvider {
 
         // Perform the delete operation.
         int countRowsDeleted;
-        SQLiteDatabase db = productDbHelper.getWritableDatabase();
-        int match = uriMatcher.match(uri);
-        switch (match) {
-            case URI_CODE_ALL_PRODUCTS:
-                countRowsDeleted = db.delete(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        selection,
-                        selectionArgs
-                );
-                break;
-            case URI_CODE_SINGLE_PRODUCT:
-                selection = ProductContract.ProductEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                countRowsDeleted = db.delete(
-                        ProductContract.ProductEntry.TABLE_NAME,
-                        selection,
-                        selectionArgs
-                );
-                break;
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            int match = uriMatcher.match(uri);
+            switch (match) {
+                case URI_CODE_ALL_PRODUCTS:
+                    countRowsDeleted = db.delete(
+                            ProductContract.ProductEntry.TABLE_NAME,
+                            selectProductsFromView(selection),
+                            selectionArgs
+                    );
+                    break;
+                case URI_CODE_SINGLE_PRODUCT:
+                    selection = ProductContract.ProductEntry._ID + "=?";
+                    selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                    countRowsDeleted = db.delete(
+                            ProductContract.ProductEntry.TABLE_NAME,
+                            selection,
+                            selectionArgs
+                    );
+                    break;
+                case URI_CODE_ALL_SUPPLIERS:
+                case URI_CODE_SINGLE_SUPPLIER:
+                    if (match == URI_CODE_SINGLE_SUPPLIER) {
+                        selection = ProductContract.SupplierEntry._ID + "=?";
+                        selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                    }
+                    try {
+                        countRowsDeleted = db.delete(
+                                ProductContract.SupplierEntry.TABLE_NAME,
+                                selection,
+                                selectionArgs
+                        );
+                    } catch (SQLiteConstraintException e) {
+                        // A selected supplier still has products.
+                        countRowsDeleted = -1;
+                    }
+                    break;
+                default:
+                    countRowsDeleted = -1;
+            }
+
+            // Notify listeners of delete.
+            if (countRowsDeleted > 0) {
+                if (match == URI_CODE_ALL_SUPPLIERS || match == URI_CODE_SINGLE_SUPPLIER) {
+                    notifyChange(ProductContract.SupplierEntry.CONTENT_URI);
+                } else {
+                    notifyChange(getChangedId(uri, match), ProductContract.OPERATION_DELETE);
+                    scheduleOrphanedPhotoDeletion();
+                }
+            }
+
+            return countRowsDeleted;
+        } finally {
+            db.releaseReference();
+        }
+    }
+
+    /**
+     * Calls a provider-specific method. Only {@link ProductContract#METHOD_SELL},
+     * {@link ProductContract#METHOD_SELL_BATCH},
+     * {@link ProductContract#METHOD_GET_TUNING_PROFILE}, and
+     * {@link ProductContract#METHOD_SET_TUNING_PROFILE} are supported.
+     *
+     * @param method Method name to call.
+     * @param arg    Id of the product to sell for {@link ProductContract#METHOD_SELL}. Name of the
+     *               tuning profile for {@link ProductContract#METHOD_SET_TUNING_PROFILE}.
+     * @param extras Number of units to sell under {@link ProductContract#EXTRA_COUNT} for
+     *               {@link ProductContract#METHOD_SELL}. Ids and numbers of units to sell under
+     *               {@link ProductContract#EXTRA_IDS} and {@link ProductContract#EXTRA_COUNTS}
+     *               for {@link ProductContract#METHOD_SELL_BATCH}.
+     * @return The new quantity of the product under {@link ProductContract#EXTRA_QUANTITY}, the
+     * new quantities of the products under {@link ProductContract#EXTRA_QUANTITIES}, or the name
+     * of the tuning profile in use under {@link ProductContract#EXTRA_TUNING_PROFILE}. Is
+     * {@code null} if the method is unsupported or if its arguments are invalid.
+     */
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        switch (method) {
+            case ProductContract.METHOD_SELL:
+                return sell(arg, extras);
+            case ProductContract.METHOD_SELL_BATCH:
+                return sellBatch(extras);
+            case ProductContract.METHOD_GET_TUNING_PROFILE:
+                return getTuningProfile();
+            case ProductContract.METHOD_SET_TUNING_PROFILE:
+                return setTuningProfile(arg);
             default:
-                countRowsDeleted = -1;
+                return null;
+        }
+    }
+
+    /**
+     * Sells units of a single product. Registered observers are notified of the update.
+     *
+     * @param arg    Id of the product to sell.
+     * @param extras Number of units to sell under {@link ProductContract#EXTRA_COUNT}.
+     * @return The new quantity of the product under {@link ProductContract#EXTRA_QUANTITY}. It is
+     * {@code -1} if the product does not exist or does not have enough units in stock. Is
+     * {@code null} if the arguments are invalid.
+     */
+    @Nullable
+    private Bundle sell(@Nullable String arg, @Nullable Bundle extras) {
+        if (arg == null) {
+            return null;
+        }
+        long id;
+        try {
+            id = Long.parseLong(arg);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int count = extras != null ? extras.getInt(ProductContract.EXTRA_COUNT, 1) : 1;
+        if (count <= 0) {
+            return null;
+        }
+
+        int quantity;
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            SQLiteStatement sellStatement = db.compileStatement(SQL_SELL);
+            SQLiteStatement selectQuantityStatement = db.compileStatement(SQL_SELECT_QUANTITY);
+            try {
+                quantity = sell(db, sellStatement, selectQuantityStatement, id, count);
+            } finally {
+                sellStatement.close();
+                selectQuantityStatement.close();
+            }
+
+            // Notify listeners of update.
+            if (quantity != -1) {
+                notifyChange(id, ProductContract.OPERATION_UPDATE);
+            }
+
+            Bundle result = new Bundle();
+            result.putInt(ProductContract.EXTRA_QUANTITY, quantity);
+            return result;
+        } finally {
+            db.releaseReference();
+        }
+    }
+
+    /**
+     * Sells units of many products within a single transaction. Registered observers are notified
+     * of each sold product after the whole batch is applied.
+     *
+     * @param extras Ids and numbers of units to sell under {@link ProductContract#EXTRA_IDS} and
+     *               {@link ProductContract#EXTRA_COUNTS}.
+     * @return The new quantities of the products under {@link ProductContract#EXTRA_QUANTITIES}.
+     * A quantity is {@code -1} if its product does not exist or does not have enough units in
+     * stock. Is {@code null} if the extras are invalid.
+     */
+    @Nullable
+    private Bundle sellBatch(@Nullable Bundle extras) {
+        if (extras == null) {
+            return null;
+        }
+        long[] ids = extras.getLongArray(ProductContract.EXTRA_IDS);
+        int[] counts = extras.getIntArray(ProductContract.EXTRA_COUNTS);
+        if (ids == null || counts == null || ids.length != counts.length) {
+            return null;
+        }
+        for (int count : counts) {
+            if (count <= 0) {
+                return null;
+            }
+        }
+
+        // Compile the statements once for the whole batch.
+        int[] quantities = new int[ids.length];
+        SQLiteDatabase db = acquireDatabase();
+        try {
+            SQLiteStatement sellStatement = db.compileStatement(SQL_SELL);
+            SQLiteStatement selectQuantityStatement = db.compileStatement(SQL_SELECT_QUANTITY);
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < ids.length; i++) {
+                    quantities[i] = sell(
+                            db,
+                            sellStatement,
+                            selectQuantityStatement,
+                            ids[i],
+                            counts[i]
+                    );
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                sellStatement.close();
+                selectQuantityStatement.close();
+            }
+
+            // Notify listeners of update.
+            for (int i = 0; i < ids.length; i++) {
+                if (quantities[i] != -1) {
+                    notifyChange(ids[i], ProductContract.OPERATION_UPDATE);
+                }
+            }
+
+            Bundle result = new Bundle();
+            result.putIntArray(ProductContract.EXTRA_QUANTITIES, quantities);
+            return result;
+        } finally {
+            db.releaseReference();
+        }
+    }
+
+    /**
+     * Sells units of a single product by decrementing its quantity in the database. The quantity
+     * is checked and decremented by a single statement, so concurrent sales never lose updates and
+     * never take the quantity below zero.
+     *
+     * @param db                      Writable database the statements were compiled for.
+     * @param sellStatement           Compiled {@link #SQL_SELL}.
+     * @param selectQuantityStatement Compiled {@link #SQL_SELECT_QUANTITY}.
+     * @param id                      Id of the product to sell.
+     * @param count                   Number of units to sell.
+     * @return The new quantity of the product. Is {@code -1} if the product does not exist or does
+     * not have enough units in stock.
+     */
+    private static int sell(
+            @NonNull SQLiteDatabase db,
+            @NonNull SQLiteStatement sellStatement,
+            @NonNull SQLiteStatement selectQuantityStatement,
+            long id,
+            int count
+    ) {
+        int quantity = -1;
+        db.beginTransaction();
+        try {
+            sellStatement.bindLong(1, count);
+            sellStatement.bindLong(2, id);
+            sellStatement.bindLong(3, count);
+            int countRowsUpdated = sellStatement.executeUpdateDelete();
+            if (countRowsUpdated > 0) {
+                selectQuantityStatement.bindLong(1, id);
+                quantity = (int) selectQuantityStatement.simpleQueryForLong();
+            }
+            // Mark successful even when nothing was sold, so an enclosing batch is not rolled back.
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        return quantity;
+    }
+
+    /**
+     * Inserts a single product row into the products table. Ensure the given
+     * {@link ContentValues} pass {@link #isValidInsertion(ContentValues)} and have had their
+     * supplier columns moved with
+     * {@link #moveSupplierColumns(SQLiteDatabase, ContentValues, String, String[])} before calling.
+     *
+     * @param db     Writable database to insert into.
+     * @param values A set of column name/value pairs to add to the database.
+     * @return The row id of the newly inserted product. Is {@code -1} if the insertion fails.
+     */
+    private long insertProduct(@NonNull SQLiteDatabase db, @NonNull ContentValues values) {
+        return db.insert(ProductContract.ProductEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Moves the supplier columns out of a set of product column name/value pairs and writes them
+     * to the suppliers table. When the supplier name is given, the supplier with that name is
+     * created if it does not exist, or has its contact details updated if they are given and
+     * differ, and its id takes the place of the supplier columns. When only contact details are
+     * given, they update the suppliers of the selected products.
+     *
+     * @param db            Writable database. Call within a transaction that also writes the
+     *                      products.
+     * @param values        Product column name/value pairs. Supplier columns are replaced in
+     *                      place.
+     * @param selection     Selection of the products being written, against the products view.
+     *                      If {@code null} then all products are included.
+     * @param selectionArgs Values to bind to the ?s in selection.
+     * @return The number of existing suppliers whose contact details changed. Is {@code -1} if a
+     * new supplier could not be created.
+     */
+    private static int moveSupplierColumns(
+            @NonNull SQLiteDatabase db,
+            @NonNull ContentValues values,
+            @Nullable String selection,
+            @Nullable String[] selectionArgs
+    ) {
+        ContentValues supplierValues = new ContentValues();
+        moveValue(
+                values,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER,
+                supplierValues,
+                ProductContract.SupplierEntry.COLUMN_NAME
+        );
+        moveValue(
+                values,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+                supplierValues,
+                ProductContract.SupplierEntry.COLUMN_PHONE_NUMBER
+        );
+        moveValue(
+                values,
+                ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL,
+                supplierValues,
+                ProductContract.SupplierEntry.COLUMN_EMAIL
+        );
+        if (supplierValues.size() == 0) {
+            return 0;
+        }
+
+        // Contact details alone update the suppliers of the selected products.
+        String name = supplierValues.getAsString(ProductContract.SupplierEntry.COLUMN_NAME);
+        if (name == null) {
+            return updateChangedSuppliers(
+                    db,
+                    supplierValues,
+                    ProductContract.SupplierEntry._ID + " IN (SELECT "
+                            + ProductContract.ProductEntry.COLUMN_SUPPLIER_ID + " FROM "
+                            + ProductContract.ProductEntry.VIEW_NAME
+                            + (selection != null ? " WHERE " + selection : "") + ")",
+                    selectionArgs
+            );
+        }
+
+        // Find or create the supplier with the name. A new supplier needs every contact detail.
+        int countSuppliersChanged = 0;
+        long supplierId = DatabaseUtils.longForQuery(
+                db,
+                SQL_SELECT_SUPPLIER_ID,
+                new String[]{name}
+        );
+        if (supplierId == -1) {
+            supplierId = db.insert(ProductContract.SupplierEntry.TABLE_NAME, null, supplierValues);
+            if (supplierId == -1) {
+                return -1;
+            }
+        } else {
+            supplierValues.remove(ProductContract.SupplierEntry.COLUMN_NAME);
+            if (supplierValues.size() > 0) {
+                countSuppliersChanged = updateChangedSuppliers(
+                        db,
+                        supplierValues,
+                        ProductContract.SupplierEntry._ID + "=?",
+                        new String[]{String.valueOf(supplierId)}
+                );
+            }
+        }
+        values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_ID, supplierId);
+        return countSuppliersChanged;
+    }
+
+    /**
+     * Updates the selected suppliers that differ from the given values, so suppliers that already
+     * hold them are neither rewritten nor counted.
+     *
+     * @param db             Writable database.
+     * @param supplierValues Supplier column name/value pairs. Every value is a {@link String}.
+     * @param selection      Selection of the suppliers to update.
+     * @param selectionArgs  Values to bind to the ?s in selection.
+     * @return The number of suppliers updated.
+     */
+    private static int updateChangedSuppliers(
+            @NonNull SQLiteDatabase db,
+            @NonNull ContentValues supplierValues,
+            @NonNull String selection,
+            @Nullable String[] selectionArgs
+    ) {
+        StringBuilder changedSelection = new StringBuilder();
+        String[] changedSelectionArgs = new String[supplierValues.size()];
+        int i = 0;
+        for (String column : supplierValues.keySet()) {
+            if (i > 0) {
+                changedSelection.append(" OR ");
+            }
+            changedSelection.append(column).append(" IS NOT ?");
+            changedSelectionArgs[i++] = supplierValues.getAsString(column);
+        }
+        return db.update(
+                ProductContract.SupplierEntry.TABLE_NAME,
+                supplierValues,
+                DatabaseUtils.concatenateWhere(selection, changedSelection.toString()),
+                DatabaseUtils.appendSelectionArgs(selectionArgs, changedSelectionArgs)
+        );
+    }
+
+    /**
+     * Moves a value from one set of column name/value pairs to another under a new column name.
+     * Nothing happens if the source does not have the column.
+     *
+     * @param source    Column name/value pairs to move the value from.
+     * @param sourceKey Column name of the value in the source.
+     * @param target    Column name/value pairs to move the value to.
+     * @param targetKey Column name of the value in the target.
+     */
+    private static void moveValue(
+            @NonNull ContentValues source,
+            @NonNull String sourceKey,
+            @NonNull ContentValues target,
+            @NonNull String targetKey
+    ) {
+        if (source.containsKey(sourceKey)) {
+            target.put(targetKey, source.getAsString(sourceKey));
+            source.remove(sourceKey);
+        }
+    }
+
+    /**
+     * Returns a selection against the products table that selects the same products as a
+     * selection against the products view, so that selections may refer to supplier columns.
+     *
+     * @param selection Selection against the products view. If {@code null} then all products are
+     *                  included.
+     * @return The selection against the products table.
+     */
+    @Nullable
+    private static String selectProductsFromView(@Nullable String selection) {
+        if (selection == null) {
+            return null;
+        }
+        return ProductContract.ProductEntry._ID + " IN (SELECT " + ProductContract.ProductEntry._ID
+                + " FROM " + ProductContract.ProductEntry.VIEW_NAME + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Returns whether a set of product column name/value pairs has any supplier column.
+     *
+     * @param values {@link ContentValues} to query.
+     * @return True if any supplier column is present.
+     */
+    private static boolean hasSupplierColumns(@NonNull ContentValues values) {
+        return values.containsKey(ProductContract.ProductEntry.COLUMN_SUPPLIER)
+                || values.containsKey(ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER)
+                || values.containsKey(ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL);
+    }
+
+    /**
+     * Notifies registered observers that suppliers have changed. Products read the name and
+     * contact details of their supplier, so every product is notified as well when existing
+     * suppliers changed.
+     *
+     * @param countSuppliersChanged Number of existing suppliers that changed.
+     */
+    private void notifySuppliersChanged(int countSuppliersChanged) {
+        notifyChange(ProductContract.SupplierEntry.CONTENT_URI);
+        if (countSuppliersChanged > 0) {
+            notifyChange(-1, ProductContract.OPERATION_UPDATE);
+        }
+    }
+
+    /**
+     * Notifies registered observers that products have changed. The notification URI refers to
+     * the single product that changed when there is one, so observers of other products are not
+     * disturbed, and it carries the kind of operation in
+     * {@link ProductContract#QUERY_PARAMETER_OPERATION}.
+     *
+     * @param id        Id of the single product that changed. {@code -1} if many products
+     *                  changed.
+     * @param operation One of {@link ProductContract#OPERATION_INSERT},
+     *                  {@link ProductContract#OPERATION_UPDATE}, or
+     *                  {@link ProductContract#OPERATION_DELETE}.
+     */
+    private void notifyChange(long id, @NonNull String operation) {
+        notifyChange(ProductContract.ProductEntry.buildChangeUri(id, operation));
+    }
 
-        // Notify listeners of delete.
-        if (countRowsDeleted > 0) {
+    /**
+     * Notifies registered observers that data at the given content URI has changed. If the
+     * calling thread is inside {@link #applyBatch(ArrayList)}, the notification is deferred until
+     * the batch finishes and is coalesced with other notifications for the same content URI.
+     *
+     * @param uri Content URI that changed.
+     */
+    private void notifyChange(@NonNull Uri uri) {
+        Set<Uri> notificationUris = pendingNotificationUris.get();
+        if (notificationUris != null) {
+            notificationUris.add(uri);
+        } else {
             getContext().getContentResolver().notifyChange(uri, null);
         }
+    }
+
+    /**
+     * Schedules {@link #deleteOrphanedPhotos()} unless it is already scheduled. If the calling
+     * thread is inside {@link #applyBatch(ArrayList)}, nothing is scheduled, since the batch
+     * schedules it once it commits.
+     */
+    private void scheduleOrphanedPhotoDeletion() {
+        if (pendingNotificationUris.get() != null) {
+            return;
+        }
+        if (isOrphanedPhotoDeletionScheduled.compareAndSet(false, true)) {
+            orphanedPhotoExecutor.execute(this::deleteOrphanedPhotos);
+        }
+    }
+
+    /**
+     * Deletes the files of the photos queued in {@link ProductDbHelper#TABLE_ORPHANED_PHOTOS} and
+     * takes them off the queue. Each path is taken off the queue within a transaction that stays
+     * open while its file is deleted, so no product can start referring to the photo in between.
+     * Photos that {@link PhotoStore#isDeletable(File)} does not allow deleting yet stay queued,
+     * and another run is scheduled for when the first of them may be deleted, so they do not wait
+     * for an unrelated write. Paths of files that are gone or do not belong to the store are simply
+     * taken off the queue. It is run on {@link #orphanedPhotoExecutor}, so database failures are
+     * logged rather than thrown. Photos still queued after a failure are deleted on the next run.
+     */
+    @WorkerThread
+    private void deleteOrphanedPhotos() {
+        isOrphanedPhotoDeletionScheduled.set(false);
+
+        // This run replaces any run delayed by the last one.
+        if (delayedOrphanedPhotoDeletion != null) {
+            delayedOrphanedPhotoDeletion.cancel(false);
+            delayedOrphanedPhotoDeletion = null;
+        }
+        long millisUntilDeletable = -1;
+        try {
+            SQLiteDatabase db = acquireDatabase();
+            try {
+                millisUntilDeletable = deleteQueuedPhotos(db);
+            } finally {
+                db.releaseReference();
+            }
+        } catch (SQLiteException | IllegalStateException e) {
+            Log.e(TAG, e.toString());
+        }
+        if (millisUntilDeletable >= 0) {
+            delayedOrphanedPhotoDeletion = orphanedPhotoExecutor.schedule(
+                    this::deleteOrphanedPhotos,
+                    millisUntilDeletable,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Deletes the files of the photos queued in {@link ProductDbHelper#TABLE_ORPHANED_PHOTOS} and
+     * takes them off the queue, as described in {@link #deleteOrphanedPhotos()}.
+     *
+     * @param db Writable database holding the queue.
+     * @return Time in milliseconds until the first photo left queued may be deleted. {@code -1} if
+     * no photo was left queued because it was too young.
+     */
+    @WorkerThread
+    private long deleteQueuedPhotos(@NonNull SQLiteDatabase db) {
+
+        // Read the queue first, so no cursor is open while files are deleted.
+        ArrayList<String> paths = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(SQL_SELECT_ORPHANED_PHOTOS, null)) {
+            while (cursor.moveToNext()) {
+                paths.add(cursor.getString(0));
+            }
+        }
+
+        long millisUntilDeletable = -1;
+        SQLiteStatement dequeueStatement = db.compileStatement(SQL_DEQUEUE_ORPHANED_PHOTO);
+        try {
+            for (String path : paths) {
+                File file = new File(path);
+                boolean isGone = !file.exists() || !photoStore.isOwned(file);
+                if (!isGone && !photoStore.isDeletable(file)) {
+                    long millis = photoStore.getMillisUntilDeletable(file);
+                    if (millisUntilDeletable == -1 || millis < millisUntilDeletable) {
+                        millisUntilDeletable = millis;
+                    }
+                    continue;
+                }
+                db.beginTransaction();
+                try {
+                    dequeueStatement.bindString(1, path);
+
+                    // No row is deleted if the photo was referred to again since the queue was
+                    // read.
+                    if (dequeueStatement.executeUpdateDelete() == 1) {
+                        if (!isGone) {
+                            photoStore.deleteUnreferenced(file);
+                        }
+                        db.setTransactionSuccessful();
+                    }
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            dequeueStatement.close();
+        }
+        return millisUntilDeletable;
+    }
+
+    /**
+     * Returns the id of the single product a content URI refers to.
+     *
+     * @param uri   Content URI of a request.
+     * @param match URI matcher code of the content URI.
+     * @return Id of the product. {@code -1} if the content URI refers to all products.
+     */
+    private long getChangedId(@NonNull Uri uri, int match) {
+        return match == URI_CODE_SINGLE_PRODUCT ? ContentUris.parseId(uri) : -1;
+    }
+
+    /**
+     * Returns whether the result of a {@link ContentProviderOperation} signals failure. Insert
+     * operations fail when no URI is returned, while update and delete operations fail when
+     * {@code -1} rows are affected.
+     *
+     * @param operation Operation that was applied.
+     * @param result    Result of the operation.
+     * @return True if the operation failed.
+     */
+    private boolean isFailedResult(
+            @NonNull ContentProviderOperation operation,
+            @NonNull ContentProviderResult result
+    ) {
+        if (operation.isInsert()) {
+            return result.uri == null;
+        } else {
+            return result.count != null && result.count == -1;
+        }
+    }
+
+    /**
+     * Returns whether a paging query parameter is either absent or a non-negative integer.
+     *
+     * @param parameter Value of the query parameter. {@code null} if absent.
+     * @return True if the query parameter is valid.
+     */
+    private boolean isValidPagingParameter(@Nullable String parameter) {
+        if (parameter == null) {
+            return true;
+        }
+        try {
+            return Long.parseLong(parameter) >= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether a {@link ProductContract#QUERY_PARAMETER_AFTER_KEY} query parameter holds a
+     * value of the sort column. Prices and quantities must be whole numbers.
+     *
+     * @param sort     Value of {@link ProductContract#QUERY_PARAMETER_SORT}.
+     * @param afterKey Value of {@link ProductContract#QUERY_PARAMETER_AFTER_KEY}.
+     * @return True if the value is valid.
+     */
+    private static boolean isValidSortKey(@NonNull String sort, @NonNull String afterKey) {
+        if (ProductContract.SORT_NAME.equals(sort)) {
+            return true;
+        }
+        try {
+            Long.parseLong(afterKey);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the name of the SQLite tuning profile in use.
+     *
+     * @return The name under {@link ProductContract#EXTRA_TUNING_PROFILE}.
+     */
+    @NonNull
+    private Bundle getTuningProfile() {
+        Bundle result = new Bundle();
+        result.putString(
+                ProductContract.EXTRA_TUNING_PROFILE,
+                productDbHelper.getTuning().getName()
+        );
+        return result;
+    }
+
+    /**
+     * Reopens the database with another SQLite tuning profile and remembers it across app
+     * restarts. Work started before the switch, including transactions and cursors that are still
+     * open, holds a reference to the old database, so the old database is only closed once the
+     * last of it finishes. Work started after the switch uses the new database.
+     *
+     * @param profileName Name of the tuning profile.
+     * @return The name of the tuning profile in use under
+     * {@link ProductContract#EXTRA_TUNING_PROFILE}. Is {@code null} if no profile has the given
+     * name.
+     */
+    @Nullable
+    private Bundle setTuningProfile(@Nullable String profileName) {
+        ProductDbTuning tuning = ProductDbTuning.forName(profileName);
+        if (tuning == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (productDbHelper.getTuning() != tuning) {
+                ProductDbHelper oldProductDbHelper = productDbHelper;
+                productDbHelper = new ProductDbHelper(getContext(), tuning);
+                oldProductDbHelper.close();
+            }
+        }
+        getPreferences().edit().putString(PREFERENCE_TUNING_PROFILE, tuning.getName()).apply();
+        return getTuningProfile();
+    }
+
+    /**
+     * Returns the writable database with a reference acquired for the caller, who must release it
+     * with {@link SQLiteDatabase#releaseReference()} once done with it. The reference keeps the
+     * database open even if {@link #setTuningProfile(String)} closes its helper in the meantime.
+     * Inside {@link #applyBatch(ArrayList)}, the database of the batch is returned, so every
+     * operation of the batch runs in its transaction.
+     *
+     * @return The writable database.
+     */
+    @NonNull
+    private SQLiteDatabase acquireDatabase() {
+        SQLiteDatabase db = batchDatabase.get();
+        if (db != null) {
+            db.acquireReference();
+            return db;
+        }
+
+        // Open the database and acquire the reference under the lock the helper is swapped under,
+        // so a closed helper is never reopened.
+        synchronized (this) {
+            db = productDbHelper.getWritableDatabase();
+            db.acquireReference();
+            return db;
+        }
+    }
+
+    /**
+     * Returns the shared preferences of this content provider.
+     *
+     * @return The shared preferences.
+     */
+    @NonNull
+    private SharedPreferences getPreferences() {
+        return getContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
 
-        return countRowsDeleted;
+    /**
+     * Builds a full-text search expression that matches products with a word starting with each
+     * word of the given text. Words are lowercased so none of them is mistaken for an operator.
+     *
+     * @param query Text to search for.
+     * @return The search expression. {@code null} if the text has no words.
+     */
+    @Nullable
+    private static String buildMatchExpression(@Nullable String query) {
+        if (query == null) {
+            return null;
+        }
+        StringBuilder matchExpression = new StringBuilder();
+        for (String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (matchExpression.length() > 0) {
+                    matchExpression.append(' ');
+                }
+                matchExpression.append(word).append('*');
+            }
+        }
+        return matchExpression.length() > 0 ? matchExpression.toString() : null;
+    }
+
+    /**
+     * Escapes the wildcard characters of a LIKE pattern with backslashes.
+     *
+     * @param text Text to match literally.
+     * @return The escaped text.
+     */
+    @NonNull
+    private static String escapeLikePattern(@NonNull String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Returns whether a {@link ContentValues} describes a complete, valid product that may be
+     * inserted into this content provider.
+     *
+     * @param values {@link ContentValues} to query.
+     * @return True if the {@link ContentValues} may be inserted.
+     */
+    static boolean isValidInsertion(@NonNull ContentValues values) {
+        return values.size() == 7 && hasValidContentValues(values);
+    }
+
+    /**
+     * Returns whether a {@link ContentValues} describes a complete, valid supplier that may be
+     * inserted into this content provider.
+     *
+     * @param values {@link ContentValues} to query.
+     * @return True if the {@link ContentValues} may be inserted.
+     */
+    private boolean isValidSupplierInsertion(@NonNull ContentValues values) {
+        return values.size() == 3 && hasValidSupplierValues(values);
+    }
+
+    /**
+     * Returns whether a {@link ContentValues} has valid supplier data that may be stored in this
+     * content provider. Every column of the suppliers table must be a nonempty String.
+     *
+     * @param values {@link ContentValues} to query.
+     * @return True if the {@link ContentValues} are valid.
+     */
+    private boolean hasValidSupplierValues(@NonNull ContentValues values) {
+        for (String column : values.keySet()) {
+            if (!column.equals(ProductContract.SupplierEntry.COLUMN_NAME)
+                    && !column.equals(ProductContract.SupplierEntry.COLUMN_PHONE_NUMBER)
+                    && !column.equals(ProductContract.SupplierEntry.COLUMN_EMAIL)) {
+                return false;
+            }
+            Object value = values.get(column);
+            if (!(value instanceof String)
+                    || ((String) value).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -308,7 +1821,7 @@ public class ProductProvider extends ContentProvider {
      * @param values {@link ContentValues} to query.
      * @return True if the {@link ContentValues} are valid.
      */
-    private boolean hasValidContentValues(@NonNull ContentValues values) {
+    static boolean hasValidContentValues(@NonNull ContentValues values) {
 
         // Name column must be a nonempty String.
         if (values.containsKey(ProductContract.ProductEntry.COLUMN_NAME)) {
@@ -319,11 +1832,11 @@ public class ProductProvider extends ContentProvider {
             }
         }
 
-        // Price column must be a non-negative Integer.
+        // Price column must be a non-negative Integer or Long of cents.
         if (values.containsKey(ProductContract.ProductEntry.COLUMN_PRICE)) {
             Object price = values.get(ProductContract.ProductEntry.COLUMN_PRICE);
-            if (!(price instanceof Integer)
-                    || ((Integer) price) < 0) {
+            if (!(price instanceof Integer || price instanceof Long)
+                    || ((Number) price).longValue() < 0) {
                 return false;
             }
         }
@@ -1,81 +1,191 @@
 package com.davidread.clothescatalog2.database;
 
 import android.content.ContentValues;
-import android.database.Cursor;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.util.Locale;
 
 /**
  * A class that provides util functions for accessing and modifying the price of a product in
- * the product provider.
+ * the product provider, and for formatting prices and quantities to show in the UI.
  */
 public final class ProductProviderUtils {
 
+    /**
+     * Length of a buffer large enough for any price or number written by this class.
+     */
+    public static final int MAX_FORMATTED_LENGTH = 32;
+
     private ProductProviderUtils() {
         // Private constructor prevents accidental instantiation of this class.
     }
 
     /**
-     * Puts a price from the UI into the given content values to store in the product provider.
+     * Puts a price into the given content values to store in the product provider.
      *
      * @param values Content values to put the price in.
-     * @param price  Price directly from the UI.
+     * @param cents  Price in cents, as returned by {@link #parseCents(CharSequence)}.
      */
-    public static void putPrice(@NonNull ContentValues values, double price) {
-        int intPrice = (int) (price * 100);
-        values.put(ProductContract.ProductEntry.COLUMN_PRICE, intPrice);
+    public static void putPrice(@NonNull ContentValues values, long cents) {
+        values.put(ProductContract.ProductEntry.COLUMN_PRICE, cents);
     }
 
     /**
-     * Returns a price string in decimal format to show in the UI from a cursor from the product
-     * provider. Returns {@code null} if no price is stored in the cursor.
+     * Parses a price in dollars, such as {@code 19.99}, {@code 5.} or {@code $.50}, into exact
+     * cents. It reads the characters directly, so text from the UI may be passed as is without
+     * converting it to a string, and it never goes through a floating point number, so every
+     * price with at most two decimal places is parsed exactly.
      *
-     * @param cursor Cursor already pointing at some row.
-     * @return Price string in decimal format or {@code null}.
+     * @param text Price in dollars with an optional leading dollar sign, at least one digit, and
+     *             at most two decimal places.
+     * @return The price in cents. {@code -1} if the text is not a valid price or does not fit in a
+     * long.
      */
-    @Nullable
-    public static String getDecimalFormatPrice(@NonNull Cursor cursor) {
-        double doublePrice = getDoublePrice(cursor);
-        DecimalFormat decimalFormat = new DecimalFormat("0.00");
-        return doublePrice != -1
-                ? decimalFormat.format(doublePrice)
-                : null;
+    public static long parseCents(@NonNull CharSequence text) {
+        int length = text.length();
+        int start = length > 0 && text.charAt(0) == '$' ? 1 : 0;
+        long cents = 0;
+        int digitCount = 0;
+        int fractionDigitCount = -1;
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && fractionDigitCount == -1) {
+                fractionDigitCount = 0;
+                continue;
+            }
+            if (c < '0' || c > '9' || fractionDigitCount == 2) {
+                return -1;
+            }
+            int digit = c - '0';
+            if (cents > (Long.MAX_VALUE - digit) / 10) {
+                // Overflow.
+                return -1;
+            }
+            cents = cents * 10 + digit;
+            digitCount++;
+            if (fractionDigitCount != -1) {
+                fractionDigitCount++;
+            }
+        }
+        if (digitCount == 0) {
+            return -1;
+        }
+
+        // Scale up to cents for each missing decimal place.
+        for (int i = Math.max(fractionDigitCount, 0); i < 2; i++) {
+            if (cents > Long.MAX_VALUE / 10) {
+                return -1;
+            }
+            cents *= 10;
+        }
+        return cents;
     }
 
     /**
-     * Returns a price string in currency format to show in the UI from a cursor from the product
-     * provider. Returns {@code null} if no price is stored in the cursor.
+     * Writes an amount of cents in US currency format, such as {@code $1,234.56}, to the start of
+     * a buffer. It works on the cents directly, so no rounding occurs, and allocates nothing, so
+     * it may be called for every bind of a list item.
      *
-     * @param cursor Cursor already pointing at some row.
-     * @return Price string in currency format or {@code null}.
+     * @param cents  Amount in cents, as prices are stored in the product provider.
+     * @param buffer Buffer of at least {@link #MAX_FORMATTED_LENGTH} characters to write to.
+     * @return Number of characters written.
      */
-    @Nullable
-    public static String getCurrencyFormatPrice(@NonNull Cursor cursor) {
-        double doublePrice = getDoublePrice(cursor);
-        NumberFormat numberFormat = NumberFormat.getCurrencyInstance(Locale.US);
-        return doublePrice != -1
-                ? numberFormat.format(doublePrice)
-                : null;
+    public static int writeCurrencyPrice(long cents, @NonNull char[] buffer) {
+        int length = 0;
+        if (cents < 0) {
+            buffer[length++] = '-';
+        }
+        buffer[length++] = '$';
+        return writeDollarsAndCents(cents, true, buffer, length);
     }
 
     /**
-     * Returns a price double from a cursor from the product provider. Returns {@code -1} if no
-     * price is stored in the cursor.
+     * Writes an amount of cents in decimal format, such as {@code 1234.56}, to the start of a
+     * buffer without allocating.
      *
-     * @param cursor Cursor already pointing at some row.
-     * @return Price double or {@code -1}.
+     * @param cents  Amount in cents, as prices are stored in the product provider.
+     * @param buffer Buffer of at least {@link #MAX_FORMATTED_LENGTH} characters to write to.
+     * @return Number of characters written.
      */
-    private static double getDoublePrice(@NonNull Cursor cursor) {
-        int priceColumnIndex = cursor.getColumnIndex(ProductContract.ProductEntry.COLUMN_PRICE);
-        if (priceColumnIndex == -1) {
-            return -1;
+    public static int writeDecimalPrice(long cents, @NonNull char[] buffer) {
+        int length = 0;
+        if (cents < 0) {
+            buffer[length++] = '-';
+        }
+        return writeDollarsAndCents(cents, false, buffer, length);
+    }
+
+    /**
+     * Writes a whole number, such as a quantity, to the start of a buffer without allocating.
+     *
+     * @param value  Number to write.
+     * @param buffer Buffer of at least {@link #MAX_FORMATTED_LENGTH} characters to write to.
+     * @return Number of characters written.
+     */
+    public static int writeNumber(long value, @NonNull char[] buffer) {
+        int length = 0;
+        if (value < 0) {
+            buffer[length++] = '-';
+        }
+        return writeDigits(value > 0 ? -value : value, false, buffer, length);
+    }
+
+    /**
+     * Writes the magnitude of an amount of cents as dollars, a decimal point, and two digits of
+     * cents.
+     *
+     * @param cents     Amount in cents.
+     * @param isGrouped Whether to separate every three digits of dollars with commas.
+     * @param buffer    Buffer to write to.
+     * @param offset    Index in the buffer to start writing at.
+     * @return Index in the buffer just past the last character written.
+     */
+    private static int writeDollarsAndCents(
+            long cents,
+            boolean isGrouped,
+            @NonNull char[] buffer,
+            int offset
+    ) {
+        // Work with the negative magnitude, since Long.MIN_VALUE has no positive counterpart.
+        long negativeCents = cents > 0 ? -cents : cents;
+        int end = writeDigits(negativeCents / 100, isGrouped, buffer, offset);
+        int centsPart = (int) -(negativeCents % 100);
+        buffer[end++] = '.';
+        buffer[end++] = (char) ('0' + centsPart / 10);
+        buffer[end++] = (char) ('0' + centsPart % 10);
+        return end;
+    }
+
+    /**
+     * Writes the digits of the magnitude of a number.
+     *
+     * @param negativeValue Negative magnitude of the number, or zero.
+     * @param isGrouped     Whether to separate every three digits with commas.
+     * @param buffer        Buffer to write to.
+     * @param offset        Index in the buffer to start writing at.
+     * @return Index in the buffer just past the last character written.
+     */
+    private static int writeDigits(
+            long negativeValue,
+            boolean isGrouped,
+            @NonNull char[] buffer,
+            int offset
+    ) {
+        int digitCount = 1;
+        for (long value = negativeValue / 10; value != 0; value /= 10) {
+            digitCount++;
+        }
+        int end = offset + digitCount + (isGrouped ? (digitCount - 1) / 3 : 0);
+
+        // Fill the digits in from the last one.
+        int position = end;
+        long value = negativeValue;
+        for (int i = 0; i < digitCount; i++) {
+            if (isGrouped && i > 0 && i % 3 == 0) {
+                buffer[--position] = ',';
+            }
+            buffer[--position] = (char) ('0' - value % 10);
+            value /= 10;
         }
-        int intPrice = cursor.getInt(priceColumnIndex);
-        return (double) intPrice * 0.01;
+        return end;
     }
-}
\ No newline at end of file
+}
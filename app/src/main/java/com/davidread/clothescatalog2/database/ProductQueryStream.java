@@ -0,0 +1,451 @@
+package com.davidread.clothescatalog2.database;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the result of a query on the product provider up to date. The query runs on a small
+ * shared pool of background threads, and its {@link Cursor} is read into a result by a
+ * {@link Reader} and closed there, so the main thread only ever sees the result. Change
+ * notifications are coalesced into at most one reload per frame, however many writes arrive in
+ * between. A change while a query is in flight does not cancel it, since a long query would never
+ * finish during a steady burst of writes. It only marks the result as stale, and the query is run
+ * once more on the frame after the result is delivered. A query is only cancelled through its
+ * {@link CancellationSignal} once {@link #stop()} or {@link #reload()} makes it obsolete, and its
+ * result is then never delivered. While stopped, changes are only remembered, and the query is
+ * run again once the stream is started.
+ * <p>
+ * A stream must be created, used, and closed on the main thread.
+ *
+ * @param <T> Type of the result.
+ */
+public class ProductQueryStream<T> {
+
+    /**
+     * Reads the result of a query out of its {@link Cursor}. It is invoked on a background thread.
+     *
+     * @param <T> Type of the result.
+     */
+    public interface Reader<T> {
+
+        /**
+         * Reads the result out of a cursor, which is closed afterwards.
+         *
+         * @param cursor          Cursor returned by the query, before its first row.
+         * @param queryStartNanos Time in {@link SystemClock#elapsedRealtimeNanos()} right before
+         *                        the query was started. Every write that finished before then is
+         *                        reflected in the cursor.
+         * @return The result.
+         */
+        @Nullable
+        @WorkerThread
+        T read(@NonNull Cursor cursor, long queryStartNanos);
+    }
+
+    /**
+     * Observer invoked on the main thread with each new result.
+     *
+     * @param <T> Type of the result.
+     */
+    public interface Observer<T> {
+
+        /**
+         * Invoked with the result of the latest query.
+         *
+         * @param result The result. {@code null} if the query failed or the reader returned
+         *               {@code null}.
+         */
+        void onQueryResult(@Nullable T result);
+    }
+
+    /**
+     * Reads the first row of a cursor into {@link ContentValues}, or {@code null} if it is empty.
+     */
+    public static final Reader<ContentValues> FIRST_ROW = (cursor, queryStartNanos) -> {
+        if (!cursor.moveToFirst()) {
+            return null;
+        }
+        ContentValues values = new ContentValues();
+        DatabaseUtils.cursorRowToContentValues(cursor, values);
+        return values;
+    };
+
+    /**
+     * Reads every row of a cursor into {@link ContentValues}.
+     */
+    public static final Reader<List<ContentValues>> ALL_ROWS = (cursor, queryStartNanos) -> {
+        List<ContentValues> rows = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            ContentValues values = new ContentValues();
+            DatabaseUtils.cursorRowToContentValues(cursor, values);
+            rows.add(values);
+        }
+        return rows;
+    };
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductQueryStream.class.getSimpleName();
+
+    /**
+     * Number of queries of all streams run at once.
+     */
+    private static final int QUERY_THREAD_COUNT = 2;
+
+    /**
+     * Time in seconds an idle query thread is kept.
+     */
+    private static final long QUERY_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Runs the queries of every stream. Superseded queries return as soon as they are dequeued, so
+     * the queue holds at most about one live query per stream.
+     */
+    private static final ExecutorService queryExecutor;
+
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                QUERY_THREAD_COUNT,
+                QUERY_THREAD_COUNT,
+                QUERY_THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        queryExecutor = executor;
+    }
+
+    /**
+     * To query the product provider and listen for changes.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * URI to query.
+     */
+    private final Uri uri;
+
+    /**
+     * Columns to query. {@code null} for all columns.
+     */
+    private final String[] projection;
+
+    /**
+     * Reads the result out of each queried {@link Cursor}.
+     */
+    private final Reader<T> reader;
+
+    /**
+     * Observer to invoke with each new result.
+     */
+    private final Observer<T> observer;
+
+    /**
+     * Posts results to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Schedules reloads on the next frame.
+     */
+    private final Choreographer choreographer = Choreographer.getInstance();
+
+    /**
+     * Runs the query on the frame after a change, once for every change notified before it.
+     */
+    private final Choreographer.FrameCallback reloadFrameCallback = (frameTimeNanos) -> {
+        isReloadPosted = false;
+        if (cancellationSignal == null) {
+            startQuery();
+        }
+    };
+
+    /**
+     * Listens for changes in the data of the query. Invoked on the main thread.
+     */
+    private final ContentObserver contentObserver = new ContentObserver(mainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onContentChanged();
+        }
+    };
+
+    /**
+     * Cancels the query in flight. {@code null} if no query is in flight.
+     */
+    private CancellationSignal cancellationSignal;
+
+    /**
+     * Number of queries started. A result is only delivered if no query started after it.
+     */
+    private int generation;
+
+    /**
+     * Whether the data changed since the last query was started, or no query was started yet. A
+     * query in flight is run once more after it is delivered if this is set meanwhile.
+     */
+    private boolean isChanged = true;
+
+    /**
+     * Whether {@link #reloadFrameCallback} is posted.
+     */
+    private boolean isReloadPosted;
+
+    /**
+     * Whether {@link #start()} was called more recently than {@link #stop()}.
+     */
+    private boolean isStarted;
+
+    /**
+     * Whether {@link #close()} was called.
+     */
+    private boolean isClosed;
+
+    /**
+     * Constructs a new {@link ProductQueryStream}. It listens for changes until it is closed, but
+     * only queries while started.
+     *
+     * @param context         Any context of this app.
+     * @param uri             URI to query.
+     * @param projection      Columns to query. {@code null} for all columns.
+     * @param notificationUri URI whose change notifications, and those of its descendants, reload
+     *                        the query.
+     * @param reader          Reads the result out of each queried {@link Cursor}.
+     * @param observer        Observer to invoke on the main thread with each new result.
+     */
+    @MainThread
+    public ProductQueryStream(
+            @NonNull Context context,
+            @NonNull Uri uri,
+            @Nullable String[] projection,
+            @NonNull Uri notificationUri,
+            @NonNull Reader<T> reader,
+            @NonNull Observer<T> observer
+    ) {
+        this(
+                context.getApplicationContext().getContentResolver(),
+                uri,
+                projection,
+                notificationUri,
+                reader,
+                observer
+        );
+    }
+
+    /**
+     * Constructs a new {@link ProductQueryStream} that queries through the given resolver.
+     *
+     * @param contentResolver To query the product provider and listen for changes.
+     * @param uri             URI to query.
+     * @param projection      Columns to query. {@code null} for all columns.
+     * @param notificationUri URI whose change notifications, and those of its descendants, reload
+     *                        the query.
+     * @param reader          Reads the result out of each queried {@link Cursor}.
+     * @param observer        Observer to invoke on the main thread with each new result.
+     */
+    @MainThread
+    ProductQueryStream(
+            @NonNull ContentResolver contentResolver,
+            @NonNull Uri uri,
+            @Nullable String[] projection,
+            @NonNull Uri notificationUri,
+            @NonNull Reader<T> reader,
+            @NonNull Observer<T> observer
+    ) {
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.projection = projection;
+        this.reader = reader;
+        this.observer = observer;
+        contentResolver.registerContentObserver(notificationUri, true, contentObserver);
+    }
+
+    /**
+     * Starts delivering results. The query is run right away if it was never run or its data
+     * changed while stopped.
+     */
+    @MainThread
+    public void start() {
+        if (isClosed || isStarted) {
+            return;
+        }
+        isStarted = true;
+        if (isChanged) {
+            reload();
+        }
+    }
+
+    /**
+     * Stops delivering results. The query in flight, if any, is cancelled and run again once
+     * started.
+     */
+    @MainThread
+    public void stop() {
+        if (!isStarted) {
+            return;
+        }
+        isStarted = false;
+        if (isReloadPosted) {
+            choreographer.removeFrameCallback(reloadFrameCallback);
+            isReloadPosted = false;
+            isChanged = true;
+        }
+        if (cancellationSignal != null) {
+            cancelQuery();
+            isChanged = true;
+        }
+    }
+
+    /**
+     * Stops delivering results and listening for changes for good.
+     */
+    @MainThread
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        stop();
+        isClosed = true;
+        contentResolver.unregisterContentObserver(contentObserver);
+    }
+
+    /**
+     * Runs the query again right away, cancelling the query in flight, if any. Only for when the
+     * result in flight is obsolete, since changes in the data already reload the query.
+     */
+    @MainThread
+    public void reload() {
+        if (isClosed || !isStarted) {
+            isChanged = true;
+            return;
+        }
+        if (cancellationSignal != null) {
+            cancelQuery();
+        }
+        startQuery();
+    }
+
+    /**
+     * Starts running the query in the background. No query may be in flight.
+     */
+    @MainThread
+    private void startQuery() {
+        if (isClosed || !isStarted) {
+            isChanged = true;
+            return;
+        }
+        isChanged = false;
+        CancellationSignal signal = new CancellationSignal();
+        cancellationSignal = signal;
+        int queryGeneration = ++generation;
+        queryExecutor.execute(() -> runQuery(signal, queryGeneration));
+    }
+
+    /**
+     * Invoked when the data of the query changes. It reloads on the next frame, unless a reload is
+     * already posted, a query is in flight, or the stream is stopped. A query in flight is left to
+     * finish, and the query is reloaded after its result is delivered.
+     */
+    @MainThread
+    void onContentChanged() {
+        if (isClosed) {
+            return;
+        }
+        if (!isStarted || cancellationSignal != null) {
+            isChanged = true;
+            return;
+        }
+        postReload();
+    }
+
+    /**
+     * Posts {@link #reloadFrameCallback} to run on the next frame, unless it is already posted.
+     */
+    @MainThread
+    private void postReload() {
+        if (!isReloadPosted) {
+            isReloadPosted = true;
+            choreographer.postFrameCallback(reloadFrameCallback);
+        }
+    }
+
+    /**
+     * Cancels the query in flight and makes sure its result is never delivered.
+     */
+    @MainThread
+    private void cancelQuery() {
+        cancellationSignal.cancel();
+        cancellationSignal = null;
+        generation++;
+    }
+
+    /**
+     * Runs the query, reads its result, and posts it to the main thread. It is run on
+     * {@link #queryExecutor}.
+     *
+     * @param signal          Cancels the query once it is superseded.
+     * @param queryGeneration Value of {@link #generation} when the query was started.
+     */
+    @WorkerThread
+    private void runQuery(@NonNull CancellationSignal signal, int queryGeneration) {
+        if (signal.isCanceled()) {
+            return;
+        }
+        T result;
+        long queryStartNanos = SystemClock.elapsedRealtimeNanos();
+        try (Cursor cursor = contentResolver.query(uri, projection, null, null, null, signal)) {
+            result = cursor != null ? reader.read(cursor, queryStartNanos) : null;
+        } catch (OperationCanceledException e) {
+            return;
+        } catch (RuntimeException e) {
+            Log.e(TAG, e.toString());
+            result = null;
+        }
+        T deliveredResult = result;
+        mainHandler.post(() -> deliver(deliveredResult, queryGeneration));
+    }
+
+    /**
+     * Delivers a result to {@link #observer}, unless a query was started after the one it came
+     * from. If the data changed while the query was in flight, it is reloaded on the next frame.
+     *
+     * @param result          The result.
+     * @param queryGeneration Value of {@link #generation} when the query was started.
+     */
+    @MainThread
+    private void deliver(@Nullable T result, int queryGeneration) {
+        if (isClosed || queryGeneration != generation) {
+            return;
+        }
+        cancellationSignal = null;
+        observer.onQueryResult(result);
+        if (isChanged && isStarted && !isClosed) {
+            postReload();
+        }
+    }
+}
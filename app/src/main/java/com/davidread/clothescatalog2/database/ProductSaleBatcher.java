@@ -0,0 +1,300 @@
+package com.davidread.clothescatalog2.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LongSparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Coalesces rapid sales of products into batched writes. Each sale is counted locally right away,
+ * so the UI can show the decremented quantity immediately, and the accumulated sales are written
+ * to the product provider in a single transaction once no sale has happened for a short quiet
+ * period. If a write fails, the local counts are dropped so the UI falls back to the quantities
+ * stored in the product provider. The quantity returned by a write is shown for rows read before
+ * the write finished, and dropped once data read after it is loaded. All methods must be called on
+ * the main thread.
+ */
+public class ProductSaleBatcher {
+
+    /**
+     * Listener invoked on the main thread when the quantity shown for a product should change.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked when the quantity to show for a product changes because of a local sale or
+         * because a batched write finished.
+         *
+         * @param id Id of the product.
+         */
+        void onQuantityChanged(long id);
+
+        /**
+         * Invoked when a batched write fails to sell some units of a product.
+         *
+         * @param id Id of the product.
+         */
+        void onSaleFailed(long id);
+    }
+
+    /**
+     * Quantity of a product returned by a successful write.
+     */
+    private static final class Confirmation {
+
+        /**
+         * Quantity of the product after the write.
+         */
+        final int quantity;
+
+        /**
+         * Time in {@link SystemClock#elapsedRealtimeNanos()} once the write finished. Rows read
+         * after it already hold {@link #quantity}.
+         */
+        final long writtenNanos;
+
+        /**
+         * Constructs a new {@link Confirmation}.
+         *
+         * @param quantity     Quantity of the product after the write.
+         * @param writtenNanos Time in {@link SystemClock#elapsedRealtimeNanos()} once the write
+         *                     finished.
+         */
+        Confirmation(int quantity, long writtenNanos) {
+            this.quantity = quantity;
+            this.writtenNanos = writtenNanos;
+        }
+    }
+
+    /**
+     * Default time in milliseconds without a sale after which accumulated sales are written.
+     */
+    public static final long DEFAULT_QUIET_PERIOD_MILLIS = 400;
+
+    /**
+     * Performs batched writes.
+     */
+    private final ProductWriteExecutor productWriteExecutor;
+
+    /**
+     * Listener to invoke when the quantity shown for a product should change.
+     */
+    private final Listener listener;
+
+    /**
+     * Time in milliseconds without a sale after which accumulated sales are written.
+     */
+    private final long quietPeriodMillis;
+
+    /**
+     * Schedules {@link #flush()} after the quiet period.
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Writes accumulated sales.
+     */
+    private final Runnable flushRunnable = this::flush;
+
+    /**
+     * Drops the results of batched writes once this {@link ProductSaleBatcher} is closed.
+     */
+    private final ProductWriteExecutor.CallbackScope writeCallbacks =
+            new ProductWriteExecutor.CallbackScope();
+
+    /**
+     * Units sold of each product that have not been written yet, keyed by product id. The maps
+     * in this class are keyed by primitive ids, so {@link #getQuantity(long, int, long)} boxes
+     * nothing when it is called for every bind of a list item.
+     */
+    private final LongSparseArray<Integer> pendingCounts = new LongSparseArray<>();
+
+    /**
+     * Units sold of each product that are being written, keyed by product id.
+     */
+    private final LongSparseArray<Integer> inFlightCounts = new LongSparseArray<>();
+
+    /**
+     * Quantity of each product returned by the most recent successful write, keyed by product id.
+     * It is more recent than any quantity read from the product provider before the write
+     * finished, so it is preferred over those until data read after the write is loaded.
+     */
+    private final LongSparseArray<Confirmation> confirmations = new LongSparseArray<>();
+
+    /**
+     * Constructs a new {@link ProductSaleBatcher} with the default quiet period.
+     *
+     * @param productWriteExecutor Performs batched writes.
+     * @param listener             Listener to invoke when the quantity shown for a product should
+     *                             change.
+     */
+    public ProductSaleBatcher(
+            @NonNull ProductWriteExecutor productWriteExecutor,
+            @NonNull Listener listener
+    ) {
+        this(productWriteExecutor, listener, DEFAULT_QUIET_PERIOD_MILLIS);
+    }
+
+    /**
+     * Constructs a new {@link ProductSaleBatcher}.
+     *
+     * @param productWriteExecutor Performs batched writes.
+     * @param listener             Listener to invoke when the quantity shown for a product should
+     *                             change.
+     * @param quietPeriodMillis    Time in milliseconds without a sale after which accumulated
+     *                             sales are written.
+     */
+    public ProductSaleBatcher(
+            @NonNull ProductWriteExecutor productWriteExecutor,
+            @NonNull Listener listener,
+            long quietPeriodMillis
+    ) {
+        this.productWriteExecutor = productWriteExecutor;
+        this.listener = listener;
+        this.quietPeriodMillis = quietPeriodMillis;
+    }
+
+    /**
+     * Sells one unit of a product locally and schedules it to be written after the quiet period.
+     * Nothing is sold if the quantity shown for the product is already 0.
+     *
+     * @param id       Id of the product.
+     * @param quantity Quantity shown for the product, as returned by
+     *                 {@link #getQuantity(long, int, long)}.
+     * @return True if the unit was sold.
+     */
+    public boolean sell(long id, int quantity) {
+        if (quantity <= 0) {
+            return false;
+        }
+        increment(pendingCounts, id, 1);
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, quietPeriodMillis);
+        listener.onQuantityChanged(id);
+        return true;
+    }
+
+    /**
+     * Returns the quantity to show for a product, accounting for local sales that have not been
+     * reloaded from the product provider yet.
+     *
+     * @param id             Id of the product.
+     * @param storedQuantity Quantity of the product last loaded from the product provider.
+     * @param readStartNanos Time in {@link SystemClock#elapsedRealtimeNanos()} right before the
+     *                       query that read the stored quantity was started.
+     * @return Quantity to show.
+     */
+    public int getQuantity(long id, int storedQuantity, long readStartNanos) {
+        Confirmation confirmation = confirmations.get(id);
+        int quantity = confirmation != null && confirmation.writtenNanos >= readStartNanos
+                ? confirmation.quantity
+                : storedQuantity;
+        return quantity - getCount(pendingCounts, id) - getCount(inFlightCounts, id);
+    }
+
+    /**
+     * Invoked when every product shown was reloaded from the product provider. Quantities confirmed
+     * by writes that finished before the reload started are reflected in the reloaded data, so
+     * they are dropped. Those confirmed by writes that finished later are kept.
+     *
+     * @param readStartNanos Time in {@link SystemClock#elapsedRealtimeNanos()} right before the
+     *                       queries of the reload were started.
+     */
+    public void onDataReloaded(long readStartNanos) {
+        for (int i = confirmations.size() - 1; i >= 0; i--) {
+            if (confirmations.valueAt(i).writtenNanos < readStartNanos) {
+                confirmations.removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Writes every accumulated sale to the product provider right away in a single transaction.
+     * Call before the owner of this {@link ProductSaleBatcher} goes away so no sale is lost.
+     */
+    public void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (pendingCounts.size() == 0) {
+            return;
+        }
+        long[] ids = new long[pendingCounts.size()];
+        int[] counts = new int[pendingCounts.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = pendingCounts.keyAt(i);
+            counts[i] = pendingCounts.valueAt(i);
+            increment(inFlightCounts, ids[i], counts[i]);
+        }
+        pendingCounts.clear();
+        productWriteExecutor.sellBatch(
+                ids,
+                counts,
+                writeCallbacks.wrap((quantities) -> onFlushed(ids, counts, quantities))
+        );
+    }
+
+    /**
+     * Writes every accumulated sale and stops invoking the listener, even for writes that are
+     * still running. Call once the owner of this {@link ProductSaleBatcher} goes away.
+     */
+    public void close() {
+        flush();
+        writeCallbacks.cancel();
+    }
+
+    /**
+     * Invoked when a batched write finishes. It reconciles local counts with the result.
+     *
+     * @param ids        Ids of the products written.
+     * @param counts     Units written of each product.
+     * @param quantities New quantity of each product. {@code null} if the write failed.
+     */
+    private void onFlushed(@NonNull long[] ids, @NonNull int[] counts, @Nullable int[] quantities) {
+        // The write committed before this was posted, so any read starting later sees it.
+        long writtenNanos = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ids.length; i++) {
+            increment(inFlightCounts, ids[i], -counts[i]);
+            if (quantities == null || quantities[i] == -1) {
+                confirmations.remove(ids[i]);
+                listener.onSaleFailed(ids[i]);
+            } else {
+                confirmations.put(ids[i], new Confirmation(quantities[i], writtenNanos));
+            }
+            listener.onQuantityChanged(ids[i]);
+        }
+    }
+
+    /**
+     * Adds to the count of a product in a map of counts, removing the product once its count is 0.
+     *
+     * @param counts Map of counts keyed by product id.
+     * @param id     Id of the product.
+     * @param delta  Amount to add.
+     */
+    private static void increment(
+            @NonNull LongSparseArray<Integer> counts,
+            long id,
+            int delta
+    ) {
+        int count = getCount(counts, id) + delta;
+        if (count == 0) {
+            counts.remove(id);
+        } else {
+            counts.put(id, count);
+        }
+    }
+
+    /**
+     * Returns the count of a product in a map of counts.
+     *
+     * @param counts Map of counts keyed by product id.
+     * @param id     Id of the product.
+     * @return The count. {@code 0} if the product is not in the map.
+     */
+    private static int getCount(@NonNull LongSparseArray<Integer> counts, long id) {
+        Integer count = counts.get(id);
+        return count != null ? count : 0;
+    }
+}
@@ -0,0 +1,186 @@
+package com.davidread.clothescatalog2.database;
+
+import android.database.Cursor;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable copy of rows of products read out of a {@link Cursor}, stored column by column in
+ * primitive arrays. It is read once on a background thread, after which the {@link Cursor} may be
+ * closed, so showing a row on the main thread takes only array reads instead of moving through a
+ * cursor window and creating a string for every text column. Equal names and picture paths are
+ * stored as a single shared string.
+ * <p>
+ * It holds the id, name, price, quantity, and picture path columns. The picture path column is
+ * optional in the {@link Cursor}. It also records when the query of its rows was started, so a
+ * write that finished before then is known to be reflected in them.
+ */
+public final class ProductSnapshot {
+
+    /**
+     * A snapshot without rows.
+     */
+    public static final ProductSnapshot EMPTY = new ProductSnapshot(
+            new long[0],
+            new String[0],
+            new long[0],
+            new int[0],
+            new String[0],
+            0
+    );
+
+    /**
+     * Values of each column, indexed by row.
+     */
+    private final long[] ids;
+    private final String[] names;
+    private final long[] prices;
+    private final int[] quantities;
+    private final String[] picturePaths;
+
+    /**
+     * Time in {@link SystemClock#elapsedRealtimeNanos()} right before the query of the rows was
+     * started.
+     */
+    private final long readStartNanos;
+
+    /**
+     * Constructs a new {@link ProductSnapshot}.
+     *
+     * @param ids            Id of each row.
+     * @param names          Name of each row.
+     * @param prices         Price of each row in cents.
+     * @param quantities     Quantity of each row.
+     * @param picturePaths   Picture path of each row. Elements are {@code null} for rows without
+     *                       a photo.
+     * @param readStartNanos Time in {@link SystemClock#elapsedRealtimeNanos()} right before the
+     *                       query of the rows was started.
+     */
+    private ProductSnapshot(
+            @NonNull long[] ids,
+            @NonNull String[] names,
+            @NonNull long[] prices,
+            @NonNull int[] quantities,
+            @NonNull String[] picturePaths,
+            long readStartNanos
+    ) {
+        this.ids = ids;
+        this.names = names;
+        this.prices = prices;
+        this.quantities = quantities;
+        this.picturePaths = picturePaths;
+        this.readStartNanos = readStartNanos;
+    }
+
+    /**
+     * Reads every row of a {@link Cursor} into a new {@link ProductSnapshot}. The {@link Cursor}
+     * is left open. Must be called on a background thread, since it fills the cursor window.
+     * <p>
+     * A content resolver already fills the first window of a cursor before returning it, so the
+     * start time must be taken by the caller right before the query, not here. Otherwise a write
+     * committed between the query and this call would wrongly count as reflected in the rows.
+     *
+     * @param cursor         Cursor holding the id, name, price, and quantity columns, and
+     *                       optionally the picture path column.
+     * @param readStartNanos Time in {@link SystemClock#elapsedRealtimeNanos()} right before the
+     *                       query that returned the cursor was started.
+     * @return The snapshot.
+     */
+    @NonNull
+    public static ProductSnapshot read(@NonNull Cursor cursor, long readStartNanos) {
+        ProductProjection projection = ProductProjection.of(cursor);
+        int rowCount = cursor.getCount();
+        long[] ids = new long[rowCount];
+        String[] names = new String[rowCount];
+        long[] prices = new long[rowCount];
+        int[] quantities = new int[rowCount];
+        String[] picturePaths = new String[rowCount];
+        Map<String, String> strings = new HashMap<>();
+        for (int row = 0; row < rowCount && cursor.moveToPosition(row); row++) {
+            ids[row] = projection.getId(cursor);
+            names[row] = intern(strings, projection.getName(cursor));
+            prices[row] = projection.getPrice(cursor);
+            quantities[row] = projection.getQuantity(cursor);
+            picturePaths[row] = intern(strings, projection.getPicturePath(cursor));
+        }
+        return new ProductSnapshot(ids, names, prices, quantities, picturePaths, readStartNanos);
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return Number of rows.
+     */
+    public int getCount() {
+        return ids.length;
+    }
+
+    public long getId(int row) {
+        return ids[row];
+    }
+
+    @NonNull
+    public String getName(int row) {
+        return names[row];
+    }
+
+    public long getPrice(int row) {
+        return prices[row];
+    }
+
+    public int getQuantity(int row) {
+        return quantities[row];
+    }
+
+    @Nullable
+    public String getPicturePath(int row) {
+        return picturePaths[row];
+    }
+
+    public long getReadStartNanos() {
+        return readStartNanos;
+    }
+
+    /**
+     * Returns whether a row holds the same values as a row of another snapshot, for telling
+     * whether a product changed between two snapshots. Every column is compared.
+     *
+     * @param row      Index of the row in this snapshot.
+     * @param other    Snapshot holding the other row.
+     * @param otherRow Index of the other row.
+     * @return True if every column of both rows is equal.
+     */
+    public boolean isSameContent(int row, @NonNull ProductSnapshot other, int otherRow) {
+        return ids[row] == other.ids[otherRow]
+                && names[row].equals(other.names[otherRow])
+                && prices[row] == other.prices[otherRow]
+                && quantities[row] == other.quantities[otherRow]
+                && Objects.equals(picturePaths[row], other.picturePaths[otherRow]);
+    }
+
+    /**
+     * Returns the string already in a map equal to the given one, or adds the given one.
+     *
+     * @param strings Strings seen so far, each mapped to itself.
+     * @param string  String to intern.
+     * @return The shared string equal to the given one. {@code null} if it is {@code null}.
+     */
+    @Nullable
+    private static String intern(@NonNull Map<String, String> strings, @Nullable String string) {
+        if (string == null) {
+            return null;
+        }
+        String internedString = strings.get(string);
+        if (internedString == null) {
+            strings.put(string, string);
+            internedString = string;
+        }
+        return internedString;
+    }
+}
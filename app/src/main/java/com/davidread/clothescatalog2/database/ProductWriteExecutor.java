@@ -0,0 +1,372 @@
+package com.davidread.clothescatalog2.database;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Performs every write to the product provider one at a time on a single background thread, so
+ * that writes never block the main thread and never contend with each other. Results are delivered
+ * to callbacks on the main thread. It also keeps track of how many writes are waiting and how long
+ * each write takes.
+ * <p>
+ * A write always runs once submitted, even if whoever submitted it goes away. Callbacks that
+ * refer to an activity should be wrapped in a {@link CallbackScope} cancelled when the activity is
+ * destroyed, so they are neither invoked nor kept alive by a write that is still queued.
+ */
+public final class ProductWriteExecutor {
+
+    /**
+     * Callbacks of writes submitted by a single owner, such as an activity, that are all dropped
+     * once the owner goes away. A dropped callback is released right away, so a write that is
+     * still queued no longer holds on to its owner. Must be used on the main thread.
+     */
+    public static final class CallbackScope {
+
+        /**
+         * Callbacks wrapped by this scope that have not been invoked or dropped yet.
+         */
+        private final Set<ScopedCallback<?>> pendingCallbacks = new HashSet<>();
+
+        /**
+         * Whether {@link #cancel()} was called.
+         */
+        private boolean isCancelled;
+
+        /**
+         * Wraps a callback so that it is dropped once this scope is cancelled.
+         *
+         * @param callback Callback to wrap.
+         * @param <T>      Type of the result of the write.
+         * @return Wrapped callback to submit with the write.
+         */
+        @NonNull
+        public <T> Consumer<T> wrap(@NonNull Consumer<T> callback) {
+            ScopedCallback<T> scopedCallback = new ScopedCallback<>(isCancelled ? null : callback);
+            if (!isCancelled) {
+                pendingCallbacks.add(scopedCallback);
+            }
+            return scopedCallback;
+        }
+
+        /**
+         * Drops every callback wrapped by this scope that has not been invoked yet, and every
+         * callback wrapped from now on.
+         */
+        public void cancel() {
+            isCancelled = true;
+            for (ScopedCallback<?> scopedCallback : pendingCallbacks) {
+                scopedCallback.callback = null;
+            }
+            pendingCallbacks.clear();
+        }
+
+        /**
+         * A callback wrapped by a {@link CallbackScope}.
+         *
+         * @param <T> Type of the result of the write.
+         */
+        private final class ScopedCallback<T> implements Consumer<T> {
+
+            /**
+             * Wrapped callback. {@code null} once invoked or dropped.
+             */
+            private Consumer<T> callback;
+
+            /**
+             * Constructs a new {@link ScopedCallback}.
+             *
+             * @param callback Callback to wrap. {@code null} if it is dropped already.
+             */
+            ScopedCallback(@Nullable Consumer<T> callback) {
+                this.callback = callback;
+            }
+
+            /**
+             * Invokes the wrapped callback, unless it was dropped.
+             *
+             * @param result Result of the write.
+             */
+            @Override
+            public void accept(T result) {
+                Consumer<T> wrappedCallback = callback;
+                if (wrappedCallback == null) {
+                    return;
+                }
+                callback = null;
+                pendingCallbacks.remove(this);
+                wrappedCallback.accept(result);
+            }
+        }
+    }
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ProductWriteExecutor.class.getSimpleName();
+
+    /**
+     * Name of the background thread that performs writes.
+     */
+    private static final String THREAD_NAME = "ProductWriter";
+
+    /**
+     * Single instance shared by the whole app.
+     */
+    private static ProductWriteExecutor instance;
+
+    /**
+     * To perform writes on the product provider.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Performs writes one at a time.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            (runnable) -> new Thread(runnable, THREAD_NAME)
+    );
+
+    /**
+     * Posts results back to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Number of writes submitted that have not finished.
+     */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /**
+     * Number of writes that have finished.
+     */
+    private final AtomicLong operationCount = new AtomicLong();
+
+    /**
+     * Total time in nanoseconds spent performing writes that have finished.
+     */
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    /**
+     * Time in nanoseconds spent performing the most recently finished write.
+     */
+    private volatile long lastLatencyNanos;
+
+    /**
+     * Constructs a new {@link ProductWriteExecutor}. Only tests construct one other than the
+     * shared instance.
+     *
+     * @param contentResolver To perform writes on the product provider.
+     */
+    ProductWriteExecutor(@NonNull ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    /**
+     * Returns the single {@link ProductWriteExecutor} shared by the whole app.
+     *
+     * @param context Any context of this app.
+     * @return The shared {@link ProductWriteExecutor}.
+     */
+    @NonNull
+    public static synchronized ProductWriteExecutor getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ProductWriteExecutor(
+                    context.getApplicationContext().getContentResolver()
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Inserts a product in the background.
+     *
+     * @param uri      Content URI of the insertion request.
+     * @param values   A set of column name/value pairs to add to the database.
+     * @param callback Invoked on the main thread with the content URI of the newly inserted item.
+     *                 It is passed {@code null} if the insertion fails.
+     */
+    public void insert(
+            @NonNull Uri uri,
+            @NonNull ContentValues values,
+            @Nullable Consumer<Uri> callback
+    ) {
+        submit(() -> contentResolver.insert(uri, values), callback);
+    }
+
+    /**
+     * Updates products in the background.
+     *
+     * @param uri           Content URI of the update request.
+     * @param values        A set of column name/value pairs to update in the database.
+     * @param selection     A selection criteria to apply when filtering rows. If {@code null} then
+     *                      all rows are included.
+     * @param selectionArgs Values to bind to the ?s in selection.
+     * @param callback      Invoked on the main thread with the number of rows updated. It is
+     *                      passed {@code -1} if the update fails.
+     */
+    public void update(
+            @NonNull Uri uri,
+            @NonNull ContentValues values,
+            @Nullable String selection,
+            @Nullable String[] selectionArgs,
+            @Nullable Consumer<Integer> callback
+    ) {
+        submit(
+                () -> contentResolver.update(uri, values, selection, selectionArgs),
+                toCountCallback(callback)
+        );
+    }
+
+    /**
+     * Deletes products in the background.
+     *
+     * @param uri           Content URI of the delete request.
+     * @param selection     A selection criteria to apply when filtering rows. If {@code null} then
+     *                      all rows are included.
+     * @param selectionArgs Values to bind to the ?s in selection.
+     * @param callback      Invoked on the main thread with the number of rows deleted. It is
+     *                      passed {@code -1} if the deletion fails.
+     */
+    public void delete(
+            @NonNull Uri uri,
+            @Nullable String selection,
+            @Nullable String[] selectionArgs,
+            @Nullable Consumer<Integer> callback
+    ) {
+        submit(
+                () -> contentResolver.delete(uri, selection, selectionArgs),
+                toCountCallback(callback)
+        );
+    }
+
+    /**
+     * Sells units of many products within a single transaction in the background with
+     * {@link ProductContract#METHOD_SELL_BATCH}.
+     *
+     * @param ids      Ids of the products to sell.
+     * @param counts   Number of units to sell of each product.
+     * @param callback Invoked on the main thread with the new quantity of each product. A quantity
+     *                 is {@code -1} if its product does not have enough units in stock. It is
+     *                 passed {@code null} if the sale fails.
+     */
+    public void sellBatch(
+            @NonNull long[] ids,
+            @NonNull int[] counts,
+            @Nullable Consumer<int[]> callback
+    ) {
+        submit(() -> {
+            Bundle extras = new Bundle();
+            extras.putLongArray(ProductContract.EXTRA_IDS, ids);
+            extras.putIntArray(ProductContract.EXTRA_COUNTS, counts);
+            Bundle result = contentResolver.call(
+                    ProductContract.ProductEntry.CONTENT_URI,
+                    ProductContract.METHOD_SELL_BATCH,
+                    null,
+                    extras
+            );
+            return result != null ? result.getIntArray(ProductContract.EXTRA_QUANTITIES) : null;
+        }, callback);
+    }
+
+    /**
+     * Performs any write in the background, after every write submitted before it.
+     *
+     * @param operation Write to perform. It is run on the background thread.
+     * @param callback  Invoked on the main thread with the result of the write. It is passed
+     *                  {@code null} if the write throws.
+     * @param <T>       Type of the result of the write.
+     */
+    public <T> void submit(@NonNull Supplier<T> operation, @Nullable Consumer<T> callback) {
+        queueDepth.incrementAndGet();
+        executor.execute(() -> {
+            long startTime = SystemClock.elapsedRealtimeNanos();
+            T result;
+            try {
+                result = operation.get();
+            } catch (RuntimeException e) {
+                Log.e(TAG, e.toString());
+                result = null;
+            }
+            recordLatency(SystemClock.elapsedRealtimeNanos() - startTime);
+            queueDepth.decrementAndGet();
+            if (callback != null) {
+                T finalResult = result;
+                mainHandler.post(() -> callback.accept(finalResult));
+            }
+        });
+    }
+
+    /**
+     * Returns the number of writes submitted that have not finished, including the one being
+     * performed.
+     *
+     * @return Number of unfinished writes.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Returns the time spent performing the most recently finished write.
+     *
+     * @return Latency in milliseconds. {@code 0} if no write has finished.
+     */
+    public double getLastLatencyMillis() {
+        return lastLatencyNanos / 1e6;
+    }
+
+    /**
+     * Returns the mean time spent performing each finished write.
+     *
+     * @return Latency in milliseconds. {@code 0} if no write has finished.
+     */
+    public double getAverageLatencyMillis() {
+        long count = operationCount.get();
+        return count == 0 ? 0 : totalLatencyNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Records the time spent performing a finished write.
+     *
+     * @param latencyNanos Latency in nanoseconds.
+     */
+    private void recordLatency(long latencyNanos) {
+        lastLatencyNanos = latencyNanos;
+        totalLatencyNanos.addAndGet(latencyNanos);
+        operationCount.incrementAndGet();
+    }
+
+    /**
+     * Wraps a callback expecting a row count so that a write that throws is reported as
+     * {@code -1}, matching the failure value of the product provider.
+     *
+     * @param callback Callback expecting a row count.
+     * @return Wrapped callback. {@code null} if the given callback is {@code null}.
+     */
+    @Nullable
+    private static Consumer<Integer> toCountCallback(@Nullable Consumer<Integer> callback) {
+        if (callback == null) {
+            return null;
+        }
+        return (count) -> callback.accept(count == null ? -1 : count);
+    }
+}
@@ -0,0 +1,447 @@
+package com.davidread.clothescatalog2.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.view.ViewTreeObserver;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads images from files into {@link ImageView}s. Images are decoded on a background thread and
+ * downsampled to the bounds of the {@link ImageView}, so a full resolution camera photo is never
+ * held in memory. Thumbnails are loaded from a {@link ThumbnailStore} on disk instead of from the
+ * full size photo. Decoded images are kept in a memory cache shared by every {@link ImageLoader},
+ * and the memory of images evicted from it is reused for later decodes. All public methods must be
+ * called on the main thread.
+ */
+public class ImageLoader {
+
+    /**
+     * Fraction of the maximum heap size to use for the memory cache.
+     */
+    private static final int MEMORY_CACHE_HEAP_DIVISOR = 8;
+
+    /**
+     * Number of threads used to decode images.
+     */
+    private static final int DECODE_THREAD_COUNT = 2;
+
+    /**
+     * Format of a memory cache key for an image downsampled to a target size.
+     */
+    private static final String CACHE_KEY_FORMAT = "%1$s@%2$dx%3$d";
+
+    /**
+     * Format of a memory cache key for the thumbnail of a photo. Thumbnails have a single size,
+     * so the key only holds the file path of the photo.
+     */
+    private static final String THUMBNAIL_CACHE_KEY_FORMAT = "%1$s@thumbnail";
+
+    /**
+     * Bitmaps currently shown in an {@link ImageView} by any {@link ImageLoader}. Bitmaps evicted
+     * from {@link #memoryCache} are only reused if they are not in here. Only accessed on the main
+     * thread.
+     */
+    private static final WeakHashMap<ImageView, Bitmap> boundBitmaps = new WeakHashMap<>();
+
+    /**
+     * Bitmaps evicted from {@link #memoryCache} whose memory may be reused for later decodes.
+     * Guarded by itself.
+     */
+    private static final Set<SoftReference<Bitmap>> reusableBitmaps = new HashSet<>();
+
+    /**
+     * Decoded images keyed by file path and target size. Only modified on the main thread.
+     */
+    private static final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(
+            (int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_DIVISOR)
+    ) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getAllocationByteCount();
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+            if (evicted && oldValue.isMutable() && !boundBitmaps.containsValue(oldValue)) {
+                synchronized (reusableBitmaps) {
+                    reusableBitmaps.add(new SoftReference<>(oldValue));
+                }
+            }
+        }
+    };
+
+    /**
+     * Decodes images on background threads.
+     */
+    private static final ExecutorService decodeExecutor =
+            Executors.newFixedThreadPool(DECODE_THREAD_COUNT);
+
+    /**
+     * Posts decoded images back to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Stores thumbnails loaded by {@link #loadThumbnail(String, ImageView)}.
+     */
+    private final ThumbnailStore thumbnailStore;
+
+    /**
+     * Requests started by this {@link ImageLoader} that have not finished, keyed by the
+     * {@link ImageView} they load into.
+     */
+    private final Map<ImageView, Request> requests = new HashMap<>();
+
+    /**
+     * Constructs a new {@link ImageLoader}.
+     *
+     * @param context To access the {@link ThumbnailStore}.
+     */
+    public ImageLoader(@NonNull Context context) {
+        thumbnailStore = new ThumbnailStore(context);
+    }
+
+    /**
+     * Loads the image in the given file into the given {@link ImageView}. Any earlier request for
+     * the {@link ImageView} is cancelled. If the {@link ImageView} is not laid out yet, loading
+     * starts once it is.
+     *
+     * @param filePath  Path to the file containing the image.
+     * @param imageView {@link ImageView} to load into.
+     */
+    public void load(@NonNull String filePath, @NonNull ImageView imageView) {
+        cancel(imageView);
+        Request request = new Request(filePath, imageView, false);
+        requests.put(imageView, request);
+        if (imageView.getWidth() > 0 && imageView.getHeight() > 0) {
+            request.start(imageView.getWidth(), imageView.getHeight());
+        } else {
+            request.startAfterLayout();
+        }
+    }
+
+    /**
+     * Loads the thumbnail of the photo in the given file into the given {@link ImageView}. Any
+     * earlier request for the {@link ImageView} is cancelled. The thumbnail is read from the
+     * memory cache, then from the {@link ThumbnailStore}, and is only generated from the full
+     * size photo if neither has it.
+     *
+     * @param picturePath Path to the file containing the photo.
+     * @param imageView   {@link ImageView} to load into.
+     */
+    public void loadThumbnail(@NonNull String picturePath, @NonNull ImageView imageView) {
+        cancel(imageView);
+        Request request = new Request(picturePath, imageView, true);
+        requests.put(imageView, request);
+        request.start(0, 0);
+    }
+
+    /**
+     * Cancels the unfinished request for the given {@link ImageView}, if there is one.
+     *
+     * @param imageView {@link ImageView} whose request to cancel.
+     */
+    public void cancel(@NonNull ImageView imageView) {
+        Request request = requests.remove(imageView);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Cancels every unfinished request started by this {@link ImageLoader}. Call when the owner of
+     * the {@link ImageView}s is destroyed.
+     */
+    public void cancelAll() {
+        for (Request request : new ArrayList<>(requests.values())) {
+            request.cancel();
+        }
+        requests.clear();
+    }
+
+    /**
+     * Invoked on the main thread when a request decodes its image. It caches the image and shows
+     * it in the request's {@link ImageView}.
+     *
+     * @param request  Request that finished.
+     * @param cacheKey Memory cache key of the image.
+     * @param bitmap   Decoded image. {@code null} if decoding failed.
+     */
+    private void onImageDecoded(
+            @NonNull Request request,
+            @NonNull String cacheKey,
+            @Nullable Bitmap bitmap
+    ) {
+        if (bitmap != null) {
+            memoryCache.put(cacheKey, bitmap);
+        }
+        if (request.isCancelled || requests.get(request.imageView) != request) {
+            return;
+        }
+        requests.remove(request.imageView);
+        bind(request.imageView, bitmap);
+    }
+
+    /**
+     * Shows an image in an {@link ImageView} and keeps track of it in {@link #boundBitmaps}.
+     *
+     * @param imageView {@link ImageView} to show the image in.
+     * @param bitmap    Image to show.
+     */
+    private static void bind(@NonNull ImageView imageView, @Nullable Bitmap bitmap) {
+        if (bitmap == null) {
+            boundBitmaps.remove(imageView);
+        } else {
+            boundBitmaps.put(imageView, bitmap);
+        }
+        imageView.setImageBitmap(bitmap);
+    }
+
+    /**
+     * Returns the memory cache key for an image decoded to fit some target size.
+     *
+     * @param filePath     Path to the file containing the image.
+     * @param targetWidth  Width the image is decoded to fit.
+     * @param targetHeight Height the image is decoded to fit.
+     * @return Memory cache key.
+     */
+    @NonNull
+    private static String getCacheKey(@NonNull String filePath, int targetWidth, int targetHeight) {
+        return String.format(CACHE_KEY_FORMAT, filePath, targetWidth, targetHeight);
+    }
+
+    /**
+     * Decodes the image in a file, downsampled to the smallest power of two that still covers the
+     * given target size. Must be called on a background thread.
+     *
+     * @param filePath     Path to the file containing the image.
+     * @param targetWidth  Width the image should cover.
+     * @param targetHeight Height the image should cover.
+     * @return Decoded image. {@code null} if decoding failed.
+     */
+    @Nullable
+    static Bitmap decodeSampledBitmap(@NonNull String filePath, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inSampleSize = calculateInSampleSize(
+                options.outWidth,
+                options.outHeight,
+                targetWidth,
+                targetHeight
+        );
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inBitmap = takeReusableBitmap(options);
+        try {
+            return BitmapFactory.decodeFile(filePath, options);
+        } catch (IllegalArgumentException e) {
+            // Reusable bitmap was rejected, so decode into new memory instead.
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(filePath, options);
+        }
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps a decoded image at least as large as
+     * the target size in both dimensions.
+     *
+     * @param width        Width of the full image.
+     * @param height       Height of the full image.
+     * @param targetWidth  Width the image should cover.
+     * @param targetHeight Height the image should cover.
+     * @return Sample size to put in {@link BitmapFactory.Options#inSampleSize}.
+     */
+    static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= targetWidth
+                && height / (inSampleSize * 2) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Removes and returns a reusable bitmap large enough to hold an image decoded with the given
+     * options.
+     *
+     * @param options Options whose {@code outWidth}, {@code outHeight}, and {@code inSampleSize}
+     *                are set.
+     * @return A reusable bitmap. {@code null} if none is large enough.
+     */
+    @Nullable
+    private static Bitmap takeReusableBitmap(@NonNull BitmapFactory.Options options) {
+        int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        int byteCount = width * height * 4;
+        synchronized (reusableBitmaps) {
+            Iterator<SoftReference<Bitmap>> iterator = reusableBitmaps.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next().get();
+                if (bitmap == null || bitmap.isRecycled()) {
+                    iterator.remove();
+                } else if (bitmap.getAllocationByteCount() >= byteCount) {
+                    iterator.remove();
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A request to load the image in some file into some {@link ImageView}.
+     */
+    private class Request {
+
+        /**
+         * Path to the file containing the image.
+         */
+        private final String filePath;
+
+        /**
+         * {@link ImageView} to load into.
+         */
+        private final ImageView imageView;
+
+        /**
+         * Whether to load the thumbnail of the image instead of the image itself.
+         */
+        private final boolean isThumbnail;
+
+        /**
+         * Decode running in the background. {@code null} if decoding has not started.
+         */
+        private Future<?> future;
+
+        /**
+         * Waits for {@link #imageView} to be laid out. {@code null} if not waiting.
+         */
+        private ViewTreeObserver.OnPreDrawListener onPreDrawListener;
+
+        /**
+         * Whether this request has been cancelled. Read by the decode thread.
+         */
+        private volatile boolean isCancelled;
+
+        /**
+         * Constructs a new {@link Request}.
+         *
+         * @param filePath    Path to the file containing the image.
+         * @param imageView   {@link ImageView} to load into.
+         * @param isThumbnail Whether to load the thumbnail of the image instead of the image
+         *                    itself.
+         */
+        private Request(
+                @NonNull String filePath,
+                @NonNull ImageView imageView,
+                boolean isThumbnail
+        ) {
+            this.filePath = filePath;
+            this.imageView = imageView;
+            this.isThumbnail = isThumbnail;
+        }
+
+        /**
+         * Shows the image from the memory cache if it is there. Otherwise, it shows nothing and
+         * starts decoding the image in the background.
+         *
+         * @param targetWidth  Width the image should cover. Ignored for thumbnails.
+         * @param targetHeight Height the image should cover. Ignored for thumbnails.
+         */
+        private void start(int targetWidth, int targetHeight) {
+            String cacheKey = isThumbnail
+                    ? String.format(THUMBNAIL_CACHE_KEY_FORMAT, filePath)
+                    : getCacheKey(filePath, targetWidth, targetHeight);
+            Bitmap cachedBitmap = memoryCache.get(cacheKey);
+            if (cachedBitmap != null) {
+                requests.remove(imageView);
+                bind(imageView, cachedBitmap);
+                return;
+            }
+            bind(imageView, null);
+            future = decodeExecutor.submit(() -> {
+                if (isCancelled) {
+                    return;
+                }
+                Bitmap bitmap = isThumbnail
+                        ? thumbnailStore.loadOrGenerate(filePath)
+                        : decodeSampledBitmap(filePath, targetWidth, targetHeight);
+                mainHandler.post(() -> onImageDecoded(this, cacheKey, bitmap));
+            });
+        }
+
+        /**
+         * Starts this request once {@link #imageView} is laid out. If it is laid out with an empty
+         * size, the display size is used as the target size instead.
+         */
+        private void startAfterLayout() {
+            onPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    removeOnPreDrawListener();
+                    int targetWidth = imageView.getWidth();
+                    int targetHeight = imageView.getHeight();
+                    if (targetWidth <= 0 || targetHeight <= 0) {
+                        DisplayMetrics displayMetrics =
+                                imageView.getResources().getDisplayMetrics();
+                        targetWidth = displayMetrics.widthPixels;
+                        targetHeight = displayMetrics.heightPixels;
+                    }
+                    start(targetWidth, targetHeight);
+                    return true;
+                }
+            };
+            imageView.getViewTreeObserver().addOnPreDrawListener(onPreDrawListener);
+        }
+
+        /**
+         * Cancels this request. A decode already running is interrupted if possible and its
+         * result is discarded.
+         */
+        private void cancel() {
+            isCancelled = true;
+            removeOnPreDrawListener();
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * Stops waiting for {@link #imageView} to be laid out.
+         */
+        private void removeOnPreDrawListener() {
+            if (onPreDrawListener != null) {
+                ViewTreeObserver viewTreeObserver = imageView.getViewTreeObserver();
+                if (viewTreeObserver.isAlive()) {
+                    viewTreeObserver.removeOnPreDrawListener(onPreDrawListener);
+                }
+                onPreDrawListener = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.davidread.clothescatalog2.image;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.davidread.clothescatalog2.database.ProductContract;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes the files of a {@link PhotoStore} that no product refers to, such as photos that were
+ * taken and never saved, photos replaced before the product provider deleted photos itself, and
+ * temporary files left behind by a crash. The files are sorted by path and compared against the
+ * photo paths of {@link ProductContract.PhotoEntry} queried in the same order, which reads them
+ * straight off the index on the path column, so neither side is ever held in a set. Unreferenced
+ * files are then deleted in batches, each checked against the product provider again right before
+ * it is deleted. The result is delivered to a listener on the main thread.
+ */
+public class PhotoCollector {
+
+    /**
+     * Listener invoked on the main thread once a collection ends.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked once the collection ends, whether it finished, failed, or was cancelled.
+         *
+         * @param result Result of the collection.
+         */
+        void onPhotoCollectionFinished(@NonNull Result result);
+    }
+
+    /**
+     * Result of a collection.
+     */
+    public static final class Result {
+
+        /**
+         * Number of files deleted.
+         */
+        private final int filesDeleted;
+
+        /**
+         * Number of bytes freed by deleting files.
+         */
+        private final long bytesReclaimed;
+
+        /**
+         * Why the collection failed. {@code null} if it did not fail.
+         */
+        private final String failureMessage;
+
+        /**
+         * Whether the collection was cancelled before every file was checked.
+         */
+        private final boolean isCancelled;
+
+        /**
+         * Constructs a new {@link Result}.
+         *
+         * @param filesDeleted   Number of files deleted.
+         * @param bytesReclaimed Number of bytes freed by deleting files.
+         * @param failureMessage Why the collection failed. {@code null} if it did not fail.
+         * @param isCancelled    Whether the collection was cancelled.
+         */
+        Result(
+                int filesDeleted,
+                long bytesReclaimed,
+                @Nullable String failureMessage,
+                boolean isCancelled
+        ) {
+            this.filesDeleted = filesDeleted;
+            this.bytesReclaimed = bytesReclaimed;
+            this.failureMessage = failureMessage;
+            this.isCancelled = isCancelled;
+        }
+
+        public int getFilesDeleted() {
+            return filesDeleted;
+        }
+
+        public long getBytesReclaimed() {
+            return bytesReclaimed;
+        }
+
+        @Nullable
+        public String getFailureMessage() {
+            return failureMessage;
+        }
+
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+    }
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = PhotoCollector.class.getSimpleName();
+
+    /**
+     * Name of the background thread that deletes the files.
+     */
+    private static final String THREAD_NAME = "PhotoCollector";
+
+    /**
+     * Number of unreferenced files checked again and deleted at once. It keeps the number of
+     * arguments of each check well below the limit of SQLite.
+     */
+    static final int BATCH_SIZE = 100;
+
+    /**
+     * Columns of the photo paths query.
+     */
+    private static final String[] PROJECTION = {ProductContract.PhotoEntry.COLUMN_PATH};
+
+    /**
+     * Sort order of the photo paths query, which matches the order files are sorted in.
+     */
+    private static final String SORT_ORDER = ProductContract.PhotoEntry.COLUMN_PATH + " ASC";
+
+    /**
+     * To query photo paths.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Store whose files are collected.
+     */
+    private final PhotoStore photoStore;
+
+    /**
+     * Listener to invoke once the collection ends.
+     */
+    private final Listener listener;
+
+    /**
+     * Posts the result to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Whether {@link #cancel()} was called.
+     */
+    private volatile boolean isCancelled;
+
+    /**
+     * Whether {@link #start()} was called.
+     */
+    private boolean isStarted;
+
+    /**
+     * Number of files deleted and bytes freed so far. Only accessed on the background thread.
+     */
+    private int filesDeleted;
+    private long bytesReclaimed;
+
+    /**
+     * Constructs a new {@link PhotoCollector}. Each one runs a single collection.
+     *
+     * @param context  Any context of this app.
+     * @param listener Listener to invoke on the main thread once the collection ends.
+     */
+    public PhotoCollector(@NonNull Context context, @NonNull Listener listener) {
+        this.contentResolver = context.getApplicationContext().getContentResolver();
+        this.photoStore = new PhotoStore(context.getApplicationContext());
+        this.listener = listener;
+    }
+
+    /**
+     * Starts deleting unreferenced files in the background.
+     *
+     * @throws IllegalStateException If the collection was already started.
+     */
+    public void start() {
+        if (isStarted) {
+            throw new IllegalStateException("collection already started");
+        }
+        isStarted = true;
+        new Thread(this::run, THREAD_NAME).start();
+    }
+
+    /**
+     * Stops the collection after the batch being deleted. The listener is still invoked.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * Deletes unreferenced files and delivers the result. It is run on the background thread.
+     */
+    @WorkerThread
+    private void run() {
+        String failureMessage = null;
+        try {
+            collect();
+        } catch (RuntimeException e) {
+            Log.e(TAG, e.toString());
+            failureMessage = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        Result result = new Result(filesDeleted, bytesReclaimed, failureMessage, isCancelled);
+        mainHandler.post(() -> listener.onPhotoCollectionFinished(result));
+    }
+
+    /**
+     * Walks the sorted files and the sorted photo paths side by side, and deletes each file that
+     * has no matching path and may be deleted, one batch at a time.
+     *
+     * @throws IllegalStateException If the photo paths could not be queried.
+     */
+    @WorkerThread
+    private void collect() {
+        List<File> files = photoStore.listFiles();
+        Collections.sort(files, Comparator.comparing(File::getAbsolutePath));
+
+        List<File> batch = new ArrayList<>(BATCH_SIZE);
+        try (Cursor cursor = contentResolver.query(
+                ProductContract.PhotoEntry.CONTENT_URI,
+                PROJECTION,
+                null,
+                null,
+                SORT_ORDER
+        )) {
+            if (cursor == null) {
+                throw new IllegalStateException("cannot query photos");
+            }
+            String path = cursor.moveToNext() ? cursor.getString(0) : null;
+            for (File file : files) {
+                if (isCancelled) {
+                    return;
+                }
+
+                // Skip paths that sort before the file, which belong to files that are gone.
+                String filePath = file.getAbsolutePath();
+                while (path != null && path.compareTo(filePath) < 0) {
+                    path = cursor.moveToNext() ? cursor.getString(0) : null;
+                }
+                if (filePath.equals(path) || !photoStore.isDeletable(file)) {
+                    continue;
+                }
+                batch.add(file);
+                if (batch.size() == BATCH_SIZE) {
+                    deleteBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty() && !isCancelled) {
+            deleteBatch(batch);
+        }
+    }
+
+    /**
+     * Deletes each file of a batch that no product refers to. The batch is checked against the
+     * product provider again first, since a product may have started referring to a file after
+     * the photo paths were read.
+     *
+     * @param batch Files found to be unreferenced.
+     * @throws IllegalStateException If the photo paths could not be queried.
+     */
+    @WorkerThread
+    private void deleteBatch(@NonNull List<File> batch) {
+        String[] paths = new String[batch.size()];
+        StringBuilder selection = new StringBuilder(ProductContract.PhotoEntry.COLUMN_PATH)
+                .append(" IN (");
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = batch.get(i).getAbsolutePath();
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(')');
+
+        Set<String> referencedPaths = new HashSet<>();
+        try (Cursor cursor = contentResolver.query(
+                ProductContract.PhotoEntry.CONTENT_URI,
+                PROJECTION,
+                selection.toString(),
+                paths,
+                null
+        )) {
+            if (cursor == null) {
+                throw new IllegalStateException("cannot query photos");
+            }
+            while (cursor.moveToNext()) {
+                referencedPaths.add(cursor.getString(0));
+            }
+        }
+
+        for (File file : batch) {
+            if (referencedPaths.contains(file.getAbsolutePath())) {
+                continue;
+            }
+            long length = photoStore.deleteUnreferenced(file);
+            if (length > 0 || !file.exists()) {
+                filesDeleted++;
+                bytesReclaimed += length;
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package com.davidread.clothescatalog2.image;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Imports a photo picked from another app, or taken with the camera, into a {@link PhotoStore}.
+ * The photo is copied on a background thread. Photos that are small enough are copied as they are,
+ * in large chunks through {@link FileChannel}s. Larger photos are downsampled and encoded again as
+ * JPEG, so a full resolution original is never stored. Encoding drops the EXIF orientation tag, so
+ * those photos are rotated upright first. Either way the photo is written to a
+ * temporary file of the store while its hash is computed, and then committed under its hash, so a
+ * partially written photo is never left behind and a photo already stored is not stored twice.
+ * Progress and the result are delivered to a listener on the main thread.
+ */
+public class PhotoImporter {
+
+    /**
+     * Listener invoked on the main thread as an import progresses.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked each time a part of the photo has been imported.
+         *
+         * @param percent Share of the photo imported so far in percent.
+         */
+        void onPhotoImportProgress(int percent);
+
+        /**
+         * Invoked once the import ends, whether it finished, failed, or was cancelled.
+         *
+         * @param file The imported photo. {@code null} if the import failed or was cancelled.
+         */
+        void onPhotoImportFinished(@Nullable File file);
+    }
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = PhotoImporter.class.getSimpleName();
+
+    /**
+     * Size in pixels of the longest side a stored photo may have.
+     */
+    private static final int MAX_PHOTO_SIZE = 2048;
+
+    /**
+     * Size in bytes a photo may have to be copied as it is. Larger photos are encoded again even
+     * if they are not too large in pixels.
+     */
+    private static final long MAX_COPIED_PHOTO_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * JPEG quality of photos that are encoded again.
+     */
+    private static final int PHOTO_QUALITY = 90;
+
+    /**
+     * Number of bytes copied between progress updates and checks for cancellation.
+     */
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    /**
+     * Size in bytes of the buffer photos are encoded into.
+     */
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Imports photos on a background thread, one at a time.
+     */
+    private static final ExecutorService importExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * To open the picked photo.
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Store to import the photo into.
+     */
+    private final PhotoStore photoStore;
+
+    /**
+     * Listener to invoke as the import progresses.
+     */
+    private final Listener listener;
+
+    /**
+     * Posts progress and the result to the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Whether {@link #cancel()} was called.
+     */
+    private volatile boolean isCancelled;
+
+    /**
+     * Share of the photo imported in percent last delivered to the listener. Only accessed on the
+     * background thread.
+     */
+    private int lastPercent = -1;
+
+    /**
+     * Whether {@link #start(Uri)} was called.
+     */
+    private boolean isStarted;
+
+    /**
+     * Constructs a new {@link PhotoImporter}. Each one imports a single photo.
+     *
+     * @param context  Any context of this app.
+     * @param listener Listener to invoke on the main thread as the import progresses.
+     */
+    public PhotoImporter(@NonNull Context context, @NonNull Listener listener) {
+        this.contentResolver = context.getApplicationContext().getContentResolver();
+        this.photoStore = new PhotoStore(context.getApplicationContext());
+        this.listener = listener;
+    }
+
+    /**
+     * Starts importing a photo in the background.
+     *
+     * @param uri Content or file URI of the photo.
+     * @throws IllegalStateException If the import was already started.
+     */
+    public void start(@NonNull Uri uri) {
+        if (isStarted) {
+            throw new IllegalStateException("import already started");
+        }
+        isStarted = true;
+        importExecutor.execute(() -> run(uri));
+    }
+
+    /**
+     * Stops the import. The listener is still invoked, with a {@code null} file.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * Returns whether {@link #cancel()} was called. It stays true once set, even if the import had
+     * already committed the photo, so a cancelled import may still deliver a file. A {@code null}
+     * file delivered while this is false means the import failed.
+     *
+     * @return True if the import was cancelled.
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Imports the photo into a temporary file of {@link #photoStore}, commits it under its hash,
+     * and delivers the result. It is run on the background thread.
+     *
+     * @param uri Content or file URI of the photo.
+     */
+    @WorkerThread
+    private void run(@NonNull Uri uri) {
+        File importedFile = null;
+        File tempFile = null;
+        try {
+            tempFile = photoStore.createTempFile();
+            MessageDigest digest = PhotoStore.newDigest();
+            if (importInto(uri, tempFile, digest) && !isCancelled) {
+                importedFile = photoStore.commit(tempFile, digest);
+            }
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, e.toString());
+        } finally {
+            if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                Log.w(TAG, "Failed to delete " + tempFile);
+            }
+        }
+        File result = importedFile;
+        mainHandler.post(() -> listener.onPhotoImportFinished(result));
+    }
+
+    /**
+     * Copies the photo into a file, or encodes it again into the file if it is too large.
+     *
+     * @param uri    Content or file URI of the photo.
+     * @param file   File to write to.
+     * @param digest Digest to write every byte written to the file into.
+     * @return True if the photo was written entirely. False if it could not be decoded or the
+     * import was cancelled.
+     * @throws IOException If reading or writing fails.
+     */
+    @WorkerThread
+    private boolean importInto(
+            @NonNull Uri uri,
+            @NonNull File file,
+            @NonNull MessageDigest digest
+    ) throws IOException {
+
+        // Read the size of the photo without decoding its pixels.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = contentResolver.openInputStream(uri)) {
+            if (inputStream == null) {
+                throw new IOException("cannot open " + uri);
+            }
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(TAG, "Failed to decode " + uri);
+            return false;
+        }
+
+        try (AssetFileDescriptor fileDescriptor = contentResolver.openAssetFileDescriptor(
+                uri,
+                "r"
+        )) {
+            if (fileDescriptor == null) {
+                throw new IOException("cannot open " + uri);
+            }
+            long totalBytes = fileDescriptor.getLength();
+            boolean isOversized = Math.max(options.outWidth, options.outHeight) > MAX_PHOTO_SIZE
+                    || totalBytes > MAX_COPIED_PHOTO_BYTES;
+            if (isOversized) {
+                int orientation = readOrientation(uri);
+                return encodeInto(fileDescriptor, options, orientation, file, digest);
+            } else {
+                return copyInto(fileDescriptor, totalBytes, file, digest);
+            }
+        }
+    }
+
+    /**
+     * Copies the photo into a file as it is, in large chunks. Each chunk is read into a buffer,
+     * hashed, and written from the same buffer, so the photo is read only once.
+     *
+     * @param fileDescriptor Open photo.
+     * @param totalBytes     Size of the photo in bytes. Negative if unknown.
+     * @param file           File to write to.
+     * @param digest         Digest to write every byte copied into.
+     * @return True if the photo was copied entirely. False if the import was cancelled.
+     * @throws IOException If reading or writing fails.
+     */
+    @WorkerThread
+    private boolean copyInto(
+            @NonNull AssetFileDescriptor fileDescriptor,
+            long totalBytes,
+            @NonNull File file,
+            @NonNull MessageDigest digest
+    ) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_BYTES);
+        try (FileInputStream inputStream = fileDescriptor.createInputStream();
+             FileOutputStream outputStream = new FileOutputStream(file)) {
+            FileChannel inputChannel = inputStream.getChannel();
+            FileChannel outputChannel = outputStream.getChannel();
+            long position = 0;
+            while (!isCancelled) {
+
+                // Reads from the current position of the input, so it also works for pipes.
+                if (totalBytes >= 0) {
+                    buffer.limit((int) Math.min(CHUNK_BYTES, totalBytes - position));
+                }
+                if (!buffer.hasRemaining() || inputChannel.read(buffer) == -1) {
+                    break;
+                }
+                buffer.flip();
+                digest.update(buffer.array(), 0, buffer.limit());
+                while (buffer.hasRemaining()) {
+                    outputChannel.write(buffer);
+                }
+                position += buffer.limit();
+                buffer.clear();
+                if (totalBytes > 0) {
+                    postProgress((int) (position * 100 / totalBytes));
+                }
+            }
+            if (isCancelled) {
+                return false;
+            }
+            if (totalBytes >= 0 && position != totalBytes) {
+                throw new IOException("photo ended after " + position + " of " + totalBytes
+                        + " bytes");
+            }
+            outputStream.getFD().sync();
+            return true;
+        }
+    }
+
+    /**
+     * Reads the EXIF orientation tag of the photo.
+     *
+     * @param uri Content or file URI of the photo.
+     * @return One of the {@code ORIENTATION_} values of {@link ExifInterface}.
+     * {@link ExifInterface#ORIENTATION_NORMAL} if the photo has no readable tag.
+     */
+    @WorkerThread
+    private int readOrientation(@NonNull Uri uri) {
+        try (InputStream inputStream = contentResolver.openInputStream(uri)) {
+            if (inputStream == null) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+            return new ExifInterface(inputStream).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL
+            );
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read orientation of " + uri);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Returns the transformation that turns a photo with the given EXIF orientation upright.
+     *
+     * @param orientation One of the {@code ORIENTATION_} values of {@link ExifInterface}.
+     * @return The transformation. {@code null} if the photo is already upright.
+     */
+    @Nullable
+    static Matrix getOrientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                return matrix;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                return matrix;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                return matrix;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                return matrix;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                return matrix;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                return matrix;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                return matrix;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Decodes the photo downsampled by the smallest power of two that brings its longest side to
+     * at most {@link #MAX_PHOTO_SIZE} pixels, turns it upright, and encodes it into a file as JPEG.
+     * Downsampling while decoding keeps the decoded bitmap bounded no matter how large the photo
+     * is.
+     *
+     * @param fileDescriptor Open photo.
+     * @param options        Options holding the size of the photo.
+     * @param orientation    EXIF orientation of the photo, which the encoded photo no longer has.
+     * @param file           File to write to.
+     * @param digest         Digest to write every byte encoded into.
+     * @return True if the photo was written entirely. False if it could not be decoded or the
+     * import was cancelled.
+     * @throws IOException If reading or writing fails.
+     */
+    @WorkerThread
+    private boolean encodeInto(
+            @NonNull AssetFileDescriptor fileDescriptor,
+            @NonNull BitmapFactory.Options options,
+            int orientation,
+            @NonNull File file,
+            @NonNull MessageDigest digest
+    ) throws IOException {
+        int longestSide = Math.max(options.outWidth, options.outHeight);
+        int inSampleSize = 1;
+        while (longestSide / inSampleSize > MAX_PHOTO_SIZE) {
+            inSampleSize *= 2;
+        }
+        options.inSampleSize = inSampleSize;
+        options.inJustDecodeBounds = false;
+        Bitmap photo;
+        try (InputStream inputStream = fileDescriptor.createInputStream()) {
+            photo = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (photo == null) {
+            Log.w(TAG, "Failed to decode photo");
+            return false;
+        }
+        Matrix matrix = getOrientationMatrix(orientation);
+        if (matrix != null) {
+            Bitmap uprightPhoto = Bitmap.createBitmap(
+                    photo,
+                    0,
+                    0,
+                    photo.getWidth(),
+                    photo.getHeight(),
+                    matrix,
+                    true
+            );
+            if (uprightPhoto != photo) {
+                photo.recycle();
+                photo = uprightPhoto;
+            }
+        }
+        postProgress(50);
+        try {
+            if (isCancelled) {
+                return false;
+            }
+            try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+                OutputStream outputStream = new BufferedOutputStream(
+                        new DigestOutputStream(fileOutputStream, digest),
+                        OUTPUT_BUFFER_BYTES
+                );
+                if (!photo.compress(Bitmap.CompressFormat.JPEG, PHOTO_QUALITY, outputStream)) {
+                    throw new IOException("failed to encode photo");
+                }
+                outputStream.flush();
+                fileOutputStream.getFD().sync();
+            }
+            postProgress(100);
+            return true;
+        } finally {
+            photo.recycle();
+        }
+    }
+
+    /**
+     * Delivers progress to the listener on the main thread, unless the same progress was already
+     * delivered.
+     *
+     * @param percent Share of the photo imported so far in percent.
+     */
+    private void postProgress(int percent) {
+        if (percent == lastPercent) {
+            return;
+        }
+        lastPercent = percent;
+        mainHandler.post(() -> listener.onPhotoImportProgress(percent));
+    }
+}
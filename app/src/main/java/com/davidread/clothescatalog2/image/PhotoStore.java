@@ -0,0 +1,298 @@
+package com.davidread.clothescatalog2.image;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores product photos in this app's private directory, each named after a hash of its content.
+ * Storing a photo whose content is already stored keeps the stored file instead of adding a copy,
+ * so picking the same image for many products takes the space, and generates the thumbnail, of a
+ * single photo. Photos are written to a temporary file in the store while their hash is computed,
+ * and then committed under their final name with a rename, so a partially written photo never
+ * takes the name of a complete one.
+ * <p>
+ * Products refer to a stored photo by its path, and the product provider counts the products
+ * referring to each path in {@link com.davidread.clothescatalog2.database.ProductContract.PhotoEntry}.
+ * A photo no product refers to may still be about to be saved with a product, so it is only
+ * deleted once it has not been written or reused for {@link #MIN_UNREFERENCED_AGE_MILLIS}.
+ */
+public class PhotoStore {
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = PhotoStore.class.getSimpleName();
+
+    /**
+     * Name of the directory within the files directory that holds photos.
+     */
+    private static final String PHOTO_DIRECTORY_NAME = "photos";
+
+    /**
+     * Used for building file names.
+     */
+    private static final String PHOTO_FILE_NAME = "%1$s.jpg";
+    private static final String TEMP_FILE_PREFIX = "photo";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * Prefix and suffix of the names of photos stored directly in the files directory before
+     * photos were named after their hash.
+     */
+    private static final String LEGACY_FILE_PREFIX = "IMG_";
+    private static final String LEGACY_FILE_SUFFIX = ".jpg";
+
+    /**
+     * Time in milliseconds a photo must go without being written or reused before it may be
+     * deleted for having no product refer to it.
+     */
+    public static final long MIN_UNREFERENCED_AGE_MILLIS = 60 * 60 * 1000;
+
+    /**
+     * Algorithm of the hash photos are named after.
+     */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Digits of a hexadecimal number, for naming photos after their hash.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Directory that holds photos.
+     */
+    private final File directory;
+
+    /**
+     * Files directory, which holds photos stored before photos were named after their hash.
+     */
+    private final File legacyDirectory;
+
+    /**
+     * Stores thumbnails of photos, which are deleted along with their photo.
+     */
+    private final ThumbnailStore thumbnailStore;
+
+    /**
+     * Constructs a new {@link PhotoStore}.
+     *
+     * @param context To find the files directory.
+     */
+    public PhotoStore(@NonNull Context context) {
+        legacyDirectory = context.getFilesDir();
+        directory = getDirectory(context);
+        thumbnailStore = new ThumbnailStore(context);
+    }
+
+    /**
+     * Returns the directory that holds photos.
+     *
+     * @return The directory. It may not exist yet.
+     */
+    @NonNull
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the directory that holds photos, without constructing a {@link PhotoStore}.
+     *
+     * @param context To find the files directory.
+     * @return The directory. It may not exist yet.
+     */
+    @NonNull
+    static File getDirectory(@NonNull Context context) {
+        return new File(context.getFilesDir(), PHOTO_DIRECTORY_NAME);
+    }
+
+    /**
+     * Creates a new empty temporary file in the store to write a photo into. Its name is unique,
+     * so photos written at the same time never collide.
+     *
+     * @return The temporary file.
+     * @throws IOException If the file could not be created.
+     */
+    @NonNull
+    public File createTempFile() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("cannot create " + directory);
+        }
+        return File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, directory);
+    }
+
+    /**
+     * Returns a new digest to compute the hash of a photo with while it is written.
+     *
+     * @return The digest.
+     */
+    @NonNull
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Commits a photo written into a temporary file of this store under the name of its hash. If a
+     * photo with the same hash is already stored, the temporary file is deleted and the stored
+     * photo is kept instead.
+     *
+     * @param tempFile Temporary file created by {@link #createTempFile()} holding the photo.
+     * @param digest   Digest that every byte of the photo was written into.
+     * @return The stored photo.
+     * @throws IOException If the temporary file could not be renamed.
+     */
+    @WorkerThread
+    @NonNull
+    public File commit(@NonNull File tempFile, @NonNull MessageDigest digest) throws IOException {
+        File file = new File(directory, String.format(PHOTO_FILE_NAME, toHex(digest.digest())));
+        if (file.exists()) {
+            // Same content is already stored. Mark it as reused so it is not deleted before it is
+            // saved with a product.
+            if (!tempFile.delete()) {
+                Log.w(TAG, "Failed to delete " + tempFile);
+            }
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                Log.w(TAG, "Failed to touch " + file);
+            }
+            return file;
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("cannot rename " + tempFile + " to " + file);
+        }
+        return file;
+    }
+
+    /**
+     * Returns whether a file is a photo or temporary file of this store. Only such files are ever
+     * deleted, since products may refer to files this app does not own.
+     *
+     * @param file File to check.
+     * @return True if the file belongs to this store.
+     */
+    public boolean isOwned(@NonNull File file) {
+        File parent = file.getParentFile();
+        if (directory.equals(parent)) {
+            return true;
+        }
+        String name = file.getName();
+        return legacyDirectory.equals(parent)
+                && name.startsWith(LEGACY_FILE_PREFIX)
+                && name.endsWith(LEGACY_FILE_SUFFIX);
+    }
+
+    /**
+     * Returns every photo and temporary file of this store.
+     *
+     * @return The files, in no particular order.
+     */
+    @WorkerThread
+    @NonNull
+    public List<File> listFiles() {
+        List<File> files = new ArrayList<>();
+        File[] storedFiles = directory.listFiles();
+        if (storedFiles != null) {
+            for (File file : storedFiles) {
+                if (file.isFile()) {
+                    files.add(file);
+                }
+            }
+        }
+        File[] legacyFiles = legacyDirectory.listFiles();
+        if (legacyFiles != null) {
+            for (File file : legacyFiles) {
+                if (file.isFile() && isOwned(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns whether a photo no product refers to may be deleted. It must belong to this store
+     * and must not have been written or reused within the last
+     * {@link #MIN_UNREFERENCED_AGE_MILLIS}, since it may be about to be saved with a product.
+     *
+     * @param file Photo to check.
+     * @return True if the photo may be deleted. False if it must be kept, or no longer exists.
+     */
+    @WorkerThread
+    public boolean isDeletable(@NonNull File file) {
+        if (!isOwned(file)) {
+            return false;
+        }
+        long lastModified = file.lastModified();
+        return lastModified != 0
+                && System.currentTimeMillis() - lastModified >= MIN_UNREFERENCED_AGE_MILLIS;
+    }
+
+    /**
+     * Returns how long until {@link #isDeletable(File)} allows deleting a photo of this store no
+     * product refers to.
+     *
+     * @param file Photo to check.
+     * @return Time in milliseconds. {@code 0} if it may be deleted already.
+     * {@link #MIN_UNREFERENCED_AGE_MILLIS} if its age cannot be read, such as when it no longer
+     * exists.
+     */
+    @WorkerThread
+    public long getMillisUntilDeletable(@NonNull File file) {
+        long lastModified = file.lastModified();
+        if (lastModified == 0) {
+            return MIN_UNREFERENCED_AGE_MILLIS;
+        }
+        long age = System.currentTimeMillis() - lastModified;
+        return Math.max(MIN_UNREFERENCED_AGE_MILLIS - age, 0);
+    }
+
+    /**
+     * Deletes a photo no product refers to, along with its thumbnail, if
+     * {@link #isDeletable(File)} allows it.
+     *
+     * @param file Photo to delete.
+     * @return Number of bytes freed. {@code 0} if the photo was kept or could not be deleted.
+     */
+    @WorkerThread
+    public long deleteUnreferenced(@NonNull File file) {
+        if (!isDeletable(file)) {
+            return 0;
+        }
+        long length = file.length();
+        if (!file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+            return 0;
+        }
+        thumbnailStore.delete(file.getAbsolutePath());
+        return length;
+    }
+
+    /**
+     * Returns the hexadecimal form of a hash.
+     *
+     * @param hash Bytes of the hash.
+     * @return Two lowercase hexadecimal digits per byte.
+     */
+    @NonNull
+    static String toHex(@NonNull byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,225 @@
+package com.davidread.clothescatalog2.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.davidread.clothescatalog2.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Stores small compressed thumbnails of product photos in this app's cache directory, so that
+ * lists of products never need to decode a full size photo.
+ */
+public class ThumbnailStore {
+
+    /**
+     * Tag to use for logs in this class.
+     */
+    private static final String TAG = ThumbnailStore.class.getSimpleName();
+
+    /**
+     * Name of the directory within the cache directory that holds thumbnails.
+     */
+    private static final String THUMBNAIL_DIRECTORY_NAME = "thumbnails";
+
+    /**
+     * Used for building thumbnail file names.
+     */
+    private static final String THUMBNAIL_FILE_NAME = "%1$s.thumb.jpg";
+    private static final String TEMP_FILE_PREFIX = "thumb";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * JPEG quality of thumbnails.
+     */
+    private static final int THUMBNAIL_QUALITY = 80;
+
+    /**
+     * Generates thumbnails requested by {@link #generateAsync(String)} on a background thread.
+     */
+    private static final ExecutorService generateExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Directory that holds thumbnails.
+     */
+    private final File directory;
+
+    /**
+     * Directory of {@link PhotoStore}, whose photos are named after a hash of their content.
+     */
+    private final File photoDirectory;
+
+    /**
+     * Size in pixels of the shortest side of a thumbnail, which is the size of the list item
+     * thumbnail view it is center cropped into.
+     */
+    private final int thumbnailSize;
+
+    /**
+     * Constructs a new {@link ThumbnailStore}.
+     *
+     * @param context To find the cache directory and the thumbnail size.
+     */
+    public ThumbnailStore(@NonNull Context context) {
+        directory = new File(context.getCacheDir(), THUMBNAIL_DIRECTORY_NAME);
+        photoDirectory = PhotoStore.getDirectory(context);
+        thumbnailSize = context.getResources().getDimensionPixelSize(
+                R.dimen.list_item_thumbnail_size
+        );
+    }
+
+    /**
+     * Generates the thumbnail of the given photo in the background if it is not stored yet.
+     *
+     * @param picturePath Path to the file containing the photo.
+     */
+    public void generateAsync(@NonNull String picturePath) {
+        generateExecutor.execute(() -> {
+            if (!getThumbnailFile(picturePath).exists()) {
+                Bitmap thumbnail = generate(picturePath);
+                if (thumbnail != null) {
+                    thumbnail.recycle();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the thumbnail of the given photo. It is decoded from this store if it is stored.
+     * Otherwise, it is generated from the photo and stored first.
+     *
+     * @param picturePath Path to the file containing the photo.
+     * @return The thumbnail. {@code null} if the photo could not be decoded.
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap loadOrGenerate(@NonNull String picturePath) {
+        File thumbnailFile = getThumbnailFile(picturePath);
+        if (thumbnailFile.exists()) {
+            Bitmap thumbnail = BitmapFactory.decodeFile(thumbnailFile.getAbsolutePath());
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+        return generate(picturePath);
+    }
+
+    /**
+     * Deletes the stored thumbnail of the given photo, if there is one.
+     *
+     * @param picturePath Path to the file containing the photo.
+     */
+    public void delete(@NonNull String picturePath) {
+        File thumbnailFile = getThumbnailFile(picturePath);
+        if (thumbnailFile.exists() && !thumbnailFile.delete()) {
+            Log.w(TAG, "Failed to delete " + thumbnailFile);
+        }
+    }
+
+    /**
+     * Returns the file that holds the thumbnail of the given photo. It is named after something
+     * unique to the photo's path, so photos with the same file name in different directories
+     * never share a thumbnail. Photos of {@link PhotoStore} are already named after a hash of
+     * their content, so their name is used. Any other photo is named after a hash of its absolute
+     * path.
+     *
+     * @param picturePath Path to the file containing the photo.
+     * @return The thumbnail file. It may not exist.
+     */
+    @NonNull
+    public File getThumbnailFile(@NonNull String picturePath) {
+        File photoFile = new File(picturePath).getAbsoluteFile();
+        String key;
+        if (photoDirectory.equals(photoFile.getParentFile())) {
+            key = photoFile.getName();
+        } else {
+            MessageDigest digest = PhotoStore.newDigest();
+            key = PhotoStore.toHex(
+                    digest.digest(photoFile.getPath().getBytes(StandardCharsets.UTF_8))
+            );
+        }
+        return new File(directory, String.format(THUMBNAIL_FILE_NAME, key));
+    }
+
+    /**
+     * Generates the thumbnail of the given photo and stores it. The thumbnail is written to a
+     * temporary file first and then renamed, so a partially written thumbnail is never read.
+     *
+     * @param picturePath Path to the file containing the photo.
+     * @return The thumbnail. {@code null} if the photo could not be decoded.
+     */
+    @WorkerThread
+    @Nullable
+    private Bitmap generate(@NonNull String picturePath) {
+        Bitmap sampledBitmap = ImageLoader.decodeSampledBitmap(
+                picturePath,
+                thumbnailSize,
+                thumbnailSize
+        );
+        if (sampledBitmap == null) {
+            return null;
+        }
+        Bitmap thumbnail = scaleToFit(sampledBitmap);
+        if (thumbnail != sampledBitmap) {
+            sampledBitmap.recycle();
+        }
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Failed to create " + directory);
+            return thumbnail;
+        }
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, directory);
+            try (OutputStream outputStream = new FileOutputStream(tempFile)) {
+                thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, outputStream);
+            }
+            if (!tempFile.renameTo(getThumbnailFile(picturePath))) {
+                Log.w(TAG, "Failed to store thumbnail of " + picturePath);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+        } finally {
+            if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                Log.w(TAG, "Failed to delete " + tempFile);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Scales a bitmap so that its shortest side is {@link #thumbnailSize}. Thumbnails are shown
+     * center cropped, so the shortest side is the one that must cover the view.
+     *
+     * @param bitmap Bitmap to scale.
+     * @return The scaled bitmap. Is the given bitmap if it is already small enough.
+     */
+    @NonNull
+    private Bitmap scaleToFit(@NonNull Bitmap bitmap) {
+        int shortestSide = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (shortestSide <= thumbnailSize) {
+            return bitmap;
+        }
+        float scale = (float) thumbnailSize / shortestSide;
+        return Bitmap.createScaledBitmap(
+                bitmap,
+                Math.round(bitmap.getWidth() * scale),
+                Math.round(bitmap.getHeight() * scale),
+                true
+        );
+    }
+}
@@ -0,0 +1,214 @@
+package com.davidread.clothescatalog2.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads records of comma separated values one at a time from a {@link Reader}, so that only a
+ * single record is held in memory no matter how large the input is. Fields may be quoted with
+ * double quotes, in which case they may contain commas, line breaks, and doubled double quotes
+ * standing for a single one. Records end with a line feed, a carriage return, or both.
+ */
+public class CsvReader implements Closeable {
+
+    /**
+     * Default number of characters read from the {@link Reader} at once.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Returned by {@link #read()} and {@link #peek()} at the end of the input.
+     */
+    private static final int END_OF_INPUT = -1;
+
+    /**
+     * Byte order mark that some editors write at the start of a file.
+     */
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Reader to read characters from.
+     */
+    private final Reader reader;
+
+    /**
+     * Characters read from {@link #reader} that have not been parsed yet.
+     */
+    private final char[] buffer;
+
+    /**
+     * Index of the next character to parse in {@link #buffer}.
+     */
+    private int position;
+
+    /**
+     * Number of characters held in {@link #buffer}.
+     */
+    private int limit;
+
+    /**
+     * Characters of the field being parsed. It is reused for every field.
+     */
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * Number of the line the next character is on, starting from 1.
+     */
+    private long lineNumber = 1;
+
+    /**
+     * Number of the line the last record read starts on.
+     */
+    private long recordLineNumber;
+
+    /**
+     * Whether nothing has been read yet.
+     */
+    private boolean isAtStart = true;
+
+    /**
+     * Constructs a new {@link CsvReader} with the default buffer size.
+     *
+     * @param reader Reader to read characters from.
+     */
+    public CsvReader(@NonNull Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new {@link CsvReader}.
+     *
+     * @param reader     Reader to read characters from.
+     * @param bufferSize Number of characters to read from the reader at once.
+     */
+    public CsvReader(@NonNull Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Reads the next record. A blank line is read as a record with a single empty field.
+     *
+     * @param fields List to fill with the fields of the record. It is cleared first.
+     * @return True if a record was read, false if the end of the input was reached.
+     * @throws IOException If reading fails or the input ends within a quoted field.
+     */
+    public boolean readRecord(@NonNull List<String> fields) throws IOException {
+        fields.clear();
+        int c = read();
+        if (isAtStart) {
+            isAtStart = false;
+            if (c == BYTE_ORDER_MARK) {
+                c = read();
+            }
+        }
+        if (c == END_OF_INPUT) {
+            return false;
+        }
+
+        recordLineNumber = lineNumber;
+        field.setLength(0);
+        boolean isInQuotes = false;
+        while (true) {
+            if (isInQuotes) {
+                if (c == END_OF_INPUT) {
+                    throw new IOException(
+                            "quoted field starting on line " + recordLineNumber + " never ends"
+                    );
+                } else if (c == '"') {
+                    // A doubled quote stands for a single one, otherwise the quotes end.
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        isInQuotes = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                isInQuotes = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == END_OF_INPUT) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (c != END_OF_INPUT) {
+                    lineNumber++;
+                }
+                fields.add(field.toString());
+                return true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Returns the number of the line the last record read starts on. Lines are counted from 1
+     * and quoted line breaks are counted too, so it matches what a text editor shows.
+     *
+     * @return The line number. {@code 0} if no record was read.
+     */
+    public long getRecordLineNumber() {
+        return recordLineNumber;
+    }
+
+    /**
+     * Closes the underlying {@link Reader}.
+     *
+     * @throws IOException If closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Returns the next character and moves past it.
+     *
+     * @return The character. {@link #END_OF_INPUT} at the end of the input.
+     * @throws IOException If reading fails.
+     */
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return END_OF_INPUT;
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Returns the next character without moving past it.
+     *
+     * @return The character. {@link #END_OF_INPUT} at the end of the input.
+     * @throws IOException If reading fails.
+     */
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return END_OF_INPUT;
+        }
+        return buffer[position];
+    }
+
+    /**
+     * Replaces the contents of {@link #buffer} with the next characters of {@link #reader}.
+     *
+     * @return True if any characters were read, false at the end of the input.
+     * @throws IOException If reading fails.
+     */
+    private boolean fill() throws IOException {
+        position = 0;
+        limit = Math.max(reader.read(buffer, 0, buffer.length), 0);
+        return limit > 0;
+    }
+}
@@ -7,20 +7,23 @@ import androidx.annotation.NonNull;
 
 import com.google.android.material.textfield.TextInputLayout;
 
-import java.util.regex.PatternSyntaxException;
-
 /**
  * A concrete implementation of {@link TextWatcher} that may be attached to a
  * {@link com.google.android.material.textfield.TextInputEditText} to validate its contents. This is
- * done by matching it to some regular expression. If not matched, then an error message will be
- * shown on the field.
+ * done by matching it to some regular expression once typing pauses. If not matched, then an error
+ * message will be shown on the field.
  */
 public class RegexTextWatcher implements TextWatcher {
 
     /**
-     * Regular expression pattern to match.
+     * Time in milliseconds without typing after which the contents are validated.
+     */
+    private static final long VALIDATION_DEBOUNCE_MILLIS = 250;
+
+    /**
+     * Validator of the regular expression to match.
      */
-    private final String pattern;
+    private final TextValidator validator;
 
     /**
      * Error message to show when there is no match.
@@ -32,15 +35,25 @@ public class RegexTextWatcher implements TextWatcher {
      */
     private final TextInputLayout textInputLayout;
 
+    /**
+     * Validates the contents last seen by {@link #onTextChanged(CharSequence, int, int, int)}.
+     */
+    private final Runnable validateRunnable = this::validate;
+
+    /**
+     * Contents of the {@link com.google.android.material.textfield.TextInputEditText} to validate.
+     */
+    private CharSequence text;
+
     /**
      * Constructs a new {@link RegexTextWatcher}.
      *
-     * @param pattern         Regular expression pattern to match.
+     * @param validator       Validator of the regular expression to match.
      * @param errorMessage    Error message to show when there is no match
      * @param textInputLayout {@link TextInputLayout} to set the error on.
      */
-    public RegexTextWatcher(@NonNull String pattern, @NonNull String errorMessage, @NonNull TextInputLayout textInputLayout) {
-        this.pattern = pattern;
+    public RegexTextWatcher(@NonNull TextValidator validator, @NonNull String errorMessage, @NonNull TextInputLayout textInputLayout) {
+        this.validator = validator;
         this.errorMessage = errorMessage;
         this.textInputLayout = textInputLayout;
     }
@@ -51,22 +64,29 @@ public class RegexTextWatcher implements TextWatcher {
 
     /**
      * Invoked each time the contents of
-     * {@link com.google.android.material.textfield.TextInputEditText} changes. It validates the
-     * contents against the regular expression {@link #pattern} and sets an error on
-     * {@link #textInputLayout} if there is no match. Otherwise, it removes the error on it.
+     * {@link com.google.android.material.textfield.TextInputEditText} changes. It schedules the
+     * contents to be validated once typing pauses, replacing any validation scheduled before.
      *
      * @param s      {@link CharSequence} contained within the
      *               {@link com.google.android.material.textfield.TextInputEditText}.
      */
     @Override
     public void onTextChanged(CharSequence s, int start, int before, int count) {
-        boolean match;
-        try {
-            match = s.toString().matches(pattern);
-        } catch (PatternSyntaxException e) {
-            throw new IllegalStateException("pattern == " + pattern + " is not a valid regular expression");
-        }
-        if (match) {
+        text = s;
+        textInputLayout.removeCallbacks(validateRunnable);
+        textInputLayout.postDelayed(validateRunnable, VALIDATION_DEBOUNCE_MILLIS);
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+    }
+
+    /**
+     * Validates {@link #text} with {@link #validator} and sets an error on
+     * {@link #textInputLayout} if there is no match. Otherwise, it removes the error on it.
+     */
+    private void validate() {
+        if (validator.isValid(text)) {
             // Matches regular expression.
             textInputLayout.setError(null);
             textInputLayout.setErrorEnabled(false);
@@ -75,8 +95,4 @@ public class RegexTextWatcher implements TextWatcher {
             textInputLayout.setError(errorMessage);
         }
     }
-
-    @Override
-    public void afterTextChanged(Editable s) {
-    }
 }
@@ -0,0 +1,95 @@
+package com.davidread.clothescatalog2.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Validates text by matching it to a regular expression. Each regular expression is compiled once
+ * and shared through {@link #of(String)}, and each validator matches against the given
+ * {@link CharSequence} directly with a single reused {@link Matcher}, so validating text on every
+ * keystroke neither recompiles the regular expression nor copies the text into a string.
+ */
+public final class TextValidator {
+
+    /**
+     * Validators already created, keyed by their regular expression.
+     */
+    private static final Map<String, TextValidator> VALIDATORS = new HashMap<>();
+
+    /**
+     * Compiled regular expression to match.
+     */
+    private final Pattern pattern;
+
+    /**
+     * Matcher of {@link #pattern} reset for each text validated. Guarded by this validator.
+     */
+    private final Matcher matcher;
+
+    /**
+     * Constructs a new {@link TextValidator}.
+     *
+     * @param pattern Compiled regular expression to match.
+     */
+    private TextValidator(@NonNull Pattern pattern) {
+        this.pattern = pattern;
+        this.matcher = pattern.matcher("");
+    }
+
+    /**
+     * Returns the shared validator for a regular expression, compiling it the first time it is
+     * requested.
+     *
+     * @param regex Regular expression that valid text must match entirely.
+     * @return The validator.
+     * @throws java.util.regex.PatternSyntaxException If the regular expression is invalid.
+     */
+    @NonNull
+    public static TextValidator of(@NonNull String regex) {
+        synchronized (VALIDATORS) {
+            TextValidator validator = VALIDATORS.get(regex);
+            if (validator == null) {
+                validator = new TextValidator(Pattern.compile(regex));
+                VALIDATORS.put(regex, validator);
+            }
+            return validator;
+        }
+    }
+
+    /**
+     * Returns the shared validator for an already compiled regular expression, such as those of
+     * {@link android.util.Patterns}.
+     *
+     * @param pattern Compiled regular expression that valid text must match entirely.
+     * @return The validator.
+     */
+    @NonNull
+    public static TextValidator of(@NonNull Pattern pattern) {
+        synchronized (VALIDATORS) {
+            TextValidator validator = VALIDATORS.get(pattern.pattern());
+            if (validator == null || validator.pattern.flags() != pattern.flags()) {
+                validator = new TextValidator(pattern);
+                VALIDATORS.put(pattern.pattern(), validator);
+            }
+            return validator;
+        }
+    }
+
+    /**
+     * Returns whether text matches the regular expression of this validator entirely.
+     *
+     * @param text Text to validate. It is not copied.
+     * @return True if the text is valid.
+     */
+    public synchronized boolean isValid(@NonNull CharSequence text) {
+        boolean isValid = matcher.reset(text).matches();
+
+        // Do not hold on to the text until the next validation.
+        matcher.reset("");
+        return isValid;
+    }
+}
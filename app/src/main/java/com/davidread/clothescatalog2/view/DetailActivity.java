@@ -1,13 +1,9 @@
 package com.davidread.clothescatalog2.view;
 
-import android.annotation.SuppressLint;
 import android.content.ActivityNotFoundException;
 import android.content.ContentValues;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
@@ -31,15 +27,19 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.TooltipCompat;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.content.FileProvider;
-import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
-import androidx.loader.content.Loader;
 
 import com.davidread.clothescatalog2.BuildConfig;
 import com.davidread.clothescatalog2.R;
 import com.davidread.clothescatalog2.database.ProductContract;
 import com.davidread.clothescatalog2.database.ProductProviderUtils;
+import com.davidread.clothescatalog2.database.ProductQueryStream;
+import com.davidread.clothescatalog2.database.ProductWriteExecutor;
+import com.davidread.clothescatalog2.image.ImageLoader;
+import com.davidread.clothescatalog2.image.PhotoImporter;
+import com.davidread.clothescatalog2.image.PhotoStore;
+import com.davidread.clothescatalog2.image.ThumbnailStore;
 import com.davidread.clothescatalog2.util.RegexTextWatcher;
+import com.davidread.clothescatalog2.util.TextValidator;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.snackbar.BaseTransientBottomBar;
 import com.google.android.material.snackbar.Snackbar;
@@ -47,19 +47,13 @@ import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 /**
  * Provides a user interface for viewing and editing a particular product. It is for a new product
  * if {@link #selectedProductUri} is {@code null}. Otherwise, it is for an existing product.
  */
-public class DetailActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailActivity extends AppCompatActivity implements PhotoImporter.Listener {
 
     /**
      * Tag to use for logs in this class.
@@ -67,14 +61,15 @@ public class DetailActivity extends AppCompatActivity implements
     private static final String TAG = DetailActivity.class.getSimpleName();
 
     /**
-     * Regular expressions that each text field should be matched with to be valid.
+     * Validators of the regular expressions that each text field should be matched with to be
+     * valid. Each is compiled once and shared.
      */
-    private static final String NAME_PATTERN = "^.{1,250}$";
-    private static final String PRICE_PATTERN = "^\\d{1,7}(|[.]\\d{1,2})$";
-    private static final String QUANTITY_PATTERN = "^\\d{1,9}$";
-    private static final String SUPPLIER_PATTERN = "^.{1,250}$";
-    private static final String SUPPLIER_PHONE_NUMBER_PATTERN = Patterns.PHONE.toString();
-    private static final String SUPPLIER_EMAIL_PATTERN = Patterns.EMAIL_ADDRESS.toString();
+    private static final TextValidator NAME_VALIDATOR = TextValidator.of("^.{1,250}$");
+    private static final TextValidator PRICE_VALIDATOR = TextValidator.of("^\\d{1,7}(|[.]\\d{1,2})$");
+    private static final TextValidator QUANTITY_VALIDATOR = TextValidator.of("^\\d{1,9}$");
+    private static final TextValidator SUPPLIER_VALIDATOR = TextValidator.of("^.{1,250}$");
+    private static final TextValidator SUPPLIER_PHONE_NUMBER_VALIDATOR = TextValidator.of(Patterns.PHONE);
+    private static final TextValidator SUPPLIER_EMAIL_VALIDATOR = TextValidator.of(Patterns.EMAIL_ADDRESS);
 
     /**
      * Format of a phone number uri for a phone intent.
@@ -99,12 +94,6 @@ public class DetailActivity extends AppCompatActivity implements
     private static final String FILE_PROVIDER_AUTHORITY =
             BuildConfig.APPLICATION_ID + ".fileprovider";
 
-    /**
-     * Used for building file names.
-     */
-    private static final String FILE_NAME = "IMG_%1$s_.jpg";
-    private static final String FILE_TIMESTAMP_PATTERN = "yyyyMMdd_HHmmss";
-
     /**
      * Content URI corresponds with the product being shown. If {@code null}, then a new product is
      * being added.
@@ -112,10 +101,10 @@ public class DetailActivity extends AppCompatActivity implements
     private Uri selectedProductUri;
 
     /**
-     * Whether the loader has already done an initial load of data. Keeping track of this stops
-     * subsequent loads from occurring when this activity is navigated to and from.
+     * Loads the product with {@link #selectedProductUri} in the background. {@code null} once the
+     * product is loaded, or if a new product is being added.
      */
-    private boolean isLoadDone;
+    private ProductQueryStream<ContentValues> productStream;
 
     /**
      * Contains background colors to apply onto a sample image for
@@ -141,15 +130,34 @@ public class DetailActivity extends AppCompatActivity implements
 
     /**
      * File path to the image captured by the camera in the activity started by
-     * {@link #takePictureActivityResultLauncher}.
+     * {@link #takePictureActivityResultLauncher}. It is a temporary file of {@link #photoStore},
+     * deleted once the image is imported into the store. {@code null} if no image is being
+     * captured or imported.
      */
     private String takePicturePath;
 
+    /**
+     * Stores product photos named after a hash of their content.
+     */
+    private PhotoStore photoStore;
+
     /**
      * Launches an activity to pick an image for the product.
      */
     private ActivityResultLauncher<PickVisualMediaRequest> pickVisualMediaActivityResultLauncher;
 
+    /**
+     * Imports the photo picked in the activity started by
+     * {@link #pickVisualMediaActivityResultLauncher} in the background. {@code null} if no import
+     * is running.
+     */
+    private PhotoImporter photoImporter;
+
+    /**
+     * Shows the progress of the running photo import. {@code null} if no import is running.
+     */
+    private Snackbar photoImportProgressSnackbar;
+
     /**
      * Root view of the layout for animating the save product button when a snackbar appears.
      */
@@ -160,6 +168,38 @@ public class DetailActivity extends AppCompatActivity implements
      */
     private ImageView photoImageView;
 
+    /**
+     * Loads the image representing the product into {@link #photoImageView} in the background.
+     */
+    private ImageLoader imageLoader;
+
+    /**
+     * Stores thumbnails of product photos for lists of products.
+     */
+    private ThumbnailStore thumbnailStore;
+
+    /**
+     * Performs writes to the product provider off the main thread.
+     */
+    private ProductWriteExecutor productWriteExecutor;
+
+    /**
+     * Drops the callbacks of writes submitted by this activity once it is destroyed.
+     */
+    private final ProductWriteExecutor.CallbackScope writeCallbacks =
+            new ProductWriteExecutor.CallbackScope();
+
+    /**
+     * Whether a save or delete of this product is in progress. Keeping track of this stops the
+     * product from being written twice when a button is clicked repeatedly.
+     */
+    private boolean isWriting;
+
+    /**
+     * Buffer the loaded price is written to before it is shown in its text field.
+     */
+    private final char[] priceBuffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+
     /**
      * Text fields displaying the value of each product property in the layout.
      */
@@ -182,8 +222,6 @@ public class DetailActivity extends AppCompatActivity implements
         Intent intent = getIntent();
         selectedProductUri = intent.getData();
 
-        isLoadDone = false;
-
         sampleImageBackgroundColors = getResources().getIntArray(R.array.sample_image_backgrounds);
 
         takePictureActivityResultLauncher = registerForActivityResult(
@@ -200,6 +238,10 @@ public class DetailActivity extends AppCompatActivity implements
 
         photoImageView = findViewById(R.id.photo_image_view);
         photoImageView.setScaleType(ImageView.ScaleType.CENTER);
+        imageLoader = new ImageLoader(this);
+        thumbnailStore = new ThumbnailStore(this);
+        photoStore = new PhotoStore(this);
+        productWriteExecutor = ProductWriteExecutor.getInstance(this);
 
         nameTextInputEditText = findViewById(R.id.name_text_input_edit_text);
         priceTextInputEditText = findViewById(R.id.price_text_input_edit_text);
@@ -212,25 +254,25 @@ public class DetailActivity extends AppCompatActivity implements
 
         TextInputLayout nameTextInputLayout = findViewById(R.id.name_text_input_layout);
         nameTextInputEditText.addTextChangedListener(new RegexTextWatcher(
-                NAME_PATTERN,
+                NAME_VALIDATOR,
                 getString(R.string.text_invalid_error_message),
                 nameTextInputLayout
         ));
         TextInputLayout priceTextInputLayout = findViewById(R.id.price_text_input_layout);
         priceTextInputEditText.addTextChangedListener(new RegexTextWatcher(
-                PRICE_PATTERN,
+                PRICE_VALIDATOR,
                 getString(R.string.price_invalid_error_message),
                 priceTextInputLayout
         ));
         TextInputLayout quantityTextInputLayout = findViewById(R.id.quantity_text_input_layout);
         quantityTextInputEditText.addTextChangedListener(new RegexTextWatcher(
-                QUANTITY_PATTERN,
+                QUANTITY_VALIDATOR,
                 getString(R.string.quantity_invalid_error_message),
                 quantityTextInputLayout
         ));
         TextInputLayout supplierTextInputLayout = findViewById(R.id.supplier_text_input_layout);
         supplierTextInputEditText.addTextChangedListener(new RegexTextWatcher(
-                SUPPLIER_PATTERN,
+                SUPPLIER_VALIDATOR,
                 getString(R.string.text_invalid_error_message),
                 supplierTextInputLayout
         ));
@@ -238,7 +280,7 @@ public class DetailActivity extends AppCompatActivity implements
                 R.id.supplier_phone_number_text_input_layout
         );
         supplierPhoneNumberTextInputEditText.addTextChangedListener(new RegexTextWatcher(
-                SUPPLIER_PHONE_NUMBER_PATTERN,
+                SUPPLIER_PHONE_NUMBER_VALIDATOR,
                 getString(R.string.phone_number_invalid_error_message),
                 supplierPhoneNumberTextInputLayout
         ));
@@ -246,7 +288,7 @@ public class DetailActivity extends AppCompatActivity implements
                 R.id.supplier_email_text_input_layout
         );
         supplierEmailTextInputEditText.addTextChangedListener(new RegexTextWatcher(
-                SUPPLIER_EMAIL_PATTERN,
+                SUPPLIER_EMAIL_VALIDATOR,
                 getString(R.string.email_invalid_error_message),
                 supplierEmailTextInputLayout
         ));
@@ -275,7 +317,43 @@ public class DetailActivity extends AppCompatActivity implements
         } else {
             // Put UI in update product mode.
             setTitle(R.string.update_product_title);
-            LoaderManager.getInstance(this).initLoader(0, null, this);
+            String[] projection = {
+                    ProductContract.ProductEntry._ID,
+                    ProductContract.ProductEntry.COLUMN_NAME,
+                    ProductContract.ProductEntry.COLUMN_PRICE,
+                    ProductContract.ProductEntry.COLUMN_QUANTITY,
+                    ProductContract.ProductEntry.COLUMN_SUPPLIER,
+                    ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+                    ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL,
+                    ProductContract.ProductEntry.COLUMN_PICTURE_PATH
+            };
+            productStream = new ProductQueryStream<>(
+                    this,
+                    selectedProductUri,
+                    projection,
+                    selectedProductUri,
+                    ProductQueryStream.FIRST_ROW,
+                    this::onProductLoaded
+            );
+            productStream.start();
+        }
+    }
+
+    /**
+     * Callback invoked when the activity is destroyed. It cancels any image still being loaded by
+     * {@link #imageLoader}, the product still being loaded by {@link #productStream}, any photo
+     * still being imported by {@link #photoImporter}, and the callbacks of writes still running.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        writeCallbacks.cancel();
+        imageLoader.cancelAll();
+        if (productStream != null) {
+            productStream.close();
+        }
+        if (photoImporter != null) {
+            photoImporter.cancel();
         }
     }
 
@@ -318,75 +396,37 @@ public class DetailActivity extends AppCompatActivity implements
     }
 
     /**
-     * Invoked when a loader is initially created. It returns a {@link CursorLoader} for fetching
-     * the product with {@link #selectedProductUri} from the product provider.
-     *
-     * @param id   The ID of the loader to be created.
-     * @param args Any arguments supplied by the caller.
-     * @return A {@link CursorLoader} ready to fetch data.
-     */
-    @NonNull
-    @Override
-    public Loader<Cursor> onCreateLoader(int id, @Nullable Bundle args) {
-        String[] projection = {
-                ProductContract.ProductEntry._ID,
-                ProductContract.ProductEntry.COLUMN_NAME,
-                ProductContract.ProductEntry.COLUMN_PRICE,
-                ProductContract.ProductEntry.COLUMN_QUANTITY,
-                ProductContract.ProductEntry.COLUMN_SUPPLIER,
-                ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
-                ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL,
-                ProductContract.ProductEntry.COLUMN_PICTURE_PATH
-        };
-        return new CursorLoader(
-                this,
-                selectedProductUri,
-                projection,
-                null,
-                null,
-                null
-        );
-    }
-
-    /**
-     * Invoked whenever a previously created loader finishes its load. It populates the image view
-     * and text fields with properties of the fetched product.
+     * Invoked once the product with {@link #selectedProductUri} is loaded. It populates the image
+     * view and text fields with properties of the product. The product is loaded only once, so
+     * later changes never overwrite what is being edited.
      *
-     * @param loader The Loader that has finished.
-     * @param data   The data generated by the Loader.
+     * @param data Row of the product. {@code null} if it does not exist or loading failed.
      */
-    @Override
-    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
-        if (isLoadDone || !data.moveToFirst()) {
-            // Cursor has already been loaded or Cursor is empty.
+    private void onProductLoaded(@Nullable ContentValues data) {
+        productStream.close();
+        productStream = null;
+        if (data == null) {
             return;
         }
 
-        int idColumnIndex = data.getColumnIndex(ProductContract.ProductEntry._ID);
-        int nameColumnIndex = data.getColumnIndex(ProductContract.ProductEntry.COLUMN_NAME);
-        int quantityColumnIndex = data.getColumnIndex(ProductContract.ProductEntry.COLUMN_QUANTITY);
-        int supplierColumnIndex = data.getColumnIndex(ProductContract.ProductEntry.COLUMN_SUPPLIER);
-        int supplierPhoneNumberColumnIndex = data.getColumnIndex(
+        id = data.getAsInteger(ProductContract.ProductEntry._ID);
+        String name = data.getAsString(ProductContract.ProductEntry.COLUMN_NAME);
+        Long price = data.getAsLong(ProductContract.ProductEntry.COLUMN_PRICE);
+        String quantity = data.getAsString(ProductContract.ProductEntry.COLUMN_QUANTITY);
+        String supplier = data.getAsString(ProductContract.ProductEntry.COLUMN_SUPPLIER);
+        String supplierPhoneNumber = data.getAsString(
                 ProductContract.ProductEntry.COLUMN_SUPPLIER_PHONE_NUMBER
         );
-        int supplierEmailColumnIndex = data.getColumnIndex(
-                ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL
-        );
-        int picturePathColumnIndex = data.getColumnIndex(
-                ProductContract.ProductEntry.COLUMN_PICTURE_PATH
-        );
-
-        id = data.getInt(idColumnIndex);
-        String name = data.getString(nameColumnIndex);
-        String price = ProductProviderUtils.getDecimalFormatPrice(data);
-        String quantity = data.getString(quantityColumnIndex);
-        String supplier = data.getString(supplierColumnIndex);
-        String supplierPhoneNumber = data.getString(supplierPhoneNumberColumnIndex);
-        String supplierEmail = data.getString(supplierEmailColumnIndex);
-        picturePath = data.getString(picturePathColumnIndex);
+        String supplierEmail = data.getAsString(ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL);
+        picturePath = data.getAsString(ProductContract.ProductEntry.COLUMN_PICTURE_PATH);
 
         nameTextInputEditText.setText(name);
-        priceTextInputEditText.setText(price);
+        if (price != null) {
+            int priceLength = ProductProviderUtils.writeDecimalPrice(price, priceBuffer);
+            priceTextInputEditText.setText(priceBuffer, 0, priceLength);
+        } else {
+            priceTextInputEditText.setText(null);
+        }
         quantityTextInputEditText.setText(quantity);
         supplierTextInputEditText.setText(supplier);
         supplierPhoneNumberTextInputEditText.setText(supplierPhoneNumber);
@@ -398,26 +438,6 @@ public class DetailActivity extends AppCompatActivity implements
             // Show stored image.
             showImageInPhotoImageView(picturePath);
         }
-
-        isLoadDone = true;
-    }
-
-    /**
-     * Invoked when a previously created loader is being reset, thus invalidating its dataset. It
-     * populates the image view with a sample image and resets the text fields.
-     *
-     * @param loader The Loader that is being reset.
-     */
-    @Override
-    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
-        nameTextInputEditText.setText("");
-        priceTextInputEditText.setText("");
-        quantityTextInputEditText.setText("");
-        supplierTextInputEditText.setText("");
-        supplierPhoneNumberTextInputEditText.setText("");
-        supplierEmailTextInputEditText.setText("");
-        picturePath = null;
-        showSampleImageInPhotoImageView(id);
     }
 
     /**
@@ -441,24 +461,40 @@ public class DetailActivity extends AppCompatActivity implements
 
     /**
      * Invoked when the delete button of the delete product confirmation dialog is clicked. It
-     * deletes the product corresponding with this activity. If the deletion operation fails, it
-     * shows an error snackbar.
+     * deletes the product corresponding with this activity in the background. If the deletion
+     * operation fails, it shows an error snackbar.
      */
     private void onDeleteProductConfirmationDialogDeleteButtonClick() {
-        int countRowsDeleted = getContentResolver().delete(selectedProductUri, null, null);
-        if (countRowsDeleted == -1) {
-            // Deletion failed.
-            showSnackbar(R.string.delete_product_failed_message);
+        if (isWriting) {
             return;
         }
-        finish();
+        isWriting = true;
+        productWriteExecutor.delete(
+                selectedProductUri,
+                null,
+                null,
+                writeCallbacks.wrap((countRowsDeleted) -> {
+                    isWriting = false;
+                    if (countRowsDeleted == -1) {
+                        // Deletion failed.
+                        showSnackbar(R.string.delete_product_failed_message);
+                        return;
+                    }
+                    finish();
+                })
+        );
     }
 
     /**
      * Invoked when the change photo button is clicked. It shows a dialog that presents change photo
-     * options.
+     * options, unless a picked photo is still being imported.
      */
     private void onChangePhotoButtonClick() {
+        if (photoImporter != null) {
+            // A picked photo is still being imported.
+            showSnackbar(R.string.import_photo_running_message);
+            return;
+        }
         DialogInterface.OnClickListener onItemClickListener = (dialogInterface, which) -> {
             switch (which) {
                 case TAKE_NEW_PHOTO_DIALOG_ITEM_ID:
@@ -486,7 +522,15 @@ public class DetailActivity extends AppCompatActivity implements
      * {@link #onTakePictureActivityResult(boolean)} when done.
      */
     private void onTakeNewPhotoButtonClick() {
-        File file = createNewInternalFile();
+        File file;
+        try {
+            file = photoStore.createTempFile();
+        } catch (IOException e) {
+            Log.e(TAG, e.toString());
+            showSnackbar(R.string.import_photo_failed_message);
+            return;
+        }
+        deleteTakePictureFile();
         takePicturePath = file.getAbsolutePath();
         Uri takePictureUri = FileProvider.getUriForFile(
                 this,
@@ -563,7 +607,7 @@ public class DetailActivity extends AppCompatActivity implements
     private void onCallSupplierButtonClick() {
         String supplierPhoneNumber = extractValueFromEditText(
                 supplierPhoneNumberTextInputEditText,
-                SUPPLIER_PHONE_NUMBER_PATTERN,
+                SUPPLIER_PHONE_NUMBER_VALIDATOR,
                 String.class
         );
         if (supplierPhoneNumber == null) {
@@ -589,17 +633,17 @@ public class DetailActivity extends AppCompatActivity implements
     private void onEmailSupplierButtonClick() {
         String name = extractValueFromEditText(
                 nameTextInputEditText,
-                NAME_PATTERN,
+                NAME_VALIDATOR,
                 String.class
         );
         Integer quantity = extractValueFromEditText(
                 quantityTextInputEditText,
-                QUANTITY_PATTERN,
+                QUANTITY_VALIDATOR,
                 Integer.class
         );
         String supplierEmail = extractValueFromEditText(
                 supplierEmailTextInputEditText,
-                SUPPLIER_EMAIL_PATTERN,
+                SUPPLIER_EMAIL_VALIDATOR,
                 String.class
         );
         if (name == null || quantity == null || supplierEmail == null) {
@@ -626,44 +670,51 @@ public class DetailActivity extends AppCompatActivity implements
     /**
      * Invoked when the save product button is clicked. First, it validates the contents of the text
      * fields. If an invalidation if found, a snackbar error is shown and execution stops. If no
-     * invalidation is found, it then either adds a product or updates a product, depending on this
-     * activity's mode.
+     * invalidation is found, it then either adds a product or updates a product in the background,
+     * depending on this activity's mode.
      */
     private void onSaveProductButtonClick() {
 
+        if (isWriting) {
+            // A previous save is still in progress.
+            return;
+        }
+
+        if (photoImporter != null) {
+            // The picked photo is not stored yet.
+            showSnackbar(R.string.import_photo_running_message);
+            return;
+        }
+
         String name = extractValueFromEditText(
                 nameTextInputEditText,
-                NAME_PATTERN,
+                NAME_VALIDATOR,
                 String.class
         );
-        Double price = extractValueFromEditText(
-                priceTextInputEditText,
-                PRICE_PATTERN,
-                Double.class
-        );
+        long price = extractPriceFromEditText(priceTextInputEditText);
         Integer quantity = extractValueFromEditText(
                 quantityTextInputEditText,
-                QUANTITY_PATTERN,
+                QUANTITY_VALIDATOR,
                 Integer.class
         );
         String supplier = extractValueFromEditText(
                 supplierTextInputEditText,
-                SUPPLIER_PATTERN,
+                SUPPLIER_VALIDATOR,
                 String.class
         );
         String supplierPhoneNumber = extractValueFromEditText(
                 supplierPhoneNumberTextInputEditText,
-                SUPPLIER_PHONE_NUMBER_PATTERN,
+                SUPPLIER_PHONE_NUMBER_VALIDATOR,
                 String.class
         );
         String supplierEmail = extractValueFromEditText(
                 supplierEmailTextInputEditText,
-                SUPPLIER_EMAIL_PATTERN,
+                SUPPLIER_EMAIL_VALIDATOR,
                 String.class
         );
 
         if (name == null
-                || price == null
+                || price == -1
                 || quantity == null
                 || supplier == null
                 || supplierPhoneNumber == null
@@ -683,53 +734,62 @@ public class DetailActivity extends AppCompatActivity implements
         values.put(ProductContract.ProductEntry.COLUMN_SUPPLIER_EMAIL, supplierEmail);
         values.put(ProductContract.ProductEntry.COLUMN_PICTURE_PATH, picturePath);
 
+        isWriting = true;
         if (selectedProductUri == null) {
             // Add a product.
-            Uri insertUri = getContentResolver().insert(
+            productWriteExecutor.insert(
                     ProductContract.ProductEntry.CONTENT_URI,
-                    values
+                    values,
+                    writeCallbacks.wrap((insertUri) -> {
+                        isWriting = false;
+                        if (insertUri == null) {
+                            // Insert operation failed.
+                            showSnackbar(R.string.add_product_failed_message);
+                            return;
+                        }
+                        finish();
+                    })
             );
-            if (insertUri == null) {
-                // Insert operation failed.
-                showSnackbar(R.string.add_product_failed_message);
-                return;
-            }
         } else {
             // Update a product.
-            int countRowsUpdated = getContentResolver().update(
+            productWriteExecutor.update(
                     selectedProductUri,
                     values,
                     null,
-                    null
+                    null,
+                    writeCallbacks.wrap((countRowsUpdated) -> {
+                        isWriting = false;
+                        if (countRowsUpdated == -1) {
+                            // Update operation failed.
+                            showSnackbar(R.string.update_product_failed_message);
+                            return;
+                        }
+                        finish();
+                    })
             );
-            if (countRowsUpdated == -1) {
-                // Update operation failed.
-                showSnackbar(R.string.update_product_failed_message);
-                return;
-            }
         }
-        finish();
     }
 
     /**
      * Invoked when the activity started by {@link #takePictureActivityResultLauncher} finishes and
      * control returns to this activity. If the previous activity successfully snapped a picture,
-     * it populates the image view with the picture.
+     * it starts importing the picture into {@link #photoStore} in the background. Otherwise, it
+     * deletes the file the picture would have been put in.
      *
      * @param isSuccess Whether a picture was successfully snapped.
      */
     private void onTakePictureActivityResult(boolean isSuccess) {
-        if (!isSuccess) {
+        if (!isSuccess || takePicturePath == null) {
+            deleteTakePictureFile();
             return;
         }
-        picturePath = takePicturePath;
-        showImageInPhotoImageView(picturePath);
+        startPhotoImport(Uri.fromFile(new File(takePicturePath)));
     }
 
     /**
      * Invoked when the activity started by {@link #pickVisualMediaActivityResultLauncher} finishes
      * and control returns to this activity. If the previous activity successfully picked a picture,
-     * it populates the image view with the picture.
+     * it starts importing the picture into {@link #photoStore} in the background.
      *
      * @param uri URI of the picked picture.
      */
@@ -737,9 +797,89 @@ public class DetailActivity extends AppCompatActivity implements
         if (uri == null) {
             return;
         }
-        File file = copyImageUriToNewInternalFile(uri);
+        startPhotoImport(uri);
+    }
+
+    /**
+     * Starts importing a picture into {@link #photoStore} in the background and shows its progress
+     * in a snackbar.
+     *
+     * @param uri Content or file URI of the picture.
+     */
+    private void startPhotoImport(@NonNull Uri uri) {
+        PhotoImporter importer = new PhotoImporter(this, this);
+        photoImporter = importer;
+        importer.start(uri);
+        photoImportProgressSnackbar = Snackbar.make(
+                detailCoordinatorLayout,
+                R.string.import_photo_started_message,
+                BaseTransientBottomBar.LENGTH_INDEFINITE
+        );
+        photoImportProgressSnackbar.setAction(
+                R.string.generic_cancel_dialog_button_label,
+                (view) -> importer.cancel()
+        );
+        photoImportProgressSnackbar.show();
+    }
+
+    /**
+     * Deletes the file captured by the camera in the activity started by
+     * {@link #takePictureActivityResultLauncher}, if there is one.
+     */
+    private void deleteTakePictureFile() {
+        if (takePicturePath == null) {
+            return;
+        }
+        File file = new File(takePicturePath);
+        takePicturePath = null;
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file);
+        }
+    }
+
+    /**
+     * Invoked each time {@link #photoImporter} imports a part of the photo. It updates the
+     * progress snackbar.
+     *
+     * @param percent Share of the photo imported so far in percent.
+     */
+    @Override
+    public void onPhotoImportProgress(int percent) {
+        if (photoImportProgressSnackbar == null) {
+            return;
+        }
+        photoImportProgressSnackbar.setText(
+                getString(R.string.import_photo_progress_message, percent)
+        );
+    }
+
+    /**
+     * Invoked once {@link #photoImporter} ends. If it succeeded, it populates the image view with
+     * the photo and generates its thumbnail.
+     *
+     * @param file The imported photo. {@code null} if the import failed or was cancelled.
+     */
+    @Override
+    public void onPhotoImportFinished(@Nullable File file) {
+        PhotoImporter importer = photoImporter;
+        photoImporter = null;
+        deleteTakePictureFile();
+        if (photoImportProgressSnackbar != null) {
+            photoImportProgressSnackbar.dismiss();
+            photoImportProgressSnackbar = null;
+        }
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        if (file == null) {
+            if (importer != null && !importer.isCancelled()) {
+                showSnackbar(R.string.import_photo_failed_message);
+            }
+            return;
+        }
         picturePath = file.getAbsolutePath();
         showImageInPhotoImageView(picturePath);
+        thumbnailStore.generateAsync(picturePath);
     }
 
     /**
@@ -754,22 +894,23 @@ public class DetailActivity extends AppCompatActivity implements
     /**
      * Extracts the value from an edit text and returns it as some given class type. It will only
      * return the value if the value matches some given regular expression and if no conversion
-     * errors occur. Otherwise, it will return {@code null}.
+     * errors occur. Otherwise, it will return {@code null}. The contents are matched before they
+     * are copied into a string.
      *
      * @param editText    Edit text to extract from.
-     * @param pattern     Regular expression to match the extracted string to. {@code null} if no
-     *                    matching should be done.
+     * @param validator   Validator of the regular expression to match the contents to.
+     *                    {@code null} if no matching should be done.
      * @param returnClass Class type to convert the extracted value to. Accepts only {@link String}
      *                    and {@link Integer} so far.
-     * @param <T>         Class type to convert the extracted value to. Accepts only {@link String},
-     *                    {@link Integer}, and {@link Double} so far.
+     * @param <T>         Class type to convert the extracted value to. Accepts only {@link String}
+     *                    and {@link Integer} so far.
      * @return The value from the edit text. {@code null} if regular expression matching fails or
      * if some conversion error occurs.
      */
     @Nullable
     private <T> T extractValueFromEditText(
             @NonNull TextInputEditText editText,
-            @Nullable String pattern,
+            @Nullable TextValidator validator,
             @NonNull Class<T> returnClass
     ) {
         // Extract String from EditText.
@@ -777,10 +918,10 @@ public class DetailActivity extends AppCompatActivity implements
         if (textEditable == null) {
             return null;
         }
-        String textString = textEditable.toString();
-        if (pattern != null && !textString.matches(pattern)) {
+        if (validator != null && !validator.isValid(textEditable)) {
             return null;
         }
+        String textString = textEditable.toString();
         if (returnClass == String.class) {
             // Return value as String.
             return returnClass.cast(textString);
@@ -792,14 +933,6 @@ public class DetailActivity extends AppCompatActivity implements
             } catch (NumberFormatException e) {
                 return null;
             }
-        } else if (returnClass == Double.class) {
-            try {
-                // Return value as Double.
-                double textDouble = Double.parseDouble(textString);
-                return returnClass.cast(textDouble);
-            } catch (NumberFormatException e) {
-                return null;
-            }
         } else {
             // Unsupported return class.
             return null;
@@ -807,42 +940,19 @@ public class DetailActivity extends AppCompatActivity implements
     }
 
     /**
-     * Creates a new file in this app's private directory and returns an instance of it.
+     * Extracts a price from an edit text as exact cents. The text is validated with
+     * {@link #PRICE_VALIDATOR} and parsed directly from the {@link Editable}, without converting it
+     * to a string or a floating point number.
      *
-     * @return A new {@link File} instance.
-     */
-    @SuppressLint("SimpleDateFormat")
-    @NonNull
-    private File createNewInternalFile() {
-        String timestamp = new SimpleDateFormat(FILE_TIMESTAMP_PATTERN).format(new Date());
-        String fileName = String.format(FILE_NAME, timestamp);
-        File fileDir = getFilesDir();
-        return new File(fileDir, fileName);
-    }
-
-    /**
-     * Copies the data at a given URI onto a new file in this app's private directory.
-     *
-     * @param uri URI to copy from.
-     * @return A new {@link File} instance.
+     * @param editText Edit text to extract from.
+     * @return The price in cents. {@code -1} if the text is not a valid price.
      */
-    @NonNull
-    private File copyImageUriToNewInternalFile(@NonNull Uri uri) {
-        File file = createNewInternalFile();
-        try {
-            InputStream inputStream = getContentResolver().openInputStream(uri);
-            OutputStream outputStream = new FileOutputStream(file);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, length);
-            }
-            inputStream.close();
-            outputStream.close();
-        } catch (IOException e) {
-            Log.e(TAG, e.toString());
+    private long extractPriceFromEditText(@NonNull TextInputEditText editText) {
+        Editable textEditable = editText.getText();
+        if (textEditable == null || !PRICE_VALIDATOR.isValid(textEditable)) {
+            return -1;
         }
-        return file;
+        return ProductProviderUtils.parseCents(textEditable);
     }
 
     /**
@@ -852,6 +962,7 @@ public class DetailActivity extends AppCompatActivity implements
      *           to keep the background color consistent.
      */
     private void showSampleImageInPhotoImageView(int id) {
+        imageLoader.cancel(photoImageView);
         photoImageView.setColorFilter(getColor(R.color.white));
         int backgroundColorIndex = id % sampleImageBackgroundColors.length;
         photoImageView.setBackgroundColor(sampleImageBackgroundColors[backgroundColorIndex]);
@@ -860,7 +971,8 @@ public class DetailActivity extends AppCompatActivity implements
     }
 
     /**
-     * Displays an image resource in the given image view.
+     * Displays an image resource in the given image view. The image is decoded in the background
+     * at the size of the image view.
      *
      * @param filePath Path to the file containing the image to display.
      */
@@ -868,7 +980,6 @@ public class DetailActivity extends AppCompatActivity implements
         photoImageView.setColorFilter(null);
         photoImageView.setBackgroundColor(getColor(android.R.color.transparent));
 
-        Bitmap bitmap = BitmapFactory.decodeFile(filePath);
-        photoImageView.setImageBitmap(bitmap);
+        imageLoader.load(filePath, photoImageView);
     }
 }
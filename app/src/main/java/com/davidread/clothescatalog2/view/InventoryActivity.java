@@ -1,15 +1,16 @@
 package com.davidread.clothescatalog2.view;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.TooltipCompat;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
-import androidx.loader.app.LoaderManager;
-import androidx.loader.content.CursorLoader;
-import androidx.loader.content.Loader;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -17,35 +18,225 @@ import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.Formatter;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
 
 import com.davidread.clothescatalog2.adapter.ProductCursorAdapter;
+import com.davidread.clothescatalog2.adapter.ProductPagedList;
 import com.davidread.clothescatalog2.R;
 import com.davidread.clothescatalog2.database.ProductContract;
+import com.davidread.clothescatalog2.database.ProductCsvImporter;
+import com.davidread.clothescatalog2.database.ProductExporter;
+import com.davidread.clothescatalog2.database.ProductProviderUtils;
+import com.davidread.clothescatalog2.database.ProductQueryStream;
+import com.davidread.clothescatalog2.database.ProductSaleBatcher;
+import com.davidread.clothescatalog2.database.ProductSnapshot;
+import com.davidread.clothescatalog2.database.ProductWriteExecutor;
+import com.davidread.clothescatalog2.image.ImageLoader;
+import com.davidread.clothescatalog2.image.PhotoCollector;
 import com.davidread.clothescatalog2.util.DummyConstants;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.snackbar.BaseTransientBottomBar;
 import com.google.android.material.snackbar.Snackbar;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 import java.util.Random;
 
 /**
  * Provides a user interface for browsing a list of products queried from the product provider.
  */
-public class InventoryActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+public class InventoryActivity extends AppCompatActivity implements ProductPagedList.Callback,
+        ProductSaleBatcher.Listener, SearchView.OnQueryTextListener, ProductCsvImporter.Listener,
+        ProductExporter.Listener, PhotoCollector.Listener {
 
     /**
-     * Adapts a {@link Cursor} of data from the product provider for a {@link RecyclerView}.
+     * Columns of product data shown in the list.
+     */
+    private static final String[] PROJECTION = {
+            ProductContract.ProductEntry._ID,
+            ProductContract.ProductEntry.COLUMN_NAME,
+            ProductContract.ProductEntry.COLUMN_PRICE,
+            ProductContract.ProductEntry.COLUMN_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_PICTURE_PATH
+    };
+
+    /**
+     * Time in milliseconds without typing in the search box after which a search starts.
+     */
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    /**
+     * Maximum number of search results shown.
+     */
+    private static final int SEARCH_RESULT_LIMIT = 200;
+
+    /**
+     * MIME types of files offered when picking a CSV file to import.
+     */
+    private static final String[] IMPORT_MIME_TYPES = {
+            "text/csv",
+            "text/comma-separated-values",
+            "text/plain"
+    };
+
+    /**
+     * Keys of the sort order and filter of the list in the saved instance state.
+     */
+    private static final String KEY_SORT = "sort";
+    private static final String KEY_FILTER = "filter";
+
+    /**
+     * Adapts a {@link ProductPagedList} of data from the product provider for a
+     * {@link RecyclerView}.
      */
     private ProductCursorAdapter productCursorAdapter;
 
+    /**
+     * Fetches product data from the product provider one page at a time.
+     */
+    private ProductPagedList productPagedList;
+
+    /**
+     * Loads thumbnails of product photos into the list in the background.
+     */
+    private ImageLoader imageLoader;
+
+    /**
+     * Performs writes to the product provider off the main thread.
+     */
+    private ProductWriteExecutor productWriteExecutor;
+
+    /**
+     * Drops the callbacks of writes submitted by this activity once it is destroyed.
+     */
+    private final ProductWriteExecutor.CallbackScope writeCallbacks =
+            new ProductWriteExecutor.CallbackScope();
+
+    /**
+     * Coalesces rapid clicks of sale buttons into batched writes.
+     */
+    private ProductSaleBatcher saleBatcher;
+
+    /**
+     * Shows the list of products.
+     */
+    private RecyclerView recyclerView;
+
+    /**
+     * Sort order of the list. One of the values of {@link ProductContract#QUERY_PARAMETER_SORT}.
+     */
+    private String currentSort = ProductContract.SORT_ID;
+
+    /**
+     * Filter of the list. {@link ProductContract#FILTER_LOW_STOCK}, or {@code null} for every
+     * product.
+     */
+    private String currentFilter;
+
+    /**
+     * Delays searches until typing in the search box pauses.
+     */
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Search scheduled to run once typing in the search box pauses. {@code null} if none is
+     * scheduled.
+     */
+    private Runnable pendingSearch;
+
+    /**
+     * Whether {@link #productCursorAdapter} adapts search results rather than
+     * {@link #productPagedList}. Meanwhile, changes reported by {@link #productPagedList} are
+     * ignored, since the adapter is fully refreshed when it switches back.
+     */
+    private boolean isSearching;
+
+    /**
+     * Loads search results into a {@link ProductSnapshot} in the background, which are shown in
+     * the list instead of {@link #productPagedList}. {@code null} if not searching.
+     */
+    private ProductQueryStream<ProductSnapshot> searchStream;
+
+    /**
+     * Keeps the inventory totals shown up to date.
+     */
+    private ProductQueryStream<ContentValues> statsStream;
+
+    /**
+     * Loads the inventory totals of each supplier for the supplier totals dialog. {@code null} if
+     * the dialog is not being loaded.
+     */
+    private ProductQueryStream<List<ContentValues>> supplierStatsStream;
+
+    /**
+     * Shows the inventory totals.
+     */
+    private TextView statsTextView;
+
+    /**
+     * Buffer amounts of money are written to before they are put into the totals text.
+     */
+    private final char[] amountBuffer = new char[ProductProviderUtils.MAX_FORMATTED_LENGTH];
+
+    /**
+     * Launches a picker for the CSV file to import products from.
+     */
+    private ActivityResultLauncher<String[]> openDocumentActivityResultLauncher;
+
+    /**
+     * Launch a picker for where to save a CSV or JSON export of every product.
+     */
+    private ActivityResultLauncher<String> createCsvDocumentActivityResultLauncher;
+    private ActivityResultLauncher<String> createJsonDocumentActivityResultLauncher;
+
+    /**
+     * Exports every product in the background. {@code null} if no export is running. Kept in
+     * {@link #inventoryViewModel} too, so a recreated activity takes it over.
+     */
+    private ProductExporter productExporter;
+
+    /**
+     * Shows the progress of the running export. {@code null} if no export is running.
+     */
+    private Snackbar exportProgressSnackbar;
+
+    /**
+     * Deletes photos no product refers to in the background. {@code null} if no collection is
+     * running.
+     */
+    private PhotoCollector photoCollector;
+
+    /**
+     * Shows that photos are being cleaned up. {@code null} if no collection is running.
+     */
+    private Snackbar photoCollectionProgressSnackbar;
+
+    /**
+     * Keeps the background jobs of this activity running when it is recreated.
+     */
+    private InventoryViewModel inventoryViewModel;
+
+    /**
+     * Imports products from a CSV file in the background. {@code null} if no import is running.
+     * Kept in {@link #inventoryViewModel} too, so a recreated activity takes it over.
+     */
+    private ProductCsvImporter productCsvImporter;
+
+    /**
+     * Shows the progress of the running import. {@code null} if no import is running.
+     */
+    private Snackbar importProgressSnackbar;
+
     /**
      * Root view of the layout for animating the add product button when a snackbar appears.
      */
@@ -59,28 +250,165 @@ public class InventoryActivity extends AppCompatActivity implements
 
     /**
      * Callback invoked to initialize the activity. Initializes member variables, sets up the
-     * {@link RecyclerView} and initializes a {@link CursorLoader} to query for product data.
+     * {@link RecyclerView} and initializes a {@link ProductPagedList} to query for product data.
      */
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_inventory);
         setTitle(R.string.inventory_action_bar_title);
-        productCursorAdapter = new ProductCursorAdapter(this::onItemClick, this::onSaleButtonClick);
+        imageLoader = new ImageLoader(this);
+        productWriteExecutor = ProductWriteExecutor.getInstance(this);
+        saleBatcher = new ProductSaleBatcher(productWriteExecutor, this);
+        openDocumentActivityResultLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                this::onOpenDocumentActivityResult
+        );
+        createCsvDocumentActivityResultLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(ProductExporter.Format.CSV.getMimeType()),
+                (uri) -> onCreateDocumentActivityResult(uri, ProductExporter.Format.CSV)
+        );
+        createJsonDocumentActivityResultLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(
+                        ProductExporter.Format.JSON.getMimeType()
+                ),
+                (uri) -> onCreateDocumentActivityResult(uri, ProductExporter.Format.JSON)
+        );
+        productCursorAdapter = new ProductCursorAdapter(
+                imageLoader,
+                saleBatcher,
+                this::onItemClick,
+                this::onSaleButtonClick
+        );
         inventoryCoordinatorLayout = findViewById(R.id.inventory_coordinator_layout);
         emptyListPrimaryTextView = findViewById(R.id.empty_list_primary_text_view);
         emptyListSecondaryTextView = findViewById(R.id.empty_list_secondary_text_view);
+        statsTextView = findViewById(R.id.stats_text_view);
         FloatingActionButton addProductButton = findViewById(R.id.add_product_button);
         addProductButton.setOnClickListener((view) -> onAddProductButtonClick());
         TooltipCompat.setTooltipText(addProductButton, getString(R.string.add_product_button_tooltip));
-        RecyclerView recyclerView = findViewById(R.id.product_recycler_view);
+        recyclerView = findViewById(R.id.product_recycler_view);
         recyclerView.setAdapter(productCursorAdapter);
         DividerItemDecoration dividerItemDecoration = new DividerItemDecoration(
                 this,
                 DividerItemDecoration.VERTICAL
         );
         recyclerView.addItemDecoration(dividerItemDecoration);
-        LoaderManager.getInstance(this).initLoader(0, null, this);
+        productPagedList = new ProductPagedList(getContentResolver(), PROJECTION, this);
+        productCursorAdapter.setPagedList(productPagedList);
+        if (savedInstanceState != null) {
+            currentSort = savedInstanceState.getString(KEY_SORT, ProductContract.SORT_ID);
+            currentFilter = savedInstanceState.getString(KEY_FILTER);
+            productPagedList.setOrder(currentSort, currentFilter);
+        }
+        productPagedList.load();
+        statsStream = new ProductQueryStream<>(
+                this,
+                ProductContract.ProductStatsEntry.CONTENT_URI,
+                null,
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductQueryStream.FIRST_ROW,
+                this::showStats
+        );
+
+        // Take over the jobs left running by the activity this one replaces.
+        inventoryViewModel = new ViewModelProvider(this).get(InventoryViewModel.class);
+        productCsvImporter = inventoryViewModel.getProductCsvImporter();
+        if (productCsvImporter != null) {
+            showImportProgressSnackbar(productCsvImporter);
+            productCsvImporter.setListener(this);
+        }
+        productExporter = inventoryViewModel.getProductExporter();
+        if (productExporter != null) {
+            showExportProgressSnackbar(productExporter);
+            productExporter.setListener(this);
+        }
+    }
+
+    /**
+     * Callback invoked when the activity becomes visible. It starts {@link #productPagedList} and
+     * the query streams, which reload anything that changed while the activity was hidden.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        productPagedList.start();
+        statsStream.start();
+        if (searchStream != null) {
+            searchStream.start();
+        }
+        if (supplierStatsStream != null) {
+            supplierStatsStream.start();
+        }
+    }
+
+    /**
+     * Callback invoked when the activity is paused. It writes any sales still accumulated in
+     * {@link #saleBatcher} so that none are lost.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        saleBatcher.flush();
+    }
+
+    /**
+     * Callback invoked when the activity is no longer visible. It stops {@link #productPagedList}
+     * and the query streams, so no query runs for a hidden activity.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+        productPagedList.stop();
+        statsStream.stop();
+        if (searchStream != null) {
+            searchStream.stop();
+        }
+        if (supplierStatsStream != null) {
+            supplierStatsStream.stop();
+        }
+    }
+
+    /**
+     * Callback invoked to save the state of the activity. It saves the sort order and filter of
+     * the list.
+     *
+     * @param outState Bundle to save the state into.
+     */
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(KEY_SORT, currentSort);
+        outState.putString(KEY_FILTER, currentFilter);
+    }
+
+    /**
+     * Callback invoked when the activity is destroyed. It closes {@link #productPagedList} and the
+     * query streams, cancels any thumbnail still being loaded by {@link #imageLoader}, stops any
+     * running photo collection, and drops the callbacks of writes still running. A running import
+     * or export is only detached, since {@link #inventoryViewModel} either hands it to the
+     * activity recreated after a configuration change or cancels it.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        writeCallbacks.cancel();
+        saleBatcher.close();
+        searchHandler.removeCallbacksAndMessages(null);
+        if (productCsvImporter != null) {
+            productCsvImporter.setListener(null);
+        }
+        if (productExporter != null) {
+            productExporter.setListener(null);
+        }
+        if (photoCollector != null) {
+            photoCollector.cancel();
+        }
+        productPagedList.close();
+        statsStream.close();
+        closeSearchStream();
+        closeSupplierStatsStream();
+        imageLoader.cancelAll();
     }
 
     /**
@@ -92,9 +420,188 @@ public class InventoryActivity extends AppCompatActivity implements
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_inventory, menu);
+        menu.findItem(getSortItemId(currentSort)).setChecked(true);
+        menu.findItem(R.id.action_filter_low_stock).setChecked(currentFilter != null);
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(this);
         return true;
     }
 
+    /**
+     * Invoked when the text in the search box changes. It schedules a search of the new text once
+     * typing pauses, replacing any search scheduled before.
+     *
+     * @param newText The new text in the search box.
+     * @return True since the change is handled here.
+     */
+    @Override
+    public boolean onQueryTextChange(@NonNull String newText) {
+        if (pendingSearch != null) {
+            searchHandler.removeCallbacks(pendingSearch);
+        }
+        pendingSearch = () -> {
+            pendingSearch = null;
+            search(newText);
+        };
+        searchHandler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MILLIS);
+        return true;
+    }
+
+    /**
+     * Invoked when the text in the search box is submitted. It searches the text right away.
+     *
+     * @param query The submitted text.
+     * @return True since the submission is handled here.
+     */
+    @Override
+    public boolean onQueryTextSubmit(@NonNull String query) {
+        if (pendingSearch != null) {
+            searchHandler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        search(query);
+        return true;
+    }
+
+    /**
+     * Shows the products matching the given text in the list. If the text is blank, the list of
+     * all products is shown instead.
+     *
+     * @param query Text to search for.
+     */
+    private void search(@NonNull String query) {
+        if (query.trim().isEmpty()) {
+            // Close the stream even if no result arrived yet, so a late result of the old text is
+            // never shown under an empty search box.
+            closeSearchStream();
+            if (isSearching) {
+                isSearching = false;
+                productCursorAdapter.setSnapshot(null);
+                productCursorAdapter.setPagedList(productPagedList);
+                updateEmptyListTextVisibility(productPagedList.getCount());
+            }
+            return;
+        }
+        closeSearchStream();
+        searchStream = new ProductQueryStream<>(
+                this,
+                ProductContract.ProductEntry.buildSearchUri(query, SEARCH_RESULT_LIMIT),
+                PROJECTION,
+                ProductContract.ProductEntry.CONTENT_URI,
+                ProductSnapshot::read,
+                this::onSearchResult
+        );
+        searchStream.start();
+    }
+
+    /**
+     * Invoked when search results are loaded. It shows them in the list instead of
+     * {@link #productPagedList}. If the search failed, the list is left as it is and a snackbar
+     * tells the user.
+     *
+     * @param snapshot The search results. {@code null} if the search failed.
+     */
+    private void onSearchResult(@Nullable ProductSnapshot snapshot) {
+        if (snapshot == null) {
+            showSnackbar(R.string.search_products_failed_message);
+            return;
+        }
+        saleBatcher.onDataReloaded(snapshot.getReadStartNanos());
+        if (!isSearching) {
+            isSearching = true;
+            productCursorAdapter.setPagedList(null);
+        }
+        productCursorAdapter.setSnapshot(snapshot);
+        updateEmptyListTextVisibility(snapshot.getCount());
+    }
+
+    /**
+     * Closes {@link #searchStream}, if any, so no superseded search results are delivered.
+     */
+    private void closeSearchStream() {
+        if (searchStream != null) {
+            searchStream.close();
+            searchStream = null;
+        }
+    }
+
+    /**
+     * Closes {@link #supplierStatsStream}, if any.
+     */
+    private void closeSupplierStatsStream() {
+        if (supplierStatsStream != null) {
+            supplierStatsStream.close();
+            supplierStatsStream = null;
+        }
+    }
+
+    /**
+     * Shows the inventory totals in {@link #statsTextView}.
+     *
+     * @param data The single row of inventory totals. The totals are hidden if it is
+     *             {@code null}.
+     */
+    private void showStats(@Nullable ContentValues data) {
+        if (data == null) {
+            statsTextView.setVisibility(View.GONE);
+            return;
+        }
+        statsTextView.setVisibility(View.VISIBLE);
+        statsTextView.setText(getString(
+                R.string.stats_label,
+                data.getAsInteger(ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT),
+                data.getAsLong(ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS),
+                formatAmount(data.getAsLong(ProductContract.ProductStatsEntry.COLUMN_TOTAL_VALUE)),
+                data.getAsInteger(ProductContract.ProductStatsEntry.COLUMN_LOW_STOCK_COUNT)
+        ));
+    }
+
+    /**
+     * Returns an amount of money in currency format to put into a formatted string. Only the
+     * returned string is allocated, since the digits are written into {@link #amountBuffer}.
+     *
+     * @param cents Amount in cents, as prices are stored in the product provider.
+     * @return Amount string in currency format.
+     */
+    @NonNull
+    private String formatAmount(long cents) {
+        int length = ProductProviderUtils.writeCurrencyPrice(cents, amountBuffer);
+        return new String(amountBuffer, 0, length);
+    }
+
+    /**
+     * Shows a dialog listing the inventory totals of each supplier. Since the dialog is a one-time
+     * view of the totals, {@link #supplierStatsStream} is closed once they are loaded.
+     *
+     * @param data A row of inventory totals for each supplier. {@code null} if loading failed.
+     */
+    private void showSupplierStatsDialog(@Nullable List<ContentValues> data) {
+        closeSupplierStatsStream();
+        if (data == null) {
+            return;
+        }
+        String[] items = new String[data.size()];
+        for (int i = 0; i < items.length; i++) {
+            ContentValues row = data.get(i);
+            items[i] = getString(
+                    R.string.supplier_stats_item_label,
+                    row.getAsString(ProductContract.SupplierStatsEntry.COLUMN_SUPPLIER),
+                    row.getAsInteger(ProductContract.ProductStatsEntry.COLUMN_PRODUCT_COUNT),
+                    row.getAsLong(ProductContract.ProductStatsEntry.COLUMN_TOTAL_UNITS),
+                    formatAmount(
+                            row.getAsLong(ProductContract.ProductStatsEntry.COLUMN_TOTAL_VALUE)
+                    )
+            );
+        }
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.supplier_stats_dialog_title)
+                .setItems(items, null)
+                .setPositiveButton(R.string.generic_close_dialog_button_label, null)
+                .create();
+        dialog.show();
+    }
+
     /**
      * Callback invoked when an action bar option is clicked. It specifies what actions to take when
      * either option is clicked.
@@ -105,7 +612,43 @@ public class InventoryActivity extends AppCompatActivity implements
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         int id = item.getItemId();
-        if (id == R.id.action_add_dummy_product) {
+        if (id == R.id.action_supplier_stats) {
+            if (supplierStatsStream == null) {
+                supplierStatsStream = new ProductQueryStream<>(
+                        this,
+                        ProductContract.SupplierStatsEntry.CONTENT_URI,
+                        null,
+                        ProductContract.ProductEntry.CONTENT_URI,
+                        ProductQueryStream.ALL_ROWS,
+                        this::showSupplierStatsDialog
+                );
+                supplierStatsStream.start();
+            }
+            return true;
+        } else if (id == R.id.action_sort_id || id == R.id.action_sort_name
+                || id == R.id.action_sort_price || id == R.id.action_sort_quantity) {
+            item.setChecked(true);
+            currentSort = getSort(id);
+            productPagedList.setOrder(currentSort, currentFilter);
+            return true;
+        } else if (id == R.id.action_filter_low_stock) {
+            item.setChecked(!item.isChecked());
+            currentFilter = item.isChecked() ? ProductContract.FILTER_LOW_STOCK : null;
+            productPagedList.setOrder(currentSort, currentFilter);
+            return true;
+        } else if (id == R.id.action_import_products) {
+            onImportProductsClick();
+            return true;
+        } else if (id == R.id.action_export_products_csv) {
+            onExportProductsClick(ProductExporter.Format.CSV);
+            return true;
+        } else if (id == R.id.action_export_products_json) {
+            onExportProductsClick(ProductExporter.Format.JSON);
+            return true;
+        } else if (id == R.id.action_clean_up_photos) {
+            onCleanUpPhotosClick();
+            return true;
+        } else if (id == R.id.action_add_dummy_product) {
             onAddDummyProductClick();
             return true;
         } else if (id == R.id.action_delete_all_products) {
@@ -118,76 +661,493 @@ public class InventoryActivity extends AppCompatActivity implements
     }
 
     /**
-     * Invoked when a loader is initially created. It returns a {@link CursorLoader} for fetching
-     * data from the product provider.
+     * Returns the sort order picked by a sort menu item.
      *
-     * @param id   The ID of the loader to be created.
-     * @param args Any arguments supplied by the caller.
-     * @return A {@link CursorLoader} ready to fetch data.
+     * @param itemId Id of the sort menu item.
+     * @return One of the values of {@link ProductContract#QUERY_PARAMETER_SORT}.
      */
     @NonNull
+    private static String getSort(int itemId) {
+        if (itemId == R.id.action_sort_name) {
+            return ProductContract.SORT_NAME;
+        } else if (itemId == R.id.action_sort_price) {
+            return ProductContract.SORT_PRICE;
+        } else if (itemId == R.id.action_sort_quantity) {
+            return ProductContract.SORT_QUANTITY;
+        } else {
+            return ProductContract.SORT_ID;
+        }
+    }
+
+    /**
+     * Returns the id of the sort menu item that picks a sort order.
+     *
+     * @param sort One of the values of {@link ProductContract#QUERY_PARAMETER_SORT}.
+     * @return Id of the sort menu item.
+     */
+    private static int getSortItemId(@NonNull String sort) {
+        switch (sort) {
+            case ProductContract.SORT_NAME:
+                return R.id.action_sort_name;
+            case ProductContract.SORT_PRICE:
+                return R.id.action_sort_price;
+            case ProductContract.SORT_QUANTITY:
+                return R.id.action_sort_quantity;
+            default:
+                return R.id.action_sort_id;
+        }
+    }
+
+    /**
+     * Invoked when {@link #productPagedList} finishes fetching the whole list for the first time.
+     * It refreshes {@link #productCursorAdapter} and sets the visibility of the empty list text in
+     * the UI.
+     *
+     * @param count Number of products in the list.
+     */
     @Override
-    public Loader<Cursor> onCreateLoader(int id, @Nullable Bundle args) {
-        String[] projection = {
-                ProductContract.ProductEntry._ID,
-                ProductContract.ProductEntry.COLUMN_NAME,
-                ProductContract.ProductEntry.COLUMN_PRICE,
-                ProductContract.ProductEntry.COLUMN_QUANTITY
-        };
-        return new CursorLoader(
-                this,
-                ProductContract.ProductEntry.CONTENT_URI,
-                projection,
-                null,
-                null,
-                null
-        );
+    public void onListLoaded(int count) {
+        if (isSearching) {
+            return;
+        }
+        saleBatcher.onDataReloaded(productPagedList.getLoadStartNanos());
+        productCursorAdapter.notifyDataSetChanged();
+        updateEmptyListTextVisibility(count);
     }
 
     /**
-     * Invoked whenever a previously created loader finishes its load. It passes the newly fetched
-     * {@link Cursor} to {@link #productCursorAdapter} and sets the visibility of the empty list
-     * text in the UI.
+     * Invoked whenever {@link #productPagedList} finishes applying changes in the product provider.
+     * The changed items have already been reported, and each refetched page tells
+     * {@link #saleBatcher} when it was read, so it only sets the visibility of the empty list text
+     * in the UI.
      *
-     * @param loader The Loader that has finished.
-     * @param data   The data generated by the Loader.
+     * @param count Number of products in the list.
      */
     @Override
-    public void onLoadFinished(@NonNull Loader<Cursor> loader, Cursor data) {
-        productCursorAdapter.setCursor(data);
-        if (data == null || data.getCount() <= 0) {
-            setEmptyListTextVisibility(View.VISIBLE);
-        } else {
-            setEmptyListTextVisibility(View.INVISIBLE);
+    public void onListUpdated(int count) {
+        if (isSearching) {
+            return;
         }
+        updateEmptyListTextVisibility(count);
     }
 
     /**
-     * Invoked when a previously created loader is being reset, thus invalidating its dataset. It
-     * just resets {@link #productCursorAdapter} and shows the empty list text in the UI.
+     * Invoked whenever {@link #productPagedList} reports that products were inserted.
      *
-     * @param loader The Loader that is being reset.
+     * @param position Position of the first inserted product.
+     * @param count    Number of inserted products.
      */
     @Override
-    public void onLoaderReset(@NonNull Loader<Cursor> loader) {
-        productCursorAdapter.setCursor(null);
-        setEmptyListTextVisibility(View.VISIBLE);
+    public void onInserted(int position, int count) {
+        if (isSearching) {
+            return;
+        }
+        productCursorAdapter.notifyItemRangeInserted(position, count);
     }
 
     /**
-     * Invoked when the add dummy product button in the action bar is clicked. It adds a product
-     * with dummy data to the product provider. If the insertion operation fails, it shows an error
+     * Invoked whenever {@link #productPagedList} reports that products were removed.
+     *
+     * @param position Position of the first removed product.
+     * @param count    Number of removed products.
+     */
+    @Override
+    public void onRemoved(int position, int count) {
+        if (isSearching) {
+            return;
+        }
+        productCursorAdapter.notifyItemRangeRemoved(position, count);
+    }
+
+    /**
+     * Invoked whenever {@link #productPagedList} reports that a product moved.
+     *
+     * @param fromPosition Previous position of the product.
+     * @param toPosition   New position of the product.
+     */
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        if (isSearching) {
+            return;
+        }
+        productCursorAdapter.notifyItemMoved(fromPosition, toPosition);
+    }
+
+    /**
+     * Invoked whenever {@link #productPagedList} reports that products changed or finished being
+     * fetched. It rebinds only those items in {@link #productCursorAdapter}.
+     *
+     * @param position Position of the first changed product.
+     * @param count    Number of changed products.
+     * @param payload  Unused.
+     */
+    @Override
+    public void onChanged(int position, int count, @Nullable Object payload) {
+        if (isSearching) {
+            return;
+        }
+        productCursorAdapter.notifyItemRangeChanged(position, count, payload);
+    }
+
+    /**
+     * Invoked whenever {@link #saleBatcher} changes the quantity to show for a product. It rebinds
+     * the list item of the product if it is shown. The shown list items are searched, since the
+     * adapter has no stable ids to look the list item up by.
+     *
+     * @param id Id of the product.
+     */
+    @Override
+    public void onQuantityChanged(long id) {
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            RecyclerView.ViewHolder holder =
+                    recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION
+                    && productCursorAdapter.getItemId(position) == id) {
+                productCursorAdapter.notifyItemChanged(position);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Invoked whenever {@link #saleBatcher} fails to write the sale of a product. It shows an error
      * snackbar.
+     *
+     * @param id Id of the product.
+     */
+    @Override
+    public void onSaleFailed(long id) {
+        showSnackbar(R.string.update_product_failed_message);
+    }
+
+    /**
+     * Invoked when the add dummy product button in the action bar is clicked. It adds a product
+     * with dummy data to the product provider in the background. If the insertion operation fails,
+     * it shows an error snackbar.
      */
     private void onAddDummyProductClick() {
-        Uri insertUri = getContentResolver().insert(
+        productWriteExecutor.insert(
                 ProductContract.ProductEntry.CONTENT_URI,
-                getRandomContentValues()
+                getRandomContentValues(),
+                writeCallbacks.wrap((insertUri) -> {
+                    if (insertUri == null) {
+                        // Insertion failed.
+                        showSnackbar(R.string.add_product_failed_message);
+                    }
+                })
         );
-        if (insertUri == null) {
-            // Insertion failed.
-            showSnackbar(R.string.add_product_failed_message);
+    }
+
+    /**
+     * Invoked when the import products button in the action bar is clicked. It launches a picker
+     * for the CSV file to import, unless an import is already running.
+     */
+    private void onImportProductsClick() {
+        if (productCsvImporter != null) {
+            showSnackbar(R.string.import_products_running_message);
+            return;
         }
+        openDocumentActivityResultLauncher.launch(IMPORT_MIME_TYPES);
+    }
+
+    /**
+     * Invoked when the CSV file picker returns. It starts importing products from the picked
+     * file in the background and shows its progress in a snackbar.
+     *
+     * @param uri Content URI of the picked file. {@code null} if no file was picked.
+     */
+    private void onOpenDocumentActivityResult(@Nullable Uri uri) {
+        if (uri == null || productCsvImporter != null) {
+            return;
+        }
+        ProductCsvImporter importer = new ProductCsvImporter(this, this);
+        productCsvImporter = importer;
+        inventoryViewModel.setProductCsvImporter(importer);
+        importer.start(uri);
+        showImportProgressSnackbar(importer);
+    }
+
+    /**
+     * Shows a snackbar with the progress of a running import, which offers to cancel it.
+     *
+     * @param importer The running import.
+     */
+    private void showImportProgressSnackbar(@NonNull ProductCsvImporter importer) {
+        importProgressSnackbar = Snackbar.make(
+                inventoryCoordinatorLayout,
+                R.string.import_products_started_message,
+                BaseTransientBottomBar.LENGTH_INDEFINITE
+        );
+        importProgressSnackbar.setAction(
+                R.string.generic_cancel_dialog_button_label,
+                (view) -> importer.cancel()
+        );
+        importProgressSnackbar.show();
+    }
+
+    /**
+     * Invoked each time {@link #productCsvImporter} reads a chunk of rows. It updates the progress
+     * snackbar.
+     *
+     * @param rowsRead     Number of rows read so far.
+     * @param rowsImported Number of rows inserted so far.
+     * @param percent      Share of the file read so far in percent. {@code -1} if unknown.
+     */
+    @Override
+    public void onImportProgress(long rowsRead, long rowsImported, int percent) {
+        if (importProgressSnackbar == null) {
+            return;
+        }
+        importProgressSnackbar.setText(percent >= 0
+                ? getString(R.string.import_products_progress_message, rowsRead, percent)
+                : getString(R.string.import_products_progress_unknown_size_message, rowsRead));
+    }
+
+    /**
+     * Invoked once {@link #productCsvImporter} ends. It replaces the progress snackbar with one
+     * summarizing the result, which offers the errors of skipped rows if there are any.
+     *
+     * @param result Result of the import.
+     */
+    @Override
+    public void onImportFinished(@NonNull ProductCsvImporter.Result result) {
+        productCsvImporter = null;
+        inventoryViewModel.setProductCsvImporter(null);
+        if (importProgressSnackbar != null) {
+            importProgressSnackbar.dismiss();
+            importProgressSnackbar = null;
+        }
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        String message;
+        if (result.getFailureMessage() != null) {
+            message = getString(
+                    R.string.import_products_failed_message,
+                    result.getRowsImported(),
+                    result.getFailureMessage()
+            );
+        } else {
+            message = getString(
+                    result.isCancelled()
+                            ? R.string.import_products_cancelled_message
+                            : R.string.import_products_finished_message,
+                    result.getRowsImported(),
+                    result.getRowsSkipped()
+            );
+        }
+        Snackbar snackbar = Snackbar.make(
+                inventoryCoordinatorLayout,
+                message,
+                BaseTransientBottomBar.LENGTH_LONG
+        );
+        if (!result.getErrors().isEmpty()) {
+            snackbar.setAction(
+                    R.string.import_products_details_button_label,
+                    (view) -> showImportErrorsDialog(result.getErrors())
+            );
+        }
+        snackbar.show();
+    }
+
+    /**
+     * Shows a dialog listing the rows skipped by an import and why.
+     *
+     * @param errors Errors of the skipped rows.
+     */
+    private void showImportErrorsDialog(@NonNull List<ProductCsvImporter.RowError> errors) {
+        String[] items = new String[errors.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = getString(
+                    R.string.import_products_error_item_label,
+                    errors.get(i).getLineNumber(),
+                    errors.get(i).getMessage()
+            );
+        }
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.import_products_errors_dialog_title)
+                .setItems(items, null)
+                .setPositiveButton(R.string.generic_close_dialog_button_label, null)
+                .create();
+        dialog.show();
+    }
+
+    /**
+     * Invoked when either export products button in the action bar is clicked. It launches a
+     * picker for where to save the export, suggesting a file name holding today's date, unless an
+     * export is already running.
+     *
+     * @param format Format to export in.
+     */
+    private void onExportProductsClick(@NonNull ProductExporter.Format format) {
+        if (productExporter != null) {
+            showSnackbar(R.string.export_products_running_message);
+            return;
+        }
+        String fileName = getString(
+                R.string.export_products_file_name,
+                new SimpleDateFormat("yyyyMMdd", Locale.US).format(new Date()),
+                format.getExtension()
+        );
+        if (format == ProductExporter.Format.CSV) {
+            createCsvDocumentActivityResultLauncher.launch(fileName);
+        } else {
+            createJsonDocumentActivityResultLauncher.launch(fileName);
+        }
+    }
+
+    /**
+     * Invoked when the export file picker returns. It starts exporting every product to the
+     * picked file in the background and shows its progress in a snackbar.
+     *
+     * @param uri    Content URI of the picked file. {@code null} if no file was picked.
+     * @param format Format to export in.
+     */
+    private void onCreateDocumentActivityResult(
+            @Nullable Uri uri,
+            @NonNull ProductExporter.Format format
+    ) {
+        if (uri == null || productExporter != null) {
+            return;
+        }
+        ProductExporter exporter = new ProductExporter(this, this);
+        productExporter = exporter;
+        inventoryViewModel.setProductExporter(exporter);
+        exporter.start(uri, format);
+        showExportProgressSnackbar(exporter);
+    }
+
+    /**
+     * Shows a snackbar with the progress of a running export, which offers to cancel it.
+     *
+     * @param exporter The running export.
+     */
+    private void showExportProgressSnackbar(@NonNull ProductExporter exporter) {
+        exportProgressSnackbar = Snackbar.make(
+                inventoryCoordinatorLayout,
+                R.string.export_products_started_message,
+                BaseTransientBottomBar.LENGTH_INDEFINITE
+        );
+        exportProgressSnackbar.setAction(
+                R.string.generic_cancel_dialog_button_label,
+                (view) -> exporter.cancel()
+        );
+        exportProgressSnackbar.show();
+    }
+
+    /**
+     * Invoked each time {@link #productExporter} writes a page of products. It updates the
+     * progress snackbar.
+     *
+     * @param rowsWritten Number of products written so far.
+     * @param percent     Share of the products written so far in percent. {@code -1} if unknown.
+     */
+    @Override
+    public void onExportProgress(long rowsWritten, int percent) {
+        if (exportProgressSnackbar == null) {
+            return;
+        }
+        exportProgressSnackbar.setText(percent >= 0
+                ? getString(R.string.export_products_progress_message, rowsWritten, percent)
+                : getString(R.string.export_products_progress_unknown_size_message, rowsWritten));
+    }
+
+    /**
+     * Invoked once {@link #productExporter} ends. It replaces the progress snackbar with one
+     * summarizing the result.
+     *
+     * @param result Result of the export.
+     */
+    @Override
+    public void onExportFinished(@NonNull ProductExporter.Result result) {
+        productExporter = null;
+        inventoryViewModel.setProductExporter(null);
+        if (exportProgressSnackbar != null) {
+            exportProgressSnackbar.dismiss();
+            exportProgressSnackbar = null;
+        }
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        String message;
+        if (result.getFailureMessage() != null) {
+            message = getString(
+                    R.string.export_products_failed_message,
+                    result.getRowsWritten(),
+                    result.getFailureMessage()
+            );
+        } else {
+            message = getString(
+                    result.isCancelled()
+                            ? R.string.export_products_cancelled_message
+                            : R.string.export_products_finished_message,
+                    result.getRowsWritten()
+            );
+        }
+        Snackbar.make(inventoryCoordinatorLayout, message, BaseTransientBottomBar.LENGTH_LONG)
+                .show();
+    }
+
+    /**
+     * Invoked when the clean up photos button in the action bar is clicked. It starts deleting
+     * photos no product refers to in the background and shows a snackbar while it runs, unless a
+     * collection is already running.
+     */
+    private void onCleanUpPhotosClick() {
+        if (photoCollector != null) {
+            showSnackbar(R.string.clean_up_photos_running_message);
+            return;
+        }
+        PhotoCollector collector = new PhotoCollector(this, this);
+        photoCollector = collector;
+        collector.start();
+        photoCollectionProgressSnackbar = Snackbar.make(
+                inventoryCoordinatorLayout,
+                R.string.clean_up_photos_started_message,
+                BaseTransientBottomBar.LENGTH_INDEFINITE
+        );
+        photoCollectionProgressSnackbar.setAction(
+                R.string.generic_cancel_dialog_button_label,
+                (view) -> collector.cancel()
+        );
+        photoCollectionProgressSnackbar.show();
+    }
+
+    /**
+     * Invoked once {@link #photoCollector} ends. It replaces the progress snackbar with one
+     * summarizing the space freed.
+     *
+     * @param result Result of the collection.
+     */
+    @Override
+    public void onPhotoCollectionFinished(@NonNull PhotoCollector.Result result) {
+        photoCollector = null;
+        if (photoCollectionProgressSnackbar != null) {
+            photoCollectionProgressSnackbar.dismiss();
+            photoCollectionProgressSnackbar = null;
+        }
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        String message;
+        if (result.getFailureMessage() != null) {
+            message = getString(
+                    R.string.clean_up_photos_failed_message,
+                    result.getFilesDeleted(),
+                    result.getFailureMessage()
+            );
+        } else {
+            message = getString(
+                    result.isCancelled()
+                            ? R.string.clean_up_photos_cancelled_message
+                            : R.string.clean_up_photos_finished_message,
+                    Formatter.formatShortFileSize(this, result.getBytesReclaimed()),
+                    result.getFilesDeleted()
+            );
+        }
+        Snackbar.make(inventoryCoordinatorLayout, message, BaseTransientBottomBar.LENGTH_LONG)
+                .show();
     }
 
     /**
@@ -211,19 +1171,21 @@ public class InventoryActivity extends AppCompatActivity implements
 
     /**
      * Invoked when the delete button of the delete all products confirmation dialog is clicked.
-     * It deletes all products from the product provider. If the deletion operation fails, it shows
-     * an error snackbar.
+     * It deletes all products from the product provider in the background. If the deletion
+     * operation fails, it shows an error snackbar.
      */
     private void onDeleteAllProductsConfirmationDialogDeleteButtonClick() {
-        int countRowsDeleted = getContentResolver().delete(
+        productWriteExecutor.delete(
                 ProductContract.ProductEntry.CONTENT_URI,
                 null,
-                null
+                null,
+                writeCallbacks.wrap((countRowsDeleted) -> {
+                    if (countRowsDeleted == -1) {
+                        // Deletion failed.
+                        showSnackbar(R.string.delete_all_products_failed_message);
+                    }
+                })
         );
-        if (countRowsDeleted == -1) {
-            // Deletion failed.
-            showSnackbar(R.string.delete_all_products_failed_message);
-        }
     }
 
     /**
@@ -241,29 +1203,15 @@ public class InventoryActivity extends AppCompatActivity implements
     }
 
     /**
-     * Invoked when the sale button of a list item in the recycler view is clicked. It updates
-     * the appropriate product in the product provider with a quantity decremented by one. If the
-     * update operation fails, an error snackbar is shown.
+     * Invoked when the sale button of a list item in the recycler view is clicked. It sells one
+     * unit of the appropriate product through {@link #saleBatcher}, which shows the decremented
+     * quantity right away and writes rapid clicks to the product provider as a single batch.
      *
      * @param id       Id of the product corresponding with this list item.
-     * @param quantity Quantity of the product corresponding with this list item.
+     * @param quantity Quantity shown for the product corresponding with this list item.
      */
     private void onSaleButtonClick(long id, int quantity) {
-        // Do not allow decrements below 0.
-        if (quantity <= 0) {
-            return;
-        }
-
-        // Perform update.
-        Uri uri = ContentUris.withAppendedId(ProductContract.ProductEntry.CONTENT_URI, id);
-        ContentValues values = new ContentValues();
-        values.put(ProductContract.ProductEntry.COLUMN_QUANTITY, quantity - 1);
-        int countRowsUpdated = getContentResolver().update(uri, values, null, null);
-
-        if (countRowsUpdated == -1) {
-            // Update failed.
-            showSnackbar(R.string.update_product_failed_message);
-        }
+        saleBatcher.sell(id, quantity);
     }
 
     /**
@@ -317,6 +1265,19 @@ public class InventoryActivity extends AppCompatActivity implements
         return values;
     }
 
+    /**
+     * Shows the empty list text in the UI if the list has no products, and hides it otherwise.
+     *
+     * @param count Number of products in the list.
+     */
+    private void updateEmptyListTextVisibility(int count) {
+        if (count <= 0) {
+            setEmptyListTextVisibility(View.VISIBLE);
+        } else {
+            setEmptyListTextVisibility(View.INVISIBLE);
+        }
+    }
+
     /**
      * Sets the visibility of the empty list text in the UI. Ensure that
      * {@link #emptyListPrimaryTextView} and {@link #emptyListSecondaryTextView} are not
@@ -0,0 +1,61 @@
+package com.davidread.clothescatalog2.view;
+
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModel;
+
+import com.davidread.clothescatalog2.database.ProductCsvImporter;
+import com.davidread.clothescatalog2.database.ProductExporter;
+
+/**
+ * Holds the background jobs started by an {@link InventoryActivity}, so they keep running when the
+ * activity is recreated after a configuration change, such as a rotation. The new activity takes
+ * them over and attaches itself as their listener. They are only cancelled once the activity
+ * finishes for good.
+ */
+public class InventoryViewModel extends ViewModel {
+
+    /**
+     * Imports products from a CSV file in the background. {@code null} if no import is running.
+     */
+    private ProductCsvImporter productCsvImporter;
+
+    /**
+     * Exports every product in the background. {@code null} if no export is running.
+     */
+    private ProductExporter productExporter;
+
+    @Nullable
+    public ProductCsvImporter getProductCsvImporter() {
+        return productCsvImporter;
+    }
+
+    public void setProductCsvImporter(@Nullable ProductCsvImporter productCsvImporter) {
+        this.productCsvImporter = productCsvImporter;
+    }
+
+    @Nullable
+    public ProductExporter getProductExporter() {
+        return productExporter;
+    }
+
+    public void setProductExporter(@Nullable ProductExporter productExporter) {
+        this.productExporter = productExporter;
+    }
+
+    /**
+     * Callback invoked once the activity finishes for good. It stops any running job.
+     */
+    @Override
+    protected void onCleared() {
+        if (productCsvImporter != null) {
+            productCsvImporter.setListener(null);
+            productCsvImporter.cancel();
+            productCsvImporter = null;
+        }
+        if (productExporter != null) {
+            productExporter.setListener(null);
+            productExporter.cancel();
+            productExporter = null;
+        }
+    }
+}